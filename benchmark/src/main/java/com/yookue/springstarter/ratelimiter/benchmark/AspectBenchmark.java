@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yookue.springstarter.ratelimiter.benchmark;
+
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import com.yookue.springstarter.ratelimiter.aspect.AbstractRateLimitAspect;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+
+
+/**
+ * Benchmarks for {@link AbstractRateLimitAspect#aroundPoint}, end to end through a spring aop proxy
+ * <p>
+ * Every thread is a distinct client, {@code plain} is the baseline of the proxy without any advice.
+ * The reactive backend subscribes each call on the calling thread, with the exchange of the client in the subscriber context
+ *
+ * @author David Hsing
+ */
+@BenchmarkMode(value = {Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(value = TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1)
+@SuppressWarnings("unused")
+public class AspectBenchmark {
+    @State(value = Scope.Benchmark)
+    public static class SharedState {
+        @Param(value = {BenchmarkFixture.BACKEND_LOCAL, BenchmarkFixture.BACKEND_REDIS, BenchmarkFixture.BACKEND_MAPPED, BenchmarkFixture.BACKEND_REACTIVE_REDIS})
+        public String backend;
+
+        @Param(value = {"any", "ip-address", "session", "username", "key"})    // $NON-NLS-1$ // $NON-NLS-2$ // $NON-NLS-3$ // $NON-NLS-4$ // $NON-NLS-5$
+        public String trigger;
+
+        private final AtomicInteger clientSequence = new AtomicInteger();
+        private Function<Context, String> invocation;
+        private Function<Context, String> plainInvocation;
+
+        @Setup(value = Level.Trial)
+        public void setup() {
+            if (BenchmarkFixture.BACKEND_REACTIVE_REDIS.equals(backend)) {
+                ReactiveBenchmarkController controller = BenchmarkFixture.buildReactiveProxy(BenchmarkFixture.buildReactiveAspect());
+                Function<Context, Mono<String>> publisher = switch (trigger) {
+                    case "any" -> context -> controller.any();    // $NON-NLS-1$
+                    case "ip-address" -> context -> controller.ipAddress();    // $NON-NLS-1$
+                    case "session" -> context -> controller.session();    // $NON-NLS-1$
+                    case "username" -> context -> controller.username();    // $NON-NLS-1$
+                    case "key" -> context -> controller.key();    // $NON-NLS-1$
+                    default -> throw new IllegalArgumentException("Unknown trigger: " + trigger);
+                };
+                invocation = context -> publisher.apply(context).contextWrite(context).block();
+                plainInvocation = context -> controller.plain().contextWrite(context).block();
+                return;
+            }
+            BenchmarkController controller = BenchmarkFixture.buildProxy(BenchmarkFixture.buildAspect(backend));
+            invocation = switch (trigger) {
+                case "any" -> context -> controller.any();    // $NON-NLS-1$
+                case "ip-address" -> context -> controller.ipAddress();    // $NON-NLS-1$
+                case "session" -> context -> controller.session();    // $NON-NLS-1$
+                case "username" -> context -> controller.username();    // $NON-NLS-1$
+                case "key" -> context -> controller.key();    // $NON-NLS-1$
+                default -> throw new IllegalArgumentException("Unknown trigger: " + trigger);
+            };
+            plainInvocation = context -> controller.plain();
+        }
+    }
+
+
+    @State(value = Scope.Thread)
+    public static class ClientState {
+        private Context context;
+
+        @Setup(value = Level.Trial)
+        public void setup(SharedState shared) {
+            int sequence = shared.clientSequence.getAndIncrement();
+            BenchmarkFixture.bindRequest(sequence);
+            context = BenchmarkFixture.buildExchangeContext(sequence);
+        }
+
+        @TearDown(value = Level.Trial)
+        public void tearDown() {
+            BenchmarkFixture.unbindRequest();
+        }
+    }
+
+    @Benchmark
+    public String aroundPoint(SharedState shared, ClientState client) {
+        return shared.invocation.apply(client.context);
+    }
+
+    @Benchmark
+    public String plain(SharedState shared, ClientState client) {
+        return shared.plainInvocation.apply(client.context);
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yookue.springstarter.ratelimiter.benchmark;
+
+
+import java.time.temporal.ChronoUnit;
+import org.springframework.web.bind.annotation.GetMapping;
+import com.yookue.springstarter.ratelimiter.annotation.RateLimit;
+import com.yookue.springstarter.ratelimiter.enumeration.LimiterAlgorithmType;
+import com.yookue.springstarter.ratelimiter.enumeration.LimiterTriggerType;
+
+
+/**
+ * Controller for benchmarks
+ * <p>
+ * The trigger methods never exhaust their quota, so the benchmarks measure the allowed path of the aspect.
+ * The algorithm methods allow 1000 calls per second, so the storage benchmarks measure the mix of both paths
+ *
+ * @author David Hsing
+ */
+@SuppressWarnings("unused")
+public class BenchmarkController {
+    public static final long UNLIMITED = Long.MAX_VALUE;
+    public static final long PERMITS = 1000L;
+
+    public String plain() {
+        return "plain";    // $NON-NLS-1$
+    }
+
+    @GetMapping(path = "/any")
+    @RateLimit(ttl = 1L, unit = ChronoUnit.HOURS, algorithm = LimiterAlgorithmType.FIXED_WINDOW, permits = UNLIMITED, triggerType = LimiterTriggerType.ANY)
+    public String any() {
+        return "any";    // $NON-NLS-1$
+    }
+
+    @GetMapping(path = "/ip-address")
+    @RateLimit(ttl = 1L, unit = ChronoUnit.HOURS, algorithm = LimiterAlgorithmType.FIXED_WINDOW, permits = UNLIMITED, triggerType = LimiterTriggerType.IP_ADDRESS)
+    public String ipAddress() {
+        return "ip-address";    // $NON-NLS-1$
+    }
+
+    @GetMapping(path = "/session")
+    @RateLimit(ttl = 1L, unit = ChronoUnit.HOURS, algorithm = LimiterAlgorithmType.FIXED_WINDOW, permits = UNLIMITED, triggerType = LimiterTriggerType.SESSION)
+    public String session() {
+        return "session";    // $NON-NLS-1$
+    }
+
+    @GetMapping(path = "/username")
+    @RateLimit(ttl = 1L, unit = ChronoUnit.HOURS, algorithm = LimiterAlgorithmType.FIXED_WINDOW, permits = UNLIMITED, triggerType = LimiterTriggerType.USERNAME)
+    public String username() {
+        return "username";    // $NON-NLS-1$
+    }
+
+    @GetMapping(path = "/key")
+    @RateLimit(ttl = 1L, unit = ChronoUnit.HOURS, algorithm = LimiterAlgorithmType.FIXED_WINDOW, permits = UNLIMITED, triggerType = LimiterTriggerType.KEY, key = "header('X-Api-Key')")
+    public String key() {
+        return "key";    // $NON-NLS-1$
+    }
+
+    @GetMapping(path = "/cooldown")
+    @RateLimit(ttl = 1L, triggerType = LimiterTriggerType.ANY)
+    public String cooldown() {
+        return "cooldown";    // $NON-NLS-1$
+    }
+
+    @GetMapping(path = "/fixed-window")
+    @RateLimit(ttl = 1L, algorithm = LimiterAlgorithmType.FIXED_WINDOW, permits = PERMITS, triggerType = LimiterTriggerType.ANY)
+    public String fixedWindow() {
+        return "fixed-window";    // $NON-NLS-1$
+    }
+
+    @GetMapping(path = "/sliding-log")
+    @RateLimit(ttl = 1L, algorithm = LimiterAlgorithmType.SLIDING_LOG, permits = PERMITS, triggerType = LimiterTriggerType.ANY)
+    public String slidingLog() {
+        return "sliding-log";    // $NON-NLS-1$
+    }
+
+    @GetMapping(path = "/sliding-window")
+    @RateLimit(ttl = 1L, algorithm = LimiterAlgorithmType.SLIDING_WINDOW, permits = PERMITS, triggerType = LimiterTriggerType.ANY)
+    public String slidingWindow() {
+        return "sliding-window";    // $NON-NLS-1$
+    }
+
+    @GetMapping(path = "/token-bucket")
+    @RateLimit(ttl = 1L, algorithm = LimiterAlgorithmType.TOKEN_BUCKET, permits = PERMITS, capacity = PERMITS * 2L, triggerType = LimiterTriggerType.ANY)
+    public String tokenBucket() {
+        return "token-bucket";    // $NON-NLS-1$
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yookue.springstarter.ratelimiter.benchmark;
+
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import jakarta.annotation.Nonnull;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpSession;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.mock.web.server.MockWebSession;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.filter.reactive.ServerWebExchangeContextFilter;
+import com.yookue.springstarter.ratelimiter.aspect.AbstractBlockingRateLimitAspect;
+import com.yookue.springstarter.ratelimiter.aspect.LocalRateLimitAspect;
+import com.yookue.springstarter.ratelimiter.aspect.MappedRateLimitAspect;
+import com.yookue.springstarter.ratelimiter.aspect.ReactiveRedisRateLimitAspect;
+import com.yookue.springstarter.ratelimiter.aspect.RedisRateLimitAspect;
+import com.yookue.springstarter.ratelimiter.facade.RateLimitInformant;
+import com.yookue.springstarter.ratelimiter.property.RateLimiterProperties;
+import com.yookue.springstarter.ratelimiter.support.DeniedVerdictCache;
+import com.yookue.springstarter.ratelimiter.support.LocalLimiterStore;
+import com.yookue.springstarter.ratelimiter.support.MappedLimiterStore;
+import reactor.util.context.Context;
+
+
+/**
+ * Fixtures for benchmarks
+ *
+ * @author David Hsing
+ */
+@SuppressWarnings("unused")
+public abstract class BenchmarkFixture {
+    public static final int MAX_ENTRIES = 1 << 20;
+    public static final String BACKEND_LOCAL = "local";    // $NON-NLS-1$
+    public static final String BACKEND_REDIS = "redis";    // $NON-NLS-1$
+    public static final String BACKEND_REDIS_NEAR_CACHE = "redis-near-cache";    // $NON-NLS-1$
+    public static final String BACKEND_MAPPED = "mapped";    // $NON-NLS-1$
+    public static final String BACKEND_REACTIVE_REDIS = "reactive-redis";    // $NON-NLS-1$
+    public static final int MAPPED_SLOTS = 1 << 17;
+    public static final int MAPPED_PROBES = 8;
+
+    @Nonnull
+    public static RateLimiterProperties buildProperties() {
+        RateLimiterProperties properties = new RateLimiterProperties();
+        properties.setNamePrefix("benchmark:");    // $NON-NLS-1$
+        properties.setThrowException(true);
+        return properties;
+    }
+
+    @Nonnull
+    public static GenericApplicationContext buildContext() {
+        GenericApplicationContext context = new GenericApplicationContext();
+        context.registerBean(RateLimitInformant.class, () -> () -> "benchmark");    // $NON-NLS-1$
+        context.refresh();
+        return context;
+    }
+
+    /**
+     * Returns a new aspect of the given backend, without any callback, the denied calls throw exceptions
+     *
+     * @param backend the name of the backend
+     *
+     * @return a new aspect of the given backend
+     */
+    @Nonnull
+    public static AbstractBlockingRateLimitAspect buildAspect(@Nonnull String backend) {
+        RateLimiterProperties properties = buildProperties();
+        LocalLimiterStore store = new LocalLimiterStore(MAX_ENTRIES, Duration.ofSeconds(60L));
+        AbstractBlockingRateLimitAspect aspect = switch (backend) {
+            case BACKEND_LOCAL -> new LocalRateLimitAspect(properties, null, store);
+            case BACKEND_REDIS -> new RedisRateLimitAspect(properties, null, new RedisStandInTemplate(store));
+            case BACKEND_REDIS_NEAR_CACHE -> {
+                RedisRateLimitAspect redisAspect = new RedisRateLimitAspect(properties, null, new RedisStandInTemplate(store));
+                redisAspect.setDeniedCache(new DeniedVerdictCache(MAX_ENTRIES));
+                yield redisAspect;
+            }
+            case BACKEND_MAPPED -> new MappedRateLimitAspect(properties, null, buildMappedStore());
+            default -> throw new IllegalArgumentException("Unknown backend: " + backend);
+        };
+        aspect.setApplicationContext(buildContext());
+        return aspect;
+    }
+
+    /**
+     * Returns a new aspect of {@link #BACKEND_REACTIVE_REDIS}, without any callback, the denied calls emit exceptions
+     *
+     * @return a new aspect of {@link #BACKEND_REACTIVE_REDIS}
+     */
+    @Nonnull
+    public static ReactiveRedisRateLimitAspect buildReactiveAspect() {
+        LocalLimiterStore store = new LocalLimiterStore(MAX_ENTRIES, Duration.ofSeconds(60L));
+        ReactiveRedisRateLimitAspect aspect = new ReactiveRedisRateLimitAspect(buildProperties(), null, new ReactiveRedisStandInTemplate(store));
+        aspect.setApplicationContext(buildContext());
+        return aspect;
+    }
+
+    /**
+     * Returns a new store mapped to a temporary file, which is deleted on exit
+     *
+     * @return a new store mapped to a temporary file
+     */
+    @Nonnull
+    public static MappedLimiterStore buildMappedStore() {
+        try {
+            Path file = Files.createTempFile("benchmark-", ".slots");    // $NON-NLS-1$ // $NON-NLS-2$
+            file.toFile().deleteOnExit();
+            return new MappedLimiterStore(file, MAPPED_SLOTS, MAPPED_PROBES);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Returns a proxy of {@link BenchmarkController} advised by the aspect
+     *
+     * @param aspect the aspect to advise with
+     *
+     * @return a proxy of {@link BenchmarkController} advised by the aspect
+     */
+    @Nonnull
+    public static BenchmarkController buildProxy(@Nonnull AbstractBlockingRateLimitAspect aspect) {
+        AspectJProxyFactory factory = new AspectJProxyFactory(new BenchmarkController());
+        factory.setProxyTargetClass(true);
+        factory.addAspect(aspect);
+        return factory.getProxy();
+    }
+
+    /**
+     * Returns a proxy of {@link ReactiveBenchmarkController} advised by the aspect
+     *
+     * @param aspect the aspect to advise with
+     *
+     * @return a proxy of {@link ReactiveBenchmarkController} advised by the aspect
+     */
+    @Nonnull
+    public static ReactiveBenchmarkController buildReactiveProxy(@Nonnull ReactiveRedisRateLimitAspect aspect) {
+        AspectJProxyFactory factory = new AspectJProxyFactory(new ReactiveBenchmarkController());
+        factory.setProxyTargetClass(true);
+        factory.addAspect(aspect);
+        return factory.getProxy();
+    }
+
+    /**
+     * Binds a request of a distinct client to the current thread
+     *
+     * @param client the sequence of the client
+     */
+    public static void bindRequest(int client) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/benchmark");    // $NON-NLS-1$ // $NON-NLS-2$
+        request.setRemoteAddr("10.0." + ((client >>> 8) & 0xFF) + "." + (client & 0xFF));    // $NON-NLS-1$ // $NON-NLS-2$
+        request.setSession(new MockHttpSession(null, "session-" + client));    // $NON-NLS-1$
+        request.addHeader("X-Api-Key", "key-" + client);    // $NON-NLS-1$ // $NON-NLS-2$
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+    }
+
+    public static void unbindRequest() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    /**
+     * Returns the subscriber context with an exchange of a distinct client, the same client as {@link #bindRequest(int)}
+     *
+     * @param client the sequence of the client
+     *
+     * @return the subscriber context with an exchange of a distinct client
+     */
+    @Nonnull
+    public static Context buildExchangeContext(int client) {
+        MockServerHttpRequest request = MockServerHttpRequest.get("/benchmark")    // $NON-NLS-1$
+            .remoteAddress(new InetSocketAddress("10.0." + ((client >>> 8) & 0xFF) + "." + (client & 0xFF), 0))    // $NON-NLS-1$ // $NON-NLS-2$
+            .header("X-Api-Key", "key-" + client)    // $NON-NLS-1$ // $NON-NLS-2$
+            .build();
+        MockWebSession session = new MockWebSession();
+        session.start();
+        MockServerWebExchange exchange = MockServerWebExchange.builder(request).session(session).build();
+        return Context.of(ServerWebExchangeContextFilter.EXCHANGE_CONTEXT_ATTRIBUTE, exchange);
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yookue.springstarter.ratelimiter.benchmark;
+
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+
+/**
+ * Runner for benchmarks
+ * <p>
+ * Runs the benchmarks that match the arguments (all by default) at 1, 8 and 64 threads, with the gc profiler,
+ * and writes the json results to the working directory
+ *
+ * @author David Hsing
+ */
+@SuppressWarnings("unused")
+public abstract class BenchmarkRunner {
+    private static final int[] THREADS = {1, 8, 64};
+
+    public static void main(String[] args) throws RunnerException {
+        String[] includes = (args.length == 0) ? new String[]{BenchmarkRunner.class.getPackageName() + ".*"} : args;
+        for (int threads : THREADS) {
+            OptionsBuilder builder = new OptionsBuilder();
+            for (String include : includes) {
+                builder.include(include);
+            }
+            Options options = builder.threads(threads)
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result("jmh-result-" + threads + "t.json")    // $NON-NLS-1$ // $NON-NLS-2$
+                .build();
+            new Runner(options).run();
+        }
+    }
+}
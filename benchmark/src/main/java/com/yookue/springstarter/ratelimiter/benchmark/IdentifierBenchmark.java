@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yookue.springstarter.ratelimiter.benchmark;
+
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import com.yookue.springstarter.ratelimiter.aspect.AbstractRateLimitAspect;
+import com.yookue.springstarter.ratelimiter.enumeration.LimiterTriggerType;
+import com.yookue.springstarter.ratelimiter.structure.LimiterDescriptor;
+
+
+/**
+ * Benchmarks for the identifier construction of each {@link LimiterTriggerType}
+ *
+ * @author David Hsing
+ */
+@BenchmarkMode(value = {Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(value = TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1)
+@SuppressWarnings("unused")
+public class IdentifierBenchmark {
+    @State(value = Scope.Benchmark)
+    public static class SharedState {
+        @Param(value = {"ANY", "IP_ADDRESS", "SESSION", "USERNAME", "KEY"})    // $NON-NLS-1$ // $NON-NLS-2$ // $NON-NLS-3$ // $NON-NLS-4$ // $NON-NLS-5$
+        public LimiterTriggerType trigger;
+
+        private final AtomicInteger clientSequence = new AtomicInteger();
+        private AbstractRateLimitAspect aspect;
+        private LimiterDescriptor descriptor;
+
+        @Setup(value = Level.Trial)
+        public void setup() throws NoSuchMethodException {
+            String methodName = switch (trigger) {
+                case ANY -> "any";    // $NON-NLS-1$
+                case IP_ADDRESS -> "ipAddress";    // $NON-NLS-1$
+                case SESSION -> "session";    // $NON-NLS-1$
+                case USERNAME -> "username";    // $NON-NLS-1$
+                case KEY -> "key";    // $NON-NLS-1$
+            };
+            aspect = BenchmarkFixture.buildAspect(BenchmarkFixture.BACKEND_LOCAL);
+            descriptor = aspect.determineDescriptor(BenchmarkController.class.getMethod(methodName), BenchmarkController.class);
+        }
+    }
+
+
+    @State(value = Scope.Thread)
+    public static class ClientState {
+        @Setup(value = Level.Trial)
+        public void setup(SharedState shared) {
+            BenchmarkFixture.bindRequest(shared.clientSequence.getAndIncrement());
+        }
+
+        @TearDown(value = Level.Trial)
+        public void tearDown() {
+            BenchmarkFixture.unbindRequest();
+        }
+    }
+
+    @Benchmark
+    public String determineIdentifier(SharedState shared, ClientState client) throws Exception {
+        return shared.aspect.determineIdentifier(shared.descriptor);
+    }
+}
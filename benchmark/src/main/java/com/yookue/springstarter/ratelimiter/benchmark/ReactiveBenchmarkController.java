@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.yookue.springstarter.ratelimiter.benchmark;
+
+
+import java.time.temporal.ChronoUnit;
+import org.springframework.web.bind.annotation.GetMapping;
+import com.yookue.springstarter.ratelimiter.annotation.RateLimit;
+import com.yookue.springstarter.ratelimiter.enumeration.LimiterAlgorithmType;
+import com.yookue.springstarter.ratelimiter.enumeration.LimiterTriggerType;
+import reactor.core.publisher.Mono;
+
+
+/**
+ * Reactive controller for benchmarks
+ * <p>
+ * The same limits as {@link BenchmarkController}, with the results of {@link Mono}
+ *
+ * @author David Hsing
+ */
+@SuppressWarnings("unused")
+public class ReactiveBenchmarkController {
+    public Mono<String> plain() {
+        return Mono.just("plain");    // $NON-NLS-1$
+    }
+
+    @GetMapping(path = "/any")
+    @RateLimit(ttl = 1L, unit = ChronoUnit.HOURS, algorithm = LimiterAlgorithmType.FIXED_WINDOW, permits = BenchmarkController.UNLIMITED, triggerType = LimiterTriggerType.ANY)
+    public Mono<String> any() {
+        return Mono.just("any");    // $NON-NLS-1$
+    }
+
+    @GetMapping(path = "/ip-address")
+    @RateLimit(ttl = 1L, unit = ChronoUnit.HOURS, algorithm = LimiterAlgorithmType.FIXED_WINDOW, permits = BenchmarkController.UNLIMITED, triggerType = LimiterTriggerType.IP_ADDRESS)
+    public Mono<String> ipAddress() {
+        return Mono.just("ip-address");    // $NON-NLS-1$
+    }
+
+    @GetMapping(path = "/session")
+    @RateLimit(ttl = 1L, unit = ChronoUnit.HOURS, algorithm = LimiterAlgorithmType.FIXED_WINDOW, permits = BenchmarkController.UNLIMITED, triggerType = LimiterTriggerType.SESSION)
+    public Mono<String> session() {
+        return Mono.just("session");    // $NON-NLS-1$
+    }
+
+    @GetMapping(path = "/username")
+    @RateLimit(ttl = 1L, unit = ChronoUnit.HOURS, algorithm = LimiterAlgorithmType.FIXED_WINDOW, permits = BenchmarkController.UNLIMITED, triggerType = LimiterTriggerType.USERNAME)
+    public Mono<String> username() {
+        return Mono.just("username");    // $NON-NLS-1$
+    }
+
+    @GetMapping(path = "/key")
+    @RateLimit(ttl = 1L, unit = ChronoUnit.HOURS, algorithm = LimiterAlgorithmType.FIXED_WINDOW, permits = BenchmarkController.UNLIMITED, triggerType = LimiterTriggerType.KEY, key = "header('X-Api-Key')")
+    public Mono<String> key() {
+        return Mono.just("key");    // $NON-NLS-1$
+    }
+}
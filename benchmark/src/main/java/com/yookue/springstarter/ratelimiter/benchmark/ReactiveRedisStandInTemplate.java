@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.yookue.springstarter.ratelimiter.benchmark;
+
+
+import java.util.List;
+import jakarta.annotation.Nonnull;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.ReactiveRedisClusterConnection;
+import org.springframework.data.redis.connection.ReactiveRedisConnection;
+import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import com.yookue.springstarter.ratelimiter.support.LocalLimiterStore;
+import reactor.core.publisher.Flux;
+
+
+/**
+ * In-process stand-in of {@link ReactiveStringRedisTemplate} for benchmarks
+ * <p>
+ * Evaluates the limiter script against a {@link LocalLimiterStore} like {@link RedisStandInTemplate}.
+ * Only the scripts are stood in, the benchmarks never release the cooldown permits, which would delete the keys
+ *
+ * @author David Hsing
+ */
+@SuppressWarnings("unused")
+public class ReactiveRedisStandInTemplate extends ReactiveStringRedisTemplate {
+    private final LocalLimiterStore limiterStore;
+
+    public ReactiveRedisStandInTemplate(@Nonnull LocalLimiterStore store) {
+        super(new DetachedConnectionFactory());
+        this.limiterStore = store;
+    }
+
+    @Nonnull
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> Flux<T> execute(@Nonnull RedisScript<T> script, @Nonnull List<String> keys, @Nonnull List<?> args) {
+        return Flux.defer(() -> Flux.just((T) RedisStandInTemplate.evaluate(limiterStore, keys, args.toArray())));
+    }
+
+
+    private static class DetachedConnectionFactory implements ReactiveRedisConnectionFactory {
+        @Nonnull
+        @Override
+        public ReactiveRedisConnection getReactiveConnection() {
+            throw new UnsupportedOperationException("Stand-in template has no connection");    // $NON-NLS-1$
+        }
+
+        @Nonnull
+        @Override
+        public ReactiveRedisClusterConnection getReactiveClusterConnection() {
+            throw new UnsupportedOperationException("Stand-in template has no connection");    // $NON-NLS-1$
+        }
+
+        @Override
+        public DataAccessException translateExceptionIfPossible(@Nonnull RuntimeException ex) {
+            return null;
+        }
+    }
+}
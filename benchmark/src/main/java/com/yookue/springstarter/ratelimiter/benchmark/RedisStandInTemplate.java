@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yookue.springstarter.ratelimiter.benchmark;
+
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import jakarta.annotation.Nonnull;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import com.yookue.springstarter.ratelimiter.enumeration.LimiterAlgorithmType;
+import com.yookue.springstarter.ratelimiter.structure.LimiterQuota;
+import com.yookue.springstarter.ratelimiter.structure.LimiterVerdict;
+import com.yookue.springstarter.ratelimiter.support.LocalLimiterStore;
+import com.yookue.springstarter.ratelimiter.support.RedisLimiterScript;
+
+
+/**
+ * In-process stand-in of {@link StringRedisTemplate} for benchmarks
+ * <p>
+ * Evaluates the limiter script against a {@link LocalLimiterStore}, so the benchmarks cover the argument building,
+ * the reply parsing and the near-cache of the redis aspects, without any network I/O
+ *
+ * @author David Hsing
+ */
+@SuppressWarnings("unused")
+public class RedisStandInTemplate extends StringRedisTemplate {
+    private final LocalLimiterStore limiterStore;
+
+    public RedisStandInTemplate(@Nonnull LocalLimiterStore store) {
+        this.limiterStore = store;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T execute(@Nonnull RedisScript<T> script, @Nonnull List<String> keys, @Nonnull Object... args) {
+        return (T) evaluate(limiterStore, keys, args);
+    }
+
+    @Override
+    public Boolean delete(@Nonnull String key) {
+        limiterStore.release(key);
+        return Boolean.TRUE;
+    }
+
+    /**
+     * Evaluates the acquire script against the store, and returns the reply of the script
+     *
+     * @param store the store to evaluate against
+     * @param keys the keys of the script
+     * @param args the arguments of the script
+     *
+     * @return the reply of the script
+     */
+    @Nonnull
+    static List<Long> evaluate(@Nonnull LocalLimiterStore store, @Nonnull List<String> keys, @Nonnull Object[] args) {
+        String[] identifiers = keys.toArray(String[]::new);
+        LimiterQuota[] quotas = new LimiterQuota[identifiers.length];
+        for (int i = 0; i < quotas.length; i++) {
+            quotas[i] = toQuota(args, i * RedisLimiterScript.ARGUMENTS_PER_LIMIT);
+        }
+        LimiterVerdict verdict = (identifiers.length == 1) ? store.acquire(identifiers[0], quotas[0]) : store.acquireAll(identifiers, quotas);
+        return List.of(verdict.isAllowed() ? 1L : 0L, verdict.getRemaining(), verdict.getResetMillis());
+    }
+
+    @Nonnull
+    private static LimiterQuota toQuota(@Nonnull Object[] args, int offset) {
+        LimiterAlgorithmType algorithm = Arrays.stream(LimiterAlgorithmType.values()).filter(type -> type.getValue().equals(args[offset])).findFirst().orElseThrow();
+        long windowMillis = Long.parseLong((String) args[offset + 3]);
+        return new LimiterQuota(algorithm, Long.parseLong((String) args[offset + 1]), Long.parseLong((String) args[offset + 2]), (windowMillis > 0L) ? Duration.ofMillis(windowMillis) : null, Long.parseLong((String) args[offset + 5]));
+    }
+}
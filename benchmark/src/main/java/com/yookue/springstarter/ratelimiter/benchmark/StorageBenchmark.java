@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yookue.springstarter.ratelimiter.benchmark;
+
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import com.yookue.springstarter.ratelimiter.aspect.AbstractBlockingRateLimitAspect;
+import com.yookue.springstarter.ratelimiter.structure.LimiterDescriptor;
+import com.yookue.springstarter.ratelimiter.structure.LimiterVerdict;
+
+
+/**
+ * Benchmarks for the storage backends, with redis replaced by {@link RedisStandInTemplate}
+ * <p>
+ * {@code keys = 1} is a single hot identifier contended by all threads, {@code keys = 65536} spreads the identifiers
+ *
+ * @author David Hsing
+ */
+@BenchmarkMode(value = {Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(value = TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1)
+@SuppressWarnings("unused")
+public class StorageBenchmark {
+    @State(value = Scope.Benchmark)
+    public static class SharedState {
+        @Param(value = {BenchmarkFixture.BACKEND_LOCAL, BenchmarkFixture.BACKEND_REDIS, BenchmarkFixture.BACKEND_REDIS_NEAR_CACHE})
+        public String backend;
+
+        @Param(value = {"cooldown", "fixedWindow", "slidingLog", "slidingWindow", "tokenBucket"})    // $NON-NLS-1$ // $NON-NLS-2$ // $NON-NLS-3$ // $NON-NLS-4$ // $NON-NLS-5$
+        public String algorithm;
+
+        @Param(value = {"1", "65536"})    // $NON-NLS-1$ // $NON-NLS-2$
+        public int keys;
+
+        private final AtomicInteger threadSequence = new AtomicInteger();
+        private AbstractBlockingRateLimitAspect aspect;
+        private LimiterDescriptor descriptor;
+        private String[][] identifiers;
+
+        @Setup(value = Level.Trial)
+        public void setup() throws NoSuchMethodException {
+            aspect = BenchmarkFixture.buildAspect(backend);
+            descriptor = aspect.determineDescriptor(BenchmarkController.class.getMethod(algorithm), BenchmarkController.class);
+            identifiers = new String[keys][];
+            for (int i = 0; i < keys; i++) {
+                identifiers[i] = new String[]{descriptor.getKeyPrefix() + i + descriptor.getKeySuffix()};
+            }
+        }
+    }
+
+
+    @State(value = Scope.Thread)
+    public static class CursorState {
+        private int cursor;
+
+        @Setup(value = Level.Trial)
+        public void setup(SharedState shared) {
+            // Starts the threads at distinct identifiers
+            cursor = shared.threadSequence.getAndIncrement() * 7919;
+        }
+
+        private String[] next(String[][] identifiers) {
+            return identifiers[(cursor++ & Integer.MAX_VALUE) % identifiers.length];
+        }
+    }
+
+    @Benchmark
+    public LimiterVerdict acquire(SharedState shared, CursorState cursor) throws Exception {
+        return shared.aspect.tryAcquire(cursor.next(shared.identifiers), shared.descriptor);
+    }
+}
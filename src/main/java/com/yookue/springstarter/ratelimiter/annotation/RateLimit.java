@@ -20,11 +20,13 @@ package com.yookue.springstarter.ratelimiter.annotation;
 import java.lang.annotation.Documented;
 import java.lang.annotation.ElementType;
 import java.lang.annotation.Inherited;
+import java.lang.annotation.Repeatable;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 import java.time.temporal.ChronoUnit;
 import org.apache.commons.lang3.StringUtils;
+import com.yookue.springstarter.ratelimiter.enumeration.LimiterAlgorithmType;
 import com.yookue.springstarter.ratelimiter.enumeration.LimiterTriggerType;
 
 
@@ -32,6 +34,8 @@ import com.yookue.springstarter.ratelimiter.enumeration.LimiterTriggerType;
  * Annotation for setting Rate Limiter period and key type
  * <p>
  * Needs a predefined bean of {@link com.yookue.springstarter.ratelimiter.aspect.AbstractRateLimitAspect}
+ * <p>
+ * Repeatable for layered limits on a method, such as per ip address, per username and global, see {@link RateLimits}
  *
  * @author David Hsing
  */
@@ -39,10 +43,14 @@ import com.yookue.springstarter.ratelimiter.enumeration.LimiterTriggerType;
 @Retention(value = RetentionPolicy.RUNTIME)
 @Documented
 @Inherited
+@Repeatable(value = RateLimits.class)
 @SuppressWarnings("unused")
 public @interface RateLimit {
     /**
      * Returns the time amount for the limit
+     * <p>
+     * For {@link LimiterAlgorithmType#CONCURRENCY}, it is the lease of each call on the remote storages, which should outlast the slowest call.
+     * Ignored by {@link LimiterAlgorithmType#ADAPTIVE}, but still needs to be positive
      *
      * @return the time amount for the limit
      */
@@ -55,6 +63,44 @@ public @interface RateLimit {
      */
     ChronoUnit unit() default ChronoUnit.SECONDS;
 
+    /**
+     * Returns the algorithm for limiter
+     * <p>
+     * Default is {@link LimiterAlgorithmType#COOLDOWN}, which allows at most one call per {@code ttl}
+     *
+     * @return the algorithm for limiter
+     */
+    LimiterAlgorithmType algorithm() default LimiterAlgorithmType.COOLDOWN;
+
+    /**
+     * Returns the number of permits per {@code ttl}
+     * <p>
+     * Ignored by {@link LimiterAlgorithmType#COOLDOWN}, the maximum number of calls in flight for {@link LimiterAlgorithmType#CONCURRENCY},
+     * and the upper bound of the adaptive limit for {@link LimiterAlgorithmType#ADAPTIVE}
+     *
+     * @return the number of permits per {@code ttl}
+     */
+    long permits() default 1L;
+
+    /**
+     * Returns the maximum number of permits to hold for bursts
+     * <p>
+     * Only works with {@link LimiterAlgorithmType#TOKEN_BUCKET}, non-positive means the same as {@code permits}
+     *
+     * @return the maximum number of permits to hold for bursts
+     */
+    long capacity() default 0L;
+
+    /**
+     * Returns the milliseconds to wait for a permit before rejecting the call
+     * <p>
+     * Works with {@link LimiterAlgorithmType#CONCURRENCY} and the rate limit algorithms, which delay the calls until their next permits
+     * instead of rejecting them. Non-positive means rejecting at once
+     *
+     * @return the milliseconds to wait for a permit before rejecting the call
+     */
+    long waitMillis() default 0L;
+
     /**
      * Returns the trigger type for limiter
      *
@@ -62,6 +108,38 @@ public @interface RateLimit {
      */
     LimiterTriggerType triggerType() default LimiterTriggerType.IP_ADDRESS;
 
+    /**
+     * Returns the SpEL expression of the trigger value
+     * <p>
+     * Only works with {@link LimiterTriggerType#KEY}, such as {@code #tenantId}, {@code header('X-Api-Key')} or {@code principal.name}.
+     * The root object is {@link com.yookue.springstarter.ratelimiter.support.LimiterKeyExpression.Root}, the arguments are variables by their names,
+     * and the beans are referenced by {@code @beanName}. A {@code null} value skips the limitation
+     *
+     * @return the SpEL expression of the trigger value
+     */
+    String key() default StringUtils.EMPTY;
+
+    /**
+     * Returns the number of keys to split the permits over
+     * <p>
+     * Only works with {@link LimiterTriggerType#ANY} and the rate limit algorithms except {@link LimiterAlgorithmType#COOLDOWN},
+     * spreads a global limit over the shards of redis cluster, and cannot be stacked. Default is {@code 1}, a single key
+     *
+     * @return the number of keys to split the permits over
+     */
+    int shards() default 1;
+
+    /**
+     * Returns the number of permits to deduct by each call
+     * <p>
+     * Only works with {@link LimiterAlgorithmType#FIXED_WINDOW}, {@link LimiterAlgorithmType#SLIDING_WINDOW} and {@link LimiterAlgorithmType#TOKEN_BUCKET},
+     * either a number, such as {@code 10}, or a SpEL expression like {@link #key()}, such as {@code #pageSize / 100} or {@code header('Content-Length')}.
+     * The cost is bounded by the permits (or the capacity). Default is blank, a single permit
+     *
+     * @return the number of permits to deduct by each call
+     */
+    String cost() default StringUtils.EMPTY;
+
     /**
      * Returns the message code for {@link org.springframework.context.MessageSource}
      * <p>
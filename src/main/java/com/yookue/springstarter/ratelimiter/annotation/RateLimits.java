@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yookue.springstarter.ratelimiter.annotation;
+
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+
+/**
+ * Container annotation for stacking multiple {@link RateLimit} on a method
+ * <p>
+ * All the limits are checked and reserved together, a call is only allowed when every limit allows it,
+ * and a denied call consumes none of the limits
+ *
+ * @author David Hsing
+ */
+@Target(value = ElementType.METHOD)
+@Retention(value = RetentionPolicy.RUNTIME)
+@Documented
+@Inherited
+@SuppressWarnings("unused")
+public @interface RateLimits {
+    /**
+     * Returns the stacked limits, in the order of evaluation
+     *
+     * @return the stacked limits, in the order of evaluation
+     */
+    RateLimit[] value();
+}
@@ -0,0 +1,575 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yookue.springstarter.ratelimiter.aspect;
+
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.apache.commons.lang3.BooleanUtils;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.springframework.util.Assert;
+import com.yookue.commonplexus.javaseutil.constant.AssertMessageConst;
+import com.yookue.commonplexus.springutil.exception.RateLimitedException;
+import com.yookue.commonplexus.springutil.util.WebUtilsWraps;
+import com.yookue.springstarter.ratelimiter.annotation.RateLimit;
+import com.yookue.springstarter.ratelimiter.enumeration.LimiterAlgorithmType;
+import com.yookue.springstarter.ratelimiter.enumeration.LimiterEnforcementType;
+import com.yookue.springstarter.ratelimiter.enumeration.LimiterOutcomeType;
+import com.yookue.springstarter.ratelimiter.event.RateLimitDecisionEvent;
+import com.yookue.springstarter.ratelimiter.event.RateLimitStorageEvent;
+import com.yookue.springstarter.ratelimiter.facade.RateLimitCallback;
+import com.yookue.springstarter.ratelimiter.filter.RateLimitFilter;
+import com.yookue.springstarter.ratelimiter.property.RateLimiterProperties;
+import com.yookue.springstarter.ratelimiter.structure.LimiterDescriptor;
+import com.yookue.springstarter.ratelimiter.structure.LimiterQuota;
+import com.yookue.springstarter.ratelimiter.structure.LimiterVerdict;
+import com.yookue.springstarter.ratelimiter.support.AdaptiveLimiter;
+import com.yookue.springstarter.ratelimiter.support.LimiterPermit;
+import com.yookue.springstarter.ratelimiter.support.LimiterShards;
+import com.yookue.springstarter.ratelimiter.support.LimiterThrottle;
+import lombok.extern.slf4j.Slf4j;
+
+
+/**
+ * Abstract aspect for rate limit, whose storage decides the permits on the calling thread
+ * <p>
+ * Also enforces the limits of {@link com.yookue.springstarter.ratelimiter.filter.RateLimitFilter} and {@link com.yookue.springstarter.ratelimiter.filter.RateLimitRuleFilter}
+ *
+ * @author David Hsing
+ */
+@Slf4j
+public abstract class AbstractBlockingRateLimitAspect extends AbstractRateLimitAspect {
+    public AbstractBlockingRateLimitAspect(@Nonnull RateLimiterProperties properties) {
+        super(properties);
+    }
+
+    public AbstractBlockingRateLimitAspect(@Nonnull RateLimiterProperties properties, @Nullable RateLimitCallback callback) {
+        super(properties, callback);
+    }
+
+    @Override
+    protected Object limitPoint(@Nonnull ProceedingJoinPoint point, @Nonnull LimiterDescriptor descriptor) throws Throwable {
+        if (isFilterEnforced(descriptor)) {
+            return point.proceed();
+        }
+        if (BooleanUtils.isTrue(limiterProperties.getFlightRecorderEnabled())) {
+            return recordPoint(point, descriptor);
+        }
+        String[] identifiers = determineIdentifiers(descriptor, point.getArgs());
+        if (identifiers == null) {
+            return point.proceed();
+        }
+        return processPoint(point, identifiers, determineCosts(descriptor, point.getArgs()));
+    }
+
+    /**
+     * Processes the invocation as {@link #aroundPoint(ProceedingJoinPoint)}, and commits a {@link RateLimitDecisionEvent} of the decision
+     *
+     * @param point the join point of the invocation
+     * @param descriptor the descriptor of the method
+     *
+     * @return the result of the invocation, or the result of the callback when denied
+     */
+    protected Object recordPoint(@Nonnull ProceedingJoinPoint point, @Nonnull LimiterDescriptor descriptor) throws Throwable {
+        RateLimitDecisionEvent event = new RateLimitDecisionEvent();
+        event.begin();
+        long startTime = System.nanoTime();
+        String[] identifiers = determineIdentifiers(descriptor, point.getArgs());
+        LimiterDescriptor costed = (identifiers == null) ? descriptor : determineCosts(descriptor, point.getArgs());
+        long resolutionTime = System.nanoTime() - startTime;
+        if (identifiers == null) {
+            commitDecision(event, descriptor, SKIPPED_OUTCOME, resolutionTime);
+            return point.proceed();
+        }
+        LimiterPermit permit = tryEnter(identifiers, costed);
+        if (permit == null) {
+            commitDecision(event, descriptor, LimiterOutcomeType.DENIED.getValue(), resolutionTime);
+            return processRejected(point, identifiers, costed);
+        }
+        LimiterVerdict verdict = decideEntered(identifiers, costed, permit);
+        commitDecision(event, descriptor, (verdict == null || verdict.isAllowed()) ? LimiterOutcomeType.ALLOWED.getValue() : LimiterOutcomeType.DENIED.getValue(), resolutionTime);
+        return processVerdict(point, identifiers, costed, verdict, permit);
+    }
+
+    /**
+     * Processes the invocation, enters the in-flight limits before the rate limits
+     * <p>
+     * The permits of the in-flight limits are cancelled when the rate limits deny the call, so a denied call consumes none of the limits.
+     * A call delayed by the rate limits holds its in-flight permits while waiting
+     *
+     * @param point the join point of the invocation
+     * @param identifiers the identifiers of the limits, the {@code null} elements are skipped
+     * @param descriptor the descriptor of the method
+     *
+     * @return the result of the invocation, or the result of the callback when denied
+     */
+    protected Object processPoint(@Nonnull ProceedingJoinPoint point, @Nonnull String[] identifiers, @Nonnull LimiterDescriptor descriptor) throws Throwable {
+        LimiterPermit permit = tryEnter(identifiers, descriptor);
+        if (permit == null) {
+            return processRejected(point, identifiers, descriptor);
+        }
+        return processVerdict(point, identifiers, descriptor, decideEntered(identifiers, descriptor, permit), permit);
+    }
+
+    /**
+     * Returns the verdict of the rate limits, delays the denied call if the limits allow waiting
+     *
+     * @param identifiers the identifiers of the limits, the {@code null} elements are skipped
+     * @param descriptor the descriptor of the method
+     *
+     * @return the verdict of the rate limits, or {@code null} if there are no rate limits
+     */
+    @Nullable
+    protected LimiterVerdict decideVerdict(@Nonnull String[] identifiers, @Nonnull LimiterDescriptor descriptor) throws Exception {
+        LimiterVerdict verdict = tryAcquire(identifiers, descriptor);
+        if (verdict != null && !verdict.isAllowed()) {
+            verdict = awaitPermits(identifiers, descriptor, verdict);
+        }
+        return verdict;
+    }
+
+    @Nullable
+    private LimiterVerdict decideEntered(@Nonnull String[] identifiers, @Nonnull LimiterDescriptor descriptor, @Nonnull LimiterPermit permit) throws Exception {
+        try {
+            return decideVerdict(identifiers, descriptor);
+        } catch (Exception | Error ex) {
+            permit.cancel();
+            throw ex;
+        }
+    }
+
+    protected Object processVerdict(@Nonnull ProceedingJoinPoint point, @Nonnull String[] identifiers, @Nonnull LimiterDescriptor descriptor, @Nullable LimiterVerdict verdict, @Nonnull LimiterPermit permit) throws Throwable {
+        if (verdict != null && BooleanUtils.isTrue(limiterProperties.getHeadersEnabled())) {
+            HttpServletResponse response = WebUtilsWraps.getContextServletResponse();
+            if (response != null) {
+                writeHeaders(identifiers, descriptor, verdict, response::setHeader);
+            }
+        }
+        if (verdict != null && !verdict.isAllowed()) {
+            permit.cancel();
+            if (log.isDebugEnabled()) {
+                log.debug("Identifiers {} are rate limited, resets in {} ms", Arrays.toString(identifiers), verdict.getResetMillis());
+            }
+            return processLimited(point, identifiers, descriptor);
+        }
+        try {
+            if (!hasCooldown(descriptor)) {
+                return point.proceed();
+            }
+            try {
+                return point.proceed();
+            } catch (Throwable ex) {
+                // Failed invocations do not count in cooldown
+                try {
+                    releasePermits(identifiers, descriptor);
+                } catch (Exception cause) {
+                    ex.addSuppressed(cause);
+                }
+                throw ex;
+            }
+        } finally {
+            permit.close();
+        }
+    }
+
+    private Object processRejected(@Nonnull ProceedingJoinPoint point, @Nonnull String[] identifiers, @Nonnull LimiterDescriptor descriptor) throws Throwable {
+        if (log.isDebugEnabled()) {
+            log.debug("Identifiers {} have too many calls in flight", Arrays.toString(identifiers));
+        }
+        return processLimited(point, identifiers, descriptor);
+    }
+
+    protected Object processLimited(@Nonnull ProceedingJoinPoint point, @Nonnull String[] identifiers, @Nonnull LimiterDescriptor descriptor) throws Throwable {
+        publishLimited(identifiers, descriptor, point.getArgs());
+        if (BooleanUtils.isTrue(limiterProperties.getThrowException())) {
+            throw new RateLimitedException();
+        }
+        Assert.notNull(limitCallback, AssertMessageConst.NOT_NULL);
+        return limitCallback.process(point, descriptor.getAnnotation());
+    }
+
+    /**
+     * Waits on the calling thread until the rate limits permit the call, at most the longest {@link RateLimit#waitMillis()} of the rate limits
+     * <p>
+     * The thread sleeps until the reset of the denying limit, which is cheap on virtual threads.
+     * The platform threads only sleep within the bounded {@code maxBlocking} of the throttle, otherwise the call is rejected at once,
+     * prefer the {@link LimiterEnforcementType#FILTER} enforcement, which parks the requests asynchronously
+     *
+     * @param identifiers the identifiers of the limits, the {@code null} elements are skipped
+     * @param descriptor the descriptor of the method
+     * @param verdict the verdict of the denied call
+     *
+     * @return the verdict of the last attempt, or the given verdict if the call is not delayed
+     */
+    @Nullable
+    public LimiterVerdict awaitPermits(@Nonnull String[] identifiers, @Nonnull LimiterDescriptor descriptor, @Nonnull LimiterVerdict verdict) throws Exception {
+        long waitNanos = determineDelayNanos(descriptor);
+        if (waitNanos <= 0L || limiterThrottle == null || !limiterThrottle.tryPark()) {
+            return verdict;
+        }
+        if (!limiterThrottle.trySleep()) {
+            limiterThrottle.unpark();
+            return verdict;
+        }
+        try {
+            long deadline = System.nanoTime() + waitNanos;
+            LimiterQuota quota = determineRateQuota(identifiers, descriptor);
+            LimiterVerdict result = verdict;
+            while (result != null && !result.isAllowed()) {
+                long delay = LimiterThrottle.determineDelay(result, quota, deadline);
+                if (delay < 0L) {
+                    break;
+                }
+                TimeUnit.MILLISECONDS.sleep(delay);
+                result = tryAcquire(identifiers, descriptor);
+            }
+            return result;
+        } finally {
+            limiterThrottle.wake();
+            limiterThrottle.unpark();
+        }
+    }
+
+    /**
+     * Parks the denied request asynchronously until its next attempt, if the rate limits delay the calls
+     * <p>
+     * The request is dispatched again with the ticket, which is taken by {@link #resumeRequest(HttpServletRequest, String)}
+     *
+     * @param request the current request
+     * @param attribute the name of the request attribute to hold the ticket, which is owned by the caller
+     * @param identifiers the identifiers of the limits, the {@code null} elements are skipped
+     * @param descriptor the descriptor of the method
+     * @param verdict the verdict of the denied call
+     * @param ticket the ticket of the request if it has been parked before, or {@code null} if it is the first time
+     *
+     * @return whether the request is parked or not
+     */
+    public boolean parkRequest(@Nonnull HttpServletRequest request, @Nonnull String attribute, @Nonnull String[] identifiers, @Nonnull LimiterDescriptor descriptor, @Nonnull LimiterVerdict verdict, @Nullable LimiterThrottle.Ticket ticket) {
+        if (limiterThrottle == null || !request.isAsyncSupported()) {
+            return false;
+        }
+        long deadline;
+        if (ticket != null) {
+            deadline = ticket.deadline();
+        } else {
+            long waitNanos = determineDelayNanos(descriptor);
+            if (waitNanos <= 0L) {
+                return false;
+            }
+            deadline = System.nanoTime() + waitNanos;
+        }
+        long delay = LimiterThrottle.determineDelay(verdict, determineRateQuota(identifiers, descriptor), deadline);
+        if (delay < 0L || !limiterThrottle.tryPark()) {
+            return false;
+        }
+        limiterThrottle.parkRequest(request, attribute, (ticket != null) ? ticket : new LimiterThrottle.Ticket(identifiers, descriptor, deadline), delay);
+        return true;
+    }
+
+    /**
+     * Takes the ticket of a request parked by {@link #parkRequest(HttpServletRequest, String, String[], LimiterDescriptor, LimiterVerdict, LimiterThrottle.Ticket)}
+     *
+     * @param request the dispatched request
+     * @param attribute the name of the request attribute that holds the ticket
+     *
+     * @return the ticket of the request, or {@code null} if the request was not parked
+     */
+    @Nullable
+    public LimiterThrottle.Ticket resumeRequest(@Nonnull HttpServletRequest request, @Nonnull String attribute) {
+        return (limiterThrottle == null) ? null : limiterThrottle.resumeRequest(request, attribute);
+    }
+
+    /**
+     * Checks and reserves the permits of the identifiers, and records the decision if there is a recorder
+     * <p>
+     * The identifiers far under their limits are admitted by the sketch if there is one, without the storage
+     *
+     * @param identifiers the identifiers of the limits, the {@code null} elements are skipped
+     * @param descriptor the descriptor of the method
+     *
+     * @return the verdict of the limitation
+     */
+    @Nonnull
+    protected LimiterVerdict decidePermit(@Nonnull String[] identifiers, @Nonnull LimiterDescriptor descriptor) throws Exception {
+        if (limitRecorder == null && limiterFailover == null && heavyHitterSketch == null) {
+            return acquireRecorded(identifiers, descriptor);
+        }
+        long startTime = System.nanoTime();
+        if (heavyHitterSketch != null && descriptor.getLimitShards() == null) {
+            LimiterVerdict estimated = heavyHitterSketch.tryAdmit(identifiers, descriptor.getLimitQuotas());
+            if (estimated != null) {
+                recordDecision(descriptor, LimiterOutcomeType.ESTIMATED, startTime);
+                return estimated;
+            }
+        }
+        LimiterVerdict verdict;
+        LimiterOutcomeType outcome;
+        if (limiterFailover == null) {
+            try {
+                verdict = acquireRecorded(identifiers, descriptor);
+            } catch (Exception ex) {
+                recordDecision(descriptor, LimiterOutcomeType.ERROR, startTime);
+                throw ex;
+            }
+            outcome = verdict.isAllowed() ? LimiterOutcomeType.ALLOWED : LimiterOutcomeType.DENIED;
+        } else if (!limiterFailover.tryPass()) {
+            return fallbackPermit(identifiers, descriptor, startTime);
+        } else {
+            try {
+                verdict = limiterFailover.invoke(() -> acquireRecorded(identifiers, descriptor));
+                if (verdict == null) {
+                    // The pool is saturated locally, the storage itself is not failed
+                    return fallbackPermit(identifiers, descriptor, startTime);
+                }
+                limiterFailover.recordSuccess();
+                outcome = verdict.isAllowed() ? LimiterOutcomeType.ALLOWED : LimiterOutcomeType.DENIED;
+            } catch (Exception ex) {
+                return fallbackPermit(identifiers, descriptor, startTime, ex);
+            }
+        }
+        recordDecision(descriptor, outcome, startTime);
+        return verdict;
+    }
+
+    /**
+     * Checks and reserves the permits of the identifiers, and commits a {@link RateLimitStorageEvent} of the round trip if enabled
+     *
+     * @param identifiers the identifiers of the limits, the {@code null} elements are skipped
+     * @param descriptor the descriptor of the method
+     *
+     * @return the verdict of the limitation
+     */
+    @Nonnull
+    protected LimiterVerdict acquireRecorded(@Nonnull String[] identifiers, @Nonnull LimiterDescriptor descriptor) throws Exception {
+        if (BooleanUtils.isNotTrue(limiterProperties.getFlightRecorderEnabled())) {
+            return acquirePermits(identifiers, descriptor);
+        }
+        RateLimitStorageEvent event = new RateLimitStorageEvent();
+        event.begin();
+        LimiterVerdict verdict = null;
+        try {
+            verdict = acquirePermits(identifiers, descriptor);
+            return verdict;
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                commitStorage(event, identifiers, descriptor, verdict);
+            }
+        }
+    }
+
+    /**
+     * Checks and reserves the permits of the rate limits, for the enforcements outside of this aspect
+     *
+     * @param identifiers the identifiers of the limits, the {@code null} elements are skipped
+     * @param descriptor the descriptor of the method
+     *
+     * @return the verdict of the rate limits, or {@code null} if the method has no rate limit for the identifiers
+     */
+    @Nullable
+    public LimiterVerdict tryAcquire(@Nonnull String[] identifiers, @Nonnull LimiterDescriptor descriptor) throws Exception {
+        String[] limits = hasConcurrency(descriptor) ? selectIdentifiers(identifiers, descriptor, false) : identifiers;
+        return (limits == null) ? null : decidePermit(limits, descriptor);
+    }
+
+    /**
+     * Enters the in-flight limits, waits for the permits at most the longest {@link RateLimit#waitMillis()} of the limits
+     * <p>
+     * The adaptive limit is entered first and never waits, the latency until the permit is closed is sampled to adapt the limit
+     *
+     * @param identifiers the identifiers of the limits, the {@code null} elements are skipped
+     * @param descriptor the descriptor of the method
+     *
+     * @return the permit to close when the call completes, or {@code null} if there are too many calls in flight
+     */
+    @Nullable
+    public LimiterPermit tryEnter(@Nonnull String[] identifiers, @Nonnull LimiterDescriptor descriptor) throws Exception {
+        AdaptiveLimiter.Flight flight = null;
+        if (descriptor.getAdaptiveLimiter() != null) {
+            flight = descriptor.getAdaptiveLimiter().tryEnter();
+            if (flight == null) {
+                return null;
+            }
+        }
+        LimiterPermit permit;
+        try {
+            permit = enterConcurrency(identifiers, descriptor);
+        } catch (Exception | Error ex) {
+            if (flight != null) {
+                flight.cancel();
+            }
+            throw ex;
+        }
+        return combinePermits(flight, permit);
+    }
+
+    @Nullable
+    private LimiterPermit enterConcurrency(@Nonnull String[] identifiers, @Nonnull LimiterDescriptor descriptor) throws Exception {
+        String[] limits = hasConcurrency(descriptor) ? selectIdentifiers(identifiers, descriptor, true) : null;
+        if (limits == null) {
+            return LimiterPermit.NONE;
+        }
+        long waitNanos = determineWaitNanos(descriptor);
+        if (limiterFailover == null) {
+            return enterPermits(limits, descriptor, waitNanos);
+        }
+        if (!limiterFailover.tryPass()) {
+            return limiterFailover.fallbackEnter(limits, descriptor.getLimitQuotas(), waitNanos);
+        }
+        try {
+            LimiterPermit permit = enterPermits(limits, descriptor, waitNanos);
+            limiterFailover.recordSuccess();
+            return permit;
+        } catch (InterruptedException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            if (log.isWarnEnabled()) {
+                log.warn("Enter permits of identifiers {} failed, falls back to '{}'", Arrays.toString(limits), limiterFailover.getFallbackOutcome().getValue(), ex);
+            }
+            limiterFailover.recordFailure();
+            return limiterFailover.fallbackEnter(limits, descriptor.getLimitQuotas(), waitNanos);
+        }
+    }
+
+    /**
+     * Releases the permits of the identifiers, for the enforcements outside of this aspect
+     *
+     * @param identifiers the identifiers of the limits, the {@code null} elements are skipped
+     * @param descriptor the descriptor of the method
+     */
+    public void tryRelease(@Nonnull String[] identifiers, @Nonnull LimiterDescriptor descriptor) throws Exception {
+        if (hasCooldown(descriptor)) {
+            releasePermits(identifiers, descriptor);
+        }
+    }
+
+    /**
+     * Checks and reserves the permits of the identifiers, all or nothing
+     *
+     * @param identifiers the identifiers of the limits, the {@code null} elements are skipped
+     * @param descriptor the descriptor of the method
+     *
+     * @return the verdict of the limitation
+     */
+    @Nonnull
+    protected LimiterVerdict acquirePermits(@Nonnull String[] identifiers, @Nonnull LimiterDescriptor descriptor) throws Exception {
+        if (identifiers.length == 1) {
+            return (descriptor.getLimitShards() == null) ? acquirePermit(identifiers[0], descriptor.getQuota()) : acquireSharded(identifiers[0], descriptor.getLimitShards(), descriptor.getQuota().getCost());
+        }
+        int index = -1;
+        for (int i = 0; i < identifiers.length; i++) {
+            if (identifiers[i] != null) {
+                if (index >= 0) {
+                    return acquireStacked(identifiers, descriptor.getLimitQuotas());
+                }
+                index = i;
+            }
+        }
+        return acquirePermit(identifiers[index], descriptor.getLimitQuotas()[index]);
+    }
+
+    /**
+     * Checks and reserves the permit of a shard, and retries the other shards when it ran dry
+     * <p>
+     * A call that costs more than a shard holds is spread over the shards atomically, without retries
+     *
+     * @param identifier the identifier of the selected shard
+     * @param shards the shards of the limit
+     * @param cost the number of permits to deduct
+     *
+     * @return the verdict of the last tried shard
+     */
+    @Nonnull
+    protected LimiterVerdict acquireSharded(@Nonnull String identifier, @Nonnull LimiterShards shards, long cost) throws Exception {
+        if (shards.isSpread(cost)) {
+            return acquireStacked(shards.spreadIdentifiers(cost), shards.spreadQuotas(cost));
+        }
+        String shard = identifier;
+        for (int attempt = 1; ; attempt++) {
+            LimiterVerdict verdict = acquirePermit(shard, shards.quotaOf(shard).withCost(cost));
+            if (verdict.isAllowed()) {
+                return verdict;
+            }
+            String next = shards.retryAnother(shard, verdict);
+            if (next == null || attempt >= shards.size()) {
+                return verdict;
+            }
+            shard = next;
+        }
+    }
+
+    /**
+     * Releases the permits of the {@link LimiterAlgorithmType#COOLDOWN} limits, when the invocation failed
+     *
+     * @param identifiers the identifiers of the limits, the {@code null} elements are skipped
+     * @param descriptor the descriptor of the method
+     */
+    protected void releasePermits(@Nonnull String[] identifiers, @Nonnull LimiterDescriptor descriptor) throws Exception {
+        LimiterQuota[] quotas = descriptor.getLimitQuotas();
+        for (int i = 0; i < identifiers.length; i++) {
+            if (identifiers[i] != null && quotas[i].getAlgorithm() == LimiterAlgorithmType.COOLDOWN) {
+                releasePermit(identifiers[i], quotas[i]);
+            }
+        }
+    }
+
+    /**
+     * Checks and reserves the permit of the identifier atomically
+     *
+     * @param identifier the identifier of the limitation
+     * @param quota the quota of the limitation
+     *
+     * @return the verdict of the limitation
+     */
+    @Nonnull
+    protected abstract LimiterVerdict acquirePermit(@Nonnull String identifier, @Nonnull LimiterQuota quota) throws Exception;
+
+    /**
+     * Checks and reserves the permits of the stacked limits atomically, a denied call consumes none of the limits
+     *
+     * @param identifiers the identifiers of the limits, the {@code null} elements are skipped
+     * @param quotas the quotas of the limits, in the same order as the identifiers
+     *
+     * @return the verdict of the limitation
+     */
+    @Nonnull
+    protected abstract LimiterVerdict acquireStacked(@Nonnull String[] identifiers, @Nonnull LimiterQuota[] quotas) throws Exception;
+
+    /**
+     * Enters the in-flight limits atomically, all or nothing
+     *
+     * @param identifiers the identifiers of the in-flight limits, in the order of {@link LimiterDescriptor#getLimit(int)}, the {@code null} elements are skipped
+     * @param descriptor the descriptor of the method
+     * @param waitNanos the nanoseconds to wait for the permits in total, non-positive means rejecting at once
+     *
+     * @return the permit to close when the call completes, or {@code null} if there are too many calls in flight
+     */
+    @Nullable
+    protected abstract LimiterPermit enterPermits(@Nonnull String[] identifiers, @Nonnull LimiterDescriptor descriptor, long waitNanos) throws Exception;
+
+    /**
+     * Releases the permit of the identifier, when the invocation failed in {@link LimiterAlgorithmType#COOLDOWN}
+     *
+     * @param identifier the identifier of the limitation
+     * @param quota the quota of the limitation
+     */
+    protected abstract void releasePermit(@Nonnull String identifier, @Nonnull LimiterQuota quota) throws Exception;
+}
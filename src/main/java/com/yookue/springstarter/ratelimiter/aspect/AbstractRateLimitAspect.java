@@ -18,30 +18,76 @@ package com.yookue.springstarter.ratelimiter.aspect;
 
 
 import java.lang.reflect.Method;
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
 import jakarta.annotation.Nonnull;
 import jakarta.annotation.Nullable;
 import jakarta.servlet.http.HttpServletRequest;
+import org.apache.commons.lang3.BooleanUtils;
+import org.apache.commons.lang3.ObjectUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
 import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.NoSuchBeanDefinitionException;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextAware;
-import org.springframework.core.annotation.AnnotationUtils;
+import org.springframework.core.MethodClassKey;
+import org.springframework.core.annotation.AnnotatedElementUtils;
 import org.springframework.util.Assert;
 import org.springframework.util.ClassUtils;
 import com.yookue.commonplexus.javaseutil.constant.AssertMessageConst;
 import com.yookue.commonplexus.javaseutil.constant.CharVariantConst;
 import com.yookue.commonplexus.javaseutil.util.StringUtilsWraps;
-import com.yookue.commonplexus.springutil.util.AopUtilsWraps;
+import com.yookue.commonplexus.springutil.event.RateLimitedEvent;
 import com.yookue.commonplexus.springutil.util.BeanFactoryWraps;
 import com.yookue.commonplexus.springutil.util.RequestMappingWraps;
 import com.yookue.commonplexus.springutil.util.WebUtilsWraps;
 import com.yookue.springstarter.ratelimiter.annotation.RateLimit;
+import com.yookue.springstarter.ratelimiter.annotation.RateLimits;
+import com.yookue.springstarter.ratelimiter.enumeration.LimiterAlgorithmType;
+import com.yookue.springstarter.ratelimiter.enumeration.LimiterEnforcementType;
+import com.yookue.springstarter.ratelimiter.enumeration.LimiterKeyLayoutType;
+import com.yookue.springstarter.ratelimiter.enumeration.LimiterOutcomeType;
 import com.yookue.springstarter.ratelimiter.enumeration.LimiterTriggerType;
+import com.yookue.springstarter.ratelimiter.event.RateLimitDecisionEvent;
+import com.yookue.springstarter.ratelimiter.event.RateLimitStorageEvent;
 import com.yookue.springstarter.ratelimiter.facade.RateLimitCallback;
 import com.yookue.springstarter.ratelimiter.facade.RateLimitInformant;
+import com.yookue.springstarter.ratelimiter.facade.RateLimitRecorder;
+import com.yookue.springstarter.ratelimiter.filter.RateLimitFilter;
 import com.yookue.springstarter.ratelimiter.property.RateLimiterProperties;
+import com.yookue.springstarter.ratelimiter.structure.LimiterDescriptor;
+import com.yookue.springstarter.ratelimiter.structure.LimiterQuota;
+import com.yookue.springstarter.ratelimiter.structure.LimiterVerdict;
+import com.yookue.springstarter.ratelimiter.support.AdaptiveLimiter;
+import com.yookue.springstarter.ratelimiter.support.HeavyHitterSketch;
+import com.yookue.springstarter.ratelimiter.support.LimiterEventPublisher;
+import com.yookue.springstarter.ratelimiter.support.LimiterFailover;
+import com.yookue.springstarter.ratelimiter.support.LimiterKeyEncoder;
+import com.yookue.springstarter.ratelimiter.support.LimiterCostExpression;
+import com.yookue.springstarter.ratelimiter.support.LimiterCostResolver;
+import com.yookue.springstarter.ratelimiter.support.LimiterKeyExpression;
+import com.yookue.springstarter.ratelimiter.support.LimiterPermit;
+import com.yookue.springstarter.ratelimiter.support.LimiterResponseHeaders;
+import com.yookue.springstarter.ratelimiter.support.LimiterShards;
+import com.yookue.springstarter.ratelimiter.support.LimiterThrottle;
+import com.yookue.springstarter.ratelimiter.support.LimiterTriggerResolver;
+import com.yookue.springstarter.ratelimiter.support.LocalLimiterStore;
 import lombok.extern.slf4j.Slf4j;
 import lombok.RequiredArgsConstructor;
 import lombok.Setter;
@@ -49,68 +95,769 @@ import lombok.Setter;
 
 /**
  * Abstract aspect for rate limit
+ * <p>
+ * Resolves the descriptors, the identifiers and the costs of the limits, whatever the storage is.
+ * The permits are decided by {@link AbstractBlockingRateLimitAspect} or {@link ReactiveRedisRateLimitAspect}
  *
  * @author David Hsing
  */
 @RequiredArgsConstructor
 @Slf4j
-public abstract class AbstractRateLimitAspect implements ApplicationContextAware {
+public abstract class AbstractRateLimitAspect implements ApplicationContextAware, DisposableBean {
+    private static final String STACKED_INDEX_SEPARATOR = "#";    // $NON-NLS-1$
+    protected static final String SKIPPED_OUTCOME = "skipped";    // $NON-NLS-1$
+    private static final Object[] NO_ARGUMENTS = new Object[0];
     protected final RateLimiterProperties limiterProperties;
     protected RateLimitCallback limitCallback;
+    protected RateLimitRecorder limitRecorder;
+
+    @Setter
+    protected LimiterFailover limiterFailover;
+
+    @Setter
+    protected LimiterEventPublisher eventPublisher;
+
+    @Setter
+    protected HeavyHitterSketch heavyHitterSketch;
+
+    @Setter
+    protected LimiterThrottle limiterThrottle;
+    private final Map<MethodClassKey, Optional<LimiterDescriptor>> descriptorCache = new ConcurrentHashMap<>(64);
 
     @Setter
     protected ApplicationContext applicationContext;
+    private volatile RateLimitInformant limitInformant;
 
     public AbstractRateLimitAspect(@Nonnull RateLimiterProperties properties, @Nullable RateLimitCallback callback) {
         this.limiterProperties = properties;
         this.limitCallback = callback;
     }
 
-    @Around(value = "@annotation(com.yookue.springstarter.ratelimiter.annotation.RateLimit)")
+    /**
+     * Sets the recorder of the limiter decisions, and registers the gauges of this aspect to it
+     *
+     * @param recorder the recorder of the limiter decisions
+     */
+    public void setLimitRecorder(@Nullable RateLimitRecorder recorder) {
+        this.limitRecorder = recorder;
+        if (recorder != null) {
+            registerGauges(recorder);
+        }
+    }
+
+    /**
+     * Registers the gauges of the storage
+     *
+     * @param recorder the recorder of the limiter decisions
+     */
+    protected void registerGauges(@Nonnull RateLimitRecorder recorder) {
+        if (limiterFailover != null) {
+            recorder.registerGauge("rate.limiter.circuit.open", limiterFailover, failover -> failover.isOpen() ? 1.0D : 0.0D);    // $NON-NLS-1$
+            if (limiterFailover.getFallbackStore() != null) {
+                recorder.registerGauge("rate.limiter.fallback.entries", limiterFailover.getFallbackStore(), LocalLimiterStore::size);    // $NON-NLS-1$
+            }
+        }
+        if (eventPublisher != null) {
+            recorder.registerGauge("rate.limiter.events.dropped", eventPublisher, LimiterEventPublisher::getDroppedCount);    // $NON-NLS-1$
+        }
+        if (limiterThrottle != null) {
+            recorder.registerGauge("rate.limiter.throttle.queued", limiterThrottle, LimiterThrottle::getQueued);    // $NON-NLS-1$
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (limiterFailover != null) {
+            limiterFailover.destroy();
+        }
+        if (eventPublisher != null) {
+            eventPublisher.destroy();
+        }
+        if (limiterThrottle != null) {
+            limiterThrottle.destroy();
+        }
+    }
+
+    @Around(value = "@annotation(com.yookue.springstarter.ratelimiter.annotation.RateLimit) || @annotation(com.yookue.springstarter.ratelimiter.annotation.RateLimits)")
     public Object aroundPoint(@Nonnull ProceedingJoinPoint point) throws Throwable {
-        Method method = AopUtilsWraps.getTargetMethod(point);
-        Assert.notNull(method, AssertMessageConst.NOT_NULL);
-        RateLimit annotation = AnnotationUtils.getAnnotation(method, RateLimit.class);
-        if (annotation == null || annotation.ttl() <= 0L || annotation.unit() == null) {
-            return point.proceed();
+        LimiterDescriptor descriptor = determineDescriptor(point);
+        return (descriptor == null) ? point.proceed() : limitPoint(point, descriptor);
+    }
+
+    /**
+     * Limits the invocation of an annotated method, by the storage of the aspect
+     *
+     * @param point the join point of the invocation
+     * @param descriptor the descriptor of the method
+     *
+     * @return the result of the invocation, or the result of the callback when denied
+     */
+    protected abstract Object limitPoint(@Nonnull ProceedingJoinPoint point, @Nonnull LimiterDescriptor descriptor) throws Throwable;
+
+    @Nullable
+    protected LimiterDescriptor determineDescriptor(@Nonnull ProceedingJoinPoint point) {
+        Object target = point.getTarget();
+        return determineDescriptor(((MethodSignature) point.getSignature()).getMethod(), (target == null) ? null : target.getClass());
+    }
+
+    /**
+     * Returns the cached descriptor of the method, builds it at the first invocation
+     *
+     * @param method the invoked method
+     * @param targetClass the class of the target object
+     *
+     * @return the cached descriptor of the method, or {@code null} if the method should not be limited
+     */
+    @Nullable
+    public LimiterDescriptor determineDescriptor(@Nonnull Method method, @Nullable Class<?> targetClass) {
+        MethodClassKey key = new MethodClassKey(method, targetClass);
+        Optional<LimiterDescriptor> descriptor = descriptorCache.get(key);
+        if (descriptor == null) {
+            descriptor = descriptorCache.computeIfAbsent(key, alias -> Optional.ofNullable(buildDescriptor(AopUtils.getMostSpecificMethod(method, targetClass))));
+        }
+        return descriptor.orElse(null);
+    }
+
+    @Nullable
+    protected LimiterDescriptor buildDescriptor(@Nonnull Method method) {
+        List<RateLimit> annotations = AnnotatedElementUtils.getMergedRepeatableAnnotations(method, RateLimit.class, RateLimits.class).stream().filter(annotation -> annotation.ttl() > 0L && annotation.unit() != null).toList();
+        if (annotations.isEmpty()) {
+            return null;
         }
         if (!RequestMappingWraps.anyMapping(method)) {
             if (log.isWarnEnabled()) {
-                log.warn("Method '{}.{}' annotated with '@{}' should also annotated with '@RequestMapping/@GetMapping/@PostMapping/@PatchMapping/@PutMapping/@DeleteMapping' as well", method.getDeclaringClass().getCanonicalName(), RateLimit.class.getSimpleName(), method.getName());
+                log.warn("Method '{}.{}' annotated with '@{}' should also annotated with '@RequestMapping/@GetMapping/@PostMapping/@PatchMapping/@PutMapping/@DeleteMapping' as well", method.getDeclaringClass().getCanonicalName(), method.getName(), RateLimit.class.getSimpleName());
+            }
+        }
+        if (annotations.size() == 1) {
+            return buildLimit(method, annotations.get(0), 0, false);
+        }
+        List<LimiterDescriptor> limits = new ArrayList<>(annotations.size());
+        for (int i = 0; i < annotations.size(); i++) {
+            limits.add(buildLimit(method, annotations.get(i), i, true));
+        }
+        LimiterDescriptor first = limits.get(0);
+        LimiterQuota[] quotas = limits.stream().map(LimiterDescriptor::getQuota).toArray(LimiterQuota[]::new);
+        List<AdaptiveLimiter> adaptiveLimiters = limits.stream().map(LimiterDescriptor::getAdaptiveLimiter).filter(Objects::nonNull).toList();
+        Assert.isTrue(adaptiveLimiters.size() <= 1, "Method '" + ClassUtils.getQualifiedMethodName(method) + "' has more than one adaptive limit");    // $NON-NLS-1$
+        // The stacked limits are evaluated by a single script, whose keys must share a cluster slot, which defeats the shards
+        Assert.isTrue(limits.stream().allMatch(limit -> limit.getLimitShards() == null), "Method '" + ClassUtils.getQualifiedMethodName(method) + "' has a sharded limit that cannot be stacked");    // $NON-NLS-1$
+        return new LimiterDescriptor(method, first.getName(), first.getAnnotation(), first.getQuota(), first.getKeyPrefix(), first.getKeySuffix(), first.getIdentifier(), first.getTriggerResolver(), List.copyOf(limits.subList(1, limits.size())), quotas, adaptiveLimiters.isEmpty() ? null : adaptiveLimiters.get(0), null, first.getCostResolver());
+    }
+
+    /**
+     * Returns the descriptor of a single limit of the method
+     *
+     * @param method the annotated method
+     * @param annotation the annotation of the limit
+     * @param index the index of the limit on the method
+     * @param stacked whether the method has stacked limits or not
+     *
+     * @return the descriptor of a single limit of the method
+     */
+    @Nonnull
+    protected LimiterDescriptor buildLimit(@Nonnull Method method, @Nonnull RateLimit annotation, int index, boolean stacked) {
+        String qualifiedName = ClassUtils.getQualifiedMethodName(method);
+        boolean legacy = (limiterProperties.getKeyLayout() == LimiterKeyLayoutType.LEGACY);
+        return buildLimit(method, qualifiedName, legacy ? qualifiedName : LimiterKeyEncoder.encodeMethod(method), annotation, index, stacked);
+    }
+
+    /**
+     * Returns the descriptor of a configured rule, which limits the matched requests without any annotated method
+     *
+     * @param name the name of the rule, the keys are named by it, so the states survive the reloads of the rule
+     * @param annotation the synthesized annotation of the rule
+     *
+     * @return the descriptor of the rule
+     */
+    @Nonnull
+    public LimiterDescriptor buildRuleDescriptor(@Nonnull String name, @Nonnull RateLimit annotation) {
+        Assert.isTrue(annotation.ttl() > 0L && annotation.unit() != null, "Rule '" + name + "' requires a positive ttl");    // $NON-NLS-1$
+        boolean legacy = (limiterProperties.getKeyLayout() == LimiterKeyLayoutType.LEGACY);
+        return buildLimit(null, name, legacy ? name : LimiterKeyEncoder.encodeName(name), annotation, 0, false);
+    }
+
+    @Nonnull
+    private LimiterDescriptor buildLimit(@Nullable Method method, @Nonnull String limitName, @Nonnull String keyName, @Nonnull RateLimit annotation, int index, boolean stacked) {
+        boolean legacy = (limiterProperties.getKeyLayout() == LimiterKeyLayoutType.LEGACY);
+        boolean hashTag = BooleanUtils.isTrue(limiterProperties.getHashTag());
+        String name = StringUtils.join(keyName, limiterProperties.getNameSuffix());
+        if (stacked && hashTag) {
+            // The stacked limits are evaluated by a single script, so all the keys of the method must share a cluster slot
+            name = CharVariantConst.BRACE_LEFT + name + CharVariantConst.BRACE_RIGHT;
+        }
+        if (index > 0) {
+            // The first limit keeps the key of a single limit, so stacking more limits does not reset it
+            name = name + STACKED_INDEX_SEPARATOR + index;
+        }
+        String keyPrefix, keySuffix;
+        if (legacy) {
+            keyPrefix = StringUtilsWraps.joinWithColon(name, annotation.triggerType().getValue() + CharVariantConst.SQUARE_BRACKET_LEFT);
+            keySuffix = String.valueOf(CharVariantConst.SQUARE_BRACKET_RIGHT);
+        } else {
+            keyPrefix = name + CharVariantConst.COLON + LimiterKeyEncoder.encodeTrigger(annotation.triggerType()) + CharVariantConst.COLON;
+            keySuffix = StringUtils.EMPTY;
+        }
+        if (!stacked && hashTag) {
+            // All the keys of an identifier share a cluster slot, while the identifiers still spread over the slots
+            keyPrefix = CharVariantConst.BRACE_LEFT + keyPrefix;
+            keySuffix = keySuffix + CharVariantConst.BRACE_RIGHT;
+        }
+        keyPrefix = StringUtils.defaultString(limiterProperties.getNamePrefix()) + keyPrefix;
+        LimiterTriggerResolver resolver = determineTriggerResolver(method, limitName, annotation);
+        String identifier = (resolver == null) ? keyPrefix + keySuffix : null;
+        LimiterQuota quota = determineQuota(annotation);
+        AdaptiveLimiter adaptiveLimiter = null;
+        if (quota.getAlgorithm() == LimiterAlgorithmType.ADAPTIVE) {
+            // The limit follows the latency of this node, so it cannot be partitioned by the trigger values
+            Assert.isTrue(annotation.triggerType() == LimiterTriggerType.ANY, "Adaptive limit of '" + limitName + "' requires trigger type 'any'");    // $NON-NLS-1$
+            adaptiveLimiter = new AdaptiveLimiter(quota.getPermits());
+            if (limitRecorder != null) {
+                limitRecorder.registerGauge("rate.limiter.adaptive.limit", limitName, adaptiveLimiter, AdaptiveLimiter::getLimit);    // $NON-NLS-1$
+                limitRecorder.registerGauge("rate.limiter.adaptive.in.flight", limitName, adaptiveLimiter, AdaptiveLimiter::getInFlight);    // $NON-NLS-1$
             }
         }
-        String identifier = determineIdentifier(method, annotation);
-        if (StringUtils.isBlank(identifier)) {
-            return point.proceed();
+        LimiterShards shards = null;
+        if (annotation.shards() > 1) {
+            Assert.isTrue(annotation.triggerType() == LimiterTriggerType.ANY, "Sharded limit of '" + limitName + "' requires trigger type 'any'");    // $NON-NLS-1$
+            String[] identifiers = new String[annotation.shards()];
+            for (int i = 0; i < identifiers.length; i++) {
+                identifiers[i] = keyPrefix + i + keySuffix;
+            }
+            shards = new LimiterShards(identifiers, quota);
+        }
+        LimiterCostResolver costResolver = null;
+        String cost = StringUtils.trim(annotation.cost());
+        if (StringUtils.isNotEmpty(cost)) {
+            Assert.isTrue(quota.getAlgorithm().isWeighted(), "Cost of '" + limitName + "' requires algorithm 'fixed-window', 'sliding-window' or 'token-bucket'");    // $NON-NLS-1$
+            if (NumberUtils.isDigits(cost)) {
+                quota = quota.withCost(NumberUtils.toLong(cost, 1L));
+            } else {
+                costResolver = new LimiterCostExpression(cost, method, applicationContext);
+            }
         }
-        return processPoint(point, identifier, annotation);
+        return new LimiterDescriptor(method, limitName, annotation, quota, keyPrefix, keySuffix, identifier, resolver, Collections.emptyList(), new LimiterQuota[]{quota}, adaptiveLimiter, shards, costResolver);
+    }
+
+    /**
+     * Returns the identifier with the trigger value
+     *
+     * @param descriptor the descriptor of the method
+     * @param value the raw trigger value
+     *
+     * @return the identifier with the trigger value
+     */
+    @Nonnull
+    protected String buildIdentifier(@Nonnull LimiterDescriptor descriptor, @Nonnull String value) {
+        String encoded = (limiterProperties.getKeyLayout() == LimiterKeyLayoutType.LEGACY) ? value : LimiterKeyEncoder.encodeValue(descriptor.getAnnotation().triggerType(), value);
+        return descriptor.getKeyPrefix() + encoded + descriptor.getKeySuffix();
     }
 
+    /**
+     * Returns whether the current request has been limited by {@link RateLimitFilter} for the method or not
+     *
+     * @param descriptor the descriptor of the method
+     *
+     * @return whether the current request has been limited by {@link RateLimitFilter} for the method or not
+     */
+    protected boolean isFilterEnforced(@Nonnull LimiterDescriptor descriptor) {
+        if (limiterProperties.getEnforcementType() != LimiterEnforcementType.FILTER) {
+            return false;
+        }
+        HttpServletRequest request = WebUtilsWraps.getContextServletRequest();
+        return request != null && descriptor.getMethod() != null && descriptor.getMethod().equals(request.getAttribute(RateLimitFilter.ENFORCED_METHOD_ATTRIBUTE));
+    }
+
+    /**
+     * Returns the resolver of the trigger value
+     *
+     * @param method the annotated method, or {@code null} for a configured rule
+     * @param limitName the name of the limit
+     * @param annotation the annotation of the limit
+     *
+     * @return the resolver of the trigger value, or {@code null} if the trigger type has no dynamic part
+     */
     @Nullable
-    protected String determineIdentifier(@Nonnull Method method, @Nonnull RateLimit annotation) throws Exception {
-        String name = StringUtils.join(limiterProperties.getNamePrefix(), ClassUtils.getQualifiedMethodName(method), limiterProperties.getNameSuffix());
-        StringBuilder builder = new StringBuilder(annotation.triggerType().getValue());
-        builder.append(CharVariantConst.SQUARE_BRACKET_LEFT);
-        if (annotation.triggerType() == LimiterTriggerType.IP_ADDRESS || annotation.triggerType() == LimiterTriggerType.SESSION) {
-            HttpServletRequest request = WebUtilsWraps.getContextServletRequest();
-            if (request == null) {
-                return null;
-            }
-            if (annotation.triggerType() == LimiterTriggerType.IP_ADDRESS) {
-                builder.append(WebUtilsWraps.getRemoteAddress(request));
-            } else if (annotation.triggerType() == LimiterTriggerType.SESSION) {
-                builder.append(WebUtilsWraps.getSessionId(request));
-            }
-        } else if (annotation.triggerType() == LimiterTriggerType.USERNAME) {
-            RateLimitInformant informant = BeanFactoryWraps.getBean(applicationContext, RateLimitInformant.class);
+    protected LimiterTriggerResolver determineTriggerResolver(@Nullable Method method, @Nonnull String limitName, @Nonnull RateLimit annotation) {
+        Assert.isTrue(annotation.triggerType() == LimiterTriggerType.KEY || StringUtils.isEmpty(annotation.key()), "Key of '" + limitName + "' requires trigger type 'key'");    // $NON-NLS-1$
+        return switch (annotation.triggerType()) {
+            case IP_ADDRESS -> arguments -> {
+                HttpServletRequest request = WebUtilsWraps.getContextServletRequest();
+                return (request == null) ? null : String.valueOf(WebUtilsWraps.getRemoteAddress(request));
+            };
+            case SESSION -> arguments -> {
+                HttpServletRequest request = WebUtilsWraps.getContextServletRequest();
+                return (request == null) ? null : String.valueOf(WebUtilsWraps.getSessionId(request));
+            };
+            case USERNAME -> arguments -> String.valueOf(determineInformant().getUsername());
+            case KEY -> {
+                Assert.hasText(annotation.key(), "Trigger type 'key' of '" + limitName + "' requires a key expression");    // $NON-NLS-1$
+                yield new LimiterKeyExpression(annotation.key(), method, applicationContext);
+            }
+            default -> null;
+        };
+    }
+
+    /**
+     * Returns the informant of the usernames, which is looked up once
+     *
+     * @return the informant of the usernames
+     */
+    @Nonnull
+    protected RateLimitInformant determineInformant() {
+        RateLimitInformant informant = limitInformant;
+        if (informant == null) {
+            informant = BeanFactoryWraps.getBean(applicationContext, RateLimitInformant.class);
             if (informant == null) {
                 throw new NoSuchBeanDefinitionException(RateLimitInformant.class);
             }
-            builder.append(informant.getUsername());
+            limitInformant = informant;
+        }
+        return informant;
+    }
+
+    /**
+     * Returns the identifiers of all the limits of the current invocation
+     *
+     * @param descriptor the descriptor of the method
+     *
+     * @return the identifiers in the order of the limits, the {@code null} elements are the skipped limits, or {@code null} to skip all the limits
+     */
+    @Nullable
+    public String[] determineIdentifiers(@Nonnull LimiterDescriptor descriptor) throws Exception {
+        return determineIdentifiers(descriptor, NO_ARGUMENTS);
+    }
+
+    /**
+     * Returns the identifiers of all the limits of the current invocation
+     *
+     * @param descriptor the descriptor of the method
+     * @param arguments the arguments of the invocation
+     *
+     * @return the identifiers in the order of the limits, the {@code null} elements are the skipped limits, or {@code null} to skip all the limits
+     */
+    @Nullable
+    public String[] determineIdentifiers(@Nonnull LimiterDescriptor descriptor, @Nonnull Object[] arguments) throws Exception {
+        int count = descriptor.getLimitCount();
+        String[] identifiers = null;
+        for (int i = 0; i < count; i++) {
+            String identifier = determineIdentifier(descriptor.getLimit(i), arguments);
+            if (StringUtils.isNotBlank(identifier)) {
+                if (identifiers == null) {
+                    identifiers = new String[count];
+                }
+                identifiers[i] = identifier;
+            }
+        }
+        return identifiers;
+    }
+
+    /**
+     * Returns the descriptor with the costs of the current invocation
+     *
+     * @param descriptor the descriptor of the method
+     *
+     * @return the descriptor with the costs of the current invocation, or the descriptor itself if the costs are constant
+     */
+    @Nonnull
+    public LimiterDescriptor determineCosts(@Nonnull LimiterDescriptor descriptor) throws Exception {
+        return determineCosts(descriptor, NO_ARGUMENTS);
+    }
+
+    /**
+     * Returns the descriptor with the costs of the current invocation
+     *
+     * @param descriptor the descriptor of the method
+     * @param arguments the arguments of the invocation
+     *
+     * @return the descriptor with the costs of the current invocation, or the descriptor itself if the costs are constant
+     */
+    @Nonnull
+    public LimiterDescriptor determineCosts(@Nonnull LimiterDescriptor descriptor, @Nonnull Object[] arguments) throws Exception {
+        LimiterQuota[] quotas = null;
+        for (int i = 0; i < descriptor.getLimitCount(); i++) {
+            LimiterCostResolver resolver = descriptor.getLimit(i).getCostResolver();
+            if (resolver != null) {
+                if (quotas == null) {
+                    quotas = descriptor.getLimitQuotas().clone();
+                }
+                quotas[i] = quotas[i].withCost(resolver.resolve(arguments));
+            }
+        }
+        return (quotas == null) ? descriptor : descriptor.withQuotas(quotas);
+    }
+
+    /**
+     * Returns the identifier of the current invocation
+     *
+     * @param descriptor the descriptor of a single limit
+     *
+     * @return the identifier of the current invocation, or {@code null} to skip the limitation
+     */
+    @Nullable
+    public String determineIdentifier(@Nonnull LimiterDescriptor descriptor) throws Exception {
+        return determineIdentifier(descriptor, NO_ARGUMENTS);
+    }
+
+    /**
+     * Returns the identifier of the current invocation
+     *
+     * @param descriptor the descriptor of a single limit
+     * @param arguments the arguments of the invocation
+     *
+     * @return the identifier of the current invocation, or {@code null} to skip the limitation
+     */
+    @Nullable
+    public String determineIdentifier(@Nonnull LimiterDescriptor descriptor, @Nonnull Object[] arguments) throws Exception {
+        if (descriptor.getLimitShards() != null) {
+            return descriptor.getLimitShards().select();
+        }
+        if (descriptor.getIdentifier() != null || descriptor.getTriggerResolver() == null) {
+            return descriptor.getIdentifier();
+        }
+        String value = descriptor.getTriggerResolver().resolve(arguments);
+        return (value == null) ? null : buildIdentifier(descriptor, value);
+    }
+
+    /**
+     * Publishes the event of a denied call
+     * <p>
+     * Counts the denial for the next summary event if the events are asynchronous,
+     * otherwise publishes a {@link RateLimitedEvent} of the current servlet request on the calling thread
+     *
+     * @param identifiers the identifiers of the limits, the {@code null} elements are skipped
+     * @param descriptor the descriptor of the method
+     */
+    public void publishLimited(@Nonnull String[] identifiers, @Nonnull LimiterDescriptor descriptor) {
+        publishLimited(identifiers, descriptor, NO_ARGUMENTS);
+    }
+
+    /**
+     * Publishes the event of a denied call, as {@link #publishLimited(String[], LimiterDescriptor)}
+     * <p>
+     * The raw trigger values are resolved again from the arguments, only for the first denial of an identifier in a summary interval
+     *
+     * @param identifiers the identifiers of the limits, the {@code null} elements are skipped
+     * @param descriptor the descriptor of the method
+     * @param arguments the arguments of the invocation
+     */
+    public void publishLimited(@Nonnull String[] identifiers, @Nonnull LimiterDescriptor descriptor, @Nonnull Object[] arguments) {
+        publishLimited(identifiers, descriptor, () -> determineTriggerValues(identifiers, descriptor, arguments));
+    }
+
+    protected void publishLimited(@Nonnull String[] identifiers, @Nonnull LimiterDescriptor descriptor, @Nonnull Supplier<String[]> triggerValues) {
+        if (eventPublisher != null) {
+            eventPublisher.record(identifiers, descriptor, triggerValues);
+            return;
+        }
+        HttpServletRequest request = WebUtilsWraps.getContextServletRequest();
+        if (request != null) {
+            applicationContext.publishEvent(new RateLimitedEvent(request));
+        }
+    }
+
+    /**
+     * Returns the raw trigger values of the invocation, which are hashed in the compact identifiers if long or unsafe
+     *
+     * @param identifiers the identifiers of the limits, the {@code null} elements are skipped
+     * @param descriptor the descriptor of the method
+     * @param arguments the arguments of the invocation
+     *
+     * @return the raw trigger values of the invocation, in the order of the identifiers, the elements are {@code null} if the limits have no trigger values
+     */
+    @Nonnull
+    protected String[] determineTriggerValues(@Nonnull String[] identifiers, @Nonnull LimiterDescriptor descriptor, @Nonnull Object[] arguments) {
+        String[] values = new String[identifiers.length];
+        for (int i = 0; i < identifiers.length && i < descriptor.getLimitCount(); i++) {
+            LimiterDescriptor limit = descriptor.getLimit(i);
+            if (identifiers[i] == null || limit.getIdentifier() != null || limit.getLimitShards() != null || limit.getTriggerResolver() == null) {
+                continue;
+            }
+            try {
+                values[i] = limit.getTriggerResolver().resolve(arguments);
+            } catch (Exception ex) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Resolve trigger value of limit '{}' failed", limit.getName(), ex);
+                }
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Writes the rate limit headers of the verdict, if the headers are enabled
+     * <p>
+     * The headers describe the first rate limit of the identifiers, while the remaining permits and the reset time are the ones of the verdict,
+     * which are of the denying limit or the most constrained limit
+     *
+     * @param identifiers the identifiers of the limits, the {@code null} elements are skipped
+     * @param descriptor the descriptor of the method
+     * @param verdict the verdict of the rate limits
+     * @param writer the writer of the header names and values
+     */
+    public void writeHeaders(@Nonnull String[] identifiers, @Nonnull LimiterDescriptor descriptor, @Nonnull LimiterVerdict verdict, @Nonnull BiConsumer<String, String> writer) {
+        if (BooleanUtils.isNotTrue(limiterProperties.getHeadersEnabled())) {
+            return;
+        }
+        LimiterQuota quota = determineRateQuota(identifiers, descriptor);
+        if (quota != null) {
+            LimiterResponseHeaders.writeHeaders(verdict, quota, writer);
+        }
+    }
+
+    /**
+     * Returns the quota of the first rate limit of the identifiers
+     *
+     * @param identifiers the identifiers of the limits, the {@code null} elements are skipped
+     * @param descriptor the descriptor of the method
+     *
+     * @return the quota of the first rate limit of the identifiers, or {@code null} if all the limits are in flight
+     */
+    @Nullable
+    protected LimiterQuota determineRateQuota(@Nonnull String[] identifiers, @Nonnull LimiterDescriptor descriptor) {
+        LimiterQuota[] quotas = descriptor.getLimitQuotas();
+        for (int i = 0; i < identifiers.length; i++) {
+            if (identifiers[i] != null && !quotas[i].getAlgorithm().isInFlight()) {
+                return quotas[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the quota of the limitation
+     *
+     * @param annotation the annotation of the method
+     *
+     * @return the quota of the limitation
+     */
+    @Nonnull
+    protected LimiterQuota determineQuota(@Nonnull RateLimit annotation) {
+        LimiterAlgorithmType algorithm = ObjectUtils.defaultIfNull(annotation.algorithm(), LimiterAlgorithmType.COOLDOWN);
+        Duration window = (annotation.unit() == ChronoUnit.FOREVER) ? null : annotation.unit().getDuration().multipliedBy(annotation.ttl());
+        Assert.isTrue(window != null || algorithm == LimiterAlgorithmType.COOLDOWN || algorithm == LimiterAlgorithmType.ADAPTIVE, "Algorithm '" + algorithm.getValue() + "' requires a finite window");    // $NON-NLS-1$
+        long permits = (algorithm == LimiterAlgorithmType.COOLDOWN) ? 1L : Math.max(annotation.permits(), 1L);
+        long capacity = (algorithm == LimiterAlgorithmType.TOKEN_BUCKET && annotation.capacity() > 0L) ? annotation.capacity() : permits;
+        return new LimiterQuota(algorithm, permits, capacity, window);
+    }
+
+    /**
+     * Combines the permit of the adaptive limit and the permit of the other in-flight limits
+     *
+     * @param flight the permit of the adaptive limit, if any
+     * @param permit the permit of the other in-flight limits, or {@code null} if rejected
+     *
+     * @return the combined permit, or {@code null} if rejected
+     */
+    @Nullable
+    protected LimiterPermit combinePermits(@Nullable AdaptiveLimiter.Flight flight, @Nullable LimiterPermit permit) {
+        if (flight == null) {
+            return permit;
+        }
+        if (permit == null) {
+            flight.cancel();
+            return null;
+        }
+        if (permit == LimiterPermit.NONE) {
+            return flight;
+        }
+        return new LimiterPermit() {
+            @Override
+            public void close() {
+                try {
+                    permit.close();
+                } finally {
+                    flight.close();
+                }
+            }
+
+            @Override
+            public void cancel() {
+                try {
+                    permit.cancel();
+                } finally {
+                    flight.cancel();
+                }
+            }
+        };
+    }
+
+    /**
+     * Returns the verdict of the failover, when the storage failed
+     *
+     * @param identifiers the identifiers of the limits, the {@code null} elements are skipped
+     * @param descriptor the descriptor of the method
+     * @param startTime the start time of the decision, in nanoseconds
+     * @param cause the failure of the storage
+     *
+     * @return the verdict of the failover
+     */
+    @Nonnull
+    protected LimiterVerdict fallbackPermit(@Nonnull String[] identifiers, @Nonnull LimiterDescriptor descriptor, long startTime, @Nonnull Throwable cause) {
+        Assert.notNull(limiterFailover, AssertMessageConst.NOT_NULL);
+        if (log.isWarnEnabled()) {
+            log.warn("Acquire permits of identifiers {} failed, falls back to '{}'", Arrays.toString(identifiers), limiterFailover.getFallbackOutcome().getValue(), cause);
+        }
+        limiterFailover.recordFailure();
+        return fallbackPermit(identifiers, descriptor, startTime);
+    }
+
+    /**
+     * Returns the verdict of the failover, when the circuit is open
+     *
+     * @param identifiers the identifiers of the limits, the {@code null} elements are skipped
+     * @param descriptor the descriptor of the method
+     * @param startTime the start time of the decision, in nanoseconds
+     *
+     * @return the verdict of the failover
+     */
+    @Nonnull
+    protected LimiterVerdict fallbackPermit(@Nonnull String[] identifiers, @Nonnull LimiterDescriptor descriptor, long startTime) {
+        Assert.notNull(limiterFailover, AssertMessageConst.NOT_NULL);
+        LimiterVerdict verdict = limiterFailover.fallback(identifiers, descriptor.getLimitQuotas());
+        recordDecision(descriptor, limiterFailover.getFallbackOutcome(), startTime);
+        return verdict;
+    }
+
+    /**
+     * Ends and commits the event of a decision
+     *
+     * @param event the event that has begun
+     * @param descriptor the descriptor of the method
+     * @param outcome the outcome of the decision, allowed or denied, or {@link #SKIPPED_OUTCOME} if the trigger values are absent
+     * @param resolutionTime the nanoseconds to resolve the identifiers and the costs
+     */
+    protected void commitDecision(@Nonnull RateLimitDecisionEvent event, @Nonnull LimiterDescriptor descriptor, @Nonnull String outcome, long resolutionTime) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.setLimit(descriptor.getName());
+            event.setTriggerType(descriptor.getAnnotation().triggerType().getValue());
+            event.setAlgorithm(descriptor.getQuota().getAlgorithm().getValue());
+            event.setOutcome(outcome);
+            event.setResolutionTime(resolutionTime);
+            event.commit();
         }
-        builder.append(CharVariantConst.SQUARE_BRACKET_RIGHT);
-        return StringUtilsWraps.joinWithColon(name, builder.toString());
     }
 
-    protected abstract Object processPoint(@Nonnull ProceedingJoinPoint point, @Nonnull String identifier, @Nonnull RateLimit annotation) throws Throwable;
+    /**
+     * Commits the event of a storage round trip
+     *
+     * @param event the event that has ended
+     * @param identifiers the identifiers of the limits, the {@code null} elements are skipped
+     * @param descriptor the descriptor of the method
+     * @param verdict the verdict of the round trip, or {@code null} if the storage failed
+     */
+    protected void commitStorage(@Nonnull RateLimitStorageEvent event, @Nonnull String[] identifiers, @Nonnull LimiterDescriptor descriptor, @Nullable LimiterVerdict verdict) {
+        int keys = 0;
+        for (String identifier : identifiers) {
+            if (identifier != null) {
+                keys++;
+            }
+        }
+        event.setStorageType(limiterProperties.getStorageType().getValue());
+        event.setLimit(descriptor.getName());
+        event.setKeys(keys);
+        event.setOutcome((verdict == null) ? LimiterOutcomeType.ERROR.getValue() : (verdict.isAllowed() ? LimiterOutcomeType.ALLOWED.getValue() : LimiterOutcomeType.DENIED.getValue()));
+        event.commit();
+    }
+
+    protected void recordDecision(@Nonnull LimiterDescriptor descriptor, @Nonnull LimiterOutcomeType outcome, long startTime) {
+        if (limitRecorder != null) {
+            limitRecorder.recordDecision(descriptor, outcome, System.nanoTime() - startTime);
+        }
+    }
+
+    /**
+     * Returns whether any limit of the method is {@link LimiterAlgorithmType#COOLDOWN} or not
+     *
+     * @param descriptor the descriptor of the method
+     *
+     * @return whether any limit of the method is {@link LimiterAlgorithmType#COOLDOWN} or not
+     */
+    protected boolean hasCooldown(@Nonnull LimiterDescriptor descriptor) {
+        for (LimiterQuota quota : descriptor.getLimitQuotas()) {
+            if (quota.getAlgorithm() == LimiterAlgorithmType.COOLDOWN) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns whether any limit of the method limits the calls in flight or not
+     *
+     * @param descriptor the descriptor of the method
+     *
+     * @return whether any limit of the method limits the calls in flight or not
+     */
+    protected boolean hasConcurrency(@Nonnull LimiterDescriptor descriptor) {
+        for (LimiterQuota quota : descriptor.getLimitQuotas()) {
+            if (quota.getAlgorithm().isInFlight()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the identifiers of either the {@link LimiterAlgorithmType#CONCURRENCY} limits or the rate limits
+     * <p>
+     * The {@link LimiterAlgorithmType#ADAPTIVE} limits are held on each node, so they are never selected
+     *
+     * @param identifiers the identifiers of all the limits
+     * @param descriptor the descriptor of the method
+     * @param concurrency whether to select the {@link LimiterAlgorithmType#CONCURRENCY} limits or the rate limits
+     *
+     * @return the identifiers in the order of the limits, the other limits are {@code null}, or {@code null} if none selected
+     */
+    @Nullable
+    protected String[] selectIdentifiers(@Nonnull String[] identifiers, @Nonnull LimiterDescriptor descriptor, boolean concurrency) {
+        LimiterQuota[] quotas = descriptor.getLimitQuotas();
+        String[] result = null;
+        for (int i = 0; i < identifiers.length; i++) {
+            if (identifiers[i] != null && (concurrency ? quotas[i].getAlgorithm() == LimiterAlgorithmType.CONCURRENCY : !quotas[i].getAlgorithm().isInFlight())) {
+                if (result == null) {
+                    result = new String[identifiers.length];
+                }
+                result[i] = identifiers[i];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the nanoseconds to wait for the permits of the in-flight limits
+     *
+     * @param descriptor the descriptor of the method
+     *
+     * @return the longest wait of the in-flight limits, in nanoseconds
+     */
+    protected long determineWaitNanos(@Nonnull LimiterDescriptor descriptor) {
+        long waitMillis = 0L;
+        for (int i = 0; i < descriptor.getLimitCount(); i++) {
+            LimiterDescriptor limit = descriptor.getLimit(i);
+            if (limit.getQuota().getAlgorithm() == LimiterAlgorithmType.CONCURRENCY) {
+                waitMillis = Math.max(waitMillis, limit.getAnnotation().waitMillis());
+            }
+        }
+        return TimeUnit.MILLISECONDS.toNanos(waitMillis);
+    }
+
+    /**
+     * Returns the nanoseconds to delay the calls over the rate limits
+     *
+     * @param descriptor the descriptor of the method
+     *
+     * @return the longest wait of the rate limits, in nanoseconds
+     */
+    protected long determineDelayNanos(@Nonnull LimiterDescriptor descriptor) {
+        long waitMillis = 0L;
+        for (int i = 0; i < descriptor.getLimitCount(); i++) {
+            LimiterDescriptor limit = descriptor.getLimit(i);
+            if (!limit.getQuota().getAlgorithm().isInFlight()) {
+                waitMillis = Math.max(waitMillis, limit.getAnnotation().waitMillis());
+            }
+        }
+        return TimeUnit.MILLISECONDS.toNanos(waitMillis);
+    }
 }
@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yookue.springstarter.ratelimiter.aspect;
+
+
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.util.Assert;
+import com.yookue.commonplexus.javaseutil.constant.AssertMessageConst;
+import com.yookue.springstarter.ratelimiter.facade.RateLimitCallback;
+import com.yookue.springstarter.ratelimiter.facade.RateLimitRecorder;
+import com.yookue.springstarter.ratelimiter.property.RateLimiterProperties;
+import com.yookue.springstarter.ratelimiter.structure.LimiterDescriptor;
+import com.yookue.springstarter.ratelimiter.structure.LimiterQuota;
+import com.yookue.springstarter.ratelimiter.structure.LimiterVerdict;
+import com.yookue.springstarter.ratelimiter.support.LimiterPermit;
+import com.yookue.springstarter.ratelimiter.support.LocalConcurrencyStore;
+import com.yookue.springstarter.ratelimiter.support.LocalLimiterStore;
+import lombok.Getter;
+import lombok.Setter;
+
+
+/**
+ * Local aspect for rate limit
+ * <p>
+ * The limitation data is held in the memory of the current process, suitable for single node services
+ *
+ * @author David Hsing
+ */
+@Aspect
+@Getter
+@Setter
+@SuppressWarnings("unused")
+public class LocalRateLimitAspect extends AbstractBlockingRateLimitAspect {
+    private LocalLimiterStore limiterStore;
+    private LocalConcurrencyStore concurrencyStore = new LocalConcurrencyStore();
+
+    public LocalRateLimitAspect(RateLimiterProperties limitProperties) {
+        super(limitProperties);
+    }
+
+    public LocalRateLimitAspect(@Nonnull RateLimiterProperties properties, @Nullable RateLimitCallback callback, @Nonnull LocalLimiterStore store) {
+        super(properties, callback);
+        this.limiterStore = store;
+    }
+
+    @Override
+    protected void registerGauges(@Nonnull RateLimitRecorder recorder) {
+        super.registerGauges(recorder);
+        if (limiterStore != null) {
+            recorder.registerGauge("rate.limiter.local.entries", limiterStore, LocalLimiterStore::size);    // $NON-NLS-1$
+        }
+        if (concurrencyStore != null) {
+            recorder.registerGauge("rate.limiter.local.in.flight.entries", concurrencyStore, LocalConcurrencyStore::size);    // $NON-NLS-1$
+        }
+    }
+
+    @Nonnull
+    @Override
+    protected LimiterVerdict acquirePermit(@Nonnull String identifier, @Nonnull LimiterQuota quota) {
+        Assert.notNull(limiterStore, AssertMessageConst.NOT_NULL);
+        return limiterStore.acquire(identifier, quota);
+    }
+
+    @Nonnull
+    @Override
+    protected LimiterVerdict acquireStacked(@Nonnull String[] identifiers, @Nonnull LimiterQuota[] quotas) {
+        Assert.notNull(limiterStore, AssertMessageConst.NOT_NULL);
+        return limiterStore.acquireAll(identifiers, quotas);
+    }
+
+    @Nullable
+    @Override
+    protected LimiterPermit enterPermits(@Nonnull String[] identifiers, @Nonnull LimiterDescriptor descriptor, long waitNanos) throws InterruptedException {
+        Assert.notNull(concurrencyStore, AssertMessageConst.NOT_NULL);
+        return concurrencyStore.enterAll(identifiers, descriptor.getLimitQuotas(), waitNanos);
+    }
+
+    @Override
+    protected void releasePermit(@Nonnull String identifier, @Nonnull LimiterQuota quota) {
+        limiterStore.release(identifier);
+    }
+}
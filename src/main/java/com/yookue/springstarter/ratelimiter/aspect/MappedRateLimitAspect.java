@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.yookue.springstarter.ratelimiter.aspect;
+
+
+import java.io.IOException;
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.util.Assert;
+import com.yookue.commonplexus.javaseutil.constant.AssertMessageConst;
+import com.yookue.springstarter.ratelimiter.facade.RateLimitCallback;
+import com.yookue.springstarter.ratelimiter.facade.RateLimitRecorder;
+import com.yookue.springstarter.ratelimiter.property.RateLimiterProperties;
+import com.yookue.springstarter.ratelimiter.structure.LimiterDescriptor;
+import com.yookue.springstarter.ratelimiter.structure.LimiterQuota;
+import com.yookue.springstarter.ratelimiter.structure.LimiterVerdict;
+import com.yookue.springstarter.ratelimiter.support.LimiterPermit;
+import com.yookue.springstarter.ratelimiter.support.LocalConcurrencyStore;
+import com.yookue.springstarter.ratelimiter.support.MappedLimiterStore;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+
+
+/**
+ * Mapped aspect for rate limit
+ * <p>
+ * The limitation data is held in a memory-mapped file, shared by the processes on a host without network hops.
+ * The calls in flight are still held in the memory of each process
+ *
+ * @author David Hsing
+ */
+@Aspect
+@Getter
+@Setter
+@Slf4j
+@SuppressWarnings("unused")
+public class MappedRateLimitAspect extends AbstractBlockingRateLimitAspect {
+    private MappedLimiterStore limiterStore;
+    private LocalConcurrencyStore concurrencyStore = new LocalConcurrencyStore();
+
+    public MappedRateLimitAspect(@Nonnull RateLimiterProperties properties, @Nullable RateLimitCallback callback, @Nonnull MappedLimiterStore store) {
+        super(properties, callback);
+        this.limiterStore = store;
+    }
+
+    @Override
+    protected void registerGauges(@Nonnull RateLimitRecorder recorder) {
+        super.registerGauges(recorder);
+        if (limiterStore != null) {
+            recorder.registerGauge("rate.limiter.mapped.entries", limiterStore, MappedLimiterStore::size);    // $NON-NLS-1$
+        }
+        if (concurrencyStore != null) {
+            recorder.registerGauge("rate.limiter.local.in.flight.entries", concurrencyStore, LocalConcurrencyStore::size);    // $NON-NLS-1$
+        }
+    }
+
+    @Nonnull
+    @Override
+    protected LimiterVerdict acquirePermit(@Nonnull String identifier, @Nonnull LimiterQuota quota) {
+        Assert.notNull(limiterStore, AssertMessageConst.NOT_NULL);
+        return limiterStore.acquire(identifier, quota);
+    }
+
+    @Nonnull
+    @Override
+    protected LimiterVerdict acquireStacked(@Nonnull String[] identifiers, @Nonnull LimiterQuota[] quotas) {
+        Assert.notNull(limiterStore, AssertMessageConst.NOT_NULL);
+        return limiterStore.acquireAll(identifiers, quotas);
+    }
+
+    @Nullable
+    @Override
+    protected LimiterPermit enterPermits(@Nonnull String[] identifiers, @Nonnull LimiterDescriptor descriptor, long waitNanos) throws InterruptedException {
+        Assert.notNull(concurrencyStore, AssertMessageConst.NOT_NULL);
+        return concurrencyStore.enterAll(identifiers, descriptor.getLimitQuotas(), waitNanos);
+    }
+
+    @Override
+    protected void releasePermit(@Nonnull String identifier, @Nonnull LimiterQuota quota) {
+        limiterStore.release(identifier);
+    }
+
+    @Override
+    public void destroy() {
+        super.destroy();
+        if (limiterStore == null) {
+            return;
+        }
+        try {
+            limiterStore.close();
+        } catch (IOException ex) {
+            if (log.isWarnEnabled()) {
+                log.warn("Close mapped file '{}' failed", limiterStore.getFile(), ex);
+            }
+        }
+    }
+}
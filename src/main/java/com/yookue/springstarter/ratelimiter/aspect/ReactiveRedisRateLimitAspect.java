@@ -0,0 +1,764 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yookue.springstarter.ratelimiter.aspect;
+
+
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.security.Principal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+import org.apache.commons.lang3.BooleanUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Aspect;
+import org.reactivestreams.Publisher;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.http.HttpHeaders;
+import org.springframework.util.Assert;
+import org.springframework.web.filter.reactive.ServerWebExchangeContextFilter;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebSession;
+import com.yookue.commonplexus.javaseutil.constant.AssertMessageConst;
+import com.yookue.commonplexus.springutil.exception.RateLimitedException;
+import com.yookue.springstarter.ratelimiter.annotation.RateLimit;
+import com.yookue.springstarter.ratelimiter.enumeration.LimiterAlgorithmType;
+import com.yookue.springstarter.ratelimiter.enumeration.LimiterOutcomeType;
+import com.yookue.springstarter.ratelimiter.enumeration.LimiterTriggerType;
+import com.yookue.springstarter.ratelimiter.event.RateLimitDecisionEvent;
+import com.yookue.springstarter.ratelimiter.event.RateLimitStorageEvent;
+import com.yookue.springstarter.ratelimiter.facade.RateLimitCallback;
+import com.yookue.springstarter.ratelimiter.facade.RateLimitRecorder;
+import com.yookue.springstarter.ratelimiter.property.RateLimiterProperties;
+import com.yookue.springstarter.ratelimiter.structure.LimiterDescriptor;
+import com.yookue.springstarter.ratelimiter.structure.LimiterQuota;
+import com.yookue.springstarter.ratelimiter.structure.LimiterVerdict;
+import com.yookue.springstarter.ratelimiter.support.AdaptiveLimiter;
+import com.yookue.springstarter.ratelimiter.support.DeniedVerdictCache;
+import com.yookue.springstarter.ratelimiter.support.LimiterCostExpression;
+import com.yookue.springstarter.ratelimiter.support.LimiterKeyExpression;
+import com.yookue.springstarter.ratelimiter.support.LimiterPermit;
+import com.yookue.springstarter.ratelimiter.support.LimiterShards;
+import com.yookue.springstarter.ratelimiter.support.LimiterThrottle;
+import com.yookue.springstarter.ratelimiter.support.RedisLimiterScript;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.context.ContextView;
+
+
+/**
+ * Reactive redis aspect for rate limit
+ * <p>
+ * Only limits the methods that return {@link Mono} or {@link Flux}, the identifier is resolved from the {@link ServerWebExchange}
+ * in the subscriber context, which is populated by {@link ServerWebExchangeContextFilter}.
+ * The decision is made by the same lua script as {@link RedisRateLimitAspect}, without blocking the event loop
+ *
+ * @author David Hsing
+ */
+@Aspect
+@Getter
+@Setter
+@Slf4j
+@SuppressWarnings("unused")
+public class ReactiveRedisRateLimitAspect extends AbstractRateLimitAspect {
+    private static final String[] NO_IDENTIFIERS = new String[0];
+    private static final LimiterVerdict UNLIMITED_VERDICT = new LimiterVerdict(true, 0L, 0L);
+    private static final LimiterPermit REJECTED_PERMIT = () -> {
+    };
+    private static final long MIN_WAIT_INTERVAL = TimeUnit.MILLISECONDS.toNanos(2L);
+    private static final long MAX_WAIT_INTERVAL = TimeUnit.MILLISECONDS.toNanos(50L);
+    private ReactiveStringRedisTemplate redisTemplate;
+    private DeniedVerdictCache deniedCache;
+
+    public ReactiveRedisRateLimitAspect(RateLimiterProperties limitProperties) {
+        super(limitProperties);
+    }
+
+    public ReactiveRedisRateLimitAspect(@Nonnull RateLimiterProperties properties, @Nullable RateLimitCallback callback, @Nonnull ReactiveStringRedisTemplate template) {
+        super(properties, callback);
+        this.redisTemplate = template;
+    }
+
+    @Override
+    protected Object limitPoint(@Nonnull ProceedingJoinPoint point, @Nonnull LimiterDescriptor descriptor) {
+        boolean flux = Flux.class.isAssignableFrom(descriptor.getMethod().getReturnType());
+        if (BooleanUtils.isTrue(limiterProperties.getFlightRecorderEnabled())) {
+            // Each subscription is a decision, which begins with the resolution of the identifiers
+            if (flux) {
+                return Flux.defer(() -> Flux.from(limitReactive(point, descriptor, true, beginDecision(), System.nanoTime())));
+            }
+            return Mono.defer(() -> Mono.from(limitReactive(point, descriptor, false, beginDecision(), System.nanoTime())));
+        }
+        return limitReactive(point, descriptor, flux, null, 0L);
+    }
+
+    @Nonnull
+    private Publisher<?> limitReactive(@Nonnull ProceedingJoinPoint point, @Nonnull LimiterDescriptor descriptor, boolean flux, @Nullable RateLimitDecisionEvent event, long startTime) {
+        Mono<String[]> identifiers = Mono.deferContextual(context -> determineIdentifiers(context, descriptor, point.getArgs()));
+        if (flux) {
+            return identifiers.flatMapMany(alias -> (alias.length == 0) ? proceedSkipped(point, descriptor, event, startTime) : limitEntered(point, alias, descriptor, event, startTime));
+        }
+        return identifiers.flatMap(alias -> Mono.from((alias.length == 0) ? proceedSkipped(point, descriptor, event, startTime) : limitEntered(point, alias, descriptor, event, startTime)));
+    }
+
+    /**
+     * Enters the in-flight limits before the rate limits, and cancels the permits when the rate limits deny the call, so a denied call consumes none of the limits
+     *
+     * @param point the join point of the invocation
+     * @param identifiers the identifiers of the limits, the {@code null} elements are skipped
+     * @param descriptor the descriptor of the method
+     * @param event the event of the decision, or {@code null} if not recorded
+     * @param startTime the start time of the decision, in nanoseconds
+     *
+     * @return the result of the invocation, or the result of the callback when denied
+     */
+    @Nonnull
+    private Publisher<?> limitEntered(@Nonnull ProceedingJoinPoint point, @Nonnull String[] identifiers, @Nonnull LimiterDescriptor descriptor, @Nullable RateLimitDecisionEvent event, long startTime) {
+        return enterLimitsReactive(identifiers, descriptor).flatMapMany(permit -> {
+            if (permit == REJECTED_PERMIT) {
+                if (event != null) {
+                    commitDecision(event, descriptor, LimiterOutcomeType.DENIED.getValue(), System.nanoTime() - startTime);
+                }
+                return processLimitedReactive(point, identifiers, descriptor);
+            }
+            return decideRecordedReactive(identifiers, descriptor, point.getArgs(), event, startTime).doOnError(ex -> permit.cancel()).flatMapMany(verdict -> {
+                if (!verdict.isAllowed()) {
+                    permit.cancel();
+                    return processLimitedReactive(point, identifiers, descriptor);
+                }
+                return Flux.from(proceedReleasing(point, identifiers, descriptor)).doFinally(signal -> permit.close());
+            });
+        });
+    }
+
+    @Nonnull
+    private static RateLimitDecisionEvent beginDecision() {
+        RateLimitDecisionEvent event = new RateLimitDecisionEvent();
+        event.begin();
+        return event;
+    }
+
+    @Nonnull
+    private Publisher<?> proceedSkipped(@Nonnull ProceedingJoinPoint point, @Nonnull LimiterDescriptor descriptor, @Nullable RateLimitDecisionEvent event, long startTime) {
+        if (event != null) {
+            commitDecision(event, descriptor, SKIPPED_OUTCOME, System.nanoTime() - startTime);
+        }
+        return proceedPoint(point);
+    }
+
+    /**
+     * Returns the verdict of the rate limits, and commits a {@link RateLimitDecisionEvent} once the verdict resolves
+     *
+     * @param identifiers the identifiers of the limits, the {@code null} elements are skipped
+     * @param descriptor the descriptor of the method
+     * @param arguments the arguments of the invocation
+     * @param event the event of the decision, or {@code null} if not recorded
+     * @param startTime the start time of the decision, in nanoseconds
+     *
+     * @return the verdict of the rate limits
+     */
+    @Nonnull
+    private Mono<LimiterVerdict> decideRecordedReactive(@Nonnull String[] identifiers, @Nonnull LimiterDescriptor descriptor, @Nonnull Object[] arguments, @Nullable RateLimitDecisionEvent event, long startTime) {
+        if (event == null) {
+            return decideLimitsReactive(identifiers, descriptor, arguments);
+        }
+        long resolutionTime = System.nanoTime() - startTime;
+        return decideLimitsReactive(identifiers, descriptor, arguments).doOnNext(verdict -> commitDecision(event, descriptor, verdict.isAllowed() ? LimiterOutcomeType.ALLOWED.getValue() : LimiterOutcomeType.DENIED.getValue(), resolutionTime));
+    }
+
+    @Nonnull
+    private Mono<LimiterVerdict> decideLimitsReactive(@Nonnull String[] identifiers, @Nonnull LimiterDescriptor descriptor, @Nonnull Object[] arguments) {
+        String[] limits = hasConcurrency(descriptor) ? selectIdentifiers(identifiers, descriptor, false) : identifiers;
+        if (limits == null) {
+            return Mono.just(UNLIMITED_VERDICT);
+        }
+        return Mono.deferContextual(context -> {
+            ServerWebExchange exchange = ServerWebExchangeContextFilter.getExchange(context).orElse(null);
+            LimiterDescriptor costed = determineCosts(exchange, descriptor, arguments);
+            Mono<LimiterVerdict> decision = decidePermitReactive(limits, costed);
+            if (limiterThrottle != null && determineDelayNanos(costed) > 0L) {
+                decision = decision.flatMap(verdict -> verdict.isAllowed() ? Mono.just(verdict) : awaitPermitsReactive(limits, costed, verdict));
+            }
+            if (exchange == null || BooleanUtils.isNotTrue(limiterProperties.getHeadersEnabled())) {
+                return decision;
+            }
+            HttpHeaders headers = exchange.getResponse().getHeaders();
+            return decision.doOnNext(verdict -> writeHeaders(limits, costed, verdict, headers::set));
+        });
+    }
+
+    /**
+     * Returns the descriptor with the costs of the current invocation, with the headers of the exchange if present
+     * <p>
+     * The principal is absent for the cost expressions of the reactive methods
+     *
+     * @param exchange the current exchange, or {@code null} if absent
+     * @param descriptor the descriptor of the method
+     * @param arguments the arguments of the invocation
+     *
+     * @return the descriptor with the costs of the current invocation, or the descriptor itself if the costs are constant
+     */
+    @Nonnull
+    protected LimiterDescriptor determineCosts(@Nullable ServerWebExchange exchange, @Nonnull LimiterDescriptor descriptor, @Nonnull Object[] arguments) {
+        LimiterQuota[] quotas = null;
+        LimiterKeyExpression.Root root = null;
+        for (int i = 0; i < descriptor.getLimitCount(); i++) {
+            if (descriptor.getLimit(i).getCostResolver() instanceof LimiterCostExpression expression) {
+                if (quotas == null) {
+                    quotas = descriptor.getLimitQuotas().clone();
+                    root = (exchange == null) ? new LimiterKeyExpression.Root(arguments, null, null) : new LimiterKeyExpression.Root(arguments, null, exchange.getRequest().getHeaders()::getFirst);
+                }
+                quotas[i] = quotas[i].withCost(expression.evaluate(root));
+            }
+        }
+        return (quotas == null) ? descriptor : descriptor.withQuotas(quotas);
+    }
+
+    /**
+     * Delays the denied call until the rate limits permit it, at most the longest {@link RateLimit#waitMillis()} of the rate limits, without blocking
+     *
+     * @param identifiers the identifiers of the limits, the {@code null} elements are skipped
+     * @param descriptor the descriptor of the method
+     * @param verdict the verdict of the denied call
+     *
+     * @return the verdict of the last attempt, or the given verdict if the queue of the parked calls is full
+     */
+    @Nonnull
+    protected Mono<LimiterVerdict> awaitPermitsReactive(@Nonnull String[] identifiers, @Nonnull LimiterDescriptor descriptor, @Nonnull LimiterVerdict verdict) {
+        Assert.notNull(limiterThrottle, AssertMessageConst.NOT_NULL);
+        if (!limiterThrottle.tryPark()) {
+            return Mono.just(verdict);
+        }
+        long deadline = System.nanoTime() + determineDelayNanos(descriptor);
+        return retryPermitsReactive(identifiers, descriptor, verdict, determineRateQuota(identifiers, descriptor), deadline).doFinally(signal -> limiterThrottle.unpark());
+    }
+
+    @Nonnull
+    private Mono<LimiterVerdict> retryPermitsReactive(@Nonnull String[] identifiers, @Nonnull LimiterDescriptor descriptor, @Nonnull LimiterVerdict verdict, @Nullable LimiterQuota quota, long deadline) {
+        long delay = LimiterThrottle.determineDelay(verdict, quota, deadline);
+        if (delay < 0L) {
+            return Mono.just(verdict);
+        }
+        return Mono.delay(Duration.ofMillis(delay)).then(Mono.defer(() -> decidePermitReactive(identifiers, descriptor)))
+            .flatMap(result -> result.isAllowed() ? Mono.just(result) : retryPermitsReactive(identifiers, descriptor, result, quota, deadline));
+    }
+
+    @Nonnull
+    private Mono<LimiterPermit> enterLimitsReactive(@Nonnull String[] identifiers, @Nonnull LimiterDescriptor descriptor) {
+        String[] limits = hasConcurrency(descriptor) ? selectIdentifiers(identifiers, descriptor, true) : null;
+        AdaptiveLimiter adaptiveLimiter = descriptor.getAdaptiveLimiter();
+        if (adaptiveLimiter == null) {
+            return (limits == null) ? Mono.just(LimiterPermit.NONE) : enterPermitsReactive(limits, descriptor);
+        }
+        return Mono.defer(() -> {
+            AdaptiveLimiter.Flight flight = adaptiveLimiter.tryEnter();
+            if (flight == null) {
+                return Mono.just(REJECTED_PERMIT);
+            }
+            if (limits == null) {
+                return Mono.just(flight);
+            }
+            return enterPermitsReactive(limits, descriptor).map(permit -> {
+                if (permit == REJECTED_PERMIT) {
+                    flight.cancel();
+                    return REJECTED_PERMIT;
+                }
+                return combinePermits(flight, permit);
+            });
+        });
+    }
+
+    @Nonnull
+    private Publisher<?> proceedReleasing(@Nonnull ProceedingJoinPoint point, @Nonnull String[] identifiers, @Nonnull LimiterDescriptor descriptor) {
+        return !hasCooldown(descriptor) ? proceedPoint(point) : Flux.from(proceedPoint(point)).onErrorResume(ex -> releaseQuietly(identifiers, descriptor, ex));
+    }
+
+    @Override
+    protected void registerGauges(@Nonnull RateLimitRecorder recorder) {
+        super.registerGauges(recorder);
+        if (deniedCache != null) {
+            recorder.registerGauge("rate.limiter.near.cache.entries", deniedCache, DeniedVerdictCache::size);    // $NON-NLS-1$
+            recorder.registerGauge("rate.limiter.near.cache.hit.ratio", deniedCache, DeniedVerdictCache::getHitRate);    // $NON-NLS-1$
+        }
+    }
+
+    @Nullable
+    @Override
+    protected LimiterDescriptor buildDescriptor(@Nonnull Method method) {
+        LimiterDescriptor descriptor = super.buildDescriptor(method);
+        if (descriptor == null) {
+            return null;
+        }
+        if (!Mono.class.isAssignableFrom(method.getReturnType()) && !Flux.class.isAssignableFrom(method.getReturnType())) {
+            if (log.isWarnEnabled()) {
+                log.warn("Method '{}.{}' annotated with '@{}' should return Mono or Flux, the limitation is ignored", method.getDeclaringClass().getCanonicalName(), method.getName(), RateLimit.class.getSimpleName());
+            }
+            return null;
+        }
+        return descriptor;
+    }
+
+    /**
+     * Returns the identifiers of all the limits from the subscriber context
+     *
+     * @param context the subscriber context
+     * @param descriptor the descriptor of the method
+     * @param arguments the arguments of the invocation
+     *
+     * @return the identifiers in the order of the limits, the {@code null} elements are the skipped limits, or an empty array to skip all the limits
+     */
+    @Nonnull
+    protected Mono<String[]> determineIdentifiers(@Nonnull ContextView context, @Nonnull LimiterDescriptor descriptor, @Nonnull Object[] arguments) {
+        if (descriptor.getLimitCount() == 1) {
+            return determineIdentifier(context, descriptor, arguments).map(identifier -> StringUtils.isEmpty(identifier) ? NO_IDENTIFIERS : new String[]{identifier});
+        }
+        List<Mono<String>> identifiers = new ArrayList<>(descriptor.getLimitCount());
+        for (int i = 0; i < descriptor.getLimitCount(); i++) {
+            identifiers.add(determineIdentifier(context, descriptor.getLimit(i), arguments));
+        }
+        return Mono.zip(identifiers, values -> {
+            String[] result = new String[values.length];
+            boolean present = false;
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] instanceof String value && !value.isEmpty()) {
+                    result[i] = value;
+                    present = true;
+                }
+            }
+            return present ? result : NO_IDENTIFIERS;
+        });
+    }
+
+    /**
+     * Returns the identifier from the subscriber context
+     *
+     * @param context the subscriber context
+     * @param descriptor the descriptor of a single limit
+     * @param arguments the arguments of the invocation
+     *
+     * @return the identifier from the subscriber context, or an empty string to skip the limitation
+     */
+    @Nonnull
+    protected Mono<String> determineIdentifier(@Nonnull ContextView context, @Nonnull LimiterDescriptor descriptor, @Nonnull Object[] arguments) {
+        if (descriptor.getLimitShards() != null) {
+            return Mono.fromCallable(descriptor.getLimitShards()::select);
+        }
+        if (descriptor.getIdentifier() != null) {
+            return Mono.just(descriptor.getIdentifier());
+        }
+        ServerWebExchange exchange = ServerWebExchangeContextFilter.getExchange(context).orElse(null);
+        if (descriptor.getTriggerResolver() instanceof LimiterKeyExpression expression) {
+            return determineKeyValue(exchange, expression, arguments).map(value -> buildIdentifier(descriptor, value)).defaultIfEmpty(StringUtils.EMPTY);
+        }
+        if (exchange == null) {
+            return Mono.just(StringUtils.EMPTY);
+        }
+        // The same as the servlet aspects, the limitation is skipped when the trigger value is absent
+        return determineTriggerValue(exchange, descriptor.getAnnotation().triggerType()).map(value -> buildIdentifier(descriptor, value)).defaultIfEmpty(StringUtils.EMPTY);
+    }
+
+    /**
+     * Returns the value of the key expression, with the headers and the principal of the exchange if present
+     *
+     * @param exchange the current exchange, or {@code null} if absent
+     * @param expression the key expression of the limit
+     * @param arguments the arguments of the invocation
+     *
+     * @return the value of the key expression, or empty to skip the limitation
+     */
+    @Nonnull
+    protected Mono<String> determineKeyValue(@Nullable ServerWebExchange exchange, @Nonnull LimiterKeyExpression expression, @Nonnull Object[] arguments) {
+        if (exchange == null) {
+            return Mono.fromCallable(() -> expression.evaluate(new LimiterKeyExpression.Root(arguments, null, null)));
+        }
+        HttpHeaders headers = exchange.getRequest().getHeaders();
+        return exchange.getPrincipal().map(Optional::of).defaultIfEmpty(Optional.empty())
+            .mapNotNull(principal -> expression.evaluate(new LimiterKeyExpression.Root(arguments, principal.orElse(null), headers::getFirst)));
+    }
+
+    /**
+     * Returns the trigger value of the exchange
+     * <p>
+     * Only the started sessions are read, the sessions created by the lookup are never started or saved
+     *
+     * @param exchange the current exchange
+     * @param triggerType the trigger type of the limit
+     *
+     * @return the trigger value of the exchange, or empty to skip the limitation
+     */
+    @Nonnull
+    protected Mono<String> determineTriggerValue(@Nonnull ServerWebExchange exchange, @Nonnull LimiterTriggerType triggerType) {
+        return switch (triggerType) {
+            case IP_ADDRESS -> Mono.justOrEmpty(exchange.getRequest().getRemoteAddress()).map(ReactiveRedisRateLimitAspect::getHostAddress);
+            case SESSION -> exchange.getSession().filter(WebSession::isStarted).map(WebSession::getId);
+            case USERNAME -> exchange.getPrincipal().map(Principal::getName);
+            default -> Mono.just(StringUtils.EMPTY);
+        };
+    }
+
+    @Nonnull
+    protected Mono<LimiterVerdict> decidePermitReactive(@Nonnull String[] identifiers, @Nonnull LimiterDescriptor descriptor) {
+        if (limitRecorder == null && limiterFailover == null && heavyHitterSketch == null) {
+            return acquireRecordedReactive(identifiers, descriptor);
+        }
+        return Mono.defer(() -> {
+            long startTime = System.nanoTime();
+            if (heavyHitterSketch != null && descriptor.getLimitShards() == null) {
+                LimiterVerdict estimated = heavyHitterSketch.tryAdmit(identifiers, descriptor.getLimitQuotas());
+                if (estimated != null) {
+                    recordDecision(descriptor, LimiterOutcomeType.ESTIMATED, startTime);
+                    return Mono.just(estimated);
+                }
+            }
+            if (limiterFailover == null) {
+                return acquireRecordedReactive(identifiers, descriptor)
+                    .doOnNext(verdict -> recordDecision(descriptor, verdict.isAllowed() ? LimiterOutcomeType.ALLOWED : LimiterOutcomeType.DENIED, startTime))
+                    .doOnError(ex -> recordDecision(descriptor, LimiterOutcomeType.ERROR, startTime));
+            }
+            if (!limiterFailover.tryPass()) {
+                return Mono.fromCallable(() -> fallbackPermit(identifiers, descriptor, startTime));
+            }
+            Mono<LimiterVerdict> verdict = acquireRecordedReactive(identifiers, descriptor);
+            if (limiterFailover.getTimeout() != null) {
+                verdict = verdict.timeout(limiterFailover.getTimeout());
+            }
+            return verdict.doOnNext(alias -> {
+                limiterFailover.recordSuccess();
+                recordDecision(descriptor, alias.isAllowed() ? LimiterOutcomeType.ALLOWED : LimiterOutcomeType.DENIED, startTime);
+            }).onErrorResume(ex -> Mono.fromCallable(() -> fallbackPermit(identifiers, descriptor, startTime, ex)));
+        });
+    }
+
+    /**
+     * Checks and reserves the permits of all the limits, and commits a {@link RateLimitStorageEvent} of the round trip if enabled
+     *
+     * @param identifiers the identifiers of the limits, the {@code null} elements are skipped
+     * @param descriptor the descriptor of the method
+     *
+     * @return the verdict of the limitation
+     */
+    @Nonnull
+    protected Mono<LimiterVerdict> acquireRecordedReactive(@Nonnull String[] identifiers, @Nonnull LimiterDescriptor descriptor) {
+        if (BooleanUtils.isNotTrue(limiterProperties.getFlightRecorderEnabled())) {
+            return acquirePermitsReactive(identifiers, descriptor);
+        }
+        return Mono.defer(() -> {
+            RateLimitStorageEvent event = new RateLimitStorageEvent();
+            event.begin();
+            return acquirePermitsReactive(identifiers, descriptor)
+                .doOnNext(verdict -> endStorage(event, identifiers, descriptor, verdict))
+                .doOnError(ex -> endStorage(event, identifiers, descriptor, null));
+        });
+    }
+
+    private void endStorage(@Nonnull RateLimitStorageEvent event, @Nonnull String[] identifiers, @Nonnull LimiterDescriptor descriptor, @Nullable LimiterVerdict verdict) {
+        event.end();
+        if (event.shouldCommit()) {
+            commitStorage(event, identifiers, descriptor, verdict);
+        }
+    }
+
+    /**
+     * Checks and reserves the permits of all the limits by a single script evaluation
+     *
+     * @param identifiers the identifiers of the limits, the {@code null} elements are skipped
+     * @param descriptor the descriptor of the method
+     *
+     * @return the verdict of the limitation
+     */
+    @Nonnull
+    protected Mono<LimiterVerdict> acquirePermitsReactive(@Nonnull String[] identifiers, @Nonnull LimiterDescriptor descriptor) {
+        Assert.notNull(redisTemplate, AssertMessageConst.NOT_NULL);
+        if (descriptor.getLimitShards() != null) {
+            return acquireShardedReactive(identifiers[0], descriptor.getLimitShards(), descriptor.getQuota().getCost(), 1);
+        }
+        LimiterQuota[] limitQuotas = descriptor.getLimitQuotas();
+        List<String> keys = new ArrayList<>(identifiers.length);
+        List<LimiterQuota> quotas = new ArrayList<>(identifiers.length);
+        for (int i = 0; i < identifiers.length; i++) {
+            if (identifiers[i] == null) {
+                continue;
+            }
+            if (deniedCache != null) {
+                LimiterVerdict cached = deniedCache.lookup(identifiers[i]);
+                if (cached != null) {
+                    return Mono.just(cached);
+                }
+            }
+            keys.add(identifiers[i]);
+            quotas.add(limitQuotas[i]);
+        }
+        return acquireKeysReactive(keys, quotas);
+    }
+
+    /**
+     * Checks and reserves the permit of a shard, and retries the other shards when it ran dry
+     * <p>
+     * A call that costs more than a shard holds is spread over the shards atomically, without retries
+     *
+     * @param identifier the identifier of the selected shard
+     * @param shards the shards of the limit
+     * @param cost the number of permits to deduct
+     * @param attempt the number of the shards tried, including this one
+     *
+     * @return the verdict of the last tried shard
+     */
+    @Nonnull
+    protected Mono<LimiterVerdict> acquireShardedReactive(@Nonnull String identifier, @Nonnull LimiterShards shards, long cost, int attempt) {
+        if (shards.isSpread(cost)) {
+            String[] identifiers = shards.spreadIdentifiers(cost);
+            LimiterQuota[] quotas = shards.spreadQuotas(cost);
+            List<String> keys = new ArrayList<>(identifiers.length);
+            List<LimiterQuota> spread = new ArrayList<>(identifiers.length);
+            for (int i = 0; i < identifiers.length; i++) {
+                if (identifiers[i] != null) {
+                    keys.add(identifiers[i]);
+                    spread.add(quotas[i]);
+                }
+            }
+            return acquireKeysReactive(keys, spread);
+        }
+        if (deniedCache != null) {
+            LimiterVerdict cached = deniedCache.lookup(identifier);
+            if (cached != null) {
+                return retryShardReactive(identifier, shards, cost, attempt, cached);
+            }
+        }
+        return acquireKeysReactive(Collections.singletonList(identifier), Collections.singletonList(shards.quotaOf(identifier).withCost(cost))).flatMap(verdict -> verdict.isAllowed() ? Mono.just(verdict) : retryShardReactive(identifier, shards, cost, attempt, verdict));
+    }
+
+    @Nonnull
+    private Mono<LimiterVerdict> retryShardReactive(@Nonnull String identifier, @Nonnull LimiterShards shards, long cost, int attempt, @Nonnull LimiterVerdict verdict) {
+        String next = shards.retryAnother(identifier, verdict);
+        return (next == null || attempt >= shards.size()) ? Mono.just(verdict) : acquireShardedReactive(next, shards, cost, attempt + 1);
+    }
+
+    /**
+     * Checks and reserves the permits of the keys by a single script evaluation
+     *
+     * @param keys the keys of the limits
+     * @param quotas the quotas of the limits, in the same order as the keys
+     *
+     * @return the verdict of the limitation
+     */
+    @Nonnull
+    protected Mono<LimiterVerdict> acquireKeysReactive(@Nonnull List<String> keys, @Nonnull List<LimiterQuota> quotas) {
+        return redisTemplate.execute(RedisLimiterScript.ACQUIRE_SCRIPT, keys, Arrays.asList(RedisLimiterScript.buildArguments(quotas, limiterProperties.getKeyLayout()))).map(Object.class::cast).collectList().map(result -> {
+            // A multi bulk reply may be emitted either as a whole or element by element
+            List<?> reply = (result.size() == 1 && result.get(0) instanceof List<?> nested) ? nested : result;
+            LimiterVerdict verdict = RedisLimiterScript.toVerdict(reply);
+            int denied = RedisLimiterScript.toDeniedIndex(reply);
+            if (deniedCache != null && denied >= 0) {
+                deniedCache.put(keys.get(denied), verdict);
+            }
+            return verdict;
+        });
+    }
+
+    /**
+     * Enters the in-flight limits by the concurrency script, and polls without blocking until the wait elapses
+     *
+     * @param identifiers the identifiers of the in-flight limits, the {@code null} elements are skipped
+     * @param descriptor the descriptor of the method
+     *
+     * @return the permit to close when the call completes, which is {@link #REJECTED_PERMIT} if there are too many calls in flight
+     */
+    @Nonnull
+    protected Mono<LimiterPermit> enterPermitsReactive(@Nonnull String[] identifiers, @Nonnull LimiterDescriptor descriptor) {
+        Assert.notNull(redisTemplate, AssertMessageConst.NOT_NULL);
+        LimiterQuota[] limitQuotas = descriptor.getLimitQuotas();
+        List<String> keys = new ArrayList<>(identifiers.length);
+        List<LimiterQuota> quotas = new ArrayList<>(identifiers.length);
+        for (int i = 0; i < identifiers.length; i++) {
+            if (identifiers[i] != null) {
+                keys.add(identifiers[i]);
+                quotas.add(limitQuotas[i]);
+            }
+        }
+        String token = RedisLimiterScript.nextToken();
+        List<String> arguments = Arrays.asList(RedisLimiterScript.buildConcurrencyArguments(token, quotas));
+        Mono<LimiterPermit> permit = Mono.defer(() -> enterPolling(keys, arguments, token, System.nanoTime() + determineWaitNanos(descriptor), MIN_WAIT_INTERVAL));
+        if (limiterFailover == null) {
+            return permit;
+        }
+        return Mono.defer(() -> {
+            if (!limiterFailover.tryPass()) {
+                return Mono.fromCallable(() -> fallbackEnterReactive(identifiers, descriptor));
+            }
+            return permit.doOnNext(alias -> limiterFailover.recordSuccess()).onErrorResume(ex -> Mono.fromCallable(() -> {
+                if (log.isWarnEnabled()) {
+                    log.warn("Enter permits of identifiers {} failed, falls back to '{}'", keys, limiterFailover.getFallbackOutcome().getValue(), ex);
+                }
+                limiterFailover.recordFailure();
+                return fallbackEnterReactive(identifiers, descriptor);
+            }));
+        });
+    }
+
+    @Nonnull
+    private Mono<LimiterPermit> enterPolling(@Nonnull List<String> keys, @Nonnull List<String> arguments, @Nonnull String token, long deadline, long interval) {
+        return redisTemplate.execute(RedisLimiterScript.CONCURRENCY_SCRIPT, keys, arguments).map(Object.class::cast).collectList().flatMap(result -> {
+            List<?> reply = (result.size() == 1 && result.get(0) instanceof List<?> nested) ? nested : result;
+            if (RedisLimiterScript.toVerdict(reply).isAllowed()) {
+                return Mono.just((LimiterPermit) () -> releaseLeases(keys, token));
+            }
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0L) {
+                return Mono.just(REJECTED_PERMIT);
+            }
+            return Mono.delay(Duration.ofNanos(Math.min(interval, remaining))).then(Mono.defer(() -> enterPolling(keys, arguments, token, deadline, Math.min(interval << 1, MAX_WAIT_INTERVAL))));
+        });
+    }
+
+    @Nonnull
+    private LimiterPermit fallbackEnterReactive(@Nonnull String[] identifiers, @Nonnull LimiterDescriptor descriptor) throws InterruptedException {
+        // Never waits on the local semaphores, which would block the event loop
+        LimiterPermit permit = limiterFailover.fallbackEnter(identifiers, descriptor.getLimitQuotas(), 0L);
+        return (permit == null) ? REJECTED_PERMIT : permit;
+    }
+
+    private void releaseLeases(@Nonnull List<String> keys, @Nonnull String token) {
+        redisTemplate.execute(RedisLimiterScript.RELEASE_SCRIPT, keys, Collections.singletonList(token)).subscribe(null, ex -> {
+            if (log.isWarnEnabled()) {
+                log.warn("Release leases of identifiers {} failed, they expire by themselves", keys, ex);
+            }
+        });
+    }
+
+    @Nonnull
+    private <T> Mono<T> releaseQuietly(@Nonnull String[] identifiers, @Nonnull LimiterDescriptor descriptor, @Nonnull Throwable cause) {
+        return releasePermitsReactive(identifiers, descriptor).onErrorResume(ex -> {
+            cause.addSuppressed(ex);
+            return Mono.empty();
+        }).then(Mono.error(cause));
+    }
+
+    /**
+     * Releases the permits of the {@link LimiterAlgorithmType#COOLDOWN} limits, when the invocation failed
+     *
+     * @param identifiers the identifiers of the limits, the {@code null} elements are skipped
+     * @param descriptor the descriptor of the method
+     *
+     * @return the completion of the release
+     */
+    @Nonnull
+    protected Mono<Void> releasePermitsReactive(@Nonnull String[] identifiers, @Nonnull LimiterDescriptor descriptor) {
+        LimiterQuota[] quotas = descriptor.getLimitQuotas();
+        List<String> keys = new ArrayList<>(identifiers.length);
+        for (int i = 0; i < identifiers.length; i++) {
+            if (identifiers[i] != null && quotas[i].getAlgorithm() == LimiterAlgorithmType.COOLDOWN) {
+                keys.add(identifiers[i]);
+            }
+        }
+        if (keys.isEmpty()) {
+            return Mono.empty();
+        }
+        return redisTemplate.delete(keys.toArray(String[]::new)).doOnSuccess(count -> {
+            if (deniedCache != null) {
+                keys.forEach(deniedCache::invalidate);
+            }
+        }).then();
+    }
+
+    @Nonnull
+    protected Publisher<?> processLimitedReactive(@Nonnull ProceedingJoinPoint point, @Nonnull String[] identifiers, @Nonnull LimiterDescriptor descriptor) {
+        if (eventPublisher == null) {
+            publishLimited(identifiers, descriptor);
+            return processCallbackReactive(point, descriptor);
+        }
+        // The summaries carry the raw trigger values, which are resolved from the subscriber context again
+        return Mono.deferContextual(context -> determineTriggerValues(context, identifiers, descriptor, point.getArgs()))
+            .doOnNext(values -> publishLimited(identifiers, descriptor, () -> values))
+            .then(Mono.from(processCallbackReactive(point, descriptor)));
+    }
+
+    /**
+     * Returns the raw trigger values from the subscriber context, which are hashed in the compact identifiers if long or unsafe
+     *
+     * @param context the subscriber context
+     * @param identifiers the identifiers of the limits, the {@code null} elements are skipped
+     * @param descriptor the descriptor of the method
+     * @param arguments the arguments of the invocation
+     *
+     * @return the raw trigger values, in the order of the identifiers, the elements are {@code null} if the limits have no trigger values
+     */
+    @Nonnull
+    protected Mono<String[]> determineTriggerValues(@Nonnull ContextView context, @Nonnull String[] identifiers, @Nonnull LimiterDescriptor descriptor, @Nonnull Object[] arguments) {
+        ServerWebExchange exchange = ServerWebExchangeContextFilter.getExchange(context).orElse(null);
+        List<Mono<String>> values = new ArrayList<>(identifiers.length);
+        for (int i = 0; i < identifiers.length; i++) {
+            LimiterDescriptor limit = (i < descriptor.getLimitCount()) ? descriptor.getLimit(i) : null;
+            Mono<String> value;
+            if (limit == null || identifiers[i] == null || limit.getIdentifier() != null || limit.getLimitShards() != null) {
+                value = Mono.just(StringUtils.EMPTY);
+            } else if (limit.getTriggerResolver() instanceof LimiterKeyExpression expression) {
+                value = determineKeyValue(exchange, expression, arguments);
+            } else {
+                value = (exchange == null) ? Mono.just(StringUtils.EMPTY) : determineTriggerValue(exchange, limit.getAnnotation().triggerType());
+            }
+            values.add(value.defaultIfEmpty(StringUtils.EMPTY).onErrorReturn(StringUtils.EMPTY));
+        }
+        return Mono.zip(values, results -> {
+            String[] result = new String[results.length];
+            for (int i = 0; i < results.length; i++) {
+                result[i] = (results[i] instanceof String value && !value.isEmpty()) ? value : null;
+            }
+            return result;
+        });
+    }
+
+    @Nonnull
+    private Publisher<?> processCallbackReactive(@Nonnull ProceedingJoinPoint point, @Nonnull LimiterDescriptor descriptor) {
+        if (BooleanUtils.isTrue(limiterProperties.getThrowException())) {
+            return Mono.error(new RateLimitedException());
+        }
+        Assert.notNull(limitCallback, AssertMessageConst.NOT_NULL);
+        return Mono.defer(() -> {
+            try {
+                Object result = limitCallback.process(point, descriptor.getAnnotation());
+                return (result instanceof Publisher<?> publisher) ? Mono.from(publisher) : Mono.justOrEmpty(result);
+            } catch (Exception ex) {
+                return Mono.error(ex);
+            }
+        });
+    }
+
+    @Nonnull
+    private static Publisher<?> proceedPoint(@Nonnull ProceedingJoinPoint point) {
+        try {
+            Object result = point.proceed();
+            return (result == null) ? Mono.empty() : (Publisher<?>) result;
+        } catch (Throwable ex) {
+            return Mono.error(ex);
+        }
+    }
+
+    @Nonnull
+    private static String getHostAddress(@Nonnull InetSocketAddress address) {
+        return (address.getAddress() == null) ? address.getHostString() : address.getAddress().getHostAddress();
+    }
+}
@@ -17,39 +17,61 @@
 package com.yookue.springstarter.ratelimiter.aspect;
 
 
-import java.time.temporal.ChronoUnit;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 import jakarta.annotation.Nonnull;
 import jakarta.annotation.Nullable;
-import jakarta.servlet.http.HttpServletRequest;
-import org.apache.commons.lang3.BooleanUtils;
-import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.annotation.Aspect;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.util.Assert;
 import com.yookue.commonplexus.javaseutil.constant.AssertMessageConst;
-import com.yookue.commonplexus.javaseutil.util.LocalDateWraps;
-import com.yookue.commonplexus.springutil.event.RateLimitedEvent;
-import com.yookue.commonplexus.springutil.exception.RateLimitedException;
-import com.yookue.commonplexus.springutil.util.RedisTemplateWraps;
-import com.yookue.commonplexus.springutil.util.WebUtilsWraps;
-import com.yookue.springstarter.ratelimiter.annotation.RateLimit;
 import com.yookue.springstarter.ratelimiter.facade.RateLimitCallback;
+import com.yookue.springstarter.ratelimiter.facade.RateLimitRecorder;
 import com.yookue.springstarter.ratelimiter.property.RateLimiterProperties;
+import com.yookue.springstarter.ratelimiter.structure.LimiterDescriptor;
+import com.yookue.springstarter.ratelimiter.structure.LimiterLease;
+import com.yookue.springstarter.ratelimiter.structure.LimiterQuota;
+import com.yookue.springstarter.ratelimiter.structure.LimiterVerdict;
+import com.yookue.springstarter.ratelimiter.support.DeniedVerdictCache;
+import com.yookue.springstarter.ratelimiter.support.LimiterPermit;
+import com.yookue.springstarter.ratelimiter.support.PermitLeasePool;
+import com.yookue.springstarter.ratelimiter.support.RedisLimiterScript;
 import lombok.Getter;
 import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
 
 
 /**
  * Redis aspect for rate limit
+ * <p>
+ * The check and the reservation of the identifier are performed by a single lua script evaluation,
+ * so concurrent requests for the same identifier cannot pass together, whatever the algorithm is.
+ * With a {@link DeniedVerdictCache}, the identifiers that are already limited are rejected without calling redis.
+ * With a {@link PermitLeasePool}, the fixed window and token bucket limiters spend blocks of leased permits locally.
+ * The stacked limits of a method are checked and reserved by a single evaluation, and are never leased.
+ * The calls in flight hold leases that expire after {@code ttl}, so that the calls of crashed nodes are released eventually.
+ * With a {@code reactiveTemplate} of the same connection factory, the scripts are bounded by the latency budget of the failover on the asynchronous client, without a thread pool
  *
  * @author David Hsing
  */
 @Aspect
 @Getter
 @Setter
+@Slf4j
 @SuppressWarnings("unused")
-public class RedisRateLimitAspect extends AbstractRateLimitAspect {
+public class RedisRateLimitAspect extends AbstractBlockingRateLimitAspect {
+    private static final long MIN_WAIT_INTERVAL = TimeUnit.MILLISECONDS.toNanos(2L);
+    private static final long MAX_WAIT_INTERVAL = TimeUnit.MILLISECONDS.toNanos(50L);
     private StringRedisTemplate redisTemplate;
+    private ReactiveStringRedisTemplate reactiveTemplate;
+    private DeniedVerdictCache deniedCache;
+    private PermitLeasePool leasePool;
 
     public RedisRateLimitAspect(RateLimiterProperties limitProperties) {
         super(limitProperties);
@@ -60,27 +82,144 @@ public class RedisRateLimitAspect extends AbstractRateLimitAspect {
         this.redisTemplate = template;
     }
 
-    protected Object processPoint(@Nonnull ProceedingJoinPoint point, @Nonnull String identifier, @Nonnull RateLimit annotation) throws Throwable {
+    @Override
+    protected void registerGauges(@Nonnull RateLimitRecorder recorder) {
+        super.registerGauges(recorder);
+        if (deniedCache != null) {
+            recorder.registerGauge("rate.limiter.near.cache.entries", deniedCache, DeniedVerdictCache::size);    // $NON-NLS-1$
+            recorder.registerGauge("rate.limiter.near.cache.hit.ratio", deniedCache, DeniedVerdictCache::getHitRate);    // $NON-NLS-1$
+        }
+        if (leasePool != null) {
+            recorder.registerGauge("rate.limiter.lease.entries", leasePool, PermitLeasePool::size);    // $NON-NLS-1$
+        }
+    }
+
+    @Nonnull
+    @Override
+    protected LimiterVerdict acquirePermit(@Nonnull String identifier, @Nonnull LimiterQuota quota) throws Exception {
+        Assert.notNull(redisTemplate, AssertMessageConst.NOT_NULL);
+        if (deniedCache != null) {
+            LimiterVerdict cached = deniedCache.lookup(identifier);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        if (leasePool != null && PermitLeasePool.isSupported(quota)) {
+            // The denials of the lease pool are cached by the leaser, only when redis denied them
+            return leasePool.acquire(identifier, quota, this::leasePermits);
+        }
+        List<?> result = executeScript(RedisLimiterScript.ACQUIRE_SCRIPT, Collections.singletonList(identifier), (Object[]) RedisLimiterScript.buildArguments(quota, limiterProperties.getKeyLayout()));
+        LimiterVerdict verdict = RedisLimiterScript.toVerdict(result);
+        if (deniedCache != null) {
+            deniedCache.put(identifier, verdict);
+        }
+        return verdict;
+    }
+
+    @Nonnull
+    @Override
+    protected LimiterVerdict acquireStacked(@Nonnull String[] identifiers, @Nonnull LimiterQuota[] limitQuotas) {
+        Assert.notNull(redisTemplate, AssertMessageConst.NOT_NULL);
+        List<String> keys = new ArrayList<>(identifiers.length);
+        List<LimiterQuota> quotas = new ArrayList<>(identifiers.length);
+        for (int i = 0; i < identifiers.length; i++) {
+            if (identifiers[i] == null) {
+                continue;
+            }
+            if (deniedCache != null) {
+                LimiterVerdict cached = deniedCache.lookup(identifiers[i]);
+                if (cached != null) {
+                    return cached;
+                }
+            }
+            keys.add(identifiers[i]);
+            quotas.add(limitQuotas[i]);
+        }
+        List<?> result = executeScript(RedisLimiterScript.ACQUIRE_SCRIPT, keys, (Object[]) RedisLimiterScript.buildArguments(quotas, limiterProperties.getKeyLayout()));
+        LimiterVerdict verdict = RedisLimiterScript.toVerdict(result);
+        int denied = RedisLimiterScript.toDeniedIndex(result);
+        if (deniedCache != null && denied >= 0) {
+            deniedCache.put(keys.get(denied), verdict);
+        }
+        return verdict;
+    }
+
+    @Nullable
+    @Override
+    protected LimiterPermit enterPermits(@Nonnull String[] identifiers, @Nonnull LimiterDescriptor descriptor, long waitNanos) throws InterruptedException {
         Assert.notNull(redisTemplate, AssertMessageConst.NOT_NULL);
-        if (RedisTemplateWraps.existsKey(redisTemplate, identifier)) {
-            HttpServletRequest request = WebUtilsWraps.getContextServletRequest();
-            if (request != null) {
-                super.applicationContext.publishEvent(new RateLimitedEvent(request));
+        LimiterQuota[] limitQuotas = descriptor.getLimitQuotas();
+        List<String> keys = new ArrayList<>(identifiers.length);
+        List<LimiterQuota> quotas = new ArrayList<>(identifiers.length);
+        for (int i = 0; i < identifiers.length; i++) {
+            if (identifiers[i] != null) {
+                keys.add(identifiers[i]);
+                quotas.add(limitQuotas[i]);
+            }
+        }
+        String token = RedisLimiterScript.nextToken();
+        Object[] arguments = RedisLimiterScript.buildConcurrencyArguments(token, quotas);
+        long deadline = System.nanoTime() + waitNanos, interval = MIN_WAIT_INTERVAL;
+        while (true) {
+            List<?> result = executeScript(RedisLimiterScript.CONCURRENCY_SCRIPT, keys, arguments);
+            if (RedisLimiterScript.toVerdict(result).isAllowed()) {
+                return () -> releaseLeases(keys, token);
             }
-            if (BooleanUtils.isTrue(super.limiterProperties.getThrowException())) {
-                throw new RateLimitedException();
+            // Polls with backoff, the calls in flight of the other nodes cannot notify this node
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0L) {
+                return null;
             }
-            Assert.notNull(super.limitCallback, AssertMessageConst.NOT_NULL);
-            return super.limitCallback.process(point, annotation);
-        } else {
-            String dateTime = LocalDateWraps.formatCurrentDateTime();
-            Object result = point.proceed();
-            if (annotation.ttl() <= 0L || annotation.unit() == ChronoUnit.FOREVER) {
-                redisTemplate.boundValueOps(identifier).set(dateTime);
-            } else {
-                redisTemplate.boundValueOps(identifier).set(dateTime, annotation.unit().getDuration().multipliedBy(annotation.ttl()));
+            TimeUnit.NANOSECONDS.sleep(Math.min(interval, remaining));
+            interval = Math.min(interval << 1, MAX_WAIT_INTERVAL);
+        }
+    }
+
+    protected void releaseLeases(@Nonnull List<String> keys, @Nonnull String token) {
+        try {
+            redisTemplate.execute(RedisLimiterScript.RELEASE_SCRIPT, keys, token);
+        } catch (RuntimeException ex) {
+            if (log.isWarnEnabled()) {
+                log.warn("Release leases of identifiers {} failed, they expire by themselves", keys, ex);
             }
-            return result;
+        }
+    }
+
+    @Nonnull
+    protected LimiterLease leasePermits(@Nonnull String identifier, @Nonnull LimiterQuota quota, long block, long returned) {
+        List<?> result = executeScript(RedisLimiterScript.LEASE_SCRIPT, Collections.singletonList(identifier), (Object[]) RedisLimiterScript.buildLeaseArguments(quota, block, returned));
+        LimiterLease lease = RedisLimiterScript.toLease(result);
+        if (deniedCache != null && lease.getGranted() <= 0L) {
+            deniedCache.put(identifier, new LimiterVerdict(false, 0L, lease.getResetMillis()));
+        }
+        return lease;
+    }
+
+    /**
+     * Executes the script, within the latency budget of the failover if there is a reactive template
+     *
+     * @param script the script to execute
+     * @param keys the keys of the script
+     * @param arguments the arguments of the script
+     *
+     * @return the result of the script
+     */
+    @Nullable
+    @SuppressWarnings("rawtypes")
+    protected List<?> executeScript(@Nonnull RedisScript<List> script, @Nonnull List<String> keys, @Nonnull Object... arguments) {
+        Duration timeout = (reactiveTemplate == null || limiterFailover == null) ? null : limiterFailover.getTimeout();
+        if (timeout == null) {
+            return redisTemplate.execute(script, keys, arguments);
+        }
+        // The timeout cancels the command on the client, the calling thread only waits for the reply
+        return reactiveTemplate.execute(script, keys, Arrays.asList(arguments)).map(Object.class::cast).collectList().timeout(timeout).block();
+    }
+
+    @Override
+    protected void releasePermit(@Nonnull String identifier, @Nonnull LimiterQuota quota) {
+        redisTemplate.delete(identifier);
+        if (deniedCache != null) {
+            deniedCache.invalidate(identifier);
         }
     }
 }
@@ -17,24 +17,67 @@
 package com.yookue.springstarter.ratelimiter.config;
 
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
 import jakarta.annotation.Nonnull;
 import jakarta.annotation.Nullable;
+import org.apache.commons.lang3.BooleanUtils;
 import org.apache.commons.lang3.ObjectUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.SystemUtils;
 import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionMessage;
+import org.springframework.boot.autoconfigure.condition.ConditionOutcome;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.condition.SpringBootCondition;
+import org.springframework.boot.autoconfigure.web.ServerProperties;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.MessageSource;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Conditional;
+import org.springframework.context.annotation.ConditionContext;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Import;
 import org.springframework.core.annotation.Order;
+import org.springframework.core.type.AnnotatedTypeMetadata;
+import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.CollectionUtils;
+import org.springframework.web.filter.reactive.ServerWebExchangeContextFilter;
+import com.yookue.springstarter.ratelimiter.aspect.AbstractBlockingRateLimitAspect;
+import com.yookue.springstarter.ratelimiter.aspect.LocalRateLimitAspect;
+import com.yookue.springstarter.ratelimiter.aspect.MappedRateLimitAspect;
+import com.yookue.springstarter.ratelimiter.aspect.ReactiveRedisRateLimitAspect;
 import com.yookue.springstarter.ratelimiter.aspect.RedisRateLimitAspect;
 import com.yookue.springstarter.ratelimiter.facade.RateLimitCallback;
+import com.yookue.springstarter.ratelimiter.facade.RateLimitRecorder;
 import com.yookue.springstarter.ratelimiter.facade.impl.DefaultRateLimitCallback;
+import com.yookue.springstarter.ratelimiter.facade.impl.MicrometerRateLimitRecorder;
+import com.yookue.springstarter.ratelimiter.filter.RateLimitFilter;
+import com.yookue.springstarter.ratelimiter.filter.RateLimitRuleFilter;
 import com.yookue.springstarter.ratelimiter.property.RateLimiterProperties;
+import com.yookue.springstarter.ratelimiter.support.DeniedVerdictCache;
+import com.yookue.springstarter.ratelimiter.support.HeavyHitterSketch;
+import com.yookue.springstarter.ratelimiter.support.LimiterEventPublisher;
+import com.yookue.springstarter.ratelimiter.support.LimiterFailover;
+import com.yookue.springstarter.ratelimiter.support.LimiterRuleRefresher;
+import com.yookue.springstarter.ratelimiter.support.LimiterThrottle;
+import com.yookue.springstarter.ratelimiter.support.LocalLimiterStore;
+import com.yookue.springstarter.ratelimiter.support.MappedLimiterStore;
+import com.yookue.springstarter.ratelimiter.support.PermitLeasePool;
 
 
 /**
@@ -44,10 +87,83 @@ import com.yookue.springstarter.ratelimiter.property.RateLimiterProperties;
  */
 @Configuration(proxyBeanMethods = false)
 @ConditionalOnProperty(prefix = RateLimiterAutoConfiguration.PROPERTIES_PREFIX, name = "enabled", havingValue = "true", matchIfMissing = true)
-@Import(value = {RateLimiterAutoConfiguration.Entry.class, RateLimiterAutoConfiguration.Redis.class})
+@Import(value = {RateLimiterAutoConfiguration.Entry.class, RateLimiterAutoConfiguration.Metrics.class, RateLimiterAutoConfiguration.Redis.class, RateLimiterAutoConfiguration.Local.class, RateLimiterAutoConfiguration.Mapped.class, RateLimiterAutoConfiguration.ReactiveRedis.class, RateLimiterAutoConfiguration.Filter.class, RateLimiterAutoConfiguration.Rules.class})
 public class RateLimiterAutoConfiguration {
     public static final String PROPERTIES_PREFIX = "spring.rate-limiter";    // $NON-NLS-1$
     public static final String REDIS_TEMPLATE = "rateLimiterRedisTemplate";    // $NON-NLS-1$
+    public static final String REACTIVE_REDIS_TEMPLATE = "rateLimiterReactiveRedisTemplate";    // $NON-NLS-1$
+
+
+    @Nullable
+    static LimiterFailover buildFailover(@Nonnull RateLimiterProperties properties, @Nullable ServerProperties serverProperties, boolean pooled) {
+        RateLimiterProperties.Failover props = properties.getFailover();
+        if (BooleanUtils.isNotTrue(props.getEnabled())) {
+            return null;
+        }
+        RateLimiterProperties.Local local = properties.getLocal();
+        LocalLimiterStore store = BooleanUtils.isTrue(props.getLocalFallback()) ? new LocalLimiterStore(local.getMaxEntries(), local.getSweepInterval()) : null;
+        return new LimiterFailover(props.getTimeout(), props.getFailureThreshold(), props.getOpenDuration(), props.getFailureType(), store, pooled ? determineTimeoutThreads(props, serverProperties) : 0);
+    }
+
+
+    static int determineTimeoutThreads(@Nonnull RateLimiterProperties.Failover properties, @Nullable ServerProperties serverProperties) {
+        if (properties.getTimeoutThreads() != null) {
+            return properties.getTimeoutThreads();
+        }
+        // Each worker thread waits for one storage call at most
+        ServerProperties server = ObjectUtils.defaultIfNull(serverProperties, new ServerProperties());
+        return server.getTomcat().getThreads().getMax();
+    }
+
+
+    @Nullable
+    static ReactiveStringRedisTemplate buildReactiveTemplate(@Nonnull RateLimiterProperties properties, @Nullable StringRedisTemplate template) {
+        Duration timeout = properties.getFailover().getTimeout();
+        if (template == null || BooleanUtils.isNotTrue(properties.getFailover().getEnabled()) || timeout == null || timeout.isNegative() || timeout.isZero() || !ClassUtils.isPresent("reactor.core.publisher.Mono", null)) {    // $NON-NLS-1$
+            return null;
+        }
+        // Lettuce is asynchronous, so the latency of the blocking calls is bounded without a thread pool
+        return (template.getConnectionFactory() instanceof ReactiveRedisConnectionFactory factory) ? new ReactiveStringRedisTemplate(factory) : null;
+    }
+
+
+    @Nonnull
+    static RateLimitCallback determineFilterCallback(@Nonnull RateLimiterProperties properties, @Nonnull ObjectProvider<RateLimitCallback> callback, @Nonnull ObjectProvider<MessageSource> messageSource) {
+        RateLimitCallback present = callback.getIfAvailable();
+        if (present != null) {
+            return present;
+        }
+        // The default callback is absent when the aspects throw exceptions, but the filters always reply by a callback
+        DefaultRateLimitCallback result = new DefaultRateLimitCallback(properties);
+        messageSource.ifAvailable(result::setMessageSource);
+        return result;
+    }
+
+
+    @Nullable
+    static HeavyHitterSketch buildSketch(@Nonnull RateLimiterProperties properties) {
+        RateLimiterProperties.Sketch props = properties.getSketch();
+        if (BooleanUtils.isNotTrue(props.getEnabled())) {
+            return null;
+        }
+        return new HeavyHitterSketch(props.getErrorRate(), props.getFailureProbability(), props.getWindow(), props.getEscalationRatio());
+    }
+
+
+    @Nonnull
+    static LimiterThrottle buildThrottle(@Nonnull RateLimiterProperties properties) {
+        return new LimiterThrottle(properties.getThrottle().getMaxQueued(), properties.getThrottle().getMaxBlocking());
+    }
+
+
+    @Nullable
+    static LimiterEventPublisher buildEventPublisher(@Nonnull RateLimiterProperties properties, @Nonnull ApplicationEventPublisher publisher) {
+        RateLimiterProperties.Event props = properties.getEvent();
+        if (BooleanUtils.isNotTrue(props.getAsync())) {
+            return null;
+        }
+        return new LimiterEventPublisher(publisher, props.getSummaryInterval(), props.getMaxEntries(), props.getQueueCapacity());
+    }
 
 
     @Order(value = 0)
@@ -62,6 +178,18 @@ public class RateLimiterAutoConfiguration {
     }
 
 
+    @Order(value = 0)
+    @ConditionalOnProperty(prefix = RateLimiterAutoConfiguration.PROPERTIES_PREFIX, name = "metrics-enabled", havingValue = "true", matchIfMissing = true)
+    @ConditionalOnClass(name = "io.micrometer.core.instrument.MeterRegistry")
+    static class Metrics {
+        @Bean
+        @ConditionalOnMissingBean(value = RateLimitRecorder.class)
+        public MicrometerRateLimitRecorder micrometerRateLimitRecorder(@Nonnull RateLimiterProperties properties) {
+            return new MicrometerRateLimitRecorder(properties.getStorageType());
+        }
+    }
+
+
     @Order(value = 1)
     @ConditionalOnProperty(prefix = RateLimiterAutoConfiguration.PROPERTIES_PREFIX, name = "storage-type", havingValue = "redis", matchIfMissing = true)
     @ConditionalOnClass(name = "org.springframework.data.redis.core.RedisOperations")
@@ -69,8 +197,154 @@ public class RateLimiterAutoConfiguration {
         @Bean
         @ConditionalOnMissingBean
         @SuppressWarnings("SpringJavaInjectionPointsAutowiringInspection")
-        public RedisRateLimitAspect redisRateLimitAspect(@Nonnull RateLimiterProperties properties, @Nonnull ObjectProvider<RateLimitCallback> callback, @Nullable @Qualifier(value = REDIS_TEMPLATE) StringRedisTemplate preferredTemplate, @Nonnull ObjectProvider<StringRedisTemplate> presentTemplate) {
-            return new RedisRateLimitAspect(properties, callback.getIfAvailable(), ObjectUtils.defaultIfNull(preferredTemplate, presentTemplate.getIfAvailable()));
+        public RedisRateLimitAspect redisRateLimitAspect(@Nonnull RateLimiterProperties properties, @Nonnull ObjectProvider<RateLimitCallback> callback, @Nullable @Qualifier(value = REDIS_TEMPLATE) StringRedisTemplate preferredTemplate, @Nonnull ObjectProvider<StringRedisTemplate> presentTemplate, @Nonnull ObjectProvider<RateLimitRecorder> recorder, @Nonnull ObjectProvider<ServerProperties> serverProperties, @Nonnull ApplicationEventPublisher publisher) {
+            StringRedisTemplate template = ObjectUtils.defaultIfNull(preferredTemplate, presentTemplate.getIfAvailable());
+            RedisRateLimitAspect aspect = new RedisRateLimitAspect(properties, callback.getIfAvailable(), template);
+            if (BooleanUtils.isTrue(properties.getNearCache().getEnabled())) {
+                aspect.setDeniedCache(new DeniedVerdictCache(properties.getNearCache().getMaxEntries()));
+            }
+            RateLimiterProperties.Lease lease = properties.getLease();
+            if (BooleanUtils.isTrue(lease.getEnabled())) {
+                aspect.setLeasePool(new PermitLeasePool(lease.getMaxEntries(), lease.getMaxBlockSize(), lease.getMaxShare(), lease.getTargetInterval(), lease.getLeaseTtl()));
+            }
+            aspect.setHeavyHitterSketch(buildSketch(properties));
+            aspect.setReactiveTemplate(buildReactiveTemplate(properties, template));
+            aspect.setLimiterFailover(buildFailover(properties, serverProperties.getIfAvailable(), aspect.getReactiveTemplate() == null));
+            aspect.setLimiterThrottle(buildThrottle(properties));
+            aspect.setEventPublisher(buildEventPublisher(properties, publisher));
+            aspect.setLimitRecorder(recorder.getIfAvailable());
+            return aspect;
+        }
+    }
+
+
+    @Order(value = 2)
+    @ConditionalOnProperty(prefix = RateLimiterAutoConfiguration.PROPERTIES_PREFIX, name = "storage-type", havingValue = "local")
+    static class Local {
+        @Bean
+        @ConditionalOnMissingBean
+        public LocalRateLimitAspect localRateLimitAspect(@Nonnull RateLimiterProperties properties, @Nonnull ObjectProvider<RateLimitCallback> callback, @Nonnull ObjectProvider<RateLimitRecorder> recorder, @Nonnull ApplicationEventPublisher publisher) {
+            RateLimiterProperties.Local props = properties.getLocal();
+            LocalRateLimitAspect aspect = new LocalRateLimitAspect(properties, callback.getIfAvailable(), new LocalLimiterStore(props.getMaxEntries(), props.getSweepInterval()));
+            aspect.setLimiterThrottle(buildThrottle(properties));
+            aspect.setEventPublisher(buildEventPublisher(properties, publisher));
+            aspect.setLimitRecorder(recorder.getIfAvailable());
+            return aspect;
+        }
+    }
+
+
+    @Order(value = 2)
+    @ConditionalOnProperty(prefix = RateLimiterAutoConfiguration.PROPERTIES_PREFIX, name = "storage-type", havingValue = "mapped")
+    static class Mapped {
+        private static final String DEFAULT_FILE = "rate-limiter.slots";    // $NON-NLS-1$
+
+        @Bean
+        @ConditionalOnMissingBean
+        public MappedRateLimitAspect mappedRateLimitAspect(@Nonnull RateLimiterProperties properties, @Nonnull ObjectProvider<RateLimitCallback> callback, @Nonnull ObjectProvider<RateLimitRecorder> recorder, @Nonnull ApplicationEventPublisher publisher) throws IOException {
+            RateLimiterProperties.Mapped props = properties.getMapped();
+            Path file = StringUtils.isBlank(props.getFile()) ? Path.of(SystemUtils.JAVA_IO_TMPDIR, DEFAULT_FILE) : Path.of(props.getFile());
+            MappedRateLimitAspect aspect = new MappedRateLimitAspect(properties, callback.getIfAvailable(), new MappedLimiterStore(file, props.getSlots(), props.getMaxProbes()));
+            aspect.setLimiterThrottle(buildThrottle(properties));
+            aspect.setEventPublisher(buildEventPublisher(properties, publisher));
+            aspect.setLimitRecorder(recorder.getIfAvailable());
+            return aspect;
+        }
+    }
+
+
+    @Order(value = 3)
+    @ConditionalOnProperty(prefix = RateLimiterAutoConfiguration.PROPERTIES_PREFIX, name = "storage-type", havingValue = "reactive-redis")
+    @ConditionalOnClass(name = {"org.springframework.data.redis.core.ReactiveRedisOperations", "reactor.core.publisher.Mono"})
+    @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+    static class ReactiveRedis {
+        @Bean
+        @ConditionalOnMissingBean
+        public ServerWebExchangeContextFilter serverWebExchangeContextFilter() {
+            return new ServerWebExchangeContextFilter();
+        }
+
+        @Bean
+        @ConditionalOnMissingBean
+        @SuppressWarnings("SpringJavaInjectionPointsAutowiringInspection")
+        public ReactiveRedisRateLimitAspect reactiveRedisRateLimitAspect(@Nonnull RateLimiterProperties properties, @Nonnull ObjectProvider<RateLimitCallback> callback, @Nullable @Qualifier(value = REACTIVE_REDIS_TEMPLATE) ReactiveStringRedisTemplate preferredTemplate, @Nonnull ObjectProvider<ReactiveStringRedisTemplate> presentTemplate, @Nonnull ObjectProvider<RateLimitRecorder> recorder, @Nonnull ApplicationEventPublisher publisher) {
+            ReactiveRedisRateLimitAspect aspect = new ReactiveRedisRateLimitAspect(properties, callback.getIfAvailable(), ObjectUtils.defaultIfNull(preferredTemplate, presentTemplate.getIfAvailable()));
+            if (BooleanUtils.isTrue(properties.getNearCache().getEnabled())) {
+                aspect.setDeniedCache(new DeniedVerdictCache(properties.getNearCache().getMaxEntries()));
+            }
+            aspect.setHeavyHitterSketch(buildSketch(properties));
+            aspect.setLimiterFailover(buildFailover(properties, null, false));
+            aspect.setLimiterThrottle(buildThrottle(properties));
+            aspect.setEventPublisher(buildEventPublisher(properties, publisher));
+            aspect.setLimitRecorder(recorder.getIfAvailable());
+            return aspect;
+        }
+    }
+
+
+    @Order(value = 4)
+    @ConditionalOnProperty(prefix = RateLimiterAutoConfiguration.PROPERTIES_PREFIX, name = "enforcement-type", havingValue = "filter")
+    @ConditionalOnClass(name = "org.springframework.web.servlet.DispatcherServlet")
+    @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+    static class Filter {
+        @Bean
+        @ConditionalOnBean(value = AbstractBlockingRateLimitAspect.class)
+        @ConditionalOnMissingBean
+        public RateLimitFilter rateLimitFilter(@Nonnull RateLimiterProperties properties, @Nonnull AbstractBlockingRateLimitAspect aspect, @Nonnull ObjectProvider<RateLimitCallback> callback, @Nonnull ObjectProvider<MessageSource> messageSource) {
+            return new RateLimitFilter(properties, aspect, determineFilterCallback(properties, callback, messageSource));
+        }
+
+        @Bean
+        @ConditionalOnBean(value = RateLimitFilter.class)
+        public FilterRegistrationBean<RateLimitFilter> rateLimitFilterRegistration(@Nonnull RateLimiterProperties properties, @Nonnull RateLimitFilter filter) {
+            FilterRegistrationBean<RateLimitFilter> registration = new FilterRegistrationBean<>(filter);
+            registration.setOrder(properties.getFilterOrder());
+            return registration;
+        }
+    }
+
+
+    @Order(value = 5)
+    @ConditionalOnClass(name = "org.springframework.web.util.pattern.PathPatternParser")
+    @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+    @Conditional(value = RateLimiterAutoConfiguration.RulesCondition.class)
+    static class Rules {
+        @Bean
+        @ConditionalOnBean(value = AbstractBlockingRateLimitAspect.class)
+        @ConditionalOnMissingBean
+        public RateLimitRuleFilter rateLimitRuleFilter(@Nonnull RateLimiterProperties properties, @Nonnull AbstractBlockingRateLimitAspect aspect, @Nonnull ObjectProvider<RateLimitCallback> callback, @Nonnull ObjectProvider<MessageSource> messageSource) {
+            return new RateLimitRuleFilter(properties, aspect, determineFilterCallback(properties, callback, messageSource));
+        }
+
+        @Bean
+        @ConditionalOnBean(value = RateLimitRuleFilter.class)
+        public FilterRegistrationBean<RateLimitRuleFilter> rateLimitRuleFilterRegistration(@Nonnull RateLimiterProperties properties, @Nonnull RateLimitRuleFilter filter) {
+            FilterRegistrationBean<RateLimitRuleFilter> registration = new FilterRegistrationBean<>(filter);
+            registration.setOrder(properties.getFilterOrder());
+            return registration;
+        }
+
+        @Bean
+        @ConditionalOnClass(name = LimiterRuleRefresher.ENVIRONMENT_CHANGE_EVENT)
+        @ConditionalOnBean(value = RateLimitRuleFilter.class)
+        public LimiterRuleRefresher limiterRuleRefresher(@Nonnull RateLimitRuleFilter filter) {
+            return new LimiterRuleRefresher(filter);
+        }
+    }
+
+
+    /**
+     * Condition that matches when any rule of rate limit is configured
+     */
+    static class RulesCondition extends SpringBootCondition {
+        @Override
+        public ConditionOutcome getMatchOutcome(@Nonnull ConditionContext context, @Nonnull AnnotatedTypeMetadata metadata) {
+            ConditionMessage.Builder message = ConditionMessage.forCondition("Rate limit rules");    // $NON-NLS-1$
+            List<RateLimiterProperties.Rule> rules = Binder.get(context.getEnvironment()).bind(PROPERTIES_PREFIX + ".rules", Bindable.listOf(RateLimiterProperties.Rule.class)).orElse(null);    // $NON-NLS-1$
+            if (CollectionUtils.isEmpty(rules)) {
+                return ConditionOutcome.noMatch(message.didNotFind("rules").atAll());    // $NON-NLS-1$
+            }
+            return ConditionOutcome.match(message.foundExactly(rules.size() + " rules"));    // $NON-NLS-1$
         }
     }
 }
@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yookue.springstarter.ratelimiter.enumeration;
+
+
+import com.yookue.commonplexus.javaseutil.support.ValueEnum;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+
+/**
+ * Enumerations of limiter algorithm types
+ *
+ * @author David Hsing
+ */
+@AllArgsConstructor
+@Getter
+@SuppressWarnings("unused")
+public enum LimiterAlgorithmType implements ValueEnum<String> {
+    /**
+     * At most one call per period
+     */
+    COOLDOWN("cooldown"),    // $NON-NLS-1$
+
+    /**
+     * At most {@code permits} calls per period, the period starts with the first call
+     */
+    FIXED_WINDOW("fixed-window"),    // $NON-NLS-1$
+
+    /**
+     * At most {@code permits} calls in any rolling period, tracks the timestamp of every call
+     */
+    SLIDING_LOG("sliding-log"),    // $NON-NLS-1$
+
+    /**
+     * At most {@code permits} calls in any rolling period, approximated by weighting the previous fixed window
+     */
+    SLIDING_WINDOW("sliding-window"),    // $NON-NLS-1$
+
+    /**
+     * Refills {@code permits} tokens per period, and holds at most {@code capacity} tokens for bursts
+     */
+    TOKEN_BUCKET("token-bucket"),    // $NON-NLS-1$
+
+    /**
+     * At most {@code permits} calls in flight at the same time, the period is the lease of each call on the remote storages
+     */
+    CONCURRENCY("concurrency"),    // $NON-NLS-1$
+
+    /**
+     * At most an adaptive limit of calls in flight on each node, the limit follows the latency of the calls, and never exceeds {@code permits}
+     */
+    ADAPTIVE("adaptive");    // $NON-NLS-1$
+
+    private final String value;
+
+    /**
+     * Returns whether the algorithm limits the calls in flight, rather than the rate of the calls
+     *
+     * @return whether the algorithm limits the calls in flight
+     */
+    public boolean isInFlight() {
+        return this == CONCURRENCY || this == ADAPTIVE;
+    }
+
+    /**
+     * Returns whether the algorithm counts the permits, so a call may deduct more than one permit
+     *
+     * @return whether the algorithm counts the permits
+     */
+    public boolean isWeighted() {
+        return this == FIXED_WINDOW || this == SLIDING_WINDOW || this == TOKEN_BUCKET;
+    }
+}
@@ -31,7 +31,10 @@ import lombok.Getter;
 @Getter
 @SuppressWarnings("unused")
 public enum LimiterStorageType implements ValueEnum<String> {
-    REDIS("redis");    // $NON-NLS-1$
+    LOCAL("local"),    // $NON-NLS-1$
+    REDIS("redis"),    // $NON-NLS-1$
+    REACTIVE_REDIS("reactive-redis"),    // $NON-NLS-1$
+    MAPPED("mapped");    // $NON-NLS-1$
 
     private final String value;
 }
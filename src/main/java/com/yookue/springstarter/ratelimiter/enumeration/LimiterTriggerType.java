@@ -34,7 +34,8 @@ public enum LimiterTriggerType implements ValueEnum<String> {
     ANY("any"),    // $NON-NLS-1$
     IP_ADDRESS("ip-address"),    // $NON-NLS-1$
     SESSION("session"),    // $NON-NLS-1$
-    USERNAME("username");    // $NON-NLS-1$
+    USERNAME("username"),    // $NON-NLS-1$
+    KEY("key");    // $NON-NLS-1$
 
     private final String value;
 }
@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yookue.springstarter.ratelimiter.event;
+
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+import jdk.jfr.Timespan;
+import lombok.Getter;
+import lombok.Setter;
+
+
+/**
+ * Flight recorder event for a decision of the limiter, from the resolution of the identifiers to the verdict
+ * <p>
+ * Only committed when {@code spring.rate-limiter.flight-recorder-enabled} is {@code true} and the event type is enabled by the recording,
+ * the threshold is the {@code threshold} setting of the event type in the recording
+ *
+ * @author David Hsing
+ */
+@Name(value = "com.yookue.springstarter.ratelimiter.Decision")    // $NON-NLS-1$
+@Label(value = "Rate Limiter Decision")    // $NON-NLS-1$
+@Category(value = {"Rate Limiter"})    // $NON-NLS-1$
+@Description(value = "Decision of a rate limit, including the resolution of the identifiers and the storage round trip")    // $NON-NLS-1$
+@StackTrace(value = false)
+@Threshold(value = "0 ms")    // $NON-NLS-1$
+@Getter
+@Setter
+@SuppressWarnings("unused")
+public class RateLimitDecisionEvent extends jdk.jfr.Event {
+    @Label(value = "Limit")    // $NON-NLS-1$
+    @Description(value = "The qualified method name or the name of the rule")    // $NON-NLS-1$
+    private String limit;
+
+    @Label(value = "Trigger Type")    // $NON-NLS-1$
+    private String triggerType;
+
+    @Label(value = "Algorithm")    // $NON-NLS-1$
+    private String algorithm;
+
+    @Label(value = "Outcome")    // $NON-NLS-1$
+    @Description(value = "Allowed or denied, or skipped if the trigger values are absent")    // $NON-NLS-1$
+    private String outcome;
+
+    @Label(value = "Resolution Time")    // $NON-NLS-1$
+    @Description(value = "The time to resolve the identifiers and the costs")    // $NON-NLS-1$
+    @Timespan(value = Timespan.NANOSECONDS)
+    private long resolutionTime;
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yookue.springstarter.ratelimiter.event;
+
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+import lombok.Getter;
+import lombok.Setter;
+
+
+/**
+ * Flight recorder event for a round trip of the limiter storage, the duration is the round trip time
+ * <p>
+ * Only committed when {@code spring.rate-limiter.flight-recorder-enabled} is {@code true} and the event type is enabled by the recording,
+ * the threshold is the {@code threshold} setting of the event type in the recording
+ *
+ * @author David Hsing
+ */
+@Name(value = "com.yookue.springstarter.ratelimiter.Storage")    // $NON-NLS-1$
+@Label(value = "Rate Limiter Storage")    // $NON-NLS-1$
+@Category(value = {"Rate Limiter"})    // $NON-NLS-1$
+@Description(value = "Round trip of the rate limiter storage, including the retries of the shards")    // $NON-NLS-1$
+@StackTrace(value = false)
+@Threshold(value = "0 ms")    // $NON-NLS-1$
+@Getter
+@Setter
+@SuppressWarnings("unused")
+public class RateLimitStorageEvent extends jdk.jfr.Event {
+    @Label(value = "Storage Type")    // $NON-NLS-1$
+    private String storageType;
+
+    @Label(value = "Limit")    // $NON-NLS-1$
+    @Description(value = "The qualified method name or the name of the rule")    // $NON-NLS-1$
+    private String limit;
+
+    @Label(value = "Keys")    // $NON-NLS-1$
+    @Description(value = "The number of the keys checked in the round trip")    // $NON-NLS-1$
+    private int keys;
+
+    @Label(value = "Outcome")    // $NON-NLS-1$
+    @Description(value = "Allowed, denied or error")    // $NON-NLS-1$
+    private String outcome;
+}
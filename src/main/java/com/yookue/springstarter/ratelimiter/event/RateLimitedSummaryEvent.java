@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.yookue.springstarter.ratelimiter.event;
+
+
+import java.lang.reflect.Method;
+import java.util.List;
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+import org.springframework.context.ApplicationEvent;
+import lombok.Getter;
+import lombok.ToString;
+
+
+/**
+ * Event for the coalesced denials of an identifier, published periodically off the request threads
+ *
+ * @author David Hsing
+ */
+@Getter
+@ToString
+@SuppressWarnings("unused")
+public class RateLimitedSummaryEvent extends ApplicationEvent {
+    /**
+     * The annotated method of the denied calls, {@code null} if the limit is a configured rule
+     */
+    @Nullable
+    private final Method method;
+
+    /**
+     * The identifiers of the denied calls, one per limit of the method
+     */
+    private final List<String> identifiers;
+
+    /**
+     * The raw trigger values of the first denied call, in the order of the identifiers, the elements are {@code null} if the limits have no trigger values
+     * <p>
+     * The long or unsafe trigger values are hashed in the compact identifiers, so they are only readable here
+     */
+    private final List<String> triggerValues;
+
+    /**
+     * The number of the denied calls in the interval
+     */
+    private final long count;
+
+    /**
+     * The epoch milliseconds when the interval begins
+     */
+    private final long since;
+
+    /**
+     * The epoch milliseconds when the interval ends
+     */
+    private final long until;
+
+    public RateLimitedSummaryEvent(@Nonnull String name, @Nullable Method method, @Nonnull List<String> identifiers, @Nonnull List<String> triggerValues, long count, long since, long until) {
+        super(name);
+        this.method = method;
+        this.identifiers = identifiers;
+        this.triggerValues = triggerValues;
+        this.count = count;
+        this.since = since;
+        this.until = until;
+    }
+
+    /**
+     * Returns the name of the limit, the qualified method name or the name of the rule
+     *
+     * @return the name of the limit
+     */
+    @Nonnull
+    public String getName() {
+        return (String) super.getSource();
+    }
+}
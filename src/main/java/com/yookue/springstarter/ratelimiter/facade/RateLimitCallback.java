@@ -18,6 +18,8 @@ package com.yookue.springstarter.ratelimiter.facade;
 
 
 import jakarta.annotation.Nonnull;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import org.aspectj.lang.ProceedingJoinPoint;
 import com.yookue.springstarter.ratelimiter.annotation.RateLimit;
 
@@ -30,4 +32,15 @@ import com.yookue.springstarter.ratelimiter.annotation.RateLimit;
 @FunctionalInterface
 public interface RateLimitCallback {
     Object process(@Nonnull ProceedingJoinPoint point, @Nonnull RateLimit annotation) throws Exception;
+
+    /**
+     * Processes the limited request in {@link com.yookue.springstarter.ratelimiter.filter.RateLimitFilter}, before the dispatcher servlet
+     *
+     * @param request the current request
+     * @param response the current response
+     * @param annotation the annotation of the handler method
+     */
+    default void processFilter(@Nonnull HttpServletRequest request, @Nonnull HttpServletResponse response, @Nonnull RateLimit annotation) throws Exception {
+        response.sendError(HttpServletResponse.SC_FORBIDDEN);
+    }
 }
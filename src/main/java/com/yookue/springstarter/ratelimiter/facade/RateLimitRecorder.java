@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yookue.springstarter.ratelimiter.facade;
+
+
+import java.util.function.ToDoubleFunction;
+import jakarta.annotation.Nonnull;
+import com.yookue.springstarter.ratelimiter.enumeration.LimiterOutcomeType;
+import com.yookue.springstarter.ratelimiter.structure.LimiterDescriptor;
+
+
+/**
+ * Facade for rate limit recorder
+ *
+ * @author David Hsing
+ */
+public interface RateLimitRecorder {
+    /**
+     * Records a decision of the limiter
+     *
+     * @param descriptor the descriptor of the limited method
+     * @param outcome the outcome of the decision
+     * @param nanos the elapsed nanoseconds of the decision, including the storage round trip
+     */
+    void recordDecision(@Nonnull LimiterDescriptor descriptor, @Nonnull LimiterOutcomeType outcome, long nanos);
+
+    /**
+     * Registers a gauge of the limiter
+     *
+     * @param name the name of the gauge
+     * @param target the object to observe
+     * @param function the function that returns the value of the target
+     */
+    default <T> void registerGauge(@Nonnull String name, @Nonnull T target, @Nonnull ToDoubleFunction<T> function) {
+    }
+
+    /**
+     * Registers a gauge of a limit, replaces the previous gauge of the same name and limit
+     *
+     * @param name the name of the gauge
+     * @param limit the name of the limit, the qualified method name or the name of the rule
+     * @param target the object to observe
+     * @param function the function that returns the value of the target
+     */
+    default <T> void registerGauge(@Nonnull String name, @Nonnull String limit, @Nonnull T target, @Nonnull ToDoubleFunction<T> function) {
+    }
+}
@@ -18,10 +18,12 @@ package com.yookue.springstarter.ratelimiter.facade.impl;
 
 
 import jakarta.annotation.Nonnull;
+import org.apache.commons.lang3.ObjectUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.context.MessageSource;
 import org.springframework.context.MessageSourceAware;
 import org.springframework.context.i18n.LocaleContextHolder;
+import org.springframework.http.HttpStatus;
 import com.yookue.commonplexus.springutil.util.MessageSourceWraps;
 import com.yookue.springstarter.ratelimiter.annotation.RateLimit;
 import com.yookue.springstarter.ratelimiter.facade.RateLimitCallback;
@@ -50,4 +52,9 @@ public abstract class AbstractRateLimitCallback implements RateLimitCallback, Me
         }
         return MessageSourceWraps.firstMessageLookup(messageSource, new String[]{annotation.messageCode(), MESSAGE_CODE}, null, MESSAGE_TEXT, LocaleContextHolder.getLocale());
     }
+
+    @Nonnull
+    protected HttpStatus resolveStatus() {
+        return ObjectUtils.defaultIfNull(limitProperties.getDeniedStatus(), HttpStatus.FORBIDDEN);
+    }
 }
@@ -73,6 +73,22 @@ public class DefaultRateLimitCallback extends AbstractRateLimitCallback {
             WebUtilsWraps.forwardRequest(request, response, super.limitProperties.getDeniedRestUrl());
             return null;
         }
-        return new RestResponseStruct(HttpStatus.FORBIDDEN, super.resolveMessage(annotation));
+        HttpStatus status = super.resolveStatus();
+        response.setStatus(status.value());
+        return new RestResponseStruct(status, super.resolveMessage(annotation));
+    }
+
+    @Override
+    public void processFilter(@Nonnull HttpServletRequest request, @Nonnull HttpServletResponse response, @Nonnull RateLimit annotation) throws Exception {
+        boolean rest = WebUtilsWraps.isRestRequest(request);
+        String deniedUrl = rest ? super.limitProperties.getDeniedRestUrl() : super.limitProperties.getDeniedHtmlUrl();
+        if (StringUtils.isNotBlank(deniedUrl)) {
+            WebUtilsWraps.forwardRequest(request, response, deniedUrl);
+        } else if (rest) {
+            response.sendError(super.resolveStatus().value(), super.resolveMessage(annotation));
+        } else {
+            response.setStatus(super.resolveStatus().value());
+            WebUtilsWraps.writeResponse(response, super.resolveMessage(annotation));
+        }
     }
 }
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yookue.springstarter.ratelimiter.facade.impl;
+
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.ToDoubleFunction;
+import jakarta.annotation.Nonnull;
+import com.yookue.commonplexus.javaseutil.constant.CharVariantConst;
+import com.yookue.springstarter.ratelimiter.enumeration.LimiterOutcomeType;
+import com.yookue.springstarter.ratelimiter.enumeration.LimiterStorageType;
+import com.yookue.springstarter.ratelimiter.enumeration.LimiterTriggerType;
+import com.yookue.springstarter.ratelimiter.facade.RateLimitRecorder;
+import com.yookue.springstarter.ratelimiter.structure.LimiterDescriptor;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+
+/**
+ * Micrometer implementation of {@link RateLimitRecorder}
+ * <p>
+ * The meters are tagged by the storage type, the limited method or rule, the trigger type and the outcome only,
+ * so the cardinality is bounded by the number of annotated methods and rules, never by the identifiers.
+ * The meters are resolved once and cached, recording a decision is lock-free and allocation-free.
+ * Decisions before the registry is bound are not recorded
+ *
+ * @author David Hsing
+ */
+@SuppressWarnings("unused")
+public class MicrometerRateLimitRecorder implements RateLimitRecorder, MeterBinder {
+    public static final String DECISION_TIMER = "rate.limiter.decision";    // $NON-NLS-1$
+    public static final String CALLS_COUNTER = "rate.limiter.calls";    // $NON-NLS-1$
+    private static final LimiterOutcomeType[] OUTCOMES = LimiterOutcomeType.values();
+    private final String storageType;
+    private final Map<String, Meters> meterCache = new ConcurrentHashMap<>(64);
+    private final List<Consumer<MeterRegistry>> gaugeBinders = new ArrayList<>();
+    private final Map<String, Consumer<MeterRegistry>> limitGaugeBinders = new LinkedHashMap<>();
+    private volatile MeterRegistry meterRegistry;
+    private volatile Timer[] decisionTimers;
+
+    public MicrometerRateLimitRecorder(@Nonnull LimiterStorageType storageType) {
+        this.storageType = storageType.getValue();
+    }
+
+    @Override
+    public synchronized void bindTo(@Nonnull MeterRegistry registry) {
+        Timer[] timers = new Timer[OUTCOMES.length];
+        for (LimiterOutcomeType outcome : OUTCOMES) {
+            timers[outcome.ordinal()] = Timer.builder(DECISION_TIMER).description("Latency of the rate limiter decisions").tags("storage", storageType, "outcome", outcome.getValue()).register(registry);    // $NON-NLS-1$
+        }
+        meterCache.clear();
+        meterRegistry = registry;
+        decisionTimers = timers;
+        gaugeBinders.forEach(binder -> binder.accept(registry));
+        limitGaugeBinders.values().forEach(binder -> binder.accept(registry));
+    }
+
+    @Override
+    public void recordDecision(@Nonnull LimiterDescriptor descriptor, @Nonnull LimiterOutcomeType outcome, long nanos) {
+        Timer[] timers = decisionTimers;
+        if (timers == null) {
+            return;
+        }
+        timers[outcome.ordinal()].record(nanos, TimeUnit.NANOSECONDS);
+        // Keyed by the limit name, so the reloaded rules reuse their meters
+        Meters meters = meterCache.get(descriptor.getName());
+        LimiterTriggerType trigger = descriptor.getAnnotation().triggerType();
+        if (meters == null || meters.trigger != trigger) {
+            meters = meterCache.compute(descriptor.getName(), (name, current) -> (current != null && current.trigger == trigger) ? current : buildMeters(descriptor));
+        }
+        meters.counters[outcome.ordinal()].increment();
+    }
+
+    @Override
+    public synchronized <T> void registerGauge(@Nonnull String name, @Nonnull T target, @Nonnull ToDoubleFunction<T> function) {
+        Consumer<MeterRegistry> binder = registry -> Gauge.builder(name, target, function).tag("storage", storageType).strongReference(true).register(registry);    // $NON-NLS-1$
+        gaugeBinders.add(binder);
+        if (meterRegistry != null) {
+            binder.accept(meterRegistry);
+        }
+    }
+
+    @Override
+    public synchronized <T> void registerGauge(@Nonnull String name, @Nonnull String limit, @Nonnull T target, @Nonnull ToDoubleFunction<T> function) {
+        Consumer<MeterRegistry> binder = registry -> {
+            // The limits of the reloaded rules observe new targets
+            Gauge current = registry.find(name).tags("storage", storageType, "limit", limit).gauge();    // $NON-NLS-1$
+            if (current != null) {
+                registry.remove(current);
+            }
+            Gauge.builder(name, target, function).tags("storage", storageType, "limit", limit).strongReference(true).register(registry);    // $NON-NLS-1$
+        };
+        limitGaugeBinders.put(name + CharVariantConst.COLON + limit, binder);
+        if (meterRegistry != null) {
+            binder.accept(meterRegistry);
+        }
+    }
+
+    @Nonnull
+    private Meters buildMeters(@Nonnull LimiterDescriptor descriptor) {
+        LimiterTriggerType trigger = descriptor.getAnnotation().triggerType();
+        Counter[] counters = new Counter[OUTCOMES.length];
+        for (LimiterOutcomeType outcome : OUTCOMES) {
+            counters[outcome.ordinal()] = Counter.builder(CALLS_COUNTER).description("Decisions of the rate limiter").tags("storage", storageType, "limit", descriptor.getName(), "trigger", trigger.getValue(), "outcome", outcome.getValue()).register(meterRegistry);    // $NON-NLS-1$
+        }
+        return new Meters(trigger, counters);
+    }
+
+
+    private record Meters(@Nonnull LimiterTriggerType trigger, @Nonnull Counter[] counters) {
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yookue.springstarter.ratelimiter.filter;
+
+
+import java.io.IOException;
+import java.util.Arrays;
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.util.Assert;
+import org.springframework.web.filter.OncePerRequestFilter;
+import com.yookue.commonplexus.javaseutil.constant.AssertMessageConst;
+import com.yookue.springstarter.ratelimiter.aspect.AbstractBlockingRateLimitAspect;
+import com.yookue.springstarter.ratelimiter.facade.RateLimitCallback;
+import com.yookue.springstarter.ratelimiter.property.RateLimiterProperties;
+import com.yookue.springstarter.ratelimiter.structure.LimiterDescriptor;
+import com.yookue.springstarter.ratelimiter.structure.LimiterVerdict;
+import com.yookue.springstarter.ratelimiter.support.LimiterPermit;
+import com.yookue.springstarter.ratelimiter.support.LimiterThrottle;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+
+
+/**
+ * Abstract filter for rate limit, which rejects the limited requests before the dispatcher servlet
+ * <p>
+ * The subclasses only determine the descriptor of a request, the limits are enforced by the blocking aspect.
+ * The denied requests may be parked by the throttle, and are limited again when they are dispatched again.
+ * The limited requests are always replied by {@link RateLimitCallback#processFilter(HttpServletRequest, HttpServletResponse, com.yookue.springstarter.ratelimiter.annotation.RateLimit)}, whatever {@code throwException} is
+ *
+ * @author David Hsing
+ */
+@Slf4j
+@SuppressWarnings("unused")
+public abstract class AbstractRateLimitFilter extends OncePerRequestFilter {
+    private final String ticketAttribute = getClass().getName() + ".THROTTLED_TICKET";    // $NON-NLS-1$
+
+    @Getter
+    protected final RateLimiterProperties limiterProperties;
+
+    @Getter
+    protected final AbstractBlockingRateLimitAspect limitAspect;
+
+    @Getter
+    @Setter
+    protected RateLimitCallback limitCallback;
+
+    protected AbstractRateLimitFilter(@Nonnull RateLimiterProperties properties, @Nonnull AbstractBlockingRateLimitAspect aspect, @Nullable RateLimitCallback callback) {
+        this.limiterProperties = properties;
+        this.limitAspect = aspect;
+        this.limitCallback = callback;
+    }
+
+    @Override
+    protected boolean shouldNotFilterAsyncDispatch() {
+        // The requests parked by the throttle are dispatched again, the other async dispatches pass through
+        return false;
+    }
+
+    @Override
+    protected void doFilterInternal(@Nonnull HttpServletRequest request, @Nonnull HttpServletResponse response, @Nonnull FilterChain chain) throws ServletException, IOException {
+        if (isAsyncDispatch(request)) {
+            LimiterThrottle.Ticket ticket = limitAspect.resumeRequest(request, ticketAttribute);
+            if (ticket == null) {
+                chain.doFilter(request, response);
+            } else {
+                filterLimits(request, response, chain, ticket.identifiers(), ticket.descriptor(), ticket);
+            }
+            return;
+        }
+        LimiterDescriptor descriptor = determineDescriptor(request);
+        if (descriptor == null) {
+            chain.doFilter(request, response);
+            return;
+        }
+        String[] identifiers;
+        LimiterDescriptor costed;
+        try {
+            identifiers = limitAspect.determineIdentifiers(descriptor);
+            costed = (identifiers == null) ? descriptor : limitAspect.determineCosts(descriptor);
+        } catch (IOException | ServletException | RuntimeException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new ServletException(ex);
+        }
+        if (identifiers == null) {
+            chain.doFilter(request, response);
+            return;
+        }
+        filterLimits(request, response, chain, identifiers, costed, null);
+    }
+
+    /**
+     * Returns the descriptor of the limits that apply to the request
+     *
+     * @param request the current request
+     *
+     * @return the descriptor of the limits that apply to the request, or {@code null} if the request is not limited
+     */
+    @Nullable
+    protected abstract LimiterDescriptor determineDescriptor(@Nonnull HttpServletRequest request);
+
+    private void filterLimits(@Nonnull HttpServletRequest request, @Nonnull HttpServletResponse response, @Nonnull FilterChain chain, @Nonnull String[] identifiers, @Nonnull LimiterDescriptor descriptor, @Nullable LimiterThrottle.Ticket ticket) throws ServletException, IOException {
+        LimiterPermit permit;
+        LimiterVerdict verdict;
+        try {
+            // The in-flight limits are entered first, and cancelled if the rate limits deny, so a denied request consumes none of them
+            permit = limitAspect.tryEnter(identifiers, descriptor);
+            if (permit == null) {
+                processLimited(request, response, identifiers, descriptor);
+                return;
+            }
+            try {
+                verdict = limitAspect.tryAcquire(identifiers, descriptor);
+            } catch (Exception | Error ex) {
+                permit.cancel();
+                throw ex;
+            }
+            if (verdict != null && !verdict.isAllowed()) {
+                permit.cancel();
+                if (limitAspect.parkRequest(request, ticketAttribute, identifiers, descriptor, verdict, ticket)) {
+                    return;
+                }
+            }
+            if (verdict != null) {
+                limitAspect.writeHeaders(identifiers, descriptor, verdict, response::setHeader);
+            }
+        } catch (IOException | ServletException | RuntimeException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new ServletException(ex);
+        }
+        if (verdict != null && !verdict.isAllowed()) {
+            processLimited(request, response, identifiers, descriptor);
+            return;
+        }
+        try {
+            chain.doFilter(request, response);
+        } catch (IOException | ServletException | RuntimeException ex) {
+            releasePermits(identifiers, descriptor);
+            throw ex;
+        } finally {
+            permit.close();
+        }
+    }
+
+    protected void processLimited(@Nonnull HttpServletRequest request, @Nonnull HttpServletResponse response, @Nonnull String[] identifiers, @Nonnull LimiterDescriptor descriptor) throws ServletException, IOException {
+        limitAspect.publishLimited(identifiers, descriptor);
+        // Never throws, the exceptions before the dispatcher servlet are out of reach of the exception handlers
+        Assert.notNull(limitCallback, AssertMessageConst.NOT_NULL);
+        try {
+            limitCallback.processFilter(request, response, descriptor.getAnnotation());
+        } catch (IOException | ServletException | RuntimeException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new ServletException(ex);
+        }
+    }
+
+    private void releasePermits(@Nonnull String[] identifiers, @Nonnull LimiterDescriptor descriptor) {
+        try {
+            limitAspect.tryRelease(identifiers, descriptor);
+        } catch (Exception ex) {
+            if (log.isWarnEnabled()) {
+                log.warn("Release permits of identifiers {} failed", Arrays.toString(identifiers), ex);
+            }
+        }
+    }
+}
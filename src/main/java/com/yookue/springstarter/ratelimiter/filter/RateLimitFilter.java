@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yookue.springstarter.ratelimiter.filter;
+
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationContextAware;
+import org.springframework.core.annotation.AnnotationAwareOrderComparator;
+import org.springframework.util.Assert;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerExecutionChain;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerMapping;
+import org.springframework.web.util.ServletRequestPathUtils;
+import org.springframework.web.util.UrlPathHelper;
+import com.yookue.commonplexus.javaseutil.constant.AssertMessageConst;
+import com.yookue.springstarter.ratelimiter.aspect.AbstractBlockingRateLimitAspect;
+import com.yookue.springstarter.ratelimiter.facade.RateLimitCallback;
+import com.yookue.springstarter.ratelimiter.property.RateLimiterProperties;
+import com.yookue.springstarter.ratelimiter.structure.LimiterDescriptor;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+
+
+/**
+ * Filter for rate limit, which rejects the limited requests before the dispatcher servlet
+ * <p>
+ * The handler methods annotated with {@link com.yookue.springstarter.ratelimiter.annotation.RateLimit} are indexed by their handler methods at startup.
+ * A request is resolved by the handler mappings once, and its handler method is looked up in the index,
+ * so the cost does not grow with the number of the indexed methods
+ *
+ * @author David Hsing
+ */
+@Getter
+@Setter
+@Slf4j
+@SuppressWarnings("unused")
+public class RateLimitFilter extends AbstractRateLimitFilter implements ApplicationContextAware, SmartInitializingSingleton {
+    public static final String ENFORCED_METHOD_ATTRIBUTE = RateLimitFilter.class.getName() + ".ENFORCED_METHOD";    // $NON-NLS-1$
+    private ApplicationContext applicationContext;
+    private volatile List<RequestMappingHandlerMapping> handlerMappings = Collections.emptyList();
+    private volatile Map<HandlerMethod, LimiterDescriptor> handlerDescriptors = Collections.emptyMap();
+
+    public RateLimitFilter(@Nonnull RateLimiterProperties properties, @Nonnull AbstractBlockingRateLimitAspect aspect, @Nullable RateLimitCallback callback) {
+        super(properties, aspect, callback);
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        Assert.notNull(applicationContext, AssertMessageConst.NOT_NULL);
+        List<RequestMappingHandlerMapping> mappings = new ArrayList<>(applicationContext.getBeansOfType(RequestMappingHandlerMapping.class).values());
+        // Resolves the handlers in the same order as the dispatcher servlet
+        AnnotationAwareOrderComparator.sort(mappings);
+        Map<HandlerMethod, LimiterDescriptor> descriptors = new HashMap<>();
+        for (RequestMappingHandlerMapping handlerMapping : mappings) {
+            for (HandlerMethod handlerMethod : handlerMapping.getHandlerMethods().values()) {
+                LimiterDescriptor descriptor = limitAspect.determineDescriptor(handlerMethod.getMethod(), handlerMethod.getBeanType());
+                if (descriptor != null) {
+                    descriptors.put(handlerMethod, descriptor);
+                }
+            }
+        }
+        handlerMappings = descriptors.isEmpty() ? Collections.emptyList() : Collections.unmodifiableList(mappings);
+        handlerDescriptors = Collections.unmodifiableMap(descriptors);
+        if (log.isDebugEnabled()) {
+            log.debug("Rate limit filter indexed {} handler methods", descriptors.size());
+        }
+    }
+
+    @Override
+    @Nullable
+    protected LimiterDescriptor determineDescriptor(@Nonnull HttpServletRequest request) {
+        Map<HandlerMethod, LimiterDescriptor> descriptors = handlerDescriptors;
+        HandlerMethod handlerMethod = descriptors.isEmpty() ? null : determineHandler(request);
+        if (handlerMethod == null) {
+            return null;
+        }
+        // The handler method with the resolved bean is created per request, the index holds the registered one
+        HandlerMethod registered = handlerMethod.getResolvedFromHandlerMethod();
+        LimiterDescriptor descriptor = descriptors.get((registered != null) ? registered : handlerMethod);
+        if (descriptor != null) {
+            // The aspect skips the method, which is enforced by this filter
+            request.setAttribute(ENFORCED_METHOD_ATTRIBUTE, descriptor.getMethod());
+        }
+        return descriptor;
+    }
+
+    @Nullable
+    private HandlerMethod determineHandler(@Nonnull HttpServletRequest request) {
+        boolean parsed = ServletRequestPathUtils.hasParsedRequestPath(request);
+        Object lookupPath = request.getAttribute(UrlPathHelper.PATH_ATTRIBUTE);
+        try {
+            for (RequestMappingHandlerMapping handlerMapping : handlerMappings) {
+                if (handlerMapping.usesPathPatterns()) {
+                    if (!ServletRequestPathUtils.hasParsedRequestPath(request)) {
+                        ServletRequestPathUtils.parseAndCache(request);
+                    }
+                } else if (request.getAttribute(UrlPathHelper.PATH_ATTRIBUTE) == null) {
+                    handlerMapping.getUrlPathHelper().resolveAndCacheLookupPath(request);
+                }
+                HandlerExecutionChain handlerChain = handlerMapping.getHandler(request);
+                if (handlerChain != null) {
+                    // The first mapping with a handler wins, as the dispatcher servlet does
+                    return (handlerChain.getHandler() instanceof HandlerMethod handlerMethod) ? handlerMethod : null;
+                }
+            }
+            return null;
+        } catch (Exception ex) {
+            return null;
+        } finally {
+            // Leaves the request as it was, the dispatcher servlet will resolve the paths by itself
+            if (!parsed) {
+                ServletRequestPathUtils.clearParsedRequestPath(request);
+            }
+            if (lookupPath == null) {
+                request.removeAttribute(UrlPathHelper.PATH_ATTRIBUTE);
+            }
+        }
+    }
+}
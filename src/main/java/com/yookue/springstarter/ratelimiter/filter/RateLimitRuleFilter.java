@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.yookue.springstarter.ratelimiter.filter;
+
+
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+import jakarta.servlet.http.HttpServletRequest;
+import org.apache.commons.lang3.ObjectUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.EnvironmentAware;
+import org.springframework.core.annotation.MergedAnnotation;
+import org.springframework.core.env.Environment;
+import org.springframework.http.server.PathContainer;
+import org.springframework.http.server.RequestPath;
+import org.springframework.util.Assert;
+import org.springframework.util.CollectionUtils;
+import org.springframework.web.util.ServletRequestPathUtils;
+import org.springframework.web.util.pattern.PathPatternParser;
+import com.yookue.commonplexus.javaseutil.constant.AssertMessageConst;
+import com.yookue.commonplexus.javaseutil.constant.CharVariantConst;
+import com.yookue.springstarter.ratelimiter.annotation.RateLimit;
+import com.yookue.springstarter.ratelimiter.aspect.AbstractBlockingRateLimitAspect;
+import com.yookue.springstarter.ratelimiter.config.RateLimiterAutoConfiguration;
+import com.yookue.springstarter.ratelimiter.facade.RateLimitCallback;
+import com.yookue.springstarter.ratelimiter.property.RateLimiterProperties;
+import com.yookue.springstarter.ratelimiter.structure.LimiterDescriptor;
+import com.yookue.springstarter.ratelimiter.support.LimiterRuleIndex;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+
+
+/**
+ * Filter for the configured rules of rate limit, which limits the requests by path patterns, without annotating the handler methods
+ * <p>
+ * The rules are compiled into a {@link LimiterRuleIndex} at startup, and recompiled by {@link com.yookue.springstarter.ratelimiter.support.LimiterRuleRefresher} when the environment changes,
+ * the keys of a rule are named by the rule, so the limiter states are kept across the reloads,
+ * and the local states of a rule are taken over when its key and quota are unchanged
+ *
+ * @author David Hsing
+ */
+@Getter
+@Setter
+@Slf4j
+@SuppressWarnings("unused")
+public class RateLimitRuleFilter extends AbstractRateLimitFilter implements EnvironmentAware, SmartInitializingSingleton {
+    private static final String RULES_PROPERTY = RateLimiterAutoConfiguration.PROPERTIES_PREFIX + ".rules";    // $NON-NLS-1$
+    private Environment environment;
+    private volatile LimiterRuleIndex ruleIndex = LimiterRuleIndex.EMPTY;
+
+    public RateLimitRuleFilter(@Nonnull RateLimiterProperties properties, @Nonnull AbstractBlockingRateLimitAspect aspect, @Nullable RateLimitCallback callback) {
+        super(properties, aspect, callback);
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        ruleIndex = buildIndex(limiterProperties.getRules());
+        if (log.isDebugEnabled()) {
+            log.debug("Rate limit rule filter indexed {} path patterns", ruleIndex.size());
+        }
+    }
+
+    /**
+     * Binds the rules from the environment again, and replaces the index atomically
+     * <p>
+     * The rebound rules are only held by the index of this filter, the properties are never changed.
+     * The previous rules are kept if the new rules are invalid
+     */
+    public void reloadRules() {
+        Assert.notNull(environment, AssertMessageConst.NOT_NULL);
+        try {
+            List<RateLimiterProperties.Rule> rules = Binder.get(environment).bind(RULES_PROPERTY, Bindable.listOf(RateLimiterProperties.Rule.class)).orElseGet(Collections::emptyList);
+            ruleIndex = buildIndex(rules);
+            if (log.isInfoEnabled()) {
+                log.info("Rate limit rules reloaded, {} path patterns indexed", ruleIndex.size());
+            }
+        } catch (RuntimeException ex) {
+            if (log.isErrorEnabled()) {
+                log.error("Rate limit rules are invalid, the previous rules are kept", ex);
+            }
+        }
+    }
+
+    @Nonnull
+    protected LimiterRuleIndex buildIndex(@Nullable List<RateLimiterProperties.Rule> rules) {
+        if (CollectionUtils.isEmpty(rules)) {
+            return LimiterRuleIndex.EMPTY;
+        }
+        List<LimiterRuleIndex.Entry> entries = new ArrayList<>();
+        for (RateLimiterProperties.Rule rule : rules) {
+            Assert.notEmpty(rule.getPaths(), "Rule paths must not be empty");
+            Set<String> methods = CollectionUtils.isEmpty(rule.getMethods()) ? Collections.emptySet() : rule.getMethods().stream().map(method -> StringUtils.upperCase(StringUtils.trim(method), Locale.ROOT)).collect(Collectors.toUnmodifiableSet());
+            String name = StringUtils.isNotBlank(rule.getName()) ? rule.getName() : determineName(rule.getPaths(), methods);
+            LimiterDescriptor descriptor = limitAspect.buildRuleDescriptor(name, synthesizeAnnotation(rule));
+            LimiterDescriptor previous = ruleIndex.getDescriptor(name);
+            if (previous != null) {
+                descriptor = descriptor.inheritStates(previous);
+            }
+            for (String path : rule.getPaths()) {
+                entries.add(new LimiterRuleIndex.Entry(PathPatternParser.defaultInstance.parse(path), methods, descriptor));
+            }
+        }
+        return new LimiterRuleIndex(entries);
+    }
+
+    @Nonnull
+    private String determineName(@Nonnull List<String> paths, @Nonnull Set<String> methods) {
+        String name = StringUtils.join(paths, ',');
+        return methods.isEmpty() ? name : name + CharVariantConst.SQUARE_BRACKET_LEFT + StringUtils.join(new TreeSet<>(methods), ',') + CharVariantConst.SQUARE_BRACKET_RIGHT;
+    }
+
+    @Nonnull
+    private RateLimit synthesizeAnnotation(@Nonnull RateLimiterProperties.Rule rule) {
+        Map<String, Object> attributes = new HashMap<>();
+        attributes.put("ttl", (rule.getTtl() == null) ? 0L : rule.getTtl().toMillis());    // $NON-NLS-1$
+        attributes.put("unit", ChronoUnit.MILLIS);    // $NON-NLS-1$
+        attributes.put("algorithm", rule.getAlgorithm());    // $NON-NLS-1$
+        attributes.put("permits", ObjectUtils.defaultIfNull(rule.getPermits(), 1L));    // $NON-NLS-1$
+        attributes.put("capacity", ObjectUtils.defaultIfNull(rule.getCapacity(), 0L));    // $NON-NLS-1$
+        attributes.put("waitMillis", (rule.getMaxWait() == null) ? 0L : rule.getMaxWait().toMillis());    // $NON-NLS-1$
+        attributes.put("triggerType", rule.getTriggerType());    // $NON-NLS-1$
+        attributes.put("key", StringUtils.defaultString(rule.getKey()));    // $NON-NLS-1$
+        attributes.put("shards", ObjectUtils.defaultIfNull(rule.getShards(), 1));    // $NON-NLS-1$
+        attributes.put("cost", StringUtils.defaultString(rule.getCost()));    // $NON-NLS-1$
+        attributes.put("messageCode", StringUtils.defaultString(rule.getMessageCode()));    // $NON-NLS-1$
+        attributes.put("messageText", StringUtils.defaultString(rule.getMessageText()));    // $NON-NLS-1$
+        return MergedAnnotation.of(RateLimit.class, attributes).synthesize();
+    }
+
+    @Override
+    @Nullable
+    protected LimiterDescriptor determineDescriptor(@Nonnull HttpServletRequest request) {
+        LimiterRuleIndex index = ruleIndex;
+        return (index.size() == 0) ? null : index.match(request.getMethod(), determinePath(request));
+    }
+
+    @Nonnull
+    private PathContainer determinePath(@Nonnull HttpServletRequest request) {
+        if (ServletRequestPathUtils.hasParsedRequestPath(request)) {
+            return ServletRequestPathUtils.getParsedRequestPath(request).pathWithinApplication();
+        }
+        return RequestPath.parse(request.getRequestURI(), request.getContextPath()).pathWithinApplication();
+    }
+
+}
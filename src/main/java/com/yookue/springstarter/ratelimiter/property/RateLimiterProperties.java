@@ -18,9 +18,18 @@ package com.yookue.springstarter.ratelimiter.property;
 
 
 import java.io.Serializable;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.http.HttpStatus;
 import com.yookue.springstarter.ratelimiter.config.RateLimiterAutoConfiguration;
+import com.yookue.springstarter.ratelimiter.enumeration.LimiterAlgorithmType;
+import com.yookue.springstarter.ratelimiter.enumeration.LimiterEnforcementType;
+import com.yookue.springstarter.ratelimiter.enumeration.LimiterFailureType;
+import com.yookue.springstarter.ratelimiter.enumeration.LimiterKeyLayoutType;
 import com.yookue.springstarter.ratelimiter.enumeration.LimiterStorageType;
+import com.yookue.springstarter.ratelimiter.enumeration.LimiterTriggerType;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.ToString;
@@ -60,6 +69,8 @@ public class RateLimiterProperties implements Serializable {
 
     /**
      * Throws {@link com.yookue.commonplexus.springutil.exception.RateLimitedException} instead of redirection
+     * <p>
+     * Only works with the aspects, the filters always reply by the callback
      */
     private Boolean throwException = true;
 
@@ -73,8 +84,533 @@ public class RateLimiterProperties implements Serializable {
      */
     private String deniedRestUrl;
 
+    /**
+     * The status of the denied responses without redirection, default is {@code FORBIDDEN}
+     * <p>
+     * {@code TOO_MANY_REQUESTS} lets the clients and the proxies tell the limitation from the authorization
+     */
+    private HttpStatus deniedStatus = HttpStatus.FORBIDDEN;
+
+    /**
+     * Indicates whether to write the {@code RateLimit-Limit}, {@code RateLimit-Remaining}, {@code RateLimit-Reset} and {@code Retry-After} headers to the responses or not
+     * <p>
+     * Default is {@code true}, the headers describe the first rate limit of the method
+     */
+    private Boolean headersEnabled = true;
+
     /**
      * The storage type of the limier, default is {@code REDIS}
      */
     private LimiterStorageType storageType = LimiterStorageType.REDIS;
+
+    /**
+     * The layout of the keys and the stored values, default is {@code COMPACT}
+     * <p>
+     * {@code LEGACY} keeps the keys with qualified method names and raw trigger values, and the formatted datetime values
+     */
+    private LimiterKeyLayoutType keyLayout = LimiterKeyLayoutType.COMPACT;
+
+    /**
+     * Indicates whether to wrap the keys with redis cluster hash tags or not
+     * <p>
+     * Default is {@code false}, enables it when multiple keys of an identifier are accessed by a single script on redis cluster
+     */
+    private Boolean hashTag = false;
+
+    /**
+     * The enforcement type of the limiter, default is {@code ASPECT}
+     * <p>
+     * {@code FILTER} rejects the requests to the annotated handler methods before the dispatcher servlet,
+     * the filters ignore {@code throwException}, and always reply the limited requests by the callback
+     */
+    private LimiterEnforcementType enforcementType = LimiterEnforcementType.ASPECT;
+
+    /**
+     * The order of the filter, only works with {@code FILTER} enforcement type
+     * <p>
+     * Default is {@code -90}, right after the request context filter and the security filter chain
+     */
+    private Integer filterOrder = -90;
+
+    /**
+     * Indicates whether to record the decisions to micrometer or not, when micrometer is present
+     * <p>
+     * Default is {@code true}
+     */
+    private Boolean metricsEnabled = true;
+
+    /**
+     * Indicates whether to commit the flight recorder events of the decisions and the storage round trips or not
+     * <p>
+     * Default is {@code false}, the events are committed only if their types are enabled by the recording as well
+     */
+    private Boolean flightRecorderEnabled = false;
+
+    /**
+     * Local attributes
+     */
+    private final Local local = new Local();
+
+    /**
+     * Mapped attributes
+     */
+    private final Mapped mapped = new Mapped();
+
+    /**
+     * Near cache attributes
+     */
+    private final NearCache nearCache = new NearCache();
+
+    /**
+     * Lease attributes
+     */
+    private final Lease lease = new Lease();
+
+    /**
+     * Sketch attributes
+     */
+    private final Sketch sketch = new Sketch();
+
+    /**
+     * Throttle attributes
+     */
+    private final Throttle throttle = new Throttle();
+
+    /**
+     * Failover attributes
+     */
+    private final Failover failover = new Failover();
+
+    /**
+     * Event attributes
+     */
+    private final Event event = new Event();
+
+    /**
+     * The rules to limit the requests by path patterns, without annotating the handler methods
+     * <p>
+     * Only works with servlet applications when any rule is configured at startup, the rules are reloaded when the environment of Spring Cloud changes
+     */
+    private List<Rule> rules = new ArrayList<>();
+
+
+    /**
+     * Properties for local storage
+     *
+     * @author David Hsing
+     */
+    @Getter
+    @Setter
+    @ToString
+    public static class Local implements Serializable {
+        /**
+         * The maximum number of identifiers to hold in memory
+         * <p>
+         * Default is {@code 100000}
+         */
+        private Integer maxEntries = 100000;
+
+        /**
+         * The interval to sweep the expired identifiers
+         * <p>
+         * Default is {@code 60s}
+         */
+        private Duration sweepInterval = Duration.ofSeconds(60L);
+    }
+
+
+    /**
+     * Properties for mapped storage, which is shared by the processes on a host
+     *
+     * @author David Hsing
+     */
+    @Getter
+    @Setter
+    @ToString
+    public static class Mapped implements Serializable {
+        /**
+         * The path of the memory-mapped file, all the processes that share the limits must use the same file
+         * <p>
+         * Default is {@code rate-limiter.slots} under the directory of {@code java.io.tmpdir}
+         */
+        private String file;
+
+        /**
+         * The number of slots in the file, each slot holds an identifier in {@code 64} bytes, must be the same in all the processes
+         * <p>
+         * Default is {@code 65536}, the slots that expire first are evicted when the probed slots are full
+         */
+        private Integer slots = 65536;
+
+        /**
+         * The maximum number of slots to probe for an identifier
+         * <p>
+         * Default is {@code 8}
+         */
+        private Integer maxProbes = 8;
+    }
+
+
+    /**
+     * Properties for near cache of denied verdicts, only works with remote storages
+     *
+     * @author David Hsing
+     */
+    @Getter
+    @Setter
+    @ToString
+    public static class NearCache implements Serializable {
+        /**
+         * Indicates whether to remember the denied identifiers locally until their reset time or not
+         * <p>
+         * Default is {@code false}
+         */
+        private Boolean enabled = false;
+
+        /**
+         * The maximum number of denied identifiers to hold in memory
+         * <p>
+         * Default is {@code 10000}
+         */
+        private Integer maxEntries = 10000;
+    }
+
+
+    /**
+     * Properties for leasing blocks of permits from redis storage
+     * <p>
+     * Only works with fixed window and token bucket algorithms, trades accuracy for fewer round trips:
+     * a node may hold at most {@code min(maxBlockSize, permits * maxShare)} permits of an identifier that other nodes cannot spend
+     *
+     * @author David Hsing
+     */
+    @Getter
+    @Setter
+    @ToString
+    public static class Lease implements Serializable {
+        /**
+         * Indicates whether to lease blocks of permits or not
+         * <p>
+         * Default is {@code false}, every permit is checked with redis, strictly accurate
+         */
+        private Boolean enabled = false;
+
+        /**
+         * The maximum number of permits per lease
+         * <p>
+         * Default is {@code 100}
+         */
+        private Long maxBlockSize = 100L;
+
+        /**
+         * The maximum share of the permits per window per lease, between {@code 0} and {@code 1}
+         * <p>
+         * Default is {@code 0.1}
+         */
+        private Double maxShare = 0.1D;
+
+        /**
+         * The expected interval between two leases of an identifier, the block size adapts to the observed rate with it
+         * <p>
+         * Default is {@code 100ms}
+         */
+        private Duration targetInterval = Duration.ofMillis(100L);
+
+        /**
+         * The time to live of the leased permits, the unused permits are returned with the next lease after it
+         * <p>
+         * Default is {@code 1s}
+         */
+        private Duration leaseTtl = Duration.ofSeconds(1L);
+
+        /**
+         * The maximum number of identifiers to hold leases
+         * <p>
+         * Default is {@code 10000}
+         */
+        private Integer maxEntries = 10000;
+    }
+
+
+    /**
+     * Properties for the local tier that admits the identifiers far under their limits, without asking redis storage
+     * <p>
+     * Only works with rate limit algorithms except cooldown, trades accuracy for fewer round trips:
+     * the calls admitted locally are not counted by redis, so each node may admit up to {@code permits * escalationRatio} calls per window beyond the limit
+     *
+     * @author David Hsing
+     */
+    @Getter
+    @Setter
+    @ToString
+    public static class Sketch implements Serializable {
+        /**
+         * Indicates whether to estimate the calls of the identifiers locally or not
+         * <p>
+         * Default is {@code false}, every permit is checked with redis, strictly accurate
+         */
+        private Boolean enabled = false;
+
+        /**
+         * The error of the estimated calls, relative to the calls of all identifiers in a window, between {@code 0} and {@code 1}
+         * <p>
+         * Default is {@code 0.001}, the memory is about {@code 8 * e / errorRate * ln(1 / failureProbability)} bytes
+         */
+        private Double errorRate = 0.001D;
+
+        /**
+         * The probability that an estimated call count exceeds the error, between {@code 0} and {@code 1}
+         * <p>
+         * Default is {@code 0.01}
+         */
+        private Double failureProbability = 0.01D;
+
+        /**
+         * The window to count the calls, the counts decay over it
+         * <p>
+         * Default is {@code 1s}
+         */
+        private Duration window = Duration.ofSeconds(1L);
+
+        /**
+         * The share of the permits per window, an identifier escalates to redis once its estimated calls reach it, between {@code 0} and {@code 1}
+         * <p>
+         * Default is {@code 0.1}, should not exceed {@code 1 / nodes} to keep the overshoot under the limit
+         */
+        private Double escalationRatio = 0.1D;
+    }
+
+
+    /**
+     * Properties for throttle, which delays the calls over the rate limits with a positive {@code waitMillis} instead of rejecting them
+     *
+     * @author David Hsing
+     */
+    @Getter
+    @Setter
+    @ToString
+    public static class Throttle implements Serializable {
+        /**
+         * The maximum number of the delayed calls, the calls beyond are rejected at once
+         * <p>
+         * Default is {@code 1000}
+         */
+        private Integer maxQueued = 1000;
+
+        /**
+         * The maximum number of the platform threads that sleep for the delayed calls with {@code aspect} enforcement, the calls beyond are rejected at once
+         * <p>
+         * The virtual threads are not bounded by it, keep it well below the worker threads of the servlet container
+         * <p>
+         * Default is {@code 0}, only the virtual threads sleep
+         */
+        private Integer maxBlocking = 0;
+    }
+
+
+    /**
+     * Properties for failover of remote storages
+     *
+     * @author David Hsing
+     */
+    @Getter
+    @Setter
+    @ToString
+    public static class Failover implements Serializable {
+        /**
+         * Indicates whether to decide by failover when the storage fails or not
+         * <p>
+         * Default is {@code false}, the failures of the storage are thrown to the invokers
+         */
+        private Boolean enabled = false;
+
+        /**
+         * The latency budget of each decision, the decisions that exceed it are treated as failures
+         * <p>
+         * Default is {@code null}, unbounded. With lettuce, the calls are bounded by the asynchronous client, otherwise by a bounded thread pool.
+         * The calls that exceed it may still be counted by the storage
+         */
+        private Duration timeout;
+
+        /**
+         * The maximum number of threads to bound the latency of blocking calls, only works with {@code timeout} and the clients other than lettuce
+         * <p>
+         * The calls beyond are decided by the fallback without calling the storage
+         * <p>
+         * Default is {@code null}, the maximum worker threads of the servlet container ({@code server.tomcat.threads.max})
+         */
+        private Integer timeoutThreads;
+
+        /**
+         * The consecutive failures to open the circuit, non-positive means never open
+         * <p>
+         * Default is {@code 5}
+         */
+        private Integer failureThreshold = 5;
+
+        /**
+         * The duration to keep the circuit open, before probing the storage again
+         * <p>
+         * Default is {@code 10s}
+         */
+        private Duration openDuration = Duration.ofSeconds(10L);
+
+        /**
+         * The failure type when there is no local fallback, {@code OPEN} allows the invocations, {@code CLOSED} denies them
+         * <p>
+         * Default is {@code OPEN}
+         */
+        private LimiterFailureType failureType = LimiterFailureType.OPEN;
+
+        /**
+         * Indicates whether to decide by a local limiter when the storage fails or not
+         * <p>
+         * Default is {@code true}, the local limiter is bounded by {@code local.max-entries}, and limits per node
+         */
+        private Boolean localFallback = true;
+    }
+
+
+    /**
+     * Properties for limiter events
+     *
+     * @author David Hsing
+     */
+    @Getter
+    @Setter
+    @ToString
+    public static class Event implements Serializable {
+        /**
+         * Indicates whether to publish the events off the request thread or not
+         * <p>
+         * Default is {@code false}, publishes {@code RateLimitedEvent} on the request thread,
+         * otherwise publishes {@code RateLimitedSummaryEvent} that coalesce the denials per identifier periodically
+         */
+        private Boolean async = false;
+
+        /**
+         * The interval to coalesce the denials into summary events
+         * <p>
+         * Default is {@code 1s}
+         */
+        private Duration summaryInterval = Duration.ofSeconds(1L);
+
+        /**
+         * The maximum number of identifiers to coalesce in an interval, the denials of the other identifiers are dropped
+         * <p>
+         * Default is {@code 10000}
+         */
+        private Integer maxEntries = 10000;
+
+        /**
+         * The maximum number of batches waiting for publication, the batches beyond are dropped
+         * <p>
+         * Default is {@code 4}
+         */
+        private Integer queueCapacity = 4;
+    }
+
+
+    /**
+     * Properties for a rule that limits the requests by path patterns
+     * <p>
+     * The attributes are the same as {@link com.yookue.springstarter.ratelimiter.annotation.RateLimit},
+     * when a request matches several rules, the most specific path pattern wins
+     *
+     * @author David Hsing
+     */
+    @Getter
+    @Setter
+    @ToString
+    public static class Rule implements Serializable {
+        /**
+         * The name of the rule, the keys are named by it, so the states are kept when the rule is reloaded
+         * <p>
+         * Default is the joined path patterns and http methods
+         */
+        private String name;
+
+        /**
+         * The path patterns of the requests, in {@link org.springframework.web.util.pattern.PathPattern} syntax
+         */
+        private List<String> paths = new ArrayList<>();
+
+        /**
+         * The http methods of the requests
+         * <p>
+         * Default is empty, matches any method
+         */
+        private List<String> methods = new ArrayList<>();
+
+        /**
+         * The time amount for the limit, required
+         */
+        private Duration ttl;
+
+        /**
+         * The algorithm for limiter
+         * <p>
+         * Default is {@code COOLDOWN}
+         */
+        private LimiterAlgorithmType algorithm = LimiterAlgorithmType.COOLDOWN;
+
+        /**
+         * The number of permits per {@code ttl}
+         * <p>
+         * Default is {@code 1}
+         */
+        private Long permits = 1L;
+
+        /**
+         * The maximum number of permits to hold for bursts, only works with {@code TOKEN_BUCKET} algorithm
+         * <p>
+         * Default is {@code 0}, the same as {@code permits}
+         */
+        private Long capacity = 0L;
+
+        /**
+         * The time to wait for a permit before rejecting the request, the requests over the rate limits are delayed until their next permits
+         * <p>
+         * Default is {@code 0}, rejecting at once
+         */
+        private Duration maxWait = Duration.ZERO;
+
+        /**
+         * The trigger type for limiter
+         * <p>
+         * Default is {@code IP_ADDRESS}
+         */
+        private LimiterTriggerType triggerType = LimiterTriggerType.IP_ADDRESS;
+
+        /**
+         * The SpEL expression of the trigger value, only works with {@code KEY} trigger type
+         * <p>
+         * The method arguments are absent for rules, such as {@code header('X-Api-Key')} or {@code principal.name}
+         */
+        private String key;
+
+        /**
+         * The number of keys to split the permits over, only works with {@code ANY} trigger type
+         * <p>
+         * Default is {@code 1}, a single key
+         */
+        private Integer shards = 1;
+
+        /**
+         * The number of permits to deduct by each request, either a number or a SpEL expression like {@code key}
+         * <p>
+         * Default is blank, a single permit
+         */
+        private String cost;
+
+        /**
+         * The message code for {@link org.springframework.context.MessageSource}
+         */
+        private String messageCode;
+
+        /**
+         * The message text for display directly
+         */
+        private String messageText;
+    }
 }
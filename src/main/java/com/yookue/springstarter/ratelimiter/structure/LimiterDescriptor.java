@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yookue.springstarter.ratelimiter.structure;
+
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Objects;
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+import org.apache.commons.lang3.StringUtils;
+import com.yookue.springstarter.ratelimiter.annotation.RateLimit;
+import com.yookue.springstarter.ratelimiter.support.AdaptiveLimiter;
+import com.yookue.springstarter.ratelimiter.support.LimiterCostResolver;
+import com.yookue.springstarter.ratelimiter.support.LimiterShards;
+import com.yookue.springstarter.ratelimiter.support.LimiterTriggerResolver;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+
+/**
+ * Structure for the precompiled limiter metadata of a method
+ * <p>
+ * Everything that only depends on the method is resolved once, the hot path only appends the trigger value.
+ * When the method has stacked limits, this descriptor is the first limit, and holds the others
+ *
+ * @author David Hsing
+ */
+@AllArgsConstructor
+@Getter
+@ToString
+@SuppressWarnings("unused")
+public class LimiterDescriptor {
+    /**
+     * The target method, {@code null} if the limit is a configured rule
+     */
+    @Nullable
+    private final Method method;
+
+    /**
+     * The name of the limit, the qualified method name or the name of the rule
+     */
+    private final String name;
+
+    /**
+     * The annotation of the method, or the synthesized annotation of the rule
+     */
+    private final RateLimit annotation;
+
+    /**
+     * The quota of the limiter
+     */
+    private final LimiterQuota quota;
+
+    /**
+     * The leading part of the identifier, including the limit name and the trigger type
+     */
+    private final String keyPrefix;
+
+    /**
+     * The trailing part of the identifier
+     */
+    private final String keySuffix;
+
+    /**
+     * The whole identifier, if the trigger type has no dynamic part
+     */
+    @Nullable
+    private final String identifier;
+
+    /**
+     * The resolver of the trigger value, if the trigger type has a dynamic part
+     */
+    @Nullable
+    @ToString.Exclude
+    private final LimiterTriggerResolver triggerResolver;
+
+    /**
+     * The other limits stacked on the method, empty if the method has only one limit
+     */
+    private final List<LimiterDescriptor> stackedLimits;
+
+    /**
+     * The quotas of all the limits, in the order of {@link #getLimit(int)}
+     */
+    @ToString.Exclude
+    private final LimiterQuota[] limitQuotas;
+
+    /**
+     * The adaptive limiter of the calls in flight, if any limit of the method is adaptive
+     */
+    @Nullable
+    @ToString.Exclude
+    private final AdaptiveLimiter adaptiveLimiter;
+
+    /**
+     * The shards of the limit, if the permits are split over several keys
+     */
+    @Nullable
+    @ToString.Exclude
+    private final LimiterShards limitShards;
+
+    /**
+     * The resolver of the cost, if the cost of each call is dynamic
+     */
+    @Nullable
+    @ToString.Exclude
+    private final LimiterCostResolver costResolver;
+
+    /**
+     * Returns the number of the limits, including this one
+     *
+     * @return the number of the limits, including this one
+     */
+    public int getLimitCount() {
+        return stackedLimits.size() + 1;
+    }
+
+    /**
+     * Returns the limit at the index, the first limit is this one
+     *
+     * @param index the index of the limit
+     *
+     * @return the limit at the index
+     */
+    @Nonnull
+    public LimiterDescriptor getLimit(int index) {
+        return (index == 0) ? this : stackedLimits.get(index - 1);
+    }
+
+    /**
+     * Returns a copy of this descriptor with the quotas of the current call
+     *
+     * @param quotas the quotas of all the limits, in the order of {@link #getLimit(int)}
+     *
+     * @return a copy of this descriptor with the quotas of the current call
+     */
+    @Nonnull
+    public LimiterDescriptor withQuotas(@Nonnull LimiterQuota[] quotas) {
+        return new LimiterDescriptor(method, name, annotation, quotas[0], keyPrefix, keySuffix, identifier, triggerResolver, stackedLimits, quotas, adaptiveLimiter, limitShards, costResolver);
+    }
+
+    /**
+     * Returns a copy of this descriptor that takes over the local states of the previous descriptor
+     * <p>
+     * The adaptive limiter and the shards are only taken over when the keys and the quotas are unchanged,
+     * so a reload of the rules does not reset the limits of the unchanged rules
+     *
+     * @param previous the previous descriptor of the same limit
+     *
+     * @return a copy of this descriptor with the local states of the previous descriptor, or this descriptor if they are changed
+     */
+    @Nonnull
+    public LimiterDescriptor inheritStates(@Nonnull LimiterDescriptor previous) {
+        if (!StringUtils.equals(keyPrefix, previous.keyPrefix) || !StringUtils.equals(keySuffix, previous.keySuffix) || !Objects.equals(quota, previous.quota)) {
+            return this;
+        }
+        AdaptiveLimiter inheritedLimiter = (adaptiveLimiter != null && previous.adaptiveLimiter != null) ? previous.adaptiveLimiter : adaptiveLimiter;
+        LimiterShards inheritedShards = (limitShards != null && previous.limitShards != null && limitShards.size() == previous.limitShards.size()) ? previous.limitShards : limitShards;
+        if (inheritedLimiter == adaptiveLimiter && inheritedShards == limitShards) {
+            return this;
+        }
+        return new LimiterDescriptor(method, name, annotation, quota, keyPrefix, keySuffix, identifier, triggerResolver, stackedLimits, limitQuotas, inheritedLimiter, inheritedShards, costResolver);
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yookue.springstarter.ratelimiter.structure;
+
+
+import java.io.Serializable;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+
+/**
+ * Structure for a block of permits leased from a remote storage
+ *
+ * @author David Hsing
+ */
+@AllArgsConstructor
+@Getter
+@ToString
+@SuppressWarnings("unused")
+public class LimiterLease implements Serializable {
+    /**
+     * The number of permits granted to this node
+     */
+    private final long granted;
+
+    /**
+     * The number of permits that are still available in the remote storage
+     */
+    private final long remaining;
+
+    /**
+     * The milliseconds until the limiter resets
+     */
+    private final long resetMillis;
+}
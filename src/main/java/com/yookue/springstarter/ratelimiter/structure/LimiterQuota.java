@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yookue.springstarter.ratelimiter.structure;
+
+
+import java.io.Serializable;
+import java.time.Duration;
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+import com.yookue.springstarter.ratelimiter.enumeration.LimiterAlgorithmType;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+
+/**
+ * Structure for the quota of a limiter
+ *
+ * @author David Hsing
+ */
+@AllArgsConstructor
+@EqualsAndHashCode
+@Getter
+@ToString
+@SuppressWarnings("unused")
+public class LimiterQuota implements Serializable {
+    /**
+     * The algorithm of the limiter
+     */
+    private final LimiterAlgorithmType algorithm;
+
+    /**
+     * The number of permits per window
+     */
+    private final long permits;
+
+    /**
+     * The maximum number of permits to hold for bursts, only works with {@link LimiterAlgorithmType#TOKEN_BUCKET}
+     */
+    private final long capacity;
+
+    /**
+     * The window of the limiter, {@code null} means never expire
+     */
+    @Nullable
+    private final Duration window;
+
+    /**
+     * The number of permits to deduct by a call, {@code 1} for the unweighted calls
+     */
+    private final long cost;
+
+    public LimiterQuota(@Nonnull LimiterAlgorithmType algorithm, long permits, long capacity, @Nullable Duration window) {
+        this(algorithm, permits, capacity, window, 1L);
+    }
+
+    /**
+     * Returns the milliseconds of the window
+     *
+     * @return the milliseconds of the window, or {@code 0} if never expire
+     */
+    public long getWindowMillis() {
+        return (window == null) ? 0L : window.toMillis();
+    }
+
+    /**
+     * Returns the quota that deducts the permits of the cost by a call
+     * <p>
+     * The cost is bounded by the permits of a window, or the capacity of {@link LimiterAlgorithmType#TOKEN_BUCKET},
+     * so the most expensive call drains the limit instead of being denied forever
+     *
+     * @param cost the number of permits to deduct by a call
+     *
+     * @return the quota that deducts the permits of the cost by a call
+     */
+    @Nonnull
+    public LimiterQuota withCost(long cost) {
+        long bounded = Math.min(Math.max(cost, 1L), (algorithm == LimiterAlgorithmType.TOKEN_BUCKET) ? capacity : permits);
+        return (bounded == this.cost) ? this : new LimiterQuota(algorithm, permits, capacity, window, bounded);
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yookue.springstarter.ratelimiter.structure;
+
+
+import java.io.Serializable;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+
+/**
+ * Structure for the verdict of a limiter decision
+ *
+ * @author David Hsing
+ */
+@AllArgsConstructor
+@Getter
+@ToString
+@SuppressWarnings("unused")
+public class LimiterVerdict implements Serializable {
+    /**
+     * Indicates whether the permit is acquired or not
+     */
+    private final boolean allowed;
+
+    /**
+     * The number of permits remaining in the current window
+     */
+    private final long remaining;
+
+    /**
+     * The milliseconds until the limitation resets, non-positive means unknown or never expire
+     */
+    private final long resetMillis;
+}
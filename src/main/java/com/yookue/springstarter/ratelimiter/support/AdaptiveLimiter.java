@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.yookue.springstarter.ratelimiter.support;
+
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.locks.ReentrantLock;
+import jakarta.annotation.Nullable;
+import org.springframework.util.Assert;
+import lombok.Getter;
+
+
+/**
+ * Adaptive limiter of the calls in flight on this node
+ * <p>
+ * The limit follows the gradient between the baseline latency without load and the recent latency of the calls:
+ * it grows by about the square root of itself while the recent latency stays within {@code 1.5} times of the baseline,
+ * and shrinks by up to half when the latency grows beyond, then it is smoothed and bounded by {@code [1, maxLimit]}.
+ * The limit does not grow while less than half of it is used, so that an idle limit does not inflate.
+ * Entering is a single compare-and-set, and the samples are skipped rather than waited for while another sample is being applied
+ *
+ * @author David Hsing
+ */
+@SuppressWarnings("unused")
+public class AdaptiveLimiter {
+    private static final double TOLERANCE = 1.5D;
+    private static final double SMOOTHING = 0.2D;
+    private static final double RECENT_WEIGHT = 0.2D;
+    private static final double BASELINE_FALL_WEIGHT = 0.1D;
+    private static final double BASELINE_RISE_WEIGHT = 0.001D;
+    private static final double MIN_GRADIENT = 0.5D;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final ReentrantLock sampleLock = new ReentrantLock();
+
+    @Getter
+    private final int maxLimit;
+
+    @Getter
+    private volatile int limit;
+
+    // Guarded by the sample lock
+    private double estimatedLimit;
+    private double recentNanos;
+    private double baselineNanos;
+
+    /**
+     * Constructs a new limiter, the limit starts at a quarter of the maximum
+     *
+     * @param maxLimit the maximum number of calls in flight
+     */
+    public AdaptiveLimiter(long maxLimit) {
+        Assert.isTrue(maxLimit > 0L, "Max limit must be positive");
+        this.maxLimit = (int) Math.min(maxLimit, Integer.MAX_VALUE);
+        this.estimatedLimit = Math.max(this.maxLimit / 4, 1);
+        this.limit = (int) estimatedLimit;
+    }
+
+    /**
+     * Enters the limiter, never blocks
+     *
+     * @return the permit to close when the call completes, or {@code null} if the limit is reached
+     */
+    @Nullable
+    public Flight tryEnter() {
+        int current;
+        do {
+            current = inFlight.get();
+            if (current >= limit) {
+                return null;
+            }
+        } while (!inFlight.compareAndSet(current, current + 1));
+        return new Flight(current + 1);
+    }
+
+    /**
+     * Returns the number of the calls in flight
+     *
+     * @return the number of the calls in flight
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    private void sample(long latencyNanos, int flights) {
+        if (!sampleLock.tryLock()) {
+            return;
+        }
+        try {
+            double latency = Math.max(latencyNanos, 1L);
+            if (baselineNanos == 0.0D) {
+                recentNanos = latency;
+                baselineNanos = latency;
+            } else {
+                recentNanos += (latency - recentNanos) * RECENT_WEIGHT;
+                // The baseline approximates the latency without load, it follows the faster calls soon, and the slower calls slowly per round of calls
+                baselineNanos += (latency - baselineNanos) * ((latency < baselineNanos) ? BASELINE_FALL_WEIGHT : BASELINE_RISE_WEIGHT / estimatedLimit);
+            }
+            double gradient = Math.max(MIN_GRADIENT, Math.min(1.0D, TOLERANCE * baselineNanos / recentNanos));
+            if (gradient >= 1.0D && flights < estimatedLimit / 2.0D) {
+                return;
+            }
+            double target = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+            // Each sample moves a share of the limit, so the limit moves by about SMOOTHING per round of calls, however many calls there are
+            estimatedLimit = Math.max(1.0D, Math.min(maxLimit, estimatedLimit + (target - estimatedLimit) * SMOOTHING / estimatedLimit));
+            limit = (int) estimatedLimit;
+        } finally {
+            sampleLock.unlock();
+        }
+    }
+
+
+    /**
+     * Permit of a call in flight, the latency is sampled when it is closed, only the first close or cancel takes effect
+     *
+     * @author David Hsing
+     */
+    public final class Flight implements LimiterPermit {
+        private static final AtomicIntegerFieldUpdater<Flight> LEFT_UPDATER = AtomicIntegerFieldUpdater.newUpdater(Flight.class, "left");    // $NON-NLS-1$
+        private final long startTime = System.nanoTime();
+        private final int flights;
+        private volatile int left;
+
+        private Flight(int flights) {
+            this.flights = flights;
+        }
+
+        @Override
+        public void close() {
+            if (LEFT_UPDATER.compareAndSet(this, 0, 1)) {
+                inFlight.decrementAndGet();
+                sample(System.nanoTime() - startTime, flights);
+            }
+        }
+
+        /**
+         * Leaves the limiter without sampling, when the call does not proceed
+         */
+        @Override
+        public void cancel() {
+            if (LEFT_UPDATER.compareAndSet(this, 0, 1)) {
+                inFlight.decrementAndGet();
+            }
+        }
+    }
+}
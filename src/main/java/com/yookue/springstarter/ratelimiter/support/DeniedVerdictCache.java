@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yookue.springstarter.ratelimiter.support;
+
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+import org.springframework.util.Assert;
+import com.yookue.springstarter.ratelimiter.structure.LimiterVerdict;
+import lombok.Getter;
+
+
+/**
+ * Bounded near-cache of denied verdicts
+ * <p>
+ * Remembers the denied identifiers until their known reset time, so that repeat offenders are rejected without any network I/O.
+ * Verdicts without a known reset time are never cached
+ *
+ * @author David Hsing
+ */
+@SuppressWarnings("unused")
+public class DeniedVerdictCache {
+    private final Map<String, Long> deadlines = new ConcurrentHashMap<>();
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final ReentrantLock evictLock = new ReentrantLock();
+
+    @Getter
+    private final int maxEntries;
+
+    /**
+     * Constructs a new cache
+     *
+     * @param maxEntries the maximum number of identifiers to hold
+     */
+    public DeniedVerdictCache(int maxEntries) {
+        Assert.isTrue(maxEntries > 0, "Max entries must be positive");
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Returns the cached denied verdict of the identifier
+     *
+     * @param identifier the identifier of the limitation
+     *
+     * @return the cached denied verdict of the identifier, or {@code null} if absent or expired
+     */
+    @Nullable
+    public LimiterVerdict lookup(@Nonnull String identifier) {
+        Long deadline = deadlines.get(identifier);
+        if (deadline != null) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining > 0L) {
+                hitCount.increment();
+                return new LimiterVerdict(false, 0L, Math.max(TimeUnit.NANOSECONDS.toMillis(remaining), 1L));
+            }
+            deadlines.remove(identifier, deadline);
+        }
+        missCount.increment();
+        return null;
+    }
+
+    /**
+     * Remembers the verdict of the identifier, if it is denied with a known reset time
+     *
+     * @param identifier the identifier of the limitation
+     * @param verdict the verdict from the storage
+     */
+    public void put(@Nonnull String identifier, @Nonnull LimiterVerdict verdict) {
+        if (verdict.isAllowed() || verdict.getResetMillis() <= 0L) {
+            return;
+        }
+        if (deadlines.size() >= maxEntries && !deadlines.containsKey(identifier) && !makeRoom()) {
+            return;
+        }
+        deadlines.put(identifier, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(verdict.getResetMillis()));
+    }
+
+    /**
+     * Forgets the denied verdict of the identifier, when its permits have been released
+     *
+     * @param identifier the identifier of the limitation
+     */
+    public void invalidate(@Nonnull String identifier) {
+        deadlines.remove(identifier);
+    }
+
+    /**
+     * Returns the number of identifiers that are currently held
+     *
+     * @return the number of identifiers that are currently held
+     */
+    public int size() {
+        return deadlines.size();
+    }
+
+    /**
+     * Returns the number of lookups that hit
+     *
+     * @return the number of lookups that hit
+     */
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    /**
+     * Returns the number of lookups that missed
+     *
+     * @return the number of lookups that missed
+     */
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * Returns the ratio of lookups that hit
+     *
+     * @return the ratio of lookups that hit, or {@code 0} if never looked up
+     */
+    public double getHitRate() {
+        long hits = hitCount.sum(), total = hits + missCount.sum();
+        return (total == 0L) ? 0.0D : (double) hits / total;
+    }
+
+    /**
+     * Removes all the identifiers
+     */
+    public void clear() {
+        deadlines.clear();
+    }
+
+    private boolean makeRoom() {
+        // Only one thread sweeps at a time, the others simply skip caching
+        if (!evictLock.tryLock()) {
+            return false;
+        }
+        try {
+            long now = System.nanoTime();
+            for (Iterator<Long> iterator = deadlines.values().iterator(); iterator.hasNext(); ) {
+                if (iterator.next() - now <= 0L) {
+                    iterator.remove();
+                }
+            }
+            return deadlines.size() < maxEntries;
+        } finally {
+            evictLock.unlock();
+        }
+    }
+}
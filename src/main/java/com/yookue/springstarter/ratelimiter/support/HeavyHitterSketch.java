@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.yookue.springstarter.ratelimiter.support;
+
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+import org.springframework.util.Assert;
+import com.yookue.springstarter.ratelimiter.enumeration.LimiterAlgorithmType;
+import com.yookue.springstarter.ratelimiter.structure.LimiterQuota;
+import com.yookue.springstarter.ratelimiter.structure.LimiterVerdict;
+import lombok.Getter;
+
+
+/**
+ * Local tier that admits the identifiers far under their limits, without asking the remote storages
+ * <p>
+ * The calls of all identifiers are counted by a Count-Min Sketch of {@code ceil(e / errorRate)} columns and {@code ceil(ln(1 / failureProbability))} rows,
+ * so the memory is fixed whatever the number of identifiers. The counts decay by a sliding window of two generations,
+ * and the estimates never undercount, they overcount by at most {@code errorRate} of the calls in a window, with the probability {@code 1 - failureProbability}.
+ * An identifier escalates to the storage once its estimated calls in the window of its limit reach {@code escalationRatio} of the permits.
+ * The admitted calls are not counted by the storage, so each node may admit up to {@code escalationRatio} of the permits per window beyond the limit
+ *
+ * @author David Hsing
+ */
+@SuppressWarnings("unused")
+public class HeavyHitterSketch {
+    private final AtomicReference<Generation> generation;
+    private final long origin = System.nanoTime();
+    private final long windowNanos;
+    private final double escalationRatio;
+
+    @Getter
+    private final int width;
+
+    @Getter
+    private final int depth;
+
+    /**
+     * Constructs a new sketch
+     *
+     * @param errorRate the error of the estimates, relative to the calls in a window
+     * @param failureProbability the probability that an estimate exceeds the error
+     * @param window the window to count the calls
+     * @param escalationRatio the share of the permits to escalate to the storage
+     */
+    public HeavyHitterSketch(double errorRate, double failureProbability, @Nonnull Duration window, double escalationRatio) {
+        Assert.isTrue(errorRate > 0.0D && errorRate < 1.0D, "Error rate must be in (0, 1)");
+        Assert.isTrue(failureProbability > 0.0D && failureProbability < 1.0D, "Failure probability must be in (0, 1)");
+        Assert.isTrue(window.toMillis() > 0L, "Window must be positive");
+        Assert.isTrue(escalationRatio > 0.0D && escalationRatio <= 1.0D, "Escalation ratio must be in (0, 1]");
+        this.width = (int) Math.min(Math.ceil(Math.E / errorRate), Integer.MAX_VALUE / 64);
+        this.depth = (int) Math.max(Math.ceil(Math.log(1.0D / failureProbability)), 1.0D);
+        this.windowNanos = window.toNanos();
+        this.escalationRatio = escalationRatio;
+        long epoch = currentTime() / windowNanos;
+        this.generation = new AtomicReference<>(new Generation(epoch, new AtomicLongArray(width * depth), new AtomicLongArray(width * depth)));
+    }
+
+    /**
+     * Returns whether the sketch can decide the limit or not
+     *
+     * @param quota the quota of the limit
+     *
+     * @return whether the sketch can decide the limit or not
+     */
+    public static boolean isSupported(@Nonnull LimiterQuota quota) {
+        return quota.getWindow() != null && !quota.getAlgorithm().isInFlight() && quota.getAlgorithm() != LimiterAlgorithmType.COOLDOWN;
+    }
+
+    /**
+     * Counts the call, and admits it if all the identifiers are far under their limits
+     *
+     * @param identifiers the identifiers of the limits, the {@code null} elements are skipped
+     * @param quotas the quotas of the limits, in the same order as the identifiers
+     *
+     * @return the allowed verdict with the estimated remaining permits, or {@code null} if the call should be decided by the storage
+     */
+    @Nullable
+    public LimiterVerdict tryAdmit(@Nonnull String[] identifiers, @Nonnull LimiterQuota[] quotas) {
+        long now = currentTime();
+        Generation current = rotateIfNecessary(now);
+        double weight = determineWeight(current, now);
+        boolean admitted = true;
+        long remaining = Long.MAX_VALUE;
+        for (int i = 0; i < identifiers.length; i++) {
+            if (identifiers[i] == null) {
+                continue;
+            }
+            // Counts the call for every limit, so the estimates stay correct even if the call escalates
+            double calls = increment(current, identifiers[i], quotas[i].getCost(), weight);
+            if (!admitted) {
+                continue;
+            }
+            LimiterQuota quota = quotas[i];
+            if (!isSupported(quota)) {
+                admitted = false;
+                continue;
+            }
+            double estimated = calls * quota.getWindow().toNanos() / windowNanos;
+            if (estimated >= quota.getPermits() * escalationRatio) {
+                admitted = false;
+                continue;
+            }
+            remaining = Math.min(remaining, quota.getPermits() - (long) Math.ceil(estimated));
+        }
+        return (admitted && remaining != Long.MAX_VALUE) ? new LimiterVerdict(true, remaining, 0L) : null;
+    }
+
+    /**
+     * Returns the estimated calls of the identifier in a window
+     *
+     * @param identifier the identifier of the limitation
+     *
+     * @return the estimated calls of the identifier in a window
+     */
+    public double estimate(@Nonnull String identifier) {
+        long now = currentTime();
+        Generation current = rotateIfNecessary(now);
+        double weight = determineWeight(current, now);
+        long hash = spread(identifier);
+        double result = Double.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            int index = indexOf(hash, row);
+            result = Math.min(result, current.counts.get(index) + current.previous.get(index) * weight);
+        }
+        return result;
+    }
+
+    private double increment(@Nonnull Generation current, @Nonnull String identifier, long cost, double weight) {
+        long hash = spread(identifier);
+        // A weighted call counts as many calls in the current window, the previous window only decays
+        long delta = Math.max(cost, 1L);
+        double result = Double.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            int index = indexOf(hash, row);
+            result = Math.min(result, current.counts.accumulateAndGet(index, delta, HeavyHitterSketch::saturatedAdd) + current.previous.get(index) * weight);
+        }
+        return result;
+    }
+
+    private static long saturatedAdd(long augend, long addend) {
+        // The counts saturate instead of wrapping negative, so the heavy identifiers always escalate
+        long result = augend + addend;
+        return (result < 0L) ? Long.MAX_VALUE : result;
+    }
+
+    @Nonnull
+    private Generation rotateIfNecessary(long now) {
+        Generation current = generation.get();
+        long epoch = now / windowNanos;
+        if (epoch == current.epoch) {
+            return current;
+        }
+        // The counts of the window before the previous one have fully decayed
+        AtomicLongArray previous = (epoch == current.epoch + 1L) ? current.counts : new AtomicLongArray(width * depth);
+        Generation next = new Generation(epoch, new AtomicLongArray(width * depth), previous);
+        return generation.compareAndSet(current, next) ? next : generation.get();
+    }
+
+    private double determineWeight(@Nonnull Generation current, long now) {
+        // The share of the previous window that still overlaps the sliding window
+        double weight = 1.0D - (double) (now - current.epoch * windowNanos) / windowNanos;
+        return Math.min(Math.max(weight, 0.0D), 1.0D);
+    }
+
+    private long currentTime() {
+        // Shifts the monotonic time to be positive, so that the epochs of the windows never go negative
+        return System.nanoTime() - origin + 1L;
+    }
+
+    private int indexOf(long hash, int row) {
+        // Derives the rows from two halves of a single hash
+        int value = (int) hash + row * ((int) (hash >>> 32) | 1);
+        return row * width + Math.floorMod(value, width);
+    }
+
+    private static long spread(@Nonnull String identifier) {
+        long hash = identifier.hashCode() * 0x9E3779B97F4A7C15L;
+        return hash ^ (hash >>> 29);
+    }
+
+
+    private record Generation(long epoch, @Nonnull AtomicLongArray counts, @Nonnull AtomicLongArray previous) {
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yookue.springstarter.ratelimiter.support;
+
+
+import java.lang.reflect.Method;
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.springframework.beans.factory.BeanFactory;
+
+
+/**
+ * Resolver of the costs by a SpEL expression
+ * <p>
+ * The expression is the same as {@link LimiterKeyExpression}, such as {@code #pageSize / 10} or {@code header('Content-Length')},
+ * a number is the cost, a text is parsed as a number, and anything else costs {@code 1}
+ *
+ * @author David Hsing
+ */
+@SuppressWarnings("unused")
+public class LimiterCostExpression implements LimiterCostResolver {
+    private final LimiterKeyExpression expression;
+
+    /**
+     * Constructs a new resolver
+     *
+     * @param cost the SpEL expression of the cost
+     * @param method the method to limit, or {@code null} if there are no arguments
+     * @param beanFactory the bean factory to resolve the bean references, or {@code null} if not supported
+     */
+    public LimiterCostExpression(@Nonnull String cost, @Nullable Method method, @Nullable BeanFactory beanFactory) {
+        this.expression = new LimiterKeyExpression(cost, method, beanFactory);
+    }
+
+    @Override
+    public long resolve(@Nonnull Object[] arguments) {
+        return evaluate(LimiterKeyExpression.currentRoot(arguments));
+    }
+
+    /**
+     * Returns the cost of the root object
+     *
+     * @param root the root object of the expression
+     *
+     * @return the cost of the root object
+     */
+    public long evaluate(@Nonnull LimiterKeyExpression.Root root) {
+        Object value = expression.evaluateValue(root);
+        if (value instanceof Number number) {
+            return number.longValue();
+        }
+        if (value instanceof CharSequence text) {
+            return NumberUtils.toLong(StringUtils.trim(text.toString()), 1L);
+        }
+        return 1L;
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.yookue.springstarter.ratelimiter.support;
+
+
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.Assert;
+import org.springframework.util.ReflectionUtils;
+import com.yookue.springstarter.ratelimiter.event.RateLimitedSummaryEvent;
+import com.yookue.springstarter.ratelimiter.structure.LimiterDescriptor;
+import lombok.extern.slf4j.Slf4j;
+
+
+/**
+ * Asynchronous publisher for limiter events
+ * <p>
+ * The denials are counted per identifier on the request threads, and published as {@link RateLimitedSummaryEvent} every {@code summaryInterval}.
+ * The identifiers beyond {@code maxEntries}, and the batches beyond {@code queueCapacity} while the listeners are slow, are dropped and counted,
+ * so that a flood of denials never blocks the request threads on the event listeners
+ *
+ * @author David Hsing
+ */
+@Slf4j
+@SuppressWarnings("unused")
+public class LimiterEventPublisher implements DisposableBean {
+    private static final String IDENTIFIER_SEPARATOR = "\n";    // $NON-NLS-1$
+    private final Map<String, Summary> summaries = new ConcurrentHashMap<>();
+    private final LongAdder droppedCount = new LongAdder();
+    private final ApplicationEventPublisher eventPublisher;
+    private final int maxEntries;
+    private final Semaphore queuePermits;
+    private final ScheduledExecutorService flushExecutor;
+    private final ExecutorService publishExecutor;
+    private volatile long lastFlush = System.currentTimeMillis();
+
+    /**
+     * Constructs a new publisher
+     *
+     * @param publisher the publisher of the application events
+     * @param summaryInterval the interval to coalesce the denials into summary events
+     * @param maxEntries the maximum number of identifiers to coalesce in an interval
+     * @param queueCapacity the maximum number of batches waiting for publication
+     */
+    public LimiterEventPublisher(@Nonnull ApplicationEventPublisher publisher, @Nonnull Duration summaryInterval, int maxEntries, int queueCapacity) {
+        Assert.isTrue(summaryInterval.toMillis() > 0L, "Summary interval must be positive");
+        Assert.isTrue(maxEntries > 0, "Max entries must be positive");
+        Assert.isTrue(queueCapacity > 0, "Queue capacity must be positive");
+        this.eventPublisher = publisher;
+        this.maxEntries = maxEntries;
+        this.queuePermits = new Semaphore(queueCapacity);
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("rate-limiter-event-");    // $NON-NLS-1$
+        threadFactory.setDaemon(true);
+        this.flushExecutor = Executors.newSingleThreadScheduledExecutor(threadFactory);
+        this.publishExecutor = buildPublishExecutor(threadFactory);
+        long interval = summaryInterval.toMillis();
+        flushExecutor.scheduleWithFixedDelay(this::flush, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Returns an executor that starts a virtual thread per batch on jdk 21+, otherwise a single platform thread
+     */
+    @Nonnull
+    private static ExecutorService buildPublishExecutor(@Nonnull CustomizableThreadFactory threadFactory) {
+        Method method = ReflectionUtils.findMethod(Executors.class, "newVirtualThreadPerTaskExecutor");    // $NON-NLS-1$
+        if (method != null) {
+            Object executor = ReflectionUtils.invokeMethod(method, null);
+            if (executor instanceof ExecutorService service) {
+                return service;
+            }
+        }
+        return Executors.newSingleThreadExecutor(threadFactory);
+    }
+
+    /**
+     * Counts a denied call, never blocks
+     *
+     * @param identifiers the identifiers of the limits, the {@code null} elements are skipped
+     * @param descriptor the descriptor of the method
+     * @param triggerValues the supplier of the raw trigger values, in the order of the identifiers, only called by the first denial of an identifier in an interval
+     */
+    public void record(@Nonnull String[] identifiers, @Nonnull LimiterDescriptor descriptor, @Nonnull Supplier<String[]> triggerValues) {
+        String key = (identifiers.length == 1) ? identifiers[0] : joinIdentifiers(identifiers);
+        if (key == null) {
+            return;
+        }
+        Summary summary = summaries.get(key);
+        while (summary == null || summary.count.getAndIncrement() < 0L) {
+            // The summary is absent, or has been retired by the flush thread after an idle interval
+            if (summary == null && summaries.size() >= maxEntries) {
+                droppedCount.increment();
+                return;
+            }
+            summary = summaries.compute(key, (alias, present) -> (present == null || present.count.get() < 0L) ? new Summary(descriptor, identifiers, triggerValues.get()) : present);
+        }
+    }
+
+    /**
+     * Publishes the denials counted since the last flush, called periodically by the flush thread
+     */
+    public void flush() {
+        long now = System.currentTimeMillis();
+        long since = lastFlush;
+        lastFlush = now;
+        List<RateLimitedSummaryEvent> events = new ArrayList<>();
+        long total = 0L;
+        for (Map.Entry<String, Summary> entry : summaries.entrySet()) {
+            Summary summary = entry.getValue();
+            long count = summary.count.getAndSet(0L);
+            if (count == 0L) {
+                // Idle in the whole interval, frees the entry for other identifiers, unless a denial has just been counted
+                if (summary.count.compareAndSet(0L, Long.MIN_VALUE)) {
+                    summaries.remove(entry.getKey(), summary);
+                }
+                continue;
+            }
+            events.add(new RateLimitedSummaryEvent(summary.name, summary.method, summary.identifiers, summary.triggerValues, count, since, now));
+            total += count;
+        }
+        if (events.isEmpty()) {
+            return;
+        }
+        if (!queuePermits.tryAcquire()) {
+            droppedCount.add(total);
+            return;
+        }
+        try {
+            publishExecutor.execute(() -> publishEvents(events));
+        } catch (RejectedExecutionException ex) {
+            queuePermits.release();
+            droppedCount.add(total);
+        }
+    }
+
+    private void publishEvents(@Nonnull List<RateLimitedSummaryEvent> events) {
+        try {
+            for (RateLimitedSummaryEvent event : events) {
+                eventPublisher.publishEvent(event);
+            }
+        } catch (RuntimeException ex) {
+            if (log.isWarnEnabled()) {
+                log.warn("Rate limiter events failed to publish", ex);
+            }
+        } finally {
+            queuePermits.release();
+        }
+    }
+
+    private static String joinIdentifiers(@Nonnull String[] identifiers) {
+        StringBuilder builder = null;
+        for (String identifier : identifiers) {
+            if (identifier != null) {
+                builder = (builder == null) ? new StringBuilder(identifier) : builder.append(IDENTIFIER_SEPARATOR).append(identifier);
+            }
+        }
+        return (builder == null) ? null : builder.toString();
+    }
+
+    /**
+     * Returns the number of the denials that are not published
+     *
+     * @return the number of the denials that are not published
+     */
+    public long getDroppedCount() {
+        return droppedCount.sum();
+    }
+
+    /**
+     * Returns the number of the identifiers that are counted in the current interval
+     *
+     * @return the number of the identifiers that are counted in the current interval
+     */
+    public int size() {
+        return summaries.size();
+    }
+
+    @Override
+    public void destroy() {
+        flushExecutor.shutdownNow();
+        try {
+            flush();
+        } catch (RuntimeException ignored) {
+        }
+        publishExecutor.shutdown();
+    }
+
+
+    private static final class Summary {
+        /**
+         * The denials counted in the current interval, negative once the summary is retired
+         */
+        private final AtomicLong count = new AtomicLong();
+        private final String name;
+        private final Method method;
+        private final List<String> identifiers;
+        private final List<String> triggerValues;
+
+        private Summary(@Nonnull LimiterDescriptor descriptor, @Nonnull String[] identifiers, @Nullable String[] triggerValues) {
+            this.name = descriptor.getName();
+            this.method = descriptor.getMethod();
+            List<String> presentIdentifiers = new ArrayList<>(identifiers.length);
+            List<String> presentValues = new ArrayList<>(identifiers.length);
+            for (int i = 0; i < identifiers.length; i++) {
+                if (identifiers[i] != null) {
+                    presentIdentifiers.add(identifiers[i]);
+                    presentValues.add((triggerValues == null || i >= triggerValues.length) ? null : triggerValues[i]);
+                }
+            }
+            this.identifiers = Collections.unmodifiableList(presentIdentifiers);
+            this.triggerValues = Collections.unmodifiableList(presentValues);
+        }
+    }
+}
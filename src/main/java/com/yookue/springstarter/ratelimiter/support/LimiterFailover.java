@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yookue.springstarter.ratelimiter.support;
+
+
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.Assert;
+import com.yookue.springstarter.ratelimiter.enumeration.LimiterFailureType;
+import com.yookue.springstarter.ratelimiter.enumeration.LimiterOutcomeType;
+import com.yookue.springstarter.ratelimiter.structure.LimiterQuota;
+import com.yookue.springstarter.ratelimiter.structure.LimiterVerdict;
+import lombok.Getter;
+
+
+/**
+ * Failover of the remote storages
+ * <p>
+ * Bounds the latency of each decision by {@code timeout}, and opens the circuit after {@code failureThreshold} consecutive failures.
+ * While the circuit is open, the storage is not called, until a single probe succeeds after {@code openDuration}.
+ * The failed or skipped decisions are made by the local fallback store if present, otherwise by the failure type.
+ * When the bounded thread pool is saturated, the storage is not called, and the decision is made by the fallback too, which is not a failure of the storage.
+ * The storages that bound their own latency, such as the asynchronous redis clients, need no thread pool.
+ * <p>
+ * A call that exceeds the budget may still reserve its permits in the storage afterwards,
+ * so a timed-out call that is reserved again by the local fallback store may be counted twice, once in the storage and once per node
+ *
+ * @author David Hsing
+ */
+@SuppressWarnings("unused")
+public class LimiterFailover implements DisposableBean {
+    private static final LimiterVerdict OPEN_VERDICT = new LimiterVerdict(true, 0L, 0L);
+    private final AtomicInteger failureCount = new AtomicInteger();
+    private final AtomicLong openUntil = new AtomicLong();
+    private final int failureThreshold;
+    private final long openDuration;
+    private final ThreadPoolExecutor timeoutExecutor;
+
+    @Getter
+    private final Duration timeout;
+
+    @Getter
+    private final LimiterFailureType failureType;
+
+    @Getter
+    private final LocalLimiterStore fallbackStore;
+
+    @Getter
+    private final LocalConcurrencyStore concurrencyStore;
+
+    /**
+     * Constructs a new failover
+     *
+     * @param timeout the latency budget of each decision, {@code null} or non-positive means unbounded
+     * @param failureThreshold the consecutive failures to open the circuit, non-positive means never open
+     * @param openDuration the duration to keep the circuit open before probing
+     * @param failureType the failure type, when there is no fallback store
+     * @param fallbackStore the local store to decide while the storage is unavailable, the calls in flight are also held locally if present
+     * @param timeoutThreads the maximum number of threads to bound the latency of blocking calls, non-positive means the calls are not bounded,
+     * it should be close to the worker threads of the servlet container, the calls beyond are decided by the fallback
+     */
+    public LimiterFailover(@Nullable Duration timeout, int failureThreshold, @Nonnull Duration openDuration, @Nonnull LimiterFailureType failureType, @Nullable LocalLimiterStore fallbackStore, int timeoutThreads) {
+        Assert.isTrue(!openDuration.isNegative(), "Open duration must not be negative");
+        this.timeout = (timeout == null || timeout.isNegative() || timeout.isZero()) ? null : timeout;
+        this.failureThreshold = failureThreshold;
+        this.openDuration = openDuration.toNanos();
+        this.failureType = failureType;
+        this.fallbackStore = fallbackStore;
+        this.concurrencyStore = (fallbackStore == null) ? null : new LocalConcurrencyStore();
+        if (this.timeout == null || timeoutThreads <= 0) {
+            timeoutExecutor = null;
+        } else {
+            timeoutExecutor = new ThreadPoolExecutor(timeoutThreads, timeoutThreads, 60L, TimeUnit.SECONDS, new ArrayBlockingQueue<>(timeoutThreads), new CustomizableThreadFactory("rate-limiter-"));    // $NON-NLS-1$
+            timeoutExecutor.allowCoreThreadTimeOut(true);
+        }
+    }
+
+    /**
+     * Returns whether the storage can be called or not
+     *
+     * @return whether the storage can be called or not
+     */
+    public boolean tryPass() {
+        long until = openUntil.get();
+        if (until == 0L) {
+            return true;
+        }
+        long now = System.nanoTime();
+        // Only one caller probes the storage after the open duration
+        return now - until >= 0L && openUntil.compareAndSet(until, now + openDuration);
+    }
+
+    /**
+     * Calls the storage within the latency budget
+     *
+     * @param call the call to the storage
+     *
+     * @return the verdict of the storage, or {@code null} if the thread pool is saturated
+     */
+    @Nullable
+    public LimiterVerdict invoke(@Nonnull Callable<LimiterVerdict> call) throws Exception {
+        if (timeoutExecutor == null) {
+            return call.call();
+        }
+        Future<LimiterVerdict> future;
+        try {
+            future = timeoutExecutor.submit(call);
+        } catch (RejectedExecutionException ex) {
+            // The pool is saturated locally, the storage itself is not failed
+            return null;
+        }
+        try {
+            return future.get(timeout.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException ex) {
+            future.cancel(true);
+            throw ex;
+        } catch (ExecutionException ex) {
+            throw (ex.getCause() instanceof Exception cause) ? cause : ex;
+        }
+    }
+
+    public void recordSuccess() {
+        if (failureCount.get() != 0) {
+            failureCount.set(0);
+        }
+        if (openUntil.get() != 0L) {
+            openUntil.set(0L);
+        }
+    }
+
+    public void recordFailure() {
+        if (failureThreshold > 0 && failureCount.incrementAndGet() >= failureThreshold) {
+            openUntil.set(System.nanoTime() + openDuration);
+        }
+    }
+
+    /**
+     * Returns the verdict while the storage is unavailable
+     *
+     * @param identifiers the identifiers of the limits, the {@code null} elements are skipped
+     * @param quotas the quotas of the limits, in the same order as the identifiers
+     *
+     * @return the verdict while the storage is unavailable
+     */
+    @Nonnull
+    public LimiterVerdict fallback(@Nonnull String[] identifiers, @Nonnull LimiterQuota[] quotas) {
+        if (fallbackStore != null) {
+            return (identifiers.length == 1) ? fallbackStore.acquire(identifiers[0], quotas[0]) : fallbackStore.acquireAll(identifiers, quotas);
+        }
+        return (failureType == LimiterFailureType.CLOSED) ? new LimiterVerdict(false, 0L, TimeUnit.NANOSECONDS.toMillis(openDuration)) : OPEN_VERDICT;
+    }
+
+    /**
+     * Returns the permit of the in-flight limits while the storage is unavailable
+     *
+     * @param identifiers the identifiers of the limits, the {@code null} elements are skipped
+     * @param quotas the quotas of the limits, in the same order as the identifiers
+     * @param waitNanos the nanoseconds to wait for the permits in total
+     *
+     * @return the permit of the in-flight limits, or {@code null} if rejected
+     */
+    @Nullable
+    public LimiterPermit fallbackEnter(@Nonnull String[] identifiers, @Nonnull LimiterQuota[] quotas, long waitNanos) throws InterruptedException {
+        if (concurrencyStore != null) {
+            return concurrencyStore.enterAll(identifiers, quotas, waitNanos);
+        }
+        return (failureType == LimiterFailureType.CLOSED) ? null : LimiterPermit.NONE;
+    }
+
+    /**
+     * Returns the outcome of the fallback verdicts
+     *
+     * @return the outcome of the fallback verdicts
+     */
+    @Nonnull
+    public LimiterOutcomeType getFallbackOutcome() {
+        if (fallbackStore != null) {
+            return LimiterOutcomeType.FALLBACK;
+        }
+        return (failureType == LimiterFailureType.CLOSED) ? LimiterOutcomeType.FAIL_CLOSED : LimiterOutcomeType.FAIL_OPEN;
+    }
+
+    /**
+     * Returns whether the circuit is open or not
+     *
+     * @return whether the circuit is open or not
+     */
+    public boolean isOpen() {
+        return openUntil.get() != 0L;
+    }
+
+    @Override
+    public void destroy() {
+        if (timeoutExecutor != null) {
+            timeoutExecutor.shutdownNow();
+        }
+    }
+}
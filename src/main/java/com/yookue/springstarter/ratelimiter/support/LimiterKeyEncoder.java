@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yookue.springstarter.ratelimiter.support;
+
+
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.util.ClassUtils;
+import com.yookue.springstarter.ratelimiter.enumeration.LimiterTriggerType;
+
+
+/**
+ * Utilities for the compact layout of limiter identifiers
+ * <p>
+ * A compact identifier looks like {@code prefix + hash:i:wKhkyA}, the hash of the method is stable as long as its signature,
+ * the trigger type is a single letter, and the trigger value is shortened:
+ * <ul>
+ *     <li>IPv4 addresses are encoded in 6 characters</li>
+ *     <li>Values up to 16 safe characters are kept as they are</li>
+ *     <li>Other values are hashed into {@code ~} and 16 characters, which never collide with the kept values</li>
+ * </ul>
+ * The values are hashed with SHA-256, so that a client cannot craft a value that collides with the one of another client
+ *
+ * @author David Hsing
+ */
+@SuppressWarnings("unused")
+public abstract class LimiterKeyEncoder {
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final int METHOD_HASH_BYTES = 6;
+    private static final int VALUE_HASH_BYTES = 12;
+    private static final int MAX_RAW_LENGTH = 16;
+    private static final char HASHED_MARKER = '~';
+    private static final ThreadLocal<MessageDigest> DIGESTS = ThreadLocal.withInitial(LimiterKeyEncoder::createDigest);
+
+    /**
+     * Returns the short hash of the method
+     *
+     * @param method the limited method
+     *
+     * @return the short hash of the method
+     */
+    @Nonnull
+    public static String encodeMethod(@Nonnull Method method) {
+        String signature = ClassUtils.getQualifiedMethodName(method) + Arrays.toString(method.getParameterTypes());
+        return ENCODER.encodeToString(Arrays.copyOf(digest(signature), METHOD_HASH_BYTES));
+    }
+
+    /**
+     * Returns the short hash of the limit name, for the limits without a method
+     *
+     * @param name the name of the limit
+     *
+     * @return the short hash of the limit name
+     */
+    @Nonnull
+    public static String encodeName(@Nonnull String name) {
+        return ENCODER.encodeToString(Arrays.copyOf(digest(name), METHOD_HASH_BYTES));
+    }
+
+    /**
+     * Returns the single letter of the trigger type
+     *
+     * @param triggerType the trigger type of the limitation
+     *
+     * @return the single letter of the trigger type
+     */
+    @Nonnull
+    public static String encodeTrigger(@Nonnull LimiterTriggerType triggerType) {
+        return switch (triggerType) {
+            case ANY -> "a";    // $NON-NLS-1$
+            case IP_ADDRESS -> "i";    // $NON-NLS-1$
+            case SESSION -> "s";    // $NON-NLS-1$
+            case USERNAME -> "u";    // $NON-NLS-1$
+            case KEY -> "k";    // $NON-NLS-1$
+        };
+    }
+
+    /**
+     * Returns the shortened trigger value
+     *
+     * @param triggerType the trigger type of the limitation
+     * @param value the raw trigger value
+     *
+     * @return the shortened trigger value
+     */
+    @Nonnull
+    public static String encodeValue(@Nonnull LimiterTriggerType triggerType, @Nonnull String value) {
+        if (triggerType == LimiterTriggerType.IP_ADDRESS) {
+            byte[] address = parseInet4Address(value);
+            if (address != null) {
+                return ENCODER.encodeToString(address);
+            }
+        }
+        if (value.length() <= MAX_RAW_LENGTH && isSafe(value)) {
+            return value;
+        }
+        return HASHED_MARKER + ENCODER.encodeToString(Arrays.copyOf(digest(value), VALUE_HASH_BYTES));
+    }
+
+    private static boolean isSafe(@Nonnull String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char ch = value.charAt(i);
+            if (!(ch >= 'a' && ch <= 'z' || ch >= 'A' && ch <= 'Z' || ch >= '0' && ch <= '9' || ch == '-' || ch == '_' || ch == '.')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Nullable
+    private static byte[] parseInet4Address(@Nonnull String value) {
+        if (StringUtils.length(value) < 7 || value.length() > 15) {
+            return null;
+        }
+        byte[] result = new byte[4];
+        int octet = 0, part = 0, digits = 0;
+        for (int i = 0; i <= value.length(); i++) {
+            char ch = (i == value.length()) ? '.' : value.charAt(i);
+            if (ch == '.') {
+                if (digits == 0 || part > 3) {
+                    return null;
+                }
+                result[part++] = (byte) octet;
+                octet = 0;
+                digits = 0;
+            } else if (ch >= '0' && ch <= '9' && digits < 3) {
+                octet = octet * 10 + (ch - '0');
+                if (octet > 255) {
+                    return null;
+                }
+                digits++;
+            } else {
+                return null;
+            }
+        }
+        return (part == 4) ? result : null;
+    }
+
+    @Nonnull
+    private static byte[] digest(@Nonnull String value) {
+        MessageDigest digest = DIGESTS.get();
+        digest.reset();
+        return digest.digest(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Nonnull
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");    // $NON-NLS-1$
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.yookue.springstarter.ratelimiter.support;
+
+
+import java.lang.reflect.Method;
+import java.security.Principal;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.context.expression.BeanFactoryResolver;
+import org.springframework.core.DefaultParameterNameDiscoverer;
+import org.springframework.core.ParameterNameDiscoverer;
+import org.springframework.expression.BeanResolver;
+import org.springframework.expression.Expression;
+import org.springframework.expression.spel.SpelCompilerMode;
+import org.springframework.expression.spel.SpelParserConfiguration;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.expression.spel.support.StandardEvaluationContext;
+import com.yookue.commonplexus.springutil.util.WebUtilsWraps;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+
+/**
+ * Resolver of the trigger values by a SpEL expression
+ * <p>
+ * The expression is parsed once, and compiled to bytecode after the first evaluation, so it must evaluate to the same types on every call.
+ * The root object is a {@link Root}, and the method arguments are variables by their names, {@code p<index>} and {@code a<index>}
+ *
+ * @author David Hsing
+ */
+@SuppressWarnings("unused")
+public class LimiterKeyExpression implements LimiterTriggerResolver {
+    private static final SpelExpressionParser EXPRESSION_PARSER = new SpelExpressionParser(new SpelParserConfiguration(SpelCompilerMode.IMMEDIATE, LimiterKeyExpression.class.getClassLoader()));
+    private static final ParameterNameDiscoverer NAME_DISCOVERER = new DefaultParameterNameDiscoverer();
+
+    @Getter
+    private final String key;
+
+    private final Expression expression;
+    private final Map<String, Integer> variableIndexes;
+    private final BeanResolver beanResolver;
+
+    /**
+     * Constructs a new resolver
+     *
+     * @param key the SpEL expression of the trigger value
+     * @param method the method to limit, or {@code null} if there are no arguments
+     * @param beanFactory the bean factory to resolve the bean references, or {@code null} if not supported
+     */
+    public LimiterKeyExpression(@Nonnull String key, @Nullable Method method, @Nullable BeanFactory beanFactory) {
+        this.key = key;
+        this.expression = EXPRESSION_PARSER.parseExpression(key);
+        this.variableIndexes = determineVariableIndexes(method);
+        this.beanResolver = (beanFactory == null) ? null : new BeanFactoryResolver(beanFactory);
+    }
+
+    @Nullable
+    @Override
+    public String resolve(@Nonnull Object[] arguments) {
+        return evaluate(currentRoot(arguments));
+    }
+
+    /**
+     * Returns the trigger value of the root object
+     *
+     * @param root the root object of the expression
+     *
+     * @return the trigger value of the root object, or {@code null} to skip the limitation
+     */
+    @Nullable
+    public String evaluate(@Nonnull Root root) {
+        Object value = evaluateValue(root);
+        return (value == null) ? null : value.toString();
+    }
+
+    /**
+     * Returns the raw value of the root object
+     *
+     * @param root the root object of the expression
+     *
+     * @return the raw value of the root object
+     */
+    @Nullable
+    public Object evaluateValue(@Nonnull Root root) {
+        return expression.getValue(new KeyEvaluationContext(root));
+    }
+
+    /**
+     * Returns the root object of the current servlet request
+     *
+     * @param arguments the arguments of the invocation
+     *
+     * @return the root object of the current servlet request, without the principal and the headers if absent
+     */
+    @Nonnull
+    public static Root currentRoot(@Nonnull Object[] arguments) {
+        HttpServletRequest request = WebUtilsWraps.getContextServletRequest();
+        if (request == null) {
+            return new Root(arguments, null, null);
+        }
+        return new Root(arguments, request.getUserPrincipal(), request::getHeader);
+    }
+
+    @Nonnull
+    private static Map<String, Integer> determineVariableIndexes(@Nullable Method method) {
+        if (method == null) {
+            return Map.of();
+        }
+        String[] names = NAME_DISCOVERER.getParameterNames(method);
+        Map<String, Integer> result = new HashMap<>(method.getParameterCount() * 4);
+        for (int i = 0; i < method.getParameterCount(); i++) {
+            result.put("p" + i, i);    // $NON-NLS-1$
+            result.put("a" + i, i);    // $NON-NLS-1$
+            if (names != null) {
+                result.put(names[i], i);
+            }
+        }
+        return result;
+    }
+
+
+    /**
+     * Root object of the expression
+     *
+     * @author David Hsing
+     */
+    @AllArgsConstructor
+    @Getter
+    public static class Root {
+        /**
+         * The arguments of the method, empty when the limit is enforced before the arguments are resolved
+         */
+        private final Object[] args;
+
+        /**
+         * The principal of the request, or {@code null} if absent
+         */
+        @Nullable
+        private final Principal principal;
+
+        @Nullable
+        private final UnaryOperator<String> headers;
+
+        /**
+         * Returns the first value of the request header
+         *
+         * @param name the name of the header
+         *
+         * @return the first value of the request header, or {@code null} if absent
+         */
+        @Nullable
+        public String header(@Nonnull String name) {
+            return (headers == null) ? null : headers.apply(name);
+        }
+    }
+
+
+    private final class KeyEvaluationContext extends StandardEvaluationContext {
+        private final Object[] arguments;
+
+        private KeyEvaluationContext(@Nonnull Root root) {
+            super(root);
+            this.arguments = root.getArgs();
+            if (beanResolver != null) {
+                setBeanResolver(beanResolver);
+            }
+        }
+
+        @Nullable
+        @Override
+        public Object lookupVariable(@Nonnull String name) {
+            // Looks up the arguments by the indexes resolved once, instead of registering them as variables on every call
+            Integer index = variableIndexes.get(name);
+            if (index != null) {
+                return (index < arguments.length) ? arguments[index] : null;
+            }
+            return super.lookupVariable(name);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yookue.springstarter.ratelimiter.support;
+
+
+/**
+ * Permit of a call in flight, which is released when the call completes
+ *
+ * @author David Hsing
+ */
+@FunctionalInterface
+public interface LimiterPermit extends AutoCloseable {
+    /**
+     * The permit that holds nothing, for the calls without in-flight limits
+     */
+    LimiterPermit NONE = () -> {
+    };
+
+    /**
+     * Releases the permit, never throws
+     */
+    @Override
+    void close();
+
+    /**
+     * Releases the permit when the call does not proceed, never throws
+     */
+    default void cancel() {
+        close();
+    }
+}
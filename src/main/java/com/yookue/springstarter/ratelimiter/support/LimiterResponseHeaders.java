@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yookue.springstarter.ratelimiter.support;
+
+
+import java.util.function.BiConsumer;
+import jakarta.annotation.Nonnull;
+import com.yookue.springstarter.ratelimiter.enumeration.LimiterAlgorithmType;
+import com.yookue.springstarter.ratelimiter.structure.LimiterQuota;
+import com.yookue.springstarter.ratelimiter.structure.LimiterVerdict;
+
+
+/**
+ * Utilities for the rate limit headers of responses
+ * <p>
+ * The headers are {@code RateLimit-Limit}, {@code RateLimit-Remaining} and {@code RateLimit-Reset} of the IETF draft,
+ * and {@code Retry-After} of the denied responses, the times are in delta seconds, rounded up
+ *
+ * @author David Hsing
+ */
+@SuppressWarnings("unused")
+public abstract class LimiterResponseHeaders {
+    public static final String LIMIT = "RateLimit-Limit";    // $NON-NLS-1$
+    public static final String REMAINING = "RateLimit-Remaining";    // $NON-NLS-1$
+    public static final String RESET = "RateLimit-Reset";    // $NON-NLS-1$
+    public static final String RETRY_AFTER = "Retry-After";    // $NON-NLS-1$
+
+    /**
+     * Writes the headers of the verdict
+     * <p>
+     * Writes nothing for an allowed verdict without a reset time, such as the ones admitted by the sketch or an open circuit,
+     * which know nothing about the window
+     *
+     * @param verdict the verdict of the limit
+     * @param quota the quota of the limit
+     * @param writer the writer of the header names and values
+     */
+    public static void writeHeaders(@Nonnull LimiterVerdict verdict, @Nonnull LimiterQuota quota, @Nonnull BiConsumer<String, String> writer) {
+        if (verdict.isAllowed() && verdict.getResetMillis() <= 0L) {
+            return;
+        }
+        long limit = (quota.getAlgorithm() == LimiterAlgorithmType.TOKEN_BUCKET) ? quota.getCapacity() : quota.getPermits();
+        writer.accept(LIMIT, Long.toString(limit));
+        writer.accept(REMAINING, Long.toString(Math.min(Math.max(verdict.getRemaining(), 0L), limit)));
+        if (verdict.getResetMillis() > 0L) {
+            String seconds = Long.toString(toSeconds(verdict.getResetMillis()));
+            writer.accept(RESET, seconds);
+            if (!verdict.isAllowed()) {
+                writer.accept(RETRY_AFTER, seconds);
+            }
+        }
+    }
+
+    private static long toSeconds(long millis) {
+        return (millis + 999L) / 1000L;
+    }
+}
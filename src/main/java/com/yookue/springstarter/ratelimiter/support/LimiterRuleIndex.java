@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.yookue.springstarter.ratelimiter.support;
+
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.http.server.PathContainer;
+import org.springframework.util.CollectionUtils;
+import org.springframework.web.util.pattern.PathPattern;
+import com.yookue.springstarter.ratelimiter.structure.LimiterDescriptor;
+
+
+/**
+ * Immutable index of the configured rules, by their path patterns
+ * <p>
+ * The patterns are hung on a trie by their leading literal segments, a request only walks the trie along its own path
+ * and tests the patterns on the visited nodes, so the cost does not grow with the number of rules.
+ * When several rules match, the most specific pattern wins, and then the earlier rule
+ *
+ * @author David Hsing
+ */
+@SuppressWarnings("unused")
+public class LimiterRuleIndex {
+    public static final LimiterRuleIndex EMPTY = new LimiterRuleIndex(Collections.emptyList());
+    private final Node root = new Node();
+    private final Map<String, LimiterDescriptor> descriptors = new HashMap<>();
+    private final int size;
+
+    /**
+     * Constructs a new index
+     *
+     * @param entries the entries of the rules, in the order of declaration
+     */
+    public LimiterRuleIndex(@Nonnull List<Entry> entries) {
+        for (int i = 0; i < entries.size(); i++) {
+            Entry entry = entries.get(i);
+            Node node = root;
+            for (String segment : StringUtils.split(entry.pattern().getPatternString(), '/')) {
+                if (!isLiteral(segment)) {
+                    break;
+                }
+                node = node.children.computeIfAbsent(segment, alias -> new Node());
+            }
+            node.candidates.add(new Candidate(entry, i));
+            descriptors.putIfAbsent(entry.descriptor().getName(), entry.descriptor());
+        }
+        this.size = entries.size();
+    }
+
+    /**
+     * Returns the descriptor of the most specific rule that matches the request
+     *
+     * @param method the http method of the request
+     * @param path the path of the request within the application
+     *
+     * @return the descriptor of the most specific rule that matches the request, or {@code null} if none
+     */
+    @Nullable
+    public LimiterDescriptor match(@Nonnull String method, @Nonnull PathContainer path) {
+        if (size == 0) {
+            return null;
+        }
+        Node node = root;
+        Candidate matched = node.select(method, path, null);
+        for (PathContainer.Element element : path.elements()) {
+            if (element instanceof PathContainer.PathSegment segment) {
+                node = node.children.get(segment.valueToMatch());
+                if (node == null) {
+                    break;
+                }
+                matched = node.select(method, path, matched);
+            }
+        }
+        return (matched == null) ? null : matched.entry.descriptor();
+    }
+
+    /**
+     * Returns the descriptor of the rule with the name
+     *
+     * @param name the name of the rule
+     *
+     * @return the descriptor of the rule with the name, or {@code null} if none
+     */
+    @Nullable
+    public LimiterDescriptor getDescriptor(@Nonnull String name) {
+        return descriptors.get(name);
+    }
+
+    /**
+     * Returns the number of the indexed patterns
+     *
+     * @return the number of the indexed patterns
+     */
+    public int size() {
+        return size;
+    }
+
+    private static boolean isLiteral(@Nonnull String segment) {
+        return StringUtils.containsNone(segment, '{', '}', '*', '?', '%', ';');
+    }
+
+
+    /**
+     * Entry of a path pattern of a rule
+     *
+     * @param pattern the path pattern of the rule
+     * @param methods the upper case http methods of the rule, empty means any method
+     * @param descriptor the descriptor of the rule
+     */
+    public record Entry(@Nonnull PathPattern pattern, @Nonnull Set<String> methods, @Nonnull LimiterDescriptor descriptor) {
+    }
+
+
+    private record Candidate(@Nonnull Entry entry, int order) {
+        private boolean isPreferredTo(@Nullable Candidate other) {
+            if (other == null) {
+                return true;
+            }
+            int result = PathPattern.SPECIFICITY_COMPARATOR.compare(entry.pattern(), other.entry.pattern());
+            return result < 0 || (result == 0 && order < other.order);
+        }
+    }
+
+
+    private static final class Node {
+        private final Map<String, Node> children = new HashMap<>();
+        private final List<Candidate> candidates = new ArrayList<>(1);
+
+        @Nullable
+        private Candidate select(@Nonnull String method, @Nonnull PathContainer path, @Nullable Candidate matched) {
+            Candidate result = matched;
+            for (Candidate candidate : candidates) {
+                Set<String> methods = candidate.entry.methods();
+                if ((CollectionUtils.isEmpty(methods) || methods.contains(method)) && candidate.isPreferredTo(result) && candidate.entry.pattern().matches(path)) {
+                    result = candidate;
+                }
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.yookue.springstarter.ratelimiter.support;
+
+
+import jakarta.annotation.Nonnull;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.event.GenericApplicationListener;
+import org.springframework.core.ResolvableType;
+import com.yookue.springstarter.ratelimiter.filter.RateLimitRuleFilter;
+
+
+/**
+ * Listener that reloads the rules of {@link RateLimitRuleFilter} when the environment of Spring Cloud changes
+ * <p>
+ * Spring Cloud is optional, so the event type is recognized by its name, which is matched once per event type by the multicaster, not per event
+ *
+ * @author David Hsing
+ */
+public class LimiterRuleRefresher implements GenericApplicationListener {
+    public static final String ENVIRONMENT_CHANGE_EVENT = "org.springframework.cloud.context.environment.EnvironmentChangeEvent";    // $NON-NLS-1$
+    private final RateLimitRuleFilter ruleFilter;
+
+    public LimiterRuleRefresher(@Nonnull RateLimitRuleFilter filter) {
+        this.ruleFilter = filter;
+    }
+
+    @Override
+    public boolean supportsEventType(@Nonnull ResolvableType eventType) {
+        Class<?> type = eventType.resolve();
+        return type != null && ENVIRONMENT_CHANGE_EVENT.equals(type.getName());
+    }
+
+    @Override
+    public void onApplicationEvent(@Nonnull ApplicationEvent event) {
+        ruleFilter.reloadRules();
+    }
+}
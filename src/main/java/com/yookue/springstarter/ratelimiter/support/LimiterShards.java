@@ -0,0 +1,213 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.yookue.springstarter.ratelimiter.support;
+
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+import org.springframework.util.Assert;
+import com.yookue.springstarter.ratelimiter.enumeration.LimiterAlgorithmType;
+import com.yookue.springstarter.ratelimiter.structure.LimiterQuota;
+import com.yookue.springstarter.ratelimiter.structure.LimiterVerdict;
+
+
+/**
+ * Shards of a global limit, which split the permits over several keys, so that the calls spread over the storage
+ * <p>
+ * The permits are split exactly, so the shards never admit more than the limit in total.
+ * Each call picks a random shard, and a denied shard is skipped by this node until its reset,
+ * so the calls retry the shards that are not known to be dry. The permits are never transferred between the shards,
+ * so a shard that ran dry denies its calls even if the other shards still have permits.
+ * A call that costs more than the smallest shard holds is spread over the shards by the same split, all or nothing,
+ * so its cost is bounded by the whole limit rather than a shard
+ *
+ * @author David Hsing
+ */
+@SuppressWarnings("unused")
+public class LimiterShards {
+    private final String[] identifiers;
+    private final LimiterQuota[] quotas;
+    private final long smallest;
+    private final AtomicLongArray dryUntil;
+
+    /**
+     * Constructs new shards
+     *
+     * @param identifiers the identifiers of the shards
+     * @param quota the quota of the whole limit
+     */
+    public LimiterShards(@Nonnull String[] identifiers, @Nonnull LimiterQuota quota) {
+        Assert.isTrue(isSupported(quota), "Algorithm '" + quota.getAlgorithm().getValue() + "' cannot be sharded");    // $NON-NLS-1$
+        Assert.isTrue(identifiers.length > 1 && identifiers.length <= quota.getPermits(), "Shards must be between 2 and the permits");
+        this.identifiers = identifiers;
+        this.quotas = new LimiterQuota[identifiers.length];
+        for (int i = 0; i < identifiers.length; i++) {
+            quotas[i] = new LimiterQuota(quota.getAlgorithm(), split(quota.getPermits(), i), split(quota.getCapacity(), i), quota.getWindow());
+        }
+        LimiterQuota last = quotas[identifiers.length - 1];
+        this.smallest = (quota.getAlgorithm() == LimiterAlgorithmType.TOKEN_BUCKET) ? last.getCapacity() : last.getPermits();
+        this.dryUntil = new AtomicLongArray(identifiers.length);
+    }
+
+    /**
+     * Returns whether the limit can be sharded or not
+     *
+     * @param quota the quota of the limit
+     *
+     * @return whether the limit can be sharded or not
+     */
+    public static boolean isSupported(@Nonnull LimiterQuota quota) {
+        return quota.getWindow() != null && !quota.getAlgorithm().isInFlight() && quota.getAlgorithm() != LimiterAlgorithmType.COOLDOWN;
+    }
+
+    /**
+     * Returns the number of shards
+     *
+     * @return the number of shards
+     */
+    public int size() {
+        return identifiers.length;
+    }
+
+    /**
+     * Returns the identifier of a random shard that is not known to be dry
+     *
+     * @return the identifier of a random shard, or the shard that resets first if all of them are dry
+     */
+    @Nonnull
+    public String select() {
+        String result = selectWet(System.nanoTime());
+        return (result != null) ? result : identifiers[indexOfEarliest()];
+    }
+
+    /**
+     * Returns the quota of the shard
+     *
+     * @param identifier the identifier of the shard
+     *
+     * @return the quota of the shard
+     */
+    @Nonnull
+    public LimiterQuota quotaOf(@Nonnull String identifier) {
+        return quotas[indexOf(identifier)];
+    }
+
+    /**
+     * Returns whether the cost of a call exceeds the smallest shard, and should be spread over the shards
+     *
+     * @param cost the number of permits to deduct by a call, bounded by the whole limit
+     *
+     * @return whether the cost of a call should be spread over the shards
+     */
+    public boolean isSpread(long cost) {
+        return cost > smallest;
+    }
+
+    /**
+     * Returns the identifiers of the shards that a spread call deducts from
+     *
+     * @param cost the number of permits to deduct by a call, bounded by the whole limit
+     *
+     * @return the identifiers of the shards, the shards without a share of the cost are {@code null}
+     */
+    @Nonnull
+    public String[] spreadIdentifiers(long cost) {
+        String[] result = identifiers.clone();
+        for (int i = 0; i < result.length; i++) {
+            if (split(cost, i) <= 0L) {
+                result[i] = null;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the quotas of the shards that a spread call deducts from
+     * <p>
+     * The cost is split as the permits, so the share of each shard never exceeds its quota
+     *
+     * @param cost the number of permits to deduct by a call, bounded by the whole limit
+     *
+     * @return the quotas of the shards, in the same order as {@link #spreadIdentifiers(long)}
+     */
+    @Nonnull
+    public LimiterQuota[] spreadQuotas(long cost) {
+        LimiterQuota[] result = new LimiterQuota[quotas.length];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = quotas[i].withCost(split(cost, i));
+        }
+        return result;
+    }
+
+    /**
+     * Marks the denied shard as dry until its reset, and returns another shard to retry
+     * <p>
+     * No permits are transferred to the denied shard, the call just tries a shard that is not known to be dry
+     *
+     * @param identifier the identifier of the denied shard
+     * @param verdict the denied verdict of the shard
+     *
+     * @return the identifier of another shard that is not known to be dry, or {@code null} if all of them are dry
+     */
+    @Nullable
+    public String retryAnother(@Nonnull String identifier, @Nonnull LimiterVerdict verdict) {
+        long now = System.nanoTime();
+        dryUntil.set(indexOf(identifier), now + TimeUnit.MILLISECONDS.toNanos(Math.max(verdict.getResetMillis(), 1L)));
+        return selectWet(now);
+    }
+
+    @Nullable
+    private String selectWet(long now) {
+        int start = ThreadLocalRandom.current().nextInt(identifiers.length);
+        for (int i = 0; i < identifiers.length; i++) {
+            int index = (start + i) % identifiers.length;
+            long until = dryUntil.get(index);
+            if (until == 0L || until - now <= 0L) {
+                return identifiers[index];
+            }
+        }
+        return null;
+    }
+
+    private int indexOfEarliest() {
+        int result = 0;
+        for (int i = 1; i < identifiers.length; i++) {
+            if (dryUntil.get(i) - dryUntil.get(result) < 0L) {
+                result = i;
+            }
+        }
+        return result;
+    }
+
+    private int indexOf(@Nonnull String identifier) {
+        for (int i = 0; i < identifiers.length; i++) {
+            if (identifiers[i] == identifier || identifiers[i].equals(identifier)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Identifier '" + identifier + "' is not a shard");    // $NON-NLS-1$
+    }
+
+    private long split(long amount, int index) {
+        // Distributes the remainder over the first shards, so the sum is exactly the amount
+        return amount / identifiers.length + ((index < amount % identifiers.length) ? 1L : 0L);
+    }
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yookue.springstarter.ratelimiter.support;
+
+
+import java.lang.reflect.Method;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.Assert;
+import org.springframework.util.ReflectionUtils;
+import com.yookue.springstarter.ratelimiter.structure.LimiterDescriptor;
+import com.yookue.springstarter.ratelimiter.structure.LimiterQuota;
+import com.yookue.springstarter.ratelimiter.structure.LimiterVerdict;
+import lombok.extern.slf4j.Slf4j;
+
+
+/**
+ * Throttle that delays the calls over the rate limits until their next permits, instead of rejecting them
+ * <p>
+ * A parked call retries at the reset of the denying limit, as long as it does not wait longer than its deadline.
+ * The wake-ups are spread over the interval of a permit, so the parked calls leak out steadily instead of retrying all together.
+ * The parked calls are bounded, the calls beyond are rejected at once.
+ * The requests are parked by the async servlet and dispatched again by a single timer thread, which holds no thread while they wait.
+ * The calls delayed on their own threads only sleep on virtual threads, or on a few platform threads bounded by {@code maxBlocking}
+ *
+ * @author David Hsing
+ */
+@Slf4j
+@SuppressWarnings("unused")
+public class LimiterThrottle {
+    private static final Method IS_VIRTUAL = ReflectionUtils.findMethod(Thread.class, "isVirtual");    // $NON-NLS-1$
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger blocking = new AtomicInteger();
+    private final int maxQueued;
+    private final int maxBlocking;
+    private final ScheduledThreadPoolExecutor timer;
+
+    /**
+     * Constructs a new throttle
+     *
+     * @param maxQueued the maximum number of the parked calls
+     * @param maxBlocking the maximum number of the platform threads that sleep for the delayed calls
+     */
+    public LimiterThrottle(int maxQueued, int maxBlocking) {
+        Assert.isTrue(maxQueued > 0, "Max queued must be positive");
+        Assert.isTrue(maxBlocking >= 0, "Max blocking must not be negative");
+        this.maxQueued = maxQueued;
+        this.maxBlocking = maxBlocking;
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("rate-limiter-throttle-");    // $NON-NLS-1$
+        threadFactory.setDaemon(true);
+        // The thread is only started by the first parked request
+        this.timer = new ScheduledThreadPoolExecutor(1, threadFactory);
+    }
+
+    /**
+     * Returns the milliseconds to wait before the next attempt of a denied call
+     *
+     * @param verdict the verdict of the denied call
+     * @param quota the quota of the rate limit, or {@code null} if unknown
+     * @param deadline the deadline of the call, in {@link System#nanoTime()}
+     *
+     * @return the milliseconds to wait before the next attempt, or {@code -1} if the limit never resets or resets after the deadline
+     */
+    public static long determineDelay(@Nonnull LimiterVerdict verdict, @Nullable LimiterQuota quota, long deadline) {
+        if (verdict.getResetMillis() <= 0L) {
+            return -1L;
+        }
+        long delay = verdict.getResetMillis();
+        if (quota != null && quota.getWindowMillis() > 0L) {
+            long interval = Math.min(quota.getWindowMillis() / quota.getPermits(), delay);
+            if (interval > 0L) {
+                delay += ThreadLocalRandom.current().nextLong(interval);
+            }
+        }
+        return (System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay) - deadline > 0L) ? -1L : delay;
+    }
+
+    /**
+     * Enters the queue of the parked calls
+     *
+     * @return whether the call entered the queue or not, {@code false} if the queue is full
+     */
+    public boolean tryPark() {
+        int current;
+        do {
+            current = queued.get();
+            if (current >= maxQueued) {
+                return false;
+            }
+        } while (!queued.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    /**
+     * Leaves the queue of the parked calls
+     */
+    public void unpark() {
+        queued.decrementAndGet();
+    }
+
+    /**
+     * Enters the sleepers of the delayed calls, the virtual threads always enter
+     * <p>
+     * The caller must have entered the queue, and leaves the sleepers by {@link #wake()} on the same thread
+     *
+     * @return whether the current thread may sleep or not, {@code false} if the platform threads that sleep are full
+     */
+    public boolean trySleep() {
+        if (isVirtual(Thread.currentThread())) {
+            return true;
+        }
+        int current;
+        do {
+            current = blocking.get();
+            if (current >= maxBlocking) {
+                return false;
+            }
+        } while (!blocking.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    /**
+     * Leaves the sleepers of the delayed calls
+     */
+    public void wake() {
+        if (!isVirtual(Thread.currentThread())) {
+            blocking.decrementAndGet();
+        }
+    }
+
+    /**
+     * Parks the request asynchronously, and dispatches it again after the delay
+     * <p>
+     * The caller must have entered the queue, the dispatched request leaves the queue by {@link #resumeRequest(HttpServletRequest, String)}
+     *
+     * @param request the current request, which must support async
+     * @param attribute the name of the request attribute to hold the ticket, which is owned by the caller
+     * @param ticket the ticket of the parked request
+     * @param delayMillis the milliseconds to wait before the dispatch
+     */
+    public void parkRequest(@Nonnull HttpServletRequest request, @Nonnull String attribute, @Nonnull Ticket ticket, long delayMillis) {
+        request.setAttribute(attribute, ticket);
+        AsyncContext context = request.startAsync();
+        // The wait is bounded by the deadline of the ticket
+        context.setTimeout(0L);
+        try {
+            timer.schedule(() -> dispatch(context), delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ex) {
+            dispatch(context);
+        }
+    }
+
+    /**
+     * Takes the ticket of a request dispatched by this throttle, and leaves the queue of the parked calls
+     *
+     * @param request the dispatched request
+     * @param attribute the name of the request attribute that holds the ticket
+     *
+     * @return the ticket of the request, or {@code null} if the request was not parked
+     */
+    @Nullable
+    public Ticket resumeRequest(@Nonnull HttpServletRequest request, @Nonnull String attribute) {
+        if (!(request.getAttribute(attribute) instanceof Ticket ticket)) {
+            return null;
+        }
+        request.removeAttribute(attribute);
+        unpark();
+        return ticket;
+    }
+
+    private void dispatch(@Nonnull AsyncContext context) {
+        try {
+            context.dispatch();
+        } catch (IllegalStateException ex) {
+            // The request has been completed by the container, such as a closed connection
+            unpark();
+            if (log.isDebugEnabled()) {
+                log.debug("Dispatch throttled request failed", ex);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of the parked calls
+     *
+     * @return the number of the parked calls
+     */
+    public int getQueued() {
+        return queued.get();
+    }
+
+    /**
+     * Returns the number of the platform threads that sleep for the delayed calls
+     *
+     * @return the number of the platform threads that sleep for the delayed calls
+     */
+    public int getBlocking() {
+        return blocking.get();
+    }
+
+    /**
+     * Returns whether the thread is a virtual thread or not, which is never on jdk 17
+     *
+     * @param thread the thread to check
+     *
+     * @return whether the thread is a virtual thread or not
+     */
+    public static boolean isVirtual(@Nonnull Thread thread) {
+        return IS_VIRTUAL != null && Boolean.TRUE.equals(ReflectionUtils.invokeMethod(IS_VIRTUAL, thread));
+    }
+
+    /**
+     * Stops accepting the parked requests, the requests already parked are still dispatched at their time
+     */
+    public void destroy() {
+        timer.shutdown();
+    }
+
+
+    /**
+     * The ticket of a parked request
+     *
+     * @param identifiers the identifiers of the limits
+     * @param descriptor the descriptor of the method
+     * @param deadline the deadline of the request, in {@link System#nanoTime()}
+     */
+    public record Ticket(@Nonnull String[] identifiers, @Nonnull LimiterDescriptor descriptor, long deadline) {
+    }
+}
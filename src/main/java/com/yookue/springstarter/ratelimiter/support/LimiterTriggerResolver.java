@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yookue.springstarter.ratelimiter.support;
+
+
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+
+
+/**
+ * Resolver for the dynamic part of limiter identifiers
+ *
+ * @author David Hsing
+ */
+@FunctionalInterface
+public interface LimiterTriggerResolver {
+    /**
+     * Returns the trigger value of the current invocation
+     *
+     * @param arguments the arguments of the invocation, empty when the limit is enforced before the arguments are resolved
+     *
+     * @return the trigger value of the current invocation, or {@code null} to skip the limitation
+     */
+    @Nullable
+    @SuppressWarnings("RedundantThrows")
+    String resolve(@Nonnull Object[] arguments) throws Exception;
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yookue.springstarter.ratelimiter.support;
+
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+import org.springframework.util.Assert;
+import com.yookue.springstarter.ratelimiter.structure.LimiterQuota;
+
+
+/**
+ * Concurrent in-memory store for the calls in flight
+ * <p>
+ * Each identifier owns a semaphore while it has calls in flight or waiting, the semaphore is dropped as soon as the last one leaves,
+ * so the number of entries is bounded by the number of concurrent calls, and no sweeping is needed.
+ * Unlike striped semaphores, distinct identifiers never share permits
+ *
+ * @author David Hsing
+ */
+@SuppressWarnings("unused")
+public class LocalConcurrencyStore {
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Enters the limits of the call, all or nothing
+     *
+     * @param identifiers the identifiers of the limits, the {@code null} elements are skipped
+     * @param quotas the quotas of the limits, in the same order as the identifiers
+     * @param waitNanos the nanoseconds to wait for the permits in total, non-positive means rejecting at once
+     *
+     * @return the permit of the call, or {@code null} if any limit is full until the wait elapses
+     */
+    @Nullable
+    public LimiterPermit enterAll(@Nonnull String[] identifiers, @Nonnull LimiterQuota[] quotas, long waitNanos) throws InterruptedException {
+        Assert.isTrue(identifiers.length == quotas.length, "Identifiers and quotas must have the same length");
+        long deadline = System.nanoTime() + Math.max(waitNanos, 0L);
+        for (int i = 0; i < identifiers.length; i++) {
+            if (identifiers[i] == null) {
+                continue;
+            }
+            boolean entered;
+            try {
+                entered = enter(identifiers[i], quotas[i].getPermits(), deadline - System.nanoTime());
+            } catch (InterruptedException ex) {
+                exitAll(identifiers, i);
+                throw ex;
+            }
+            if (!entered) {
+                exitAll(identifiers, i);
+                return null;
+            }
+        }
+        return () -> exitAll(identifiers, identifiers.length);
+    }
+
+    /**
+     * Enters the limit of the identifier
+     *
+     * @param identifier the identifier of the limitation
+     * @param permits the maximum number of calls in flight
+     * @param waitNanos the nanoseconds to wait for the permit, non-positive means rejecting at once
+     *
+     * @return whether the call has entered or not
+     */
+    public boolean enter(@Nonnull String identifier, long permits, long waitNanos) throws InterruptedException {
+        // References the entry first, so that it cannot be dropped while waiting
+        Entry entry = entries.compute(identifier, (key, current) -> {
+            Entry alias = (current == null) ? new Entry((int) Math.min(Math.max(permits, 1L), Integer.MAX_VALUE)) : current;
+            alias.references++;
+            return alias;
+        });
+        boolean entered = false;
+        try {
+            entered = (waitNanos > 0L) ? entry.semaphore.tryAcquire(waitNanos, TimeUnit.NANOSECONDS) : entry.semaphore.tryAcquire();
+            return entered;
+        } finally {
+            if (!entered) {
+                dereference(identifier, entry);
+            }
+        }
+    }
+
+    /**
+     * Exits the limit of the identifier
+     *
+     * @param identifier the identifier of the limitation
+     */
+    public void exit(@Nonnull String identifier) {
+        Entry entry = entries.get(identifier);
+        if (entry != null) {
+            entry.semaphore.release();
+            dereference(identifier, entry);
+        }
+    }
+
+    /**
+     * Returns the number of identifiers that have calls in flight or waiting
+     *
+     * @return the number of identifiers that have calls in flight or waiting
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    private void exitAll(@Nonnull String[] identifiers, int count) {
+        for (int i = count - 1; i >= 0; i--) {
+            if (identifiers[i] != null) {
+                exit(identifiers[i]);
+            }
+        }
+    }
+
+    private void dereference(@Nonnull String identifier, @Nonnull Entry entry) {
+        entries.computeIfPresent(identifier, (key, current) -> (current == entry && --current.references <= 0) ? null : current);
+    }
+
+
+    private static final class Entry {
+        private final Semaphore semaphore;
+
+        // Guarded by the lock of the map bin, only mutated in the compute functions
+        private int references;
+
+        private Entry(int permits) {
+            this.semaphore = new Semaphore(permits);
+        }
+    }
+}
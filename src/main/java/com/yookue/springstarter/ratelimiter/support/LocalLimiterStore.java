@@ -0,0 +1,489 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yookue.springstarter.ratelimiter.support;
+
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.ReentrantLock;
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+import org.springframework.util.Assert;
+import com.yookue.springstarter.ratelimiter.enumeration.LimiterAlgorithmType;
+import com.yookue.springstarter.ratelimiter.structure.LimiterQuota;
+import com.yookue.springstarter.ratelimiter.structure.LimiterVerdict;
+import lombok.Getter;
+
+
+/**
+ * Concurrent in-memory store for limiter states
+ * <p>
+ * Each identifier owns a slot whose immutable state is swapped by compare-and-set, without any lock on the hot path,
+ * except the sliding log algorithm, which mutates its log under the monitor of the state.
+ * Expired slots are swept periodically, and the number of slots is capped by {@code maxEntries},
+ * so that massive distinct identifiers cannot exhaust the heap. When full, the slots that expire first are evicted
+ *
+ * @author David Hsing
+ */
+@SuppressWarnings("unused")
+public class LocalLimiterStore {
+    private static final long FOREVER = Long.MAX_VALUE;
+    private static final State REMOVED = new State(0L);
+    private final Map<String, Slot> slots = new ConcurrentHashMap<>();
+    private final long origin = System.nanoTime();
+    private final AtomicLong nextSweep = new AtomicLong();
+    private final ReentrantLock evictLock = new ReentrantLock();
+    private final long sweepInterval;
+
+    @Getter
+    private final int maxEntries;
+
+    /**
+     * Constructs a new store
+     *
+     * @param maxEntries the maximum number of identifiers to hold
+     * @param sweepInterval the interval to sweep the expired identifiers
+     */
+    public LocalLimiterStore(int maxEntries, @Nonnull Duration sweepInterval) {
+        Assert.isTrue(maxEntries > 0, "Max entries must be positive");
+        Assert.isTrue(!sweepInterval.isNegative(), "Sweep interval must not be negative");
+        this.maxEntries = maxEntries;
+        this.sweepInterval = sweepInterval.toNanos();
+    }
+
+    /**
+     * Checks and reserves the permit of the identifier atomically
+     *
+     * @param identifier the identifier of the limitation
+     * @param quota the quota of the limitation
+     *
+     * @return the verdict of the limitation
+     */
+    @Nonnull
+    public LimiterVerdict acquire(@Nonnull String identifier, @Nonnull LimiterQuota quota) {
+        long now = currentTime();
+        sweepIfNecessary(now);
+        long window = (quota.getWindow() == null) ? FOREVER : quota.getWindow().toNanos();
+        while (true) {
+            Slot slot = obtainSlot(identifier, now);
+            State current;
+            while ((current = slot.state) != REMOVED) {
+                LimiterVerdict verdict = switch (quota.getAlgorithm()) {
+                    case COOLDOWN -> tryCooldown(slot, current, window, now);
+                    case FIXED_WINDOW -> tryFixedWindow(slot, current, quota.getPermits(), quota.getCost(), window, now);
+                    case SLIDING_LOG -> trySlidingLog(slot, current, quota.getPermits(), window, now);
+                    case SLIDING_WINDOW -> trySlidingWindow(slot, current, quota.getPermits(), quota.getCost(), window, now);
+                    case TOKEN_BUCKET -> tryTokenBucket(slot, current, quota.getPermits(), quota.getCapacity(), quota.getCost(), window, now);
+                    case CONCURRENCY, ADAPTIVE -> throw new IllegalArgumentException("Calls in flight are held by LocalConcurrencyStore");
+                };
+                if (verdict != null) {
+                    return verdict;
+                }
+            }
+            // The slot has been evicted concurrently, retries with a fresh one
+        }
+    }
+
+    /**
+     * Checks and reserves the permits of the stacked limits, all or nothing
+     * <p>
+     * The limits are acquired in order, and the reserved permits are refunded as soon as a limit denies the call,
+     * so a denied call consumes none of the limits
+     *
+     * @param identifiers the identifiers of the limits, the {@code null} elements are skipped
+     * @param quotas the quotas of the limits, in the same order as the identifiers
+     *
+     * @return the denied verdict of the first limit that denies the call, or the allowed verdict of the limit with the least remaining permits
+     */
+    @Nonnull
+    public LimiterVerdict acquireAll(@Nonnull String[] identifiers, @Nonnull LimiterQuota[] quotas) {
+        Assert.isTrue(identifiers.length == quotas.length, "Identifiers and quotas must have the same length");
+        LimiterVerdict result = null;
+        for (int i = 0; i < identifiers.length; i++) {
+            if (identifiers[i] == null) {
+                continue;
+            }
+            LimiterVerdict verdict = acquire(identifiers[i], quotas[i]);
+            if (!verdict.isAllowed()) {
+                for (int j = i - 1; j >= 0; j--) {
+                    if (identifiers[j] != null) {
+                        refund(identifiers[j], quotas[j]);
+                    }
+                }
+                return verdict;
+            }
+            if (result == null || verdict.getRemaining() < result.getRemaining()) {
+                result = verdict;
+            }
+        }
+        Assert.notNull(result, "Identifiers must not be all null");
+        return result;
+    }
+
+    /**
+     * Returns a permit that has just been acquired, when another stacked limit of the call denies it
+     *
+     * @param identifier the identifier of the limitation
+     * @param quota the quota of the limitation
+     */
+    public void refund(@Nonnull String identifier, @Nonnull LimiterQuota quota) {
+        if (quota.getAlgorithm() == LimiterAlgorithmType.COOLDOWN) {
+            release(identifier);
+            return;
+        }
+        Slot slot = slots.get(identifier);
+        if (slot == null) {
+            return;
+        }
+        State current;
+        while ((current = slot.state) != REMOVED && current != null) {
+            if (current instanceof SlidingLogState state) {
+                synchronized (state) {
+                    if (slot.state == state) {
+                        state.removeLast();
+                    }
+                }
+                return;
+            }
+            State next = switch (quota.getAlgorithm()) {
+                case FIXED_WINDOW -> (current instanceof FixedWindowState state && state.count > 0L) ? new FixedWindowState(state.expireAt, Math.max(state.count - quota.getCost(), 0L)) : null;
+                case SLIDING_WINDOW -> (current instanceof SlidingWindowState state && state.count > 0L) ? new SlidingWindowState(state.expireAt, state.index, Math.max(state.count - quota.getCost(), 0L), state.previous) : null;
+                case TOKEN_BUCKET -> (current instanceof TokenBucketState state) ? new TokenBucketState(state.expireAt, Math.min(state.tokens + quota.getCost(), quota.getCapacity()), state.stamp) : null;
+                default -> null;
+            };
+            if (next == null || slot.compareAndSet(current, next)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Releases the permit of the identifier
+     *
+     * @param identifier the identifier of the limitation
+     */
+    public void release(@Nonnull String identifier) {
+        Slot slot = slots.get(identifier);
+        if (slot == null) {
+            return;
+        }
+        State current;
+        while ((current = slot.state) != REMOVED && current != null) {
+            if (slot.compareAndSet(current, null)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of identifiers that are currently held
+     *
+     * @return the number of identifiers that are currently held
+     */
+    public int size() {
+        return slots.size();
+    }
+
+    /**
+     * Removes all the identifiers
+     */
+    public void clear() {
+        slots.clear();
+    }
+
+    @Nullable
+    private LimiterVerdict tryCooldown(@Nonnull Slot slot, @Nullable State current, long window, long now) {
+        if (current != null && current.expireAt > now) {
+            return new LimiterVerdict(false, 0L, (current.expireAt == FOREVER) ? 0L : toMillis(current.expireAt - now));
+        }
+        State next = new State(saturatedAdd(now, window));
+        return slot.compareAndSet(current, next) ? new LimiterVerdict(true, 0L, (window == FOREVER) ? 0L : toMillis(window)) : null;
+    }
+
+    @Nullable
+    private LimiterVerdict tryFixedWindow(@Nonnull Slot slot, @Nullable State current, long permits, long cost, long window, long now) {
+        // The window starts with the first call, the same as the redis script
+        FixedWindowState state = (current instanceof FixedWindowState alias && alias.expireAt > now) ? alias : null;
+        long count = (state == null) ? 0L : state.count;
+        long expireAt = (state == null) ? saturatedAdd(now, window) : state.expireAt;
+        if (count + cost > permits) {
+            return new LimiterVerdict(false, Math.max(permits - count, 0L), toMillis(expireAt - now));
+        }
+        FixedWindowState next = new FixedWindowState(expireAt, count + cost);
+        return slot.compareAndSet(current, next) ? new LimiterVerdict(true, permits - count - cost, toMillis(expireAt - now)) : null;
+    }
+
+    @Nullable
+    private LimiterVerdict trySlidingLog(@Nonnull Slot slot, @Nullable State current, long permits, long window, long now) {
+        SlidingLogState state;
+        if (current instanceof SlidingLogState alias && alias.expireAt > now) {
+            state = alias;
+        } else {
+            state = new SlidingLogState(permits);
+            if (!slot.compareAndSet(current, state)) {
+                return null;
+            }
+        }
+        synchronized (state) {
+            if (slot.state != state) {
+                return null;
+            }
+            state.evictBefore(now - window);
+            if (state.size + 1L > permits) {
+                // The call that must expire before the next permit
+                long reset = state.timestampAt((int) (state.size - permits)) + window - now;
+                return new LimiterVerdict(false, 0L, toMillis(Math.max(reset, 0L)));
+            }
+            state.append(now);
+            state.expireAt = saturatedAdd(now, window);
+            return new LimiterVerdict(true, permits - state.size, toMillis(state.timestampAt(0) + window - now));
+        }
+    }
+
+    @Nullable
+    private LimiterVerdict trySlidingWindow(@Nonnull Slot slot, @Nullable State current, long permits, long cost, long window, long now) {
+        long index = now / window, elapsed = now % window;
+        long count = 0L, previous = 0L;
+        if (current instanceof SlidingWindowState state) {
+            if (state.index == index) {
+                count = state.count;
+                previous = state.previous;
+            } else if (state.index == index - 1L) {
+                previous = state.count;
+            }
+        }
+        double estimate = previous * ((double) (window - elapsed) / window) + count;
+        if (estimate + cost > permits) {
+            // The weight of the previous window decays linearly, so the next permit may come before the end of the current window
+            long reset = window - elapsed;
+            if (previous > 0L && count + cost <= permits) {
+                reset = Math.max(reset - (long) ((permits - cost - count) * ((double) window / previous)), 0L);
+            }
+            return new LimiterVerdict(false, Math.max((long) (permits - estimate), 0L), toMillis(reset));
+        }
+        SlidingWindowState next = new SlidingWindowState((index + 2L) * window, index, count + cost, previous);
+        return slot.compareAndSet(current, next) ? new LimiterVerdict(true, Math.max((long) (permits - estimate - cost), 0L), toMillis(window - elapsed)) : null;
+    }
+
+    @Nullable
+    private LimiterVerdict tryTokenBucket(@Nonnull Slot slot, @Nullable State current, long permits, long capacity, long cost, long window, long now) {
+        double rate = (double) permits / window;
+        double tokens = capacity;
+        if (current instanceof TokenBucketState state) {
+            tokens = Math.min(capacity, state.tokens + Math.max(now - state.stamp, 0L) * rate);
+        }
+        if (tokens < cost) {
+            return new LimiterVerdict(false, (long) tokens, toMillis((long) Math.ceil((cost - tokens) / rate)));
+        }
+        tokens -= cost;
+        long full = (long) Math.ceil((capacity - tokens) / rate);
+        TokenBucketState next = new TokenBucketState(saturatedAdd(now, full), tokens, now);
+        return slot.compareAndSet(current, next) ? new LimiterVerdict(true, (long) tokens, toMillis(full)) : null;
+    }
+
+    @Nonnull
+    private Slot obtainSlot(@Nonnull String identifier, long now) {
+        Slot slot = slots.get(identifier);
+        if (slot != null) {
+            return slot;
+        }
+        if (slots.size() >= maxEntries) {
+            evictEntries(now);
+        }
+        return slots.computeIfAbsent(identifier, key -> new Slot());
+    }
+
+    private void sweepIfNecessary(long now) {
+        long next = nextSweep.get();
+        if (now >= next && nextSweep.compareAndSet(next, now + sweepInterval)) {
+            removeExpired(now);
+        }
+    }
+
+    private void removeExpired(long now) {
+        for (Map.Entry<String, Slot> entry : slots.entrySet()) {
+            Slot slot = entry.getValue();
+            State current = slot.state;
+            if (current != REMOVED && (current == null || current.expireAt <= now) && slot.compareAndSet(current, REMOVED)) {
+                slots.remove(entry.getKey(), slot);
+            }
+        }
+    }
+
+    private void evictEntries(long now) {
+        // Only one thread evicts at a time, the others may overshoot the cap by at most the number of concurrent threads
+        if (!evictLock.tryLock()) {
+            return;
+        }
+        try {
+            removeExpired(now);
+            // Evicts some more live entries than needed, to amortize the cost of eviction
+            int excess = slots.size() - maxEntries + Math.max(maxEntries >>> 4, 1);
+            if (excess <= 0) {
+                return;
+            }
+            // Evicts the live entries that expire first, so that a flood of new identifiers cannot reset the limited ones arbitrarily
+            long threshold = determineThreshold(excess);
+            for (Iterator<Map.Entry<String, Slot>> iterator = slots.entrySet().iterator(); excess > 0 && iterator.hasNext(); ) {
+                Map.Entry<String, Slot> entry = iterator.next();
+                Slot slot = entry.getValue();
+                State current = slot.state;
+                if (current != REMOVED && (current == null || current.expireAt <= threshold) && slot.compareAndSet(current, REMOVED)) {
+                    slots.remove(entry.getKey(), slot);
+                    excess--;
+                }
+            }
+        } finally {
+            evictLock.unlock();
+        }
+    }
+
+    private long determineThreshold(int count) {
+        long[] expiries = new long[slots.size()];
+        int size = 0;
+        for (Slot slot : slots.values()) {
+            State current = slot.state;
+            if (size < expiries.length && current != REMOVED) {
+                expiries[size++] = (current == null) ? Long.MIN_VALUE : current.expireAt;
+            }
+        }
+        if (size == 0) {
+            return Long.MIN_VALUE;
+        }
+        Arrays.sort(expiries, 0, size);
+        return expiries[Math.min(count, size) - 1];
+    }
+
+    private long currentTime() {
+        // Shifts the monotonic time to be positive, so that the arithmetic never overflows in practice
+        return System.nanoTime() - origin + 1L;
+    }
+
+    private static long toMillis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    private static long saturatedAdd(long augend, long addend) {
+        long result = augend + addend;
+        return (((augend ^ result) & (addend ^ result)) < 0L) ? FOREVER : result;
+    }
+
+
+    private static final class Slot {
+        private static final AtomicReferenceFieldUpdater<Slot, State> STATE = AtomicReferenceFieldUpdater.newUpdater(Slot.class, State.class, "state");    // $NON-NLS-1$
+        private volatile State state;
+
+        private boolean compareAndSet(@Nullable State expected, @Nullable State update) {
+            return STATE.compareAndSet(this, expected, update);
+        }
+    }
+
+
+    private static class State {
+        protected volatile long expireAt;
+
+        private State(long expireAt) {
+            this.expireAt = expireAt;
+        }
+    }
+
+
+    private static final class FixedWindowState extends State {
+        private final long count;
+
+        private FixedWindowState(long expireAt, long count) {
+            super(expireAt);
+            this.count = count;
+        }
+    }
+
+
+    private static final class SlidingWindowState extends State {
+        private final long index, count, previous;
+
+        private SlidingWindowState(long expireAt, long index, long count, long previous) {
+            super(expireAt);
+            this.index = index;
+            this.count = count;
+            this.previous = previous;
+        }
+    }
+
+
+    private static final class TokenBucketState extends State {
+        private final double tokens;
+        private final long stamp;
+
+        private TokenBucketState(long expireAt, double tokens, long stamp) {
+            super(expireAt);
+            this.tokens = tokens;
+            this.stamp = stamp;
+        }
+    }
+
+
+    /**
+     * Mutable ring of call timestamps, guarded by its own monitor
+     */
+    private static final class SlidingLogState extends State {
+        private final long limit;
+        private long[] timestamps = new long[8];
+        private int head, size;
+
+        private SlidingLogState(long limit) {
+            super(FOREVER);
+            this.limit = limit;
+        }
+
+        private long timestampAt(int offset) {
+            return timestamps[(head + offset) % timestamps.length];
+        }
+
+        private void evictBefore(long threshold) {
+            while (size > 0 && timestamps[head] <= threshold) {
+                head = (head + 1) % timestamps.length;
+                size--;
+            }
+        }
+
+        private void removeLast() {
+            if (size > 0) {
+                size--;
+            }
+        }
+
+        private void append(long timestamp) {
+            if (size == timestamps.length) {
+                // Grows on demand, never beyond the limit in practice
+                long[] grown = Arrays.copyOf(timestamps, (int) Math.min((long) timestamps.length << 1, Math.max(limit, timestamps.length + 1L)));
+                int tail = timestamps.length - head;
+                System.arraycopy(timestamps, head, grown, 0, tail);
+                System.arraycopy(timestamps, 0, grown, tail, head);
+                timestamps = grown;
+                head = 0;
+            }
+            timestamps[(head + size) % timestamps.length] = timestamp;
+            size++;
+        }
+    }
+}
@@ -0,0 +1,498 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.yookue.springstarter.ratelimiter.support;
+
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ThreadLocalRandom;
+import jakarta.annotation.Nonnull;
+import org.springframework.util.Assert;
+import com.yookue.springstarter.ratelimiter.enumeration.LimiterAlgorithmType;
+import com.yookue.springstarter.ratelimiter.structure.LimiterQuota;
+import com.yookue.springstarter.ratelimiter.structure.LimiterVerdict;
+import lombok.Getter;
+
+
+/**
+ * Store for limiter states in a memory-mapped file, shared by all the processes on a host
+ * <p>
+ * The file holds a fixed-size open addressing hash table of 64-byte slots, keyed by 128-bit fingerprints of the identifiers, nothing is held on the java heap.
+ * A slot is updated under its lock word, which is acquired by compare-and-set through a {@link VarHandle}, and stolen after {@code 5s} from a crashed holder.
+ * The time is the wall clock, so that the processes agree on it. When all the probed slots are alive, the slot that expires first is evicted
+ *
+ * @author David Hsing
+ */
+@SuppressWarnings("unused")
+public class MappedLimiterStore implements Closeable {
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+    private static final long MAGIC = 0x524C4D5354303031L;
+    private static final long FOREVER = Long.MAX_VALUE;
+    private static final long LOCK_TIMEOUT = 5000L;
+    private static final int TOKEN_BITS = 16;
+    private static final int HEADER_SIZE = 64;
+    private static final int SLOT_SIZE = 64;
+    private static final int LOCK = 0, FINGERPRINT = 8, CHECKSUM = 16, EXPIRE_AT = 24, FIRST = 32, SECOND = 40, THIRD = 48, KIND = 56;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+
+    @Getter
+    private final Path file;
+
+    @Getter
+    private final int slots;
+
+    @Getter
+    private final int maxProbes;
+
+    /**
+     * Constructs a new store, creates the file if absent, otherwise shares the existing one
+     *
+     * @param file the file to map
+     * @param slots the number of slots, must be the same in all the processes
+     * @param maxProbes the maximum number of slots to probe for an identifier
+     */
+    public MappedLimiterStore(@Nonnull Path file, int slots, int maxProbes) throws IOException {
+        Assert.isTrue(slots > 0, "Slots must be positive");
+        Assert.isTrue(maxProbes > 0, "Max probes must be positive");
+        long size = HEADER_SIZE + (long) slots * SLOT_SIZE;
+        Assert.isTrue(size <= Integer.MAX_VALUE, "Slots exceed the maximum size of a mapped file");
+        this.file = file;
+        this.slots = slots;
+        this.maxProbes = Math.min(maxProbes, slots);
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            // Serializes the initialization with the other processes
+            try (FileLock ignored = channel.lock()) {
+                initializeFile(size);
+            }
+            this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0L, size);
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Checks and reserves the permit of the identifier atomically
+     *
+     * @param identifier the identifier of the limitation
+     * @param quota the quota of the limitation
+     *
+     * @return the verdict of the limitation
+     */
+    @Nonnull
+    public LimiterVerdict acquire(@Nonnull String identifier, @Nonnull LimiterQuota quota) {
+        Assert.isTrue(quota.getAlgorithm() != LimiterAlgorithmType.SLIDING_LOG, "Sliding log does not fit a slot of mapped storage, use sliding window instead");
+        Assert.isTrue(!quota.getAlgorithm().isInFlight(), "Calls in flight are held by LocalConcurrencyStore");
+        long fingerprint = fingerprint(identifier), checksum = checksum(identifier);
+        long window = (quota.getWindowMillis() <= 0L) ? FOREVER : quota.getWindowMillis();
+        while (true) {
+            long now = System.currentTimeMillis();
+            int base = locateSlot(fingerprint, checksum, now);
+            long token = lockSlot(base);
+            try {
+                if (matchesSlot(base, fingerprint, checksum)) {
+                    return switch (quota.getAlgorithm()) {
+                        case FIXED_WINDOW -> tryFixedWindow(base, quota.getPermits(), quota.getCost(), window, now);
+                        case SLIDING_WINDOW -> trySlidingWindow(base, quota.getPermits(), quota.getCost(), window, now);
+                        case TOKEN_BUCKET -> tryTokenBucket(base, quota.getPermits(), quota.getCapacity(), quota.getCost(), window, now);
+                        default -> tryCooldown(base, window, now);
+                    };
+                }
+            } finally {
+                unlockSlot(base, token);
+            }
+            // The slot has been evicted concurrently, retries with a fresh one
+        }
+    }
+
+    /**
+     * Checks and reserves the permits of the stacked limits, all or nothing
+     * <p>
+     * The limits are acquired in order, and the reserved permits are refunded as soon as a limit denies the call,
+     * so a denied call consumes none of the limits
+     *
+     * @param identifiers the identifiers of the limits, the {@code null} elements are skipped
+     * @param quotas the quotas of the limits, in the same order as the identifiers
+     *
+     * @return the denied verdict of the first limit that denies the call, or the allowed verdict of the limit with the least remaining permits
+     */
+    @Nonnull
+    public LimiterVerdict acquireAll(@Nonnull String[] identifiers, @Nonnull LimiterQuota[] quotas) {
+        Assert.isTrue(identifiers.length == quotas.length, "Identifiers and quotas must have the same length");
+        LimiterVerdict result = null;
+        for (int i = 0; i < identifiers.length; i++) {
+            if (identifiers[i] == null) {
+                continue;
+            }
+            LimiterVerdict verdict = acquire(identifiers[i], quotas[i]);
+            if (!verdict.isAllowed()) {
+                for (int j = i - 1; j >= 0; j--) {
+                    if (identifiers[j] != null) {
+                        refund(identifiers[j], quotas[j]);
+                    }
+                }
+                return verdict;
+            }
+            if (result == null || verdict.getRemaining() < result.getRemaining()) {
+                result = verdict;
+            }
+        }
+        Assert.notNull(result, "Identifiers must not be all null");
+        return result;
+    }
+
+    /**
+     * Returns a permit that has just been acquired, when another stacked limit of the call denies it
+     *
+     * @param identifier the identifier of the limitation
+     * @param quota the quota of the limitation
+     */
+    public void refund(@Nonnull String identifier, @Nonnull LimiterQuota quota) {
+        long fingerprint = fingerprint(identifier), checksum = checksum(identifier);
+        int base = findSlot(fingerprint, checksum);
+        if (base < 0) {
+            return;
+        }
+        long token = lockSlot(base);
+        try {
+            if (!matchesSlot(base, fingerprint, checksum) || getLong(base + KIND) != kindOf(quota.getAlgorithm())) {
+                return;
+            }
+            switch (quota.getAlgorithm()) {
+                case COOLDOWN -> putLong(base + EXPIRE_AT, 0L);
+                case FIXED_WINDOW, SLIDING_WINDOW -> putLong(base + FIRST, Math.max(getLong(base + FIRST) - quota.getCost(), 0L));
+                case TOKEN_BUCKET -> putLong(base + FIRST, Double.doubleToRawLongBits(Math.min(Double.longBitsToDouble(getLong(base + FIRST)) + quota.getCost(), quota.getCapacity())));
+                default -> {
+                }
+            }
+        } finally {
+            unlockSlot(base, token);
+        }
+    }
+
+    /**
+     * Releases the permit of the identifier
+     *
+     * @param identifier the identifier of the limitation
+     */
+    public void release(@Nonnull String identifier) {
+        long fingerprint = fingerprint(identifier), checksum = checksum(identifier);
+        int base = findSlot(fingerprint, checksum);
+        if (base < 0) {
+            return;
+        }
+        long token = lockSlot(base);
+        try {
+            if (matchesSlot(base, fingerprint, checksum)) {
+                putLong(base + EXPIRE_AT, 0L);
+            }
+        } finally {
+            unlockSlot(base, token);
+        }
+    }
+
+    /**
+     * Returns the number of identifiers that are currently alive, by scanning all the slots
+     *
+     * @return the number of identifiers that are currently alive
+     */
+    public int size() {
+        long now = System.currentTimeMillis();
+        int result = 0;
+        for (int i = 0; i < slots; i++) {
+            int base = baseOf(i);
+            if ((long) LONGS.getAcquire(buffer, base + FINGERPRINT) != 0L && getLong(base + EXPIRE_AT) > now) {
+                result++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Closes the file, the mapping is released when the buffer is collected
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    @Nonnull
+    private LimiterVerdict tryCooldown(int base, long window, long now) {
+        long expireAt = isAlive(base, LimiterAlgorithmType.COOLDOWN, now) ? getLong(base + EXPIRE_AT) : 0L;
+        if (expireAt > now) {
+            return new LimiterVerdict(false, 0L, (expireAt == FOREVER) ? 0L : expireAt - now);
+        }
+        putState(base, LimiterAlgorithmType.COOLDOWN, saturatedAdd(now, window), 0L, 0L, 0L);
+        return new LimiterVerdict(true, 0L, (window == FOREVER) ? 0L : window);
+    }
+
+    @Nonnull
+    private LimiterVerdict tryFixedWindow(int base, long permits, long cost, long window, long now) {
+        // The window starts with the first call, the same as the redis script
+        boolean alive = isAlive(base, LimiterAlgorithmType.FIXED_WINDOW, now);
+        long count = alive ? getLong(base + FIRST) : 0L;
+        long expireAt = alive ? getLong(base + EXPIRE_AT) : saturatedAdd(now, window);
+        if (count + cost > permits) {
+            return new LimiterVerdict(false, Math.max(permits - count, 0L), expireAt - now);
+        }
+        putState(base, LimiterAlgorithmType.FIXED_WINDOW, expireAt, count + cost, 0L, 0L);
+        return new LimiterVerdict(true, permits - count - cost, expireAt - now);
+    }
+
+    @Nonnull
+    private LimiterVerdict trySlidingWindow(int base, long permits, long cost, long window, long now) {
+        long index = now / window, elapsed = now % window;
+        long count = 0L, previous = 0L;
+        if (isAlive(base, LimiterAlgorithmType.SLIDING_WINDOW, now)) {
+            long stored = getLong(base + SECOND);
+            if (stored == index) {
+                count = getLong(base + FIRST);
+                previous = getLong(base + THIRD);
+            } else if (stored == index - 1L) {
+                previous = getLong(base + FIRST);
+            }
+        }
+        double estimate = previous * ((double) (window - elapsed) / window) + count;
+        if (estimate + cost > permits) {
+            // The weight of the previous window decays linearly, so the next permit may come before the end of the current window
+            long reset = window - elapsed;
+            if (previous > 0L && count + cost <= permits) {
+                reset = Math.max(reset - (long) ((permits - cost - count) * ((double) window / previous)), 0L);
+            }
+            return new LimiterVerdict(false, Math.max((long) (permits - estimate), 0L), reset);
+        }
+        putState(base, LimiterAlgorithmType.SLIDING_WINDOW, (index + 2L) * window, count + cost, index, previous);
+        return new LimiterVerdict(true, Math.max((long) (permits - estimate - cost), 0L), window - elapsed);
+    }
+
+    @Nonnull
+    private LimiterVerdict tryTokenBucket(int base, long permits, long capacity, long cost, long window, long now) {
+        double rate = (double) permits / window;
+        double tokens = capacity;
+        if (isAlive(base, LimiterAlgorithmType.TOKEN_BUCKET, now)) {
+            tokens = Math.min(capacity, Double.longBitsToDouble(getLong(base + FIRST)) + Math.max(now - getLong(base + SECOND), 0L) * rate);
+        }
+        if (tokens < cost) {
+            return new LimiterVerdict(false, (long) tokens, (long) Math.ceil((cost - tokens) / rate));
+        }
+        tokens -= cost;
+        long full = (long) Math.ceil((capacity - tokens) / rate);
+        putState(base, LimiterAlgorithmType.TOKEN_BUCKET, saturatedAdd(now, full), Double.doubleToRawLongBits(tokens), now, 0L);
+        return new LimiterVerdict(true, (long) tokens, full);
+    }
+
+    private boolean isAlive(int base, @Nonnull LimiterAlgorithmType algorithm, long now) {
+        return getLong(base + KIND) == kindOf(algorithm) && getLong(base + EXPIRE_AT) > now;
+    }
+
+    private void putState(int base, @Nonnull LimiterAlgorithmType algorithm, long expireAt, long first, long second, long third) {
+        putLong(base + KIND, kindOf(algorithm));
+        putLong(base + EXPIRE_AT, expireAt);
+        putLong(base + FIRST, first);
+        putLong(base + SECOND, second);
+        putLong(base + THIRD, third);
+    }
+
+    private int locateSlot(long fingerprint, long checksum, long now) {
+        while (true) {
+            int base = findSlot(fingerprint, checksum);
+            if (base >= 0) {
+                return base;
+            }
+            // The claims of an identifier are serialized by the lock of its home slot, so that it never occupies two slots
+            int home = homeOf(fingerprint);
+            long token = lockSlot(baseOf(home));
+            try {
+                base = findSlot(fingerprint, checksum);
+                if (base >= 0) {
+                    return base;
+                }
+                base = claimSlot(home, fingerprint, checksum, now);
+                if (base >= 0) {
+                    return base;
+                }
+            } finally {
+                unlockSlot(baseOf(home), token);
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    private int findSlot(long fingerprint, long checksum) {
+        int home = homeOf(fingerprint);
+        for (int i = 0; i < maxProbes; i++) {
+            int base = baseOf((home + i) % slots);
+            long current = (long) LONGS.getAcquire(buffer, base + FINGERPRINT);
+            if (current == fingerprint && getLong(base + CHECKSUM) == checksum) {
+                return base;
+            }
+        }
+        return -1;
+    }
+
+    private int claimSlot(int home, long fingerprint, long checksum, long now) {
+        int victim = -1;
+        long earliest = Long.MAX_VALUE;
+        for (int i = 0; i < maxProbes; i++) {
+            int slot = (home + i) % slots, base = baseOf(slot);
+            long expireAt = getLong(base + EXPIRE_AT);
+            boolean free = ((long) LONGS.getAcquire(buffer, base + FINGERPRINT) == 0L || expireAt <= now);
+            if (free && occupySlot(slot == home, base, fingerprint, checksum, now)) {
+                return base;
+            }
+            if (!free && expireAt < earliest) {
+                earliest = expireAt;
+                victim = slot;
+            }
+        }
+        // All the probed slots are alive, evicts the one that expires first
+        return (victim >= 0 && occupySlot(victim == home, baseOf(victim), fingerprint, checksum, Long.MAX_VALUE)) ? baseOf(victim) : -1;
+    }
+
+    private boolean occupySlot(boolean locked, int base, long fingerprint, long checksum, long now) {
+        // The home slot is locked by the caller, the other slots may be locked by the claims of their own identifiers
+        long token = locked ? 0L : tryLockSlot(base);
+        if (!locked && token == 0L) {
+            return false;
+        }
+        try {
+            if ((long) LONGS.getAcquire(buffer, base + FINGERPRINT) != 0L && getLong(base + EXPIRE_AT) > now) {
+                return false;
+            }
+            // Clears the fingerprint first, so that the lock-free lookups never match a half written slot
+            LONGS.setRelease(buffer, base + FINGERPRINT, 0L);
+            putLong(base + CHECKSUM, checksum);
+            for (int offset = EXPIRE_AT; offset <= KIND; offset += Long.BYTES) {
+                putLong(base + offset, 0L);
+            }
+            LONGS.setRelease(buffer, base + FINGERPRINT, fingerprint);
+            return true;
+        } finally {
+            if (!locked) {
+                unlockSlot(base, token);
+            }
+        }
+    }
+
+    private long lockSlot(int base) {
+        while (true) {
+            long token = tryLockSlot(base);
+            if (token != 0L) {
+                return token;
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    private long tryLockSlot(int base) {
+        long now = System.currentTimeMillis();
+        long token = (now << TOKEN_BITS) | (ThreadLocalRandom.current().nextInt((1 << TOKEN_BITS) - 1) + 1);
+        long current = (long) LONGS.getVolatile(buffer, base + LOCK);
+        if (current == 0L || now - (current >>> TOKEN_BITS) > LOCK_TIMEOUT) {
+            // A lock older than the timeout is held by a crashed process
+            return LONGS.compareAndSet(buffer, base + LOCK, current, token) ? token : 0L;
+        }
+        return 0L;
+    }
+
+    private void unlockSlot(int base, long token) {
+        // Never releases a lock that has been stolen
+        LONGS.compareAndSet(buffer, base + LOCK, token, 0L);
+    }
+
+    private boolean matchesSlot(int base, long fingerprint, long checksum) {
+        return (long) LONGS.getAcquire(buffer, base + FINGERPRINT) == fingerprint && getLong(base + CHECKSUM) == checksum;
+    }
+
+    private long getLong(int index) {
+        return (long) LONGS.get(buffer, index);
+    }
+
+    private void putLong(int index, long value) {
+        LONGS.set(buffer, index, value);
+    }
+
+    private int homeOf(long fingerprint) {
+        return (int) Long.remainderUnsigned(fingerprint, slots);
+    }
+
+    private static int baseOf(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    private void initializeFile(long size) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(24).order(ByteOrder.nativeOrder());
+        if (channel.size() == 0L) {
+            header.putLong(MAGIC).putLong(slots).putLong(SLOT_SIZE).flip();
+            channel.write(header, 0L);
+            // Extends the file with zeros, which are the empty slots
+            channel.write(ByteBuffer.wrap(new byte[1]), size - 1L);
+            return;
+        }
+        channel.read(header, 0L);
+        header.flip();
+        if (header.remaining() < 24 || header.getLong() != MAGIC) {
+            throw new IllegalStateException("File '" + file + "' is not a mapped limiter storage");    // $NON-NLS-1$
+        }
+        long existing = header.getLong();
+        if (existing != slots || header.getLong() != SLOT_SIZE) {
+            throw new IllegalStateException("File '" + file + "' holds " + existing + " slots, but " + slots + " slots are configured");    // $NON-NLS-1$
+        }
+    }
+
+    private static long kindOf(@Nonnull LimiterAlgorithmType algorithm) {
+        return algorithm.ordinal() + 1L;
+    }
+
+    private static long fingerprint(@Nonnull String identifier) {
+        long result = hash(identifier, 0xCBF29CE484222325L);
+        return (result == 0L) ? 1L : result;
+    }
+
+    private static long checksum(@Nonnull String identifier) {
+        return hash(identifier, 0x9E3779B97F4A7C15L);
+    }
+
+    private static long hash(@Nonnull String identifier, long seed) {
+        // FNV-1a over the chars, finalized by the mixer of MurmurHash3
+        long hash = seed;
+        for (int i = 0; i < identifier.length(); i++) {
+            hash = (hash ^ identifier.charAt(i)) * 0x100000001B3L;
+        }
+        hash ^= identifier.length();
+        hash = (hash ^ (hash >>> 33)) * 0xFF51AFD7ED558CCDL;
+        hash = (hash ^ (hash >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return hash ^ (hash >>> 33);
+    }
+
+    private static long saturatedAdd(long augend, long addend) {
+        long result = augend + addend;
+        return (((augend ^ result) & (addend ^ result)) < 0L) ? FOREVER : result;
+    }
+}
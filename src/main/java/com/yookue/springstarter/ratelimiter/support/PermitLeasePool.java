@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yookue.springstarter.ratelimiter.support;
+
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+import org.springframework.util.Assert;
+import com.yookue.springstarter.ratelimiter.enumeration.LimiterAlgorithmType;
+import com.yookue.springstarter.ratelimiter.structure.LimiterLease;
+import com.yookue.springstarter.ratelimiter.structure.LimiterQuota;
+import com.yookue.springstarter.ratelimiter.structure.LimiterVerdict;
+import lombok.Getter;
+
+
+/**
+ * Pool of the permits leased from a remote storage
+ * <p>
+ * Each identifier leases a block of permits in one round trip, and spends them locally with a lock-free counter.
+ * The block size follows the observed rate of the identifier, aiming at one lease per {@code targetInterval},
+ * and is bounded by {@code maxBlockSize} and by {@code maxShare} of the permits per window,
+ * which is also the bound of the permits that a node may hold but not spend.
+ * The unused permits are returned with the next lease of the identifier after {@code leaseTtl}, or discarded
+ *
+ * @author David Hsing
+ */
+@SuppressWarnings("unused")
+public class PermitLeasePool {
+    private final Map<String, Lease> leases = new ConcurrentHashMap<>();
+    private final long maxBlockSize;
+    private final double maxShare;
+    private final long targetInterval;
+    private final long leaseTtl;
+
+    @Getter
+    private final int maxEntries;
+
+    /**
+     * Constructs a new pool
+     *
+     * @param maxEntries the maximum number of identifiers to hold
+     * @param maxBlockSize the maximum number of permits per lease
+     * @param maxShare the maximum share of the permits per window per lease
+     * @param targetInterval the expected interval between two leases of an identifier
+     * @param leaseTtl the time to live of the leased permits
+     */
+    public PermitLeasePool(int maxEntries, long maxBlockSize, double maxShare, @Nonnull Duration targetInterval, @Nonnull Duration leaseTtl) {
+        Assert.isTrue(maxEntries > 0, "Max entries must be positive");
+        Assert.isTrue(maxBlockSize > 0L, "Max block size must be positive");
+        Assert.isTrue(maxShare > 0.0D && maxShare <= 1.0D, "Max share must be in (0, 1]");
+        Assert.isTrue(!targetInterval.isNegative() && !targetInterval.isZero(), "Target interval must be positive");
+        Assert.isTrue(!leaseTtl.isNegative() && !leaseTtl.isZero(), "Lease ttl must be positive");
+        this.maxEntries = maxEntries;
+        this.maxBlockSize = maxBlockSize;
+        this.maxShare = maxShare;
+        this.targetInterval = targetInterval.toNanos();
+        this.leaseTtl = leaseTtl.toNanos();
+    }
+
+    /**
+     * Returns whether the quota can be leased or not
+     *
+     * @param quota the quota of the limitation
+     *
+     * @return whether the quota can be leased or not
+     */
+    public static boolean isSupported(@Nonnull LimiterQuota quota) {
+        // The weighted calls are always decided by the storage
+        return quota.getWindow() != null && quota.getCost() == 1L && (quota.getAlgorithm() == LimiterAlgorithmType.FIXED_WINDOW || quota.getAlgorithm() == LimiterAlgorithmType.TOKEN_BUCKET);
+    }
+
+    /**
+     * Spends a leased permit of the identifier, leases a new block if the current one is exhausted or expired
+     *
+     * @param identifier the identifier of the limitation
+     * @param quota the quota of the limitation
+     * @param leaser the leaser of the remote storage
+     *
+     * @return the verdict of the limitation
+     */
+    @Nonnull
+    public LimiterVerdict acquire(@Nonnull String identifier, @Nonnull LimiterQuota quota, @Nonnull PermitLeaser leaser) throws Exception {
+        long now = System.nanoTime();
+        Lease lease = leases.get(identifier);
+        if (lease != null && lease.isLive(now)) {
+            if (lease.denied) {
+                return new LimiterVerdict(false, 0L, lease.resetMillis(now));
+            }
+            long left = lease.permits.decrementAndGet();
+            if (left >= 0L) {
+                return new LimiterVerdict(true, left + lease.remaining, lease.resetMillis(now));
+            }
+        }
+        return renewLease(identifier, quota, leaser, lease, now);
+    }
+
+    @Nonnull
+    private LimiterVerdict renewLease(@Nonnull String identifier, @Nonnull LimiterQuota quota, @Nonnull PermitLeaser leaser, @Nullable Lease previous, long now) throws Exception {
+        // Takes the leftovers away first, the spenders that come later will find the lease exhausted
+        long returned = 0L;
+        if (previous != null && !previous.denied && !previous.isLive(now)) {
+            returned = Math.max(previous.permits.getAndSet(0L), 0L);
+        }
+        boolean retained = leases.size() < maxEntries || purgeExpired(now);
+        long block = retained ? determineBlock(quota, previous, now) : 1L;
+        LimiterLease granted = leaser.lease(identifier, quota, block, (quota.getAlgorithm() == LimiterAlgorithmType.TOKEN_BUCKET) ? returned : 0L);
+        long resetAt = now + TimeUnit.MILLISECONDS.toNanos(Math.max(granted.getResetMillis(), 0L));
+        long expiresAt = Math.min(now + leaseTtl, resetAt);
+        if (granted.getGranted() <= 0L) {
+            if (retained) {
+                leases.put(identifier, new Lease(0L, 0L, 0L, resetAt, now, expiresAt, true));
+            }
+            return new LimiterVerdict(false, 0L, granted.getResetMillis());
+        }
+        long left = granted.getGranted() - 1L;
+        if (retained) {
+            Lease fresh = new Lease(left, granted.getGranted(), granted.getRemaining(), resetAt, now, expiresAt, false);
+            leases.merge(identifier, fresh, (current, given) -> {
+                // Another spender has renewed concurrently, joins the permits to its lease
+                if (left > 0L && current.isLive(now) && !current.denied && current.permits.get() > 0L) {
+                    current.permits.addAndGet(left);
+                    return current;
+                }
+                return given;
+            });
+        }
+        return new LimiterVerdict(true, left + granted.getRemaining(), granted.getResetMillis());
+    }
+
+    private long determineBlock(@Nonnull LimiterQuota quota, @Nullable Lease previous, long now) {
+        long limit = Math.min(Math.max((long) (quota.getPermits() * maxShare), 1L), maxBlockSize);
+        if (previous == null || previous.denied) {
+            return 1L;
+        }
+        long consumed = previous.size - Math.max(previous.permits.get(), 0L);
+        long elapsed = Math.max(now - previous.createdAt, 1L);
+        double expected = (double) consumed * targetInterval / elapsed;
+        return Math.max(Math.min((long) Math.ceil(expected), limit), 1L);
+    }
+
+    private boolean purgeExpired(long now) {
+        leases.values().removeIf(lease -> !lease.isLive(now));
+        return leases.size() < maxEntries;
+    }
+
+    /**
+     * Returns the number of identifiers that are currently held
+     *
+     * @return the number of identifiers that are currently held
+     */
+    public int size() {
+        return leases.size();
+    }
+
+    /**
+     * Discards all the leased permits
+     */
+    public void clear() {
+        leases.clear();
+    }
+
+
+    private static final class Lease {
+        private final AtomicLong permits;
+        private final long size;
+        private final long remaining;
+        private final long resetAt;
+        private final long createdAt;
+        private final long expiresAt;
+        private final boolean denied;
+
+        private Lease(long permits, long size, long remaining, long resetAt, long createdAt, long expiresAt, boolean denied) {
+            this.permits = new AtomicLong(permits);
+            this.size = size;
+            this.remaining = remaining;
+            this.resetAt = resetAt;
+            this.createdAt = createdAt;
+            this.expiresAt = expiresAt;
+            this.denied = denied;
+        }
+
+        private boolean isLive(long now) {
+            return expiresAt - now > 0L;
+        }
+
+        private long resetMillis(long now) {
+            return Math.max(TimeUnit.NANOSECONDS.toMillis(resetAt - now), 0L);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yookue.springstarter.ratelimiter.support;
+
+
+import jakarta.annotation.Nonnull;
+import com.yookue.springstarter.ratelimiter.structure.LimiterLease;
+import com.yookue.springstarter.ratelimiter.structure.LimiterQuota;
+
+
+/**
+ * Leaser for blocks of permits from a remote storage
+ *
+ * @author David Hsing
+ */
+@FunctionalInterface
+public interface PermitLeaser {
+    /**
+     * Leases a block of permits atomically
+     *
+     * @param identifier the identifier of the limitation
+     * @param quota the quota of the limitation
+     * @param block the number of permits to lease
+     * @param returned the number of unused permits of the previous lease to return
+     *
+     * @return the lease of the permits
+     */
+    @Nonnull
+    @SuppressWarnings("RedundantThrows")
+    LimiterLease lease(@Nonnull String identifier, @Nonnull LimiterQuota quota, long block, long returned) throws Exception;
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yookue.springstarter.ratelimiter.support;
+
+
+import java.security.SecureRandom;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.Nullable;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.script.RedisScript;
+import com.yookue.commonplexus.javaseutil.util.LocalDateWraps;
+import com.yookue.springstarter.ratelimiter.enumeration.LimiterKeyLayoutType;
+import com.yookue.springstarter.ratelimiter.structure.LimiterLease;
+import com.yookue.springstarter.ratelimiter.structure.LimiterQuota;
+import com.yookue.springstarter.ratelimiter.structure.LimiterVerdict;
+
+
+/**
+ * Utilities for the lua script of redis limiters
+ * <p>
+ * The script checks and reserves the permits of one or more stacked limits atomically, and is shared by the blocking and the reactive aspects
+ *
+ * @author David Hsing
+ */
+@SuppressWarnings({"unused", "rawtypes"})
+public abstract class RedisLimiterScript {
+    public static final RedisScript<List> ACQUIRE_SCRIPT = RedisScript.of(new ClassPathResource("script/support/RedisLimiterScript.lua"), List.class);    // $NON-NLS-1$
+    public static final RedisScript<List> LEASE_SCRIPT = RedisScript.of(new ClassPathResource("script/support/RedisLeaseScript.lua"), List.class);    // $NON-NLS-1$
+    public static final RedisScript<List> CONCURRENCY_SCRIPT = RedisScript.of(new ClassPathResource("script/support/RedisConcurrencyScript.lua"), List.class);    // $NON-NLS-1$
+    public static final RedisScript<Long> RELEASE_SCRIPT = RedisScript.of(new ClassPathResource("script/support/RedisReleaseScript.lua"), Long.class);    // $NON-NLS-1$
+    public static final int ARGUMENTS_PER_LIMIT = 6;
+    private static final String COOLDOWN_VALUE = "1";    // $NON-NLS-1$
+    private static final String LEGACY_MEMBER_PREFIX = UUID.randomUUID() + ":";    // $NON-NLS-1$
+    private static final String MEMBER_PREFIX = Long.toString(new SecureRandom().nextLong() & 0xFFFFFFFFFFL, Character.MAX_RADIX) + ":";    // $NON-NLS-1$
+    private static final AtomicLong MEMBER_SEQUENCE = new AtomicLong();
+
+    /**
+     * Returns the arguments of the script
+     *
+     * @param quota the quota of the limitation
+     * @param layout the key layout, decides the stored values
+     *
+     * @return the arguments of the script
+     */
+    @Nonnull
+    public static String[] buildArguments(@Nonnull LimiterQuota quota, @Nullable LimiterKeyLayoutType layout) {
+        boolean legacy = (layout == LimiterKeyLayoutType.LEGACY);
+        String value = switch (quota.getAlgorithm()) {
+            case COOLDOWN -> legacy ? LocalDateWraps.formatCurrentDateTime() : COOLDOWN_VALUE;
+            case SLIDING_LOG -> legacy ? LEGACY_MEMBER_PREFIX + MEMBER_SEQUENCE.incrementAndGet() : MEMBER_PREFIX + Long.toString(MEMBER_SEQUENCE.incrementAndGet(), Character.MAX_RADIX);
+            default -> StringUtils.EMPTY;
+        };
+        return new String[]{quota.getAlgorithm().getValue(), String.valueOf(quota.getPermits()), String.valueOf(quota.getCapacity()), String.valueOf(quota.getWindowMillis()), value, String.valueOf(quota.getCost())};
+    }
+
+    /**
+     * Returns the arguments of the script, for the stacked limits
+     *
+     * @param quotas the quotas of the limits, in the same order as the keys
+     * @param layout the key layout, decides the stored values
+     *
+     * @return the arguments of the script, for the stacked limits
+     */
+    @Nonnull
+    public static String[] buildArguments(@Nonnull List<LimiterQuota> quotas, @Nullable LimiterKeyLayoutType layout) {
+        String[] arguments = new String[quotas.size() * ARGUMENTS_PER_LIMIT];
+        for (int i = 0; i < quotas.size(); i++) {
+            System.arraycopy(buildArguments(quotas.get(i), layout), 0, arguments, i * ARGUMENTS_PER_LIMIT, ARGUMENTS_PER_LIMIT);
+        }
+        return arguments;
+    }
+
+    /**
+     * Returns the arguments of the concurrency script
+     *
+     * @param token the unique token of the call
+     * @param quotas the quotas of the in-flight limits, in the same order as the keys
+     *
+     * @return the arguments of the concurrency script
+     */
+    @Nonnull
+    public static String[] buildConcurrencyArguments(@Nonnull String token, @Nonnull List<LimiterQuota> quotas) {
+        String[] arguments = new String[quotas.size() * 2 + 1];
+        arguments[0] = token;
+        for (int i = 0; i < quotas.size(); i++) {
+            arguments[i * 2 + 1] = String.valueOf(quotas.get(i).getPermits());
+            arguments[i * 2 + 2] = String.valueOf(quotas.get(i).getWindowMillis());
+        }
+        return arguments;
+    }
+
+    /**
+     * Returns a unique token of a call, to hold the leases of the in-flight limits
+     *
+     * @return a unique token of a call
+     */
+    @Nonnull
+    public static String nextToken() {
+        return MEMBER_PREFIX + Long.toString(MEMBER_SEQUENCE.incrementAndGet(), Character.MAX_RADIX);
+    }
+
+    /**
+     * Returns the arguments of the lease script
+     *
+     * @param quota the quota of the limitation
+     * @param block the number of permits to lease
+     * @param returned the number of unused permits to return
+     *
+     * @return the arguments of the lease script
+     */
+    @Nonnull
+    public static String[] buildLeaseArguments(@Nonnull LimiterQuota quota, long block, long returned) {
+        return new String[]{quota.getAlgorithm().getValue(), String.valueOf(quota.getPermits()), String.valueOf(quota.getCapacity()), String.valueOf(quota.getWindowMillis()), String.valueOf(block), String.valueOf(returned)};
+    }
+
+    /**
+     * Returns the lease from the result of the lease script
+     *
+     * @param result the result of the lease script
+     *
+     * @return the lease from the result of the lease script
+     */
+    @Nonnull
+    public static LimiterLease toLease(@Nullable List<?> result) {
+        if (result == null || result.size() < 3) {
+            throw new IllegalStateException("Unexpected result of lease script: " + result);
+        }
+        return new LimiterLease(toLong(result.get(0)), toLong(result.get(1)), toLong(result.get(2)));
+    }
+
+    /**
+     * Returns the verdict from the result of the script
+     *
+     * @param result the result of the script
+     *
+     * @return the verdict from the result of the script
+     */
+    @Nonnull
+    public static LimiterVerdict toVerdict(@Nullable List<?> result) {
+        if (result == null || result.size() < 3) {
+            throw new IllegalStateException("Unexpected result of limiter script: " + result);
+        }
+        return new LimiterVerdict(Long.valueOf(1L).equals(result.get(0)), toLong(result.get(1)), toLong(result.get(2)));
+    }
+
+    /**
+     * Returns the index of the limit that denied the call, from the result of the script
+     *
+     * @param result the result of the script
+     *
+     * @return the index of the limit that denied the call, in the order of the keys, or {@code -1} if none
+     */
+    public static int toDeniedIndex(@Nullable List<?> result) {
+        return (result == null || result.size() < 4) ? -1 : (int) toLong(result.get(3)) - 1;
+    }
+
+    private static long toLong(@Nullable Object value) {
+        return (value instanceof Number number) ? number.longValue() : 0L;
+    }
+}
@@ -0,0 +1,45 @@
+-- Rate Limiter for Spring Boot Starter
+-- Copyright (c) 2022 Yookue Ltd. All rights reserved.
+-- https://yookue.com
+
+-- Enters the in-flight limiters of a call atomically, all or nothing
+--
+-- KEYS[i]: the identifier of the i-th limiter, a sorted set of the leases, scored by their expiry
+-- ARGV[1]: the unique token of the call
+-- ARGV[2 * i]: the maximum number of calls in flight
+-- ARGV[2 * i + 1]: the lease in milliseconds, so that the calls of crashed nodes are released after it
+--
+-- Returns {allowed, remaining permits, milliseconds until the earliest lease expires, index of the denying limiter or 0}
+
+if redis.replicate_commands then
+    pcall(redis.replicate_commands)
+end
+
+local time = redis.call('TIME')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+local remaining = -1
+for i = 1, #KEYS do
+    local permits = tonumber(ARGV[2 * i])
+    redis.call('ZREMRANGEBYSCORE', KEYS[i], '-inf', now)
+    local count = redis.call('ZCARD', KEYS[i])
+    if count + 1 > permits then
+        local reset = 0
+        local oldest = redis.call('ZRANGE', KEYS[i], 0, 0, 'WITHSCORES')
+        if oldest[2] then
+            reset = math.max(tonumber(oldest[2]) - now, 0)
+        end
+        return {0, 0, reset, i}
+    end
+    if remaining < 0 or permits - count - 1 < remaining then
+        remaining = permits - count - 1
+    end
+end
+for i = 1, #KEYS do
+    local lease = tonumber(ARGV[2 * i + 1])
+    redis.call('ZADD', KEYS[i], now + lease, ARGV[1])
+    -- Keeps the key until its latest lease expires
+    if redis.call('PTTL', KEYS[i]) < lease then
+        redis.call('PEXPIRE', KEYS[i], lease)
+    end
+end
+return {1, remaining, 0, 0}
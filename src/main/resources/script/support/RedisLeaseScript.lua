@@ -0,0 +1,73 @@
+-- Rate Limiter for Spring Boot Starter
+-- Copyright (c) 2022 Yookue Ltd. All rights reserved.
+-- https://yookue.com
+
+-- Leases a block of permits of the limiter atomically
+--
+-- KEYS[1]: the identifier of the limiter
+-- ARGV[1]: the algorithm of the limiter, only fixed window and token bucket are supported
+-- ARGV[2]: the number of permits per window
+-- ARGV[3]: the maximum number of permits to hold for bursts
+-- ARGV[4]: the window in milliseconds
+-- ARGV[5]: the number of permits to lease
+-- ARGV[6]: the number of unused permits of the previous lease to return
+--
+-- Returns {granted permits, remaining permits, milliseconds until reset}
+--
+-- The unused permits of a fixed window cannot tell which window they belong to, so they are never returned,
+-- they expire with their window instead
+
+if redis.replicate_commands then
+    pcall(redis.replicate_commands)
+end
+
+local function current_millis()
+    local time = redis.call('TIME')
+    return tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+end
+
+local function fixed_window(key, permits, capacity, window, now, block, returned)
+    local count = tonumber(redis.call('GET', key) or '0')
+    local ttl = redis.call('PTTL', key)
+    if ttl < 0 then
+        ttl = window
+    end
+    local granted = math.max(math.min(block, permits - count), 0)
+    if granted > 0 then
+        if redis.call('INCRBY', key, granted) == granted then
+            redis.call('PEXPIRE', key, window)
+        end
+    end
+    return granted, math.max(permits - count - granted, 0), ttl
+end
+
+local function token_bucket(key, permits, capacity, window, now, block, returned)
+    local rate = permits / window
+    local state = redis.call('HMGET', key, 't', 's')
+    local tokens, stamp = tonumber(state[1]), tonumber(state[2])
+    if tokens == nil or stamp == nil then
+        tokens, stamp = capacity, now
+    end
+    tokens = math.min(capacity, tokens + math.max(now - stamp, 0) * rate + returned)
+    local granted = math.max(math.min(block, math.floor(tokens)), 0)
+    if granted == 0 then
+        return 0, 0, math.ceil((1 - tokens) / rate)
+    end
+    tokens = tokens - granted
+    local full = math.ceil((capacity - tokens) / rate)
+    redis.call('HMSET', key, 't', tostring(tokens), 's', now)
+    redis.call('PEXPIRE', key, math.max(full, 1))
+    return granted, math.floor(tokens), full
+end
+
+local algorithms = {
+    ['fixed-window'] = fixed_window,
+    ['token-bucket'] = token_bucket
+}
+
+local algorithm = algorithms[ARGV[1]]
+if algorithm == nil then
+    return redis.error_reply('Unsupported lease algorithm ' .. tostring(ARGV[1]))
+end
+local granted, remaining, reset = algorithm(KEYS[1], tonumber(ARGV[2]), tonumber(ARGV[3]), tonumber(ARGV[4]), current_millis(), tonumber(ARGV[5]), tonumber(ARGV[6]))
+return {granted, remaining, reset}
@@ -0,0 +1,161 @@
+-- Rate Limiter for Spring Boot Starter
+-- Copyright (c) 2022 Yookue Ltd. All rights reserved.
+-- https://yookue.com
+
+-- Checks and reserves the permits of the stacked limiters atomically, all or nothing
+--
+-- KEYS[i]: the identifier of the i-th limiter
+-- ARGV[6 * (i - 1) + 1]: the algorithm of the limiter
+-- ARGV[6 * (i - 1) + 2]: the number of permits per window
+-- ARGV[6 * (i - 1) + 3]: the maximum number of permits to hold for bursts
+-- ARGV[6 * (i - 1) + 4]: the window in milliseconds, non-positive means never expire
+-- ARGV[6 * (i - 1) + 5]: the value to store, the legacy value for cooldown, or a unique member for sliding log
+-- ARGV[6 * (i - 1) + 6]: the number of permits to deduct by the call, only counted by fixed window, sliding window and token bucket
+--
+-- Returns {allowed, remaining permits, milliseconds until reset, index of the denying limiter or 0}
+-- When allowed, the remaining permits and the reset are of the limiter with the least remaining permits
+--
+-- Every algorithm only reads in the check phase, and returns a commit function,
+-- the commit functions are only called when all the limiters allow, so a denied call consumes none of them
+
+if redis.replicate_commands then
+    pcall(redis.replicate_commands)
+end
+
+local function current_millis()
+    local time = redis.call('TIME')
+    return tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+end
+
+local function cooldown(key, permits, capacity, window, now, value, cost)
+    local ttl = redis.call('PTTL', key)
+    if ttl ~= -2 then
+        return 0, 0, math.max(ttl, 0), nil
+    end
+    return 1, 0, window, function()
+        if window > 0 then
+            redis.call('SET', key, value, 'PX', window)
+        else
+            redis.call('SET', key, value)
+        end
+    end
+end
+
+local function fixed_window(key, permits, capacity, window, now, value, cost)
+    local count = tonumber(redis.call('GET', key) or '0')
+    local ttl = redis.call('PTTL', key)
+    if ttl < 0 then
+        ttl = window
+    end
+    if count + cost > permits then
+        return 0, math.max(permits - count, 0), ttl, nil
+    end
+    return 1, permits - count - cost, ttl, function()
+        if redis.call('INCRBY', key, cost) == cost then
+            redis.call('PEXPIRE', key, window)
+        end
+    end
+end
+
+local function sliding_log(key, permits, capacity, window, now, value, cost)
+    redis.call('ZREMRANGEBYSCORE', key, '-inf', now - window)
+    local count = redis.call('ZCARD', key)
+    if count + 1 > permits then
+        -- The call that must expire before the next permit
+        local index = count - permits
+        local entry = redis.call('ZRANGE', key, index, index, 'WITHSCORES')
+        local reset = window
+        if entry[2] then
+            reset = math.max(tonumber(entry[2]) + window - now, 0)
+        end
+        return 0, 0, reset, nil
+    end
+    local reset = window
+    local oldest = redis.call('ZRANGE', key, 0, 0, 'WITHSCORES')
+    if oldest[2] then
+        reset = math.max(tonumber(oldest[2]) + window - now, 0)
+    end
+    return 1, permits - count - 1, reset, function()
+        redis.call('ZADD', key, now, value)
+        redis.call('PEXPIRE', key, window)
+    end
+end
+
+local function sliding_window(key, permits, capacity, window, now, value, cost)
+    local index = math.floor(now / window)
+    local state = redis.call('HMGET', key, 'w', 'c', 'p')
+    local current, previous = tonumber(state[2]) or 0, tonumber(state[3]) or 0
+    local stored = tonumber(state[1])
+    if stored ~= index then
+        if stored == index - 1 then
+            previous = current
+        else
+            previous = 0
+        end
+        current = 0
+    end
+    local elapsed = now - index * window
+    local estimate = previous * (window - elapsed) / window + current
+    if estimate + cost > permits then
+        -- The weight of the previous window decays linearly, so the next permit may come before the end of the current window
+        local reset = window - elapsed
+        if previous > 0 and current + cost <= permits then
+            reset = math.max(math.floor(reset - (permits - cost - current) * window / previous), 0)
+        end
+        return 0, math.max(math.floor(permits - estimate), 0), reset, nil
+    end
+    return 1, math.max(math.floor(permits - estimate - cost), 0), window - elapsed, function()
+        redis.call('HMSET', key, 'w', index, 'c', current + cost, 'p', previous)
+        redis.call('PEXPIRE', key, window * 2)
+    end
+end
+
+local function token_bucket(key, permits, capacity, window, now, value, cost)
+    local rate = permits / window
+    local state = redis.call('HMGET', key, 't', 's')
+    local tokens, stamp = tonumber(state[1]), tonumber(state[2])
+    if tokens == nil or stamp == nil then
+        tokens, stamp = capacity, now
+    end
+    tokens = math.min(capacity, tokens + math.max(now - stamp, 0) * rate)
+    if tokens < cost then
+        return 0, math.floor(tokens), math.ceil((cost - tokens) / rate), nil
+    end
+    tokens = tokens - cost
+    local full = math.ceil((capacity - tokens) / rate)
+    return 1, math.floor(tokens), full, function()
+        redis.call('HMSET', key, 't', tostring(tokens), 's', now)
+        redis.call('PEXPIRE', key, math.max(full, 1))
+    end
+end
+
+local algorithms = {
+    ['cooldown'] = cooldown,
+    ['fixed-window'] = fixed_window,
+    ['sliding-log'] = sliding_log,
+    ['sliding-window'] = sliding_window,
+    ['token-bucket'] = token_bucket
+}
+
+local now = current_millis()
+local commits = {}
+local remaining, reset = -1, 0
+for i = 1, #KEYS do
+    local offset = (i - 1) * 6
+    local algorithm = algorithms[ARGV[offset + 1]]
+    if algorithm == nil then
+        return redis.error_reply('Unsupported limiter algorithm ' .. tostring(ARGV[offset + 1]))
+    end
+    local allowed, left, wait, commit = algorithm(KEYS[i], tonumber(ARGV[offset + 2]), tonumber(ARGV[offset + 3]), tonumber(ARGV[offset + 4]), now, ARGV[offset + 5], tonumber(ARGV[offset + 6]) or 1)
+    if allowed ~= 1 then
+        return {0, left, wait, i}
+    end
+    commits[i] = commit
+    if remaining < 0 or left < remaining then
+        remaining, reset = left, wait
+    end
+end
+for i = 1, #commits do
+    commits[i]()
+end
+return {1, remaining, reset, 0}
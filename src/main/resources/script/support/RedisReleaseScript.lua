@@ -0,0 +1,16 @@
+-- Rate Limiter for Spring Boot Starter
+-- Copyright (c) 2022 Yookue Ltd. All rights reserved.
+-- https://yookue.com
+
+-- Releases the leases of a call from the in-flight limiters
+--
+-- KEYS[i]: the identifier of the i-th limiter
+-- ARGV[1]: the unique token of the call
+--
+-- Returns the number of released leases
+
+local released = 0
+for i = 1, #KEYS do
+    released = released + redis.call('ZREM', KEYS[i], ARGV[1])
+end
+return released
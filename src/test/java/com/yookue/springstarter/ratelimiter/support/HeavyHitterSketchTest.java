@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yookue.springstarter.ratelimiter.support;
+
+
+import java.time.Duration;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import com.yookue.springstarter.ratelimiter.enumeration.LimiterAlgorithmType;
+import com.yookue.springstarter.ratelimiter.structure.LimiterQuota;
+import com.yookue.springstarter.ratelimiter.structure.LimiterVerdict;
+
+
+/**
+ * Tests for {@link HeavyHitterSketch}
+ *
+ * @author David Hsing
+ */
+class HeavyHitterSketchTest {
+    private static final Duration WINDOW = Duration.ofMinutes(10L);
+
+    @Test
+    void admitsUnderEscalationRatio() {
+        HeavyHitterSketch sketch = new HeavyHitterSketch(0.001D, 0.01D, WINDOW, 0.1D);
+        LimiterQuota[] quotas = {new LimiterQuota(LimiterAlgorithmType.FIXED_WINDOW, 100L, 100L, WINDOW)};
+        String[] identifiers = {"light"};
+        for (int i = 0; i < 9; i++) {
+            LimiterVerdict verdict = sketch.tryAdmit(identifiers, quotas);
+            Assertions.assertNotNull(verdict);
+            Assertions.assertTrue(verdict.isAllowed());
+        }
+        Assertions.assertNull(sketch.tryAdmit(identifiers, quotas));
+        Assertions.assertEquals(10.0D, sketch.estimate("light"), 0.5D);
+    }
+
+    @Test
+    void countsCostOfWeightedCalls() {
+        HeavyHitterSketch sketch = new HeavyHitterSketch(0.001D, 0.01D, WINDOW, 0.1D);
+        LimiterQuota[] quotas = {new LimiterQuota(LimiterAlgorithmType.TOKEN_BUCKET, 10000L, 10000L, WINDOW).withCost(1000L)};
+        Assertions.assertNull(sketch.tryAdmit(new String[]{"heavy"}, quotas));
+        Assertions.assertEquals(1000.0D, sketch.estimate("heavy"), 0.5D);
+    }
+
+    @Test
+    void saturatesCountsOfHeavyCalls() {
+        HeavyHitterSketch sketch = new HeavyHitterSketch(0.001D, 0.01D, WINDOW, 1.0D);
+        LimiterQuota[] quotas = {new LimiterQuota(LimiterAlgorithmType.FIXED_WINDOW, Long.MAX_VALUE, Long.MAX_VALUE, WINDOW).withCost(Long.MAX_VALUE)};
+        String[] identifiers = {"overflow"};
+        for (int i = 0; i < 3; i++) {
+            Assertions.assertNull(sketch.tryAdmit(identifiers, quotas));
+        }
+        Assertions.assertTrue(sketch.estimate("overflow") > 0.0D);
+    }
+
+    @Test
+    void escalatesWhenAnyLimitIsNear() {
+        HeavyHitterSketch sketch = new HeavyHitterSketch(0.001D, 0.01D, WINDOW, 0.5D);
+        LimiterQuota[] quotas = {new LimiterQuota(LimiterAlgorithmType.FIXED_WINDOW, 1000L, 1000L, WINDOW), new LimiterQuota(LimiterAlgorithmType.FIXED_WINDOW, 3L, 3L, WINDOW)};
+        String[] identifiers = {"wide", "narrow"};
+        Assertions.assertNotNull(sketch.tryAdmit(identifiers, quotas));
+        Assertions.assertNull(sketch.tryAdmit(identifiers, quotas));
+        Assertions.assertNotNull(sketch.tryAdmit(new String[]{"wide", null}, quotas));
+    }
+
+    @Test
+    void neverAdmitsCooldown() {
+        HeavyHitterSketch sketch = new HeavyHitterSketch(0.01D, 0.01D, WINDOW, 1.0D);
+        LimiterQuota[] quotas = {new LimiterQuota(LimiterAlgorithmType.COOLDOWN, 1L, 1L, WINDOW)};
+        Assertions.assertNull(sketch.tryAdmit(new String[]{"cooldown"}, quotas));
+    }
+}
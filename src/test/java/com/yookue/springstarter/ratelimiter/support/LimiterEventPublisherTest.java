@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yookue.springstarter.ratelimiter.support;
+
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import com.yookue.springstarter.ratelimiter.enumeration.LimiterAlgorithmType;
+import com.yookue.springstarter.ratelimiter.event.RateLimitedSummaryEvent;
+import com.yookue.springstarter.ratelimiter.structure.LimiterDescriptor;
+import com.yookue.springstarter.ratelimiter.structure.LimiterQuota;
+
+
+/**
+ * Tests for {@link LimiterEventPublisher}
+ *
+ * @author David Hsing
+ */
+class LimiterEventPublisherTest {
+    private static final LimiterQuota QUOTA = new LimiterQuota(LimiterAlgorithmType.FIXED_WINDOW, 1L, 1L, Duration.ofMinutes(1L));
+    private static final LimiterDescriptor DESCRIPTOR = new LimiterDescriptor(null, "rule", null, QUOTA, "rule:u:", "", null, null, Collections.emptyList(), new LimiterQuota[]{QUOTA}, null, null, null);
+
+    @Test
+    void coalescesDenialsWithRawTriggerValues() throws Exception {
+        BlockingQueue<Object> events = new LinkedBlockingQueue<>();
+        LimiterEventPublisher publisher = new LimiterEventPublisher(events::add, Duration.ofHours(1L), 10, 10);
+        try {
+            String[] identifiers = {"rule:u:~hashed"};
+            for (int i = 0; i < 3; i++) {
+                publisher.record(identifiers, DESCRIPTOR, () -> new String[]{"a very long user name"});
+            }
+            publisher.flush();
+            RateLimitedSummaryEvent event = (RateLimitedSummaryEvent) events.poll(5L, TimeUnit.SECONDS);
+            Assertions.assertNotNull(event);
+            Assertions.assertEquals(3L, event.getCount());
+            Assertions.assertEquals(List.of("rule:u:~hashed"), event.getIdentifiers());
+            Assertions.assertEquals(List.of("a very long user name"), event.getTriggerValues());
+        } finally {
+            publisher.destroy();
+        }
+    }
+
+    @Test
+    void countsDenialsAfterIdleEntryIsRetired() throws Exception {
+        BlockingQueue<Object> events = new LinkedBlockingQueue<>();
+        LimiterEventPublisher publisher = new LimiterEventPublisher(events::add, Duration.ofHours(1L), 10, 10);
+        try {
+            String[] identifiers = {"rule:u:idle"};
+            publisher.record(identifiers, DESCRIPTOR, () -> new String[]{"idle"});
+            publisher.flush();
+            Assertions.assertNotNull(events.poll(5L, TimeUnit.SECONDS));
+            publisher.flush();
+            Assertions.assertEquals(0, publisher.size());
+            publisher.record(identifiers, DESCRIPTOR, () -> new String[]{"idle"});
+            publisher.flush();
+            RateLimitedSummaryEvent event = (RateLimitedSummaryEvent) events.poll(5L, TimeUnit.SECONDS);
+            Assertions.assertNotNull(event);
+            Assertions.assertEquals(1L, event.getCount());
+        } finally {
+            publisher.destroy();
+        }
+    }
+
+    @Test
+    void dropsIdentifiersBeyondMaxEntries() {
+        LimiterEventPublisher publisher = new LimiterEventPublisher(event -> {}, Duration.ofHours(1L), 1, 10);
+        try {
+            publisher.record(new String[]{"rule:u:first"}, DESCRIPTOR, () -> new String[1]);
+            publisher.record(new String[]{"rule:u:second"}, DESCRIPTOR, () -> new String[1]);
+            Assertions.assertEquals(1, publisher.size());
+            Assertions.assertEquals(1L, publisher.getDroppedCount());
+        } finally {
+            publisher.destroy();
+        }
+    }
+}
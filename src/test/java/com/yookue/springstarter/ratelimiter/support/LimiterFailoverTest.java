@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yookue.springstarter.ratelimiter.support;
+
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import com.yookue.springstarter.ratelimiter.enumeration.LimiterAlgorithmType;
+import com.yookue.springstarter.ratelimiter.enumeration.LimiterFailureType;
+import com.yookue.springstarter.ratelimiter.enumeration.LimiterOutcomeType;
+import com.yookue.springstarter.ratelimiter.structure.LimiterQuota;
+import com.yookue.springstarter.ratelimiter.structure.LimiterVerdict;
+
+
+/**
+ * Tests for {@link LimiterFailover}
+ *
+ * @author David Hsing
+ */
+class LimiterFailoverTest {
+    private static final LimiterVerdict ALLOWED = new LimiterVerdict(true, 1L, 0L);
+
+    @Test
+    void skipsStorageWhenPoolIsSaturated() throws Exception {
+        LimiterFailover failover = new LimiterFailover(Duration.ofSeconds(10L), 1, Duration.ofMinutes(1L), LimiterFailureType.CLOSED, null, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Thread> callers = new ArrayList<>();
+        try {
+            // One call occupies the only thread, another one occupies the only slot of the queue
+            for (int i = 0; i < 2; i++) {
+                Thread caller = new Thread(() -> {
+                    try {
+                        failover.invoke(() -> {
+                            release.await();
+                            return ALLOWED;
+                        });
+                    } catch (Exception ignored) {
+                    }
+                });
+                caller.start();
+                callers.add(caller);
+                long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5L);
+                while (caller.getState() != Thread.State.TIMED_WAITING && System.nanoTime() - deadline < 0L) {
+                    Thread.onSpinWait();
+                }
+            }
+            AtomicBoolean called = new AtomicBoolean();
+            Assertions.assertNull(failover.invoke(() -> {
+                called.set(true);
+                return ALLOWED;
+            }));
+            Assertions.assertFalse(called.get());
+            Assertions.assertFalse(failover.isOpen());
+        } finally {
+            release.countDown();
+            for (Thread caller : callers) {
+                caller.join();
+            }
+            failover.destroy();
+        }
+    }
+
+    @Test
+    void throwsTimeoutBeyondBudget() {
+        LimiterFailover failover = new LimiterFailover(Duration.ofMillis(20L), 1, Duration.ofMinutes(1L), LimiterFailureType.CLOSED, null, 1);
+        try {
+            Assertions.assertThrows(TimeoutException.class, () -> failover.invoke(() -> {
+                TimeUnit.SECONDS.sleep(5L);
+                return ALLOWED;
+            }));
+        } finally {
+            failover.destroy();
+        }
+    }
+
+    @Test
+    void opensCircuitAfterThreshold() {
+        LimiterFailover failover = new LimiterFailover(null, 2, Duration.ofMinutes(1L), LimiterFailureType.OPEN, null, 0);
+        failover.recordFailure();
+        Assertions.assertTrue(failover.tryPass());
+        failover.recordFailure();
+        Assertions.assertTrue(failover.isOpen());
+        Assertions.assertFalse(failover.tryPass());
+        failover.recordSuccess();
+        Assertions.assertFalse(failover.isOpen());
+        Assertions.assertTrue(failover.tryPass());
+    }
+
+    @Test
+    void probesOnceAfterOpenDuration() {
+        LimiterFailover failover = new LimiterFailover(null, 1, Duration.ZERO, LimiterFailureType.OPEN, null, 0);
+        failover.recordFailure();
+        Assertions.assertTrue(failover.isOpen());
+        Assertions.assertTrue(failover.tryPass());
+    }
+
+    @Test
+    void fallsBackByFailureType() {
+        LimiterQuota[] quotas = {new LimiterQuota(LimiterAlgorithmType.FIXED_WINDOW, 1L, 1L, Duration.ofMinutes(1L))};
+        String[] identifiers = {"fallback"};
+        LimiterFailover closed = new LimiterFailover(null, 1, Duration.ofMinutes(1L), LimiterFailureType.CLOSED, null, 0);
+        Assertions.assertFalse(closed.fallback(identifiers, quotas).isAllowed());
+        Assertions.assertEquals(LimiterOutcomeType.FAIL_CLOSED, closed.getFallbackOutcome());
+        LimiterFailover open = new LimiterFailover(null, 1, Duration.ofMinutes(1L), LimiterFailureType.OPEN, null, 0);
+        Assertions.assertTrue(open.fallback(identifiers, quotas).isAllowed());
+        Assertions.assertEquals(LimiterOutcomeType.FAIL_OPEN, open.getFallbackOutcome());
+        LimiterFailover local = new LimiterFailover(null, 1, Duration.ofMinutes(1L), LimiterFailureType.OPEN, new LocalLimiterStore(100, Duration.ofMinutes(1L)), 0);
+        Assertions.assertTrue(local.fallback(identifiers, quotas).isAllowed());
+        Assertions.assertFalse(local.fallback(identifiers, quotas).isAllowed());
+        Assertions.assertEquals(LimiterOutcomeType.FALLBACK, local.getFallbackOutcome());
+    }
+}
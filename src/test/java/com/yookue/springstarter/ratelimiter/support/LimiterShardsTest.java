@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.yookue.springstarter.ratelimiter.support;
+
+
+import java.time.Duration;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import com.yookue.springstarter.ratelimiter.enumeration.LimiterAlgorithmType;
+import com.yookue.springstarter.ratelimiter.structure.LimiterQuota;
+
+
+/**
+ * Tests for {@link LimiterShards}
+ *
+ * @author David Hsing
+ */
+class LimiterShardsTest {
+    private static final Duration HOUR = Duration.ofHours(1L);
+    private static final String[] IDENTIFIERS = {"shard:0", "shard:1", "shard:2"};
+
+    @Test
+    void spreadsCostOfHeavyCalls() {
+        LimiterQuota quota = new LimiterQuota(LimiterAlgorithmType.FIXED_WINDOW, 10L, 10L, HOUR);
+        LimiterShards shards = new LimiterShards(IDENTIFIERS, quota);
+        Assertions.assertFalse(shards.isSpread(3L));
+        Assertions.assertTrue(shards.isSpread(8L));
+        LimiterQuota[] quotas = shards.spreadQuotas(8L);
+        long total = 0L;
+        for (int i = 0; i < quotas.length; i++) {
+            Assertions.assertTrue(quotas[i].getCost() <= quotas[i].getPermits());
+            total += quotas[i].getCost();
+        }
+        Assertions.assertEquals(8L, total);
+    }
+
+    @Test
+    void deductsSpreadCallFromAllShards() {
+        LocalLimiterStore store = new LocalLimiterStore(100, HOUR);
+        LimiterQuota quota = new LimiterQuota(LimiterAlgorithmType.FIXED_WINDOW, 10L, 10L, HOUR);
+        LimiterShards shards = new LimiterShards(IDENTIFIERS, quota);
+        Assertions.assertTrue(store.acquireAll(shards.spreadIdentifiers(10L), shards.spreadQuotas(10L)).isAllowed());
+        for (String identifier : IDENTIFIERS) {
+            Assertions.assertFalse(store.acquire(identifier, shards.quotaOf(identifier)).isAllowed());
+        }
+    }
+
+    @Test
+    void skipsShardsWithoutShare() {
+        LimiterQuota quota = new LimiterQuota(LimiterAlgorithmType.FIXED_WINDOW, 4L, 4L, HOUR);
+        LimiterShards shards = new LimiterShards(IDENTIFIERS, quota);
+        Assertions.assertTrue(shards.isSpread(2L));
+        String[] identifiers = shards.spreadIdentifiers(2L);
+        Assertions.assertNotNull(identifiers[0]);
+        Assertions.assertNotNull(identifiers[1]);
+        Assertions.assertNull(identifiers[2]);
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yookue.springstarter.ratelimiter.support;
+
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import com.yookue.springstarter.ratelimiter.enumeration.LimiterAlgorithmType;
+import com.yookue.springstarter.ratelimiter.structure.LimiterQuota;
+import com.yookue.springstarter.ratelimiter.structure.LimiterVerdict;
+
+
+/**
+ * Tests for {@link LocalLimiterStore}
+ *
+ * @author David Hsing
+ */
+class LocalLimiterStoreTest {
+    private static final Duration HOUR = Duration.ofHours(1L);
+
+    @Test
+    void deniesBeyondFixedWindow() {
+        LocalLimiterStore store = new LocalLimiterStore(100, HOUR);
+        LimiterQuota quota = new LimiterQuota(LimiterAlgorithmType.FIXED_WINDOW, 3L, 3L, HOUR);
+        for (int i = 2; i >= 0; i--) {
+            LimiterVerdict verdict = store.acquire("fixed", quota);
+            Assertions.assertTrue(verdict.isAllowed());
+            Assertions.assertEquals(i, verdict.getRemaining());
+        }
+        LimiterVerdict verdict = store.acquire("fixed", quota);
+        Assertions.assertFalse(verdict.isAllowed());
+        Assertions.assertTrue(verdict.getResetMillis() > 0L);
+    }
+
+    @Test
+    void deductsCostOfWeightedCalls() {
+        LocalLimiterStore store = new LocalLimiterStore(100, HOUR);
+        LimiterQuota fixed = new LimiterQuota(LimiterAlgorithmType.FIXED_WINDOW, 5L, 5L, HOUR).withCost(2L);
+        Assertions.assertEquals(3L, store.acquire("fixed", fixed).getRemaining());
+        Assertions.assertEquals(1L, store.acquire("fixed", fixed).getRemaining());
+        Assertions.assertFalse(store.acquire("fixed", fixed).isAllowed());
+        LimiterQuota sliding = new LimiterQuota(LimiterAlgorithmType.SLIDING_WINDOW, 5L, 5L, HOUR).withCost(3L);
+        Assertions.assertTrue(store.acquire("sliding", sliding).isAllowed());
+        Assertions.assertFalse(store.acquire("sliding", sliding).isAllowed());
+        LimiterQuota bucket = new LimiterQuota(LimiterAlgorithmType.TOKEN_BUCKET, 1L, 4L, HOUR).withCost(3L);
+        Assertions.assertTrue(store.acquire("bucket", bucket).isAllowed());
+        Assertions.assertFalse(store.acquire("bucket", bucket).isAllowed());
+    }
+
+    @Test
+    void deniesBeyondSlidingLog() {
+        LocalLimiterStore store = new LocalLimiterStore(100, HOUR);
+        LimiterQuota quota = new LimiterQuota(LimiterAlgorithmType.SLIDING_LOG, 2L, 2L, HOUR);
+        Assertions.assertTrue(store.acquire("log", quota).isAllowed());
+        Assertions.assertTrue(store.acquire("log", quota).isAllowed());
+        Assertions.assertFalse(store.acquire("log", quota).isAllowed());
+    }
+
+    @Test
+    void refillsTokenBucket() throws Exception {
+        LocalLimiterStore store = new LocalLimiterStore(100, HOUR);
+        LimiterQuota quota = new LimiterQuota(LimiterAlgorithmType.TOKEN_BUCKET, 10L, 1L, Duration.ofMillis(100L));
+        Assertions.assertTrue(store.acquire("bucket", quota).isAllowed());
+        Assertions.assertFalse(store.acquire("bucket", quota).isAllowed());
+        TimeUnit.MILLISECONDS.sleep(50L);
+        Assertions.assertTrue(store.acquire("bucket", quota).isAllowed());
+    }
+
+    @Test
+    void holdsCooldownUntilRelease() {
+        LocalLimiterStore store = new LocalLimiterStore(100, HOUR);
+        LimiterQuota quota = new LimiterQuota(LimiterAlgorithmType.COOLDOWN, 1L, 1L, HOUR);
+        Assertions.assertTrue(store.acquire("cooldown", quota).isAllowed());
+        Assertions.assertFalse(store.acquire("cooldown", quota).isAllowed());
+        store.release("cooldown");
+        Assertions.assertTrue(store.acquire("cooldown", quota).isAllowed());
+    }
+
+    @Test
+    void refundsStackedLimitsOnDenial() {
+        LocalLimiterStore store = new LocalLimiterStore(100, HOUR);
+        LimiterQuota wide = new LimiterQuota(LimiterAlgorithmType.FIXED_WINDOW, 3L, 3L, HOUR);
+        LimiterQuota narrow = new LimiterQuota(LimiterAlgorithmType.FIXED_WINDOW, 1L, 1L, HOUR);
+        String[] identifiers = {"wide", null, "narrow"};
+        LimiterQuota[] quotas = {wide, narrow, narrow};
+        Assertions.assertTrue(store.acquireAll(identifiers, quotas).isAllowed());
+        Assertions.assertFalse(store.acquireAll(identifiers, quotas).isAllowed());
+        // The denied call consumes none of the limits
+        Assertions.assertEquals(1L, store.acquire("wide", wide).getRemaining());
+    }
+
+    @Test
+    void boundsEntries() {
+        LocalLimiterStore store = new LocalLimiterStore(4, HOUR);
+        LimiterQuota quota = new LimiterQuota(LimiterAlgorithmType.FIXED_WINDOW, 1L, 1L, HOUR);
+        for (int i = 0; i < 100; i++) {
+            store.acquire("identifier-" + i, quota);
+        }
+        Assertions.assertTrue(store.size() <= 4);
+    }
+
+    @Test
+    void evictsEntriesThatExpireFirst() {
+        LocalLimiterStore store = new LocalLimiterStore(16, HOUR);
+        LimiterQuota limited = new LimiterQuota(LimiterAlgorithmType.FIXED_WINDOW, 1L, 1L, HOUR);
+        Assertions.assertTrue(store.acquire("limited", limited).isAllowed());
+        Assertions.assertFalse(store.acquire("limited", limited).isAllowed());
+        LimiterQuota flood = new LimiterQuota(LimiterAlgorithmType.FIXED_WINDOW, 1L, 1L, Duration.ofMinutes(1L));
+        for (int i = 0; i < 1000; i++) {
+            store.acquire("flood-" + i, flood);
+        }
+        // The denial outlives the flood, whose entries expire first
+        Assertions.assertFalse(store.acquire("limited", limited).isAllowed());
+    }
+
+    @Test
+    void sweepsExpiredEntries() throws Exception {
+        LocalLimiterStore store = new LocalLimiterStore(100, Duration.ZERO);
+        LimiterQuota quota = new LimiterQuota(LimiterAlgorithmType.FIXED_WINDOW, 1L, 1L, Duration.ofMillis(10L));
+        store.acquire("expired", quota);
+        TimeUnit.MILLISECONDS.sleep(30L);
+        store.acquire("live", quota);
+        Assertions.assertEquals(1, store.size());
+        Assertions.assertTrue(store.acquire("expired", quota).isAllowed());
+    }
+}
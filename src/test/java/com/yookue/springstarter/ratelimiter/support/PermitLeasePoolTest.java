@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.yookue.springstarter.ratelimiter.support;
+
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import com.yookue.springstarter.ratelimiter.enumeration.LimiterAlgorithmType;
+import com.yookue.springstarter.ratelimiter.structure.LimiterLease;
+import com.yookue.springstarter.ratelimiter.structure.LimiterQuota;
+import com.yookue.springstarter.ratelimiter.structure.LimiterVerdict;
+
+
+/**
+ * Tests for {@link PermitLeasePool}
+ *
+ * @author David Hsing
+ */
+class PermitLeasePoolTest {
+    private static final LimiterQuota FIXED_QUOTA = new LimiterQuota(LimiterAlgorithmType.FIXED_WINDOW, 100L, 100L, Duration.ofMinutes(1L));
+    private static final LimiterQuota BUCKET_QUOTA = new LimiterQuota(LimiterAlgorithmType.TOKEN_BUCKET, 100L, 100L, Duration.ofMinutes(1L));
+
+    @Test
+    void spendsLeasedPermitsLocally() throws Exception {
+        PermitLeasePool pool = new PermitLeasePool(10, 10L, 0.5D, Duration.ofHours(1L), Duration.ofMinutes(1L));
+        RecordingLeaser leaser = new RecordingLeaser(1000L);
+        // The first lease is a single permit, the next one follows the observed rate up to the max block size
+        Assertions.assertTrue(pool.acquire("hot", FIXED_QUOTA, leaser).isAllowed());
+        Assertions.assertTrue(pool.acquire("hot", FIXED_QUOTA, leaser).isAllowed());
+        Assertions.assertEquals(List.of(1L, 10L), leaser.blocks);
+        for (int i = 0; i < 9; i++) {
+            Assertions.assertTrue(pool.acquire("hot", FIXED_QUOTA, leaser).isAllowed());
+        }
+        Assertions.assertEquals(2, leaser.blocks.size());
+        Assertions.assertTrue(pool.acquire("hot", FIXED_QUOTA, leaser).isAllowed());
+        Assertions.assertEquals(3, leaser.blocks.size());
+    }
+
+    @Test
+    void boundsBlockByShareOfPermits() throws Exception {
+        PermitLeasePool pool = new PermitLeasePool(10, 1000L, 0.05D, Duration.ofHours(1L), Duration.ofMinutes(1L));
+        RecordingLeaser leaser = new RecordingLeaser(1000L);
+        pool.acquire("hot", FIXED_QUOTA, leaser);
+        pool.acquire("hot", FIXED_QUOTA, leaser);
+        Assertions.assertEquals(List.of(1L, 5L), leaser.blocks);
+    }
+
+    @Test
+    void holdsDenialUntilExpiry() throws Exception {
+        PermitLeasePool pool = new PermitLeasePool(10, 10L, 0.5D, Duration.ofHours(1L), Duration.ofMinutes(1L));
+        RecordingLeaser leaser = new RecordingLeaser(0L);
+        LimiterVerdict verdict = pool.acquire("drained", FIXED_QUOTA, leaser);
+        Assertions.assertFalse(verdict.isAllowed());
+        Assertions.assertFalse(pool.acquire("drained", FIXED_QUOTA, leaser).isAllowed());
+        Assertions.assertEquals(1, leaser.blocks.size());
+    }
+
+    @Test
+    void returnsLeftoversOfExpiredBucketLease() throws Exception {
+        PermitLeasePool pool = new PermitLeasePool(10, 10L, 0.5D, Duration.ofHours(1L), Duration.ofMillis(200L));
+        RecordingLeaser leaser = new RecordingLeaser(1000L);
+        pool.acquire("bucket", BUCKET_QUOTA, leaser);
+        pool.acquire("bucket", BUCKET_QUOTA, leaser);
+        TimeUnit.MILLISECONDS.sleep(300L);
+        pool.acquire("bucket", BUCKET_QUOTA, leaser);
+        Assertions.assertEquals(List.of(0L, 0L, 9L), leaser.returns);
+    }
+
+    @Test
+    void leasesSinglePermitsBeyondMaxEntries() throws Exception {
+        PermitLeasePool pool = new PermitLeasePool(1, 10L, 0.5D, Duration.ofHours(1L), Duration.ofMinutes(1L));
+        RecordingLeaser leaser = new RecordingLeaser(1000L);
+        pool.acquire("first", FIXED_QUOTA, leaser);
+        pool.acquire("second", FIXED_QUOTA, leaser);
+        pool.acquire("second", FIXED_QUOTA, leaser);
+        Assertions.assertEquals(1, pool.size());
+        Assertions.assertEquals(List.of(1L, 1L, 1L), leaser.blocks);
+    }
+
+    @Test
+    void supportsUnweightedWindows() {
+        Assertions.assertTrue(PermitLeasePool.isSupported(FIXED_QUOTA));
+        Assertions.assertTrue(PermitLeasePool.isSupported(BUCKET_QUOTA));
+        Assertions.assertFalse(PermitLeasePool.isSupported(FIXED_QUOTA.withCost(2L)));
+        Assertions.assertFalse(PermitLeasePool.isSupported(new LimiterQuota(LimiterAlgorithmType.SLIDING_WINDOW, 100L, 100L, Duration.ofMinutes(1L))));
+    }
+
+
+    private static final class RecordingLeaser implements PermitLeaser {
+        private final List<Long> blocks = new ArrayList<>();
+        private final List<Long> returns = new ArrayList<>();
+        private long available;
+
+        private RecordingLeaser(long available) {
+            this.available = available;
+        }
+
+        @Override
+        public LimiterLease lease(String identifier, LimiterQuota quota, long block, long returned) {
+            blocks.add(block);
+            returns.add(returned);
+            long granted = Math.min(block, available);
+            available -= granted;
+            return new LimiterLease(granted, available, 60000L);
+        }
+    }
+}
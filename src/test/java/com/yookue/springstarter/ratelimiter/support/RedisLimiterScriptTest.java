@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) 2022 Yookue Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.yookue.springstarter.ratelimiter.support;
+
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.luaj.vm2.Globals;
+import org.luaj.vm2.LuaTable;
+import org.luaj.vm2.LuaValue;
+import org.luaj.vm2.Varargs;
+import org.luaj.vm2.lib.VarArgFunction;
+import org.luaj.vm2.lib.jse.JsePlatform;
+import com.yookue.springstarter.ratelimiter.enumeration.LimiterAlgorithmType;
+import com.yookue.springstarter.ratelimiter.structure.LimiterQuota;
+import com.yookue.springstarter.ratelimiter.structure.LimiterVerdict;
+
+
+/**
+ * Tests for the cost handling of {@link RedisLimiterScript#ACQUIRE_SCRIPT}
+ * <p>
+ * The script runs on an embedded lua interpreter, against an in-memory emulation of the redis commands it calls
+ *
+ * @author David Hsing
+ */
+class RedisLimiterScriptTest {
+    private static final Duration HOUR = Duration.ofHours(1L);
+    private final Map<String, Object> values = new HashMap<>();
+    private final Map<String, Long> expiries = new HashMap<>();
+    private final long now = 1_700_000_000_000L;
+
+    @Test
+    void deductsCostOfFixedWindow() {
+        LimiterQuota quota = new LimiterQuota(LimiterAlgorithmType.FIXED_WINDOW, 5L, 5L, HOUR).withCost(2L);
+        Assertions.assertEquals(3L, acquire(List.of("fixed"), List.of(quota)).getRemaining());
+        Assertions.assertEquals(1L, acquire(List.of("fixed"), List.of(quota)).getRemaining());
+        Assertions.assertFalse(acquire(List.of("fixed"), List.of(quota)).isAllowed());
+        Assertions.assertEquals("4", values.get("fixed"));
+    }
+
+    @Test
+    void deductsCostOfSlidingWindow() {
+        LimiterQuota quota = new LimiterQuota(LimiterAlgorithmType.SLIDING_WINDOW, 5L, 5L, HOUR).withCost(3L);
+        LimiterVerdict verdict = acquire(List.of("sliding"), List.of(quota));
+        Assertions.assertTrue(verdict.isAllowed());
+        Assertions.assertEquals(2L, verdict.getRemaining());
+        Assertions.assertFalse(acquire(List.of("sliding"), List.of(quota)).isAllowed());
+    }
+
+    @Test
+    void deductsCostOfTokenBucket() {
+        LimiterQuota quota = new LimiterQuota(LimiterAlgorithmType.TOKEN_BUCKET, 4L, 4L, HOUR).withCost(3L);
+        LimiterVerdict verdict = acquire(List.of("bucket"), List.of(quota));
+        Assertions.assertTrue(verdict.isAllowed());
+        Assertions.assertEquals(1L, verdict.getRemaining());
+        verdict = acquire(List.of("bucket"), List.of(quota));
+        Assertions.assertFalse(verdict.isAllowed());
+        Assertions.assertTrue(verdict.getResetMillis() > 0L);
+    }
+
+    @Test
+    void consumesNoneOfStackedLimitsWhenDenied() {
+        List<LimiterQuota> quotas = List.of(new LimiterQuota(LimiterAlgorithmType.FIXED_WINDOW, 10L, 10L, HOUR).withCost(2L),
+            new LimiterQuota(LimiterAlgorithmType.FIXED_WINDOW, 3L, 3L, HOUR).withCost(2L));
+        LimiterVerdict verdict = acquire(List.of("outer", "inner"), quotas);
+        Assertions.assertTrue(verdict.isAllowed());
+        Assertions.assertEquals(1L, verdict.getRemaining());
+        List<Long> result = execute(List.of("outer", "inner"), RedisLimiterScript.buildArguments(quotas, null));
+        Assertions.assertEquals(1, RedisLimiterScript.toDeniedIndex(result));
+        Assertions.assertEquals("2", values.get("outer"));
+        Assertions.assertEquals("2", values.get("inner"));
+    }
+
+    @Test
+    void deductsOneWithoutCost() {
+        LimiterQuota quota = new LimiterQuota(LimiterAlgorithmType.FIXED_WINDOW, 5L, 5L, HOUR);
+        String[] arguments = Arrays.copyOf(RedisLimiterScript.buildArguments(quota, null), RedisLimiterScript.ARGUMENTS_PER_LIMIT - 1);
+        Assertions.assertEquals(4L, RedisLimiterScript.toVerdict(execute(List.of("legacy"), arguments)).getRemaining());
+    }
+
+    private LimiterVerdict acquire(List<String> keys, List<LimiterQuota> quotas) {
+        return RedisLimiterScript.toVerdict(execute(keys, RedisLimiterScript.buildArguments(quotas, null)));
+    }
+
+    private List<Long> execute(List<String> keys, String[] arguments) {
+        Globals globals = JsePlatform.standardGlobals();
+        globals.set("KEYS", toTable(keys.toArray(new String[0])));
+        globals.set("ARGV", toTable(arguments));
+        LuaTable redis = new LuaTable();
+        redis.set("call", new RedisCall());
+        globals.set("redis", redis);
+        LuaValue result = globals.load(RedisLimiterScript.ACQUIRE_SCRIPT.getScriptAsString(), "RedisLimiterScript").call();
+        List<Long> values = new ArrayList<>();
+        for (int i = 1; i <= result.length(); i++) {
+            values.add(result.get(i).tolong());
+        }
+        return values;
+    }
+
+    private static LuaTable toTable(String[] elements) {
+        LuaTable table = new LuaTable();
+        for (int i = 0; i < elements.length; i++) {
+            table.set(i + 1, LuaValue.valueOf(elements[i]));
+        }
+        return table;
+    }
+
+    private Object lookup(String key) {
+        Long expiry = expiries.get(key);
+        if (expiry != null && expiry <= now) {
+            values.remove(key);
+            expiries.remove(key);
+        }
+        return values.get(key);
+    }
+
+    /**
+     * Emulates the redis commands that the script calls, on a frozen clock
+     */
+    @SuppressWarnings("unchecked")
+    private class RedisCall extends VarArgFunction {
+        @Override
+        public Varargs invoke(Varargs args) {
+            String command = args.arg1().tojstring();
+            String key = (args.narg() > 1) ? args.arg(2).tojstring() : null;
+            switch (command) {
+                case "TIME" -> {
+                    return toTable(new String[]{String.valueOf(now / 1000L), String.valueOf(now % 1000L * 1000L)});
+                }
+                case "GET" -> {
+                    Object value = lookup(key);
+                    return (value == null) ? LuaValue.FALSE : LuaValue.valueOf((String) value);
+                }
+                case "SET" -> {
+                    values.put(key, args.arg(3).tojstring());
+                    expiries.remove(key);
+                    if (args.narg() > 4) {
+                        expiries.put(key, now + args.arg(5).tolong());
+                    }
+                    return LuaValue.valueOf("OK");
+                }
+                case "PTTL" -> {
+                    if (lookup(key) == null) {
+                        return LuaValue.valueOf(-2);
+                    }
+                    Long expiry = expiries.get(key);
+                    return LuaValue.valueOf((expiry == null) ? -1L : expiry - now);
+                }
+                case "INCRBY" -> {
+                    Object value = lookup(key);
+                    long count = ((value == null) ? 0L : Long.parseLong((String) value)) + args.arg(3).tolong();
+                    values.put(key, String.valueOf(count));
+                    return LuaValue.valueOf(count);
+                }
+                case "PEXPIRE" -> {
+                    if (lookup(key) == null) {
+                        return LuaValue.valueOf(0);
+                    }
+                    expiries.put(key, now + args.arg(3).tolong());
+                    return LuaValue.valueOf(1);
+                }
+                case "HMGET" -> {
+                    Map<String, String> hash = (Map<String, String>) lookup(key);
+                    LuaTable table = new LuaTable();
+                    for (int i = 3; i <= args.narg(); i++) {
+                        String field = (hash == null) ? null : hash.get(args.arg(i).tojstring());
+                        table.set(i - 2, (field == null) ? LuaValue.FALSE : LuaValue.valueOf(field));
+                    }
+                    return table;
+                }
+                case "HMSET" -> {
+                    Map<String, String> hash = (Map<String, String>) values.computeIfAbsent(key, k -> new HashMap<String, String>());
+                    for (int i = 3; i < args.narg(); i += 2) {
+                        hash.put(args.arg(i).tojstring(), args.arg(i + 1).tojstring());
+                    }
+                    return LuaValue.valueOf("OK");
+                }
+                default -> throw new UnsupportedOperationException("Unsupported redis command " + command);
+            }
+        }
+    }
+}